@@ -70,29 +70,63 @@ public class Add implements Cpu.ClockedOpcodeConfiguration {
      * @return sum of operands, used for flags calculation
      */
     public static int flags(Cpu cpu, boolean w, int dst, int src)
+    {
+        if (w) {
+            return flags16(cpu, dst, src);
+        } else {
+            return flags8(cpu, dst, src);
+        }
+    }
+
+    /**
+     * byte version of {@link #flags(Cpu, boolean, int, int)}
+     *
+     * @param cpu ref to cpu
+     * @param dst first operand
+     * @param src second operand
+     * @return sum of operands, used for flags calculation
+     */
+    public static int flags8(Cpu cpu, int dst, int src)
     {
         int value = dst + src;
 
-        if (w) {
-            Cpu.Opcode.flagsPszc16(cpu, value);
+        Cpu.Opcode.flagsPszc8(cpu, value);
 
-            // todo: optimize
-            if (((dst & Cpu.WORD_MASK_SIGN) == (src & Cpu.WORD_MASK_SIGN)) &&
-                    ((dst & Cpu.WORD_MASK_SIGN) != (value & Cpu.WORD_MASK_SIGN)))
-                cpu.setFlag(Cpu.FLAG_OF);
-            else
-                cpu.resetFlag(Cpu.FLAG_OF);
+        if (((dst & Cpu.BYTE_MASK_SIGN) == (src & Cpu.BYTE_MASK_SIGN)) &&
+                ((dst & Cpu.BYTE_MASK_SIGN) != (value & Cpu.BYTE_MASK_SIGN)))
+            cpu.setFlag(Cpu.FLAG_OF);
+        else
+            cpu.resetFlag(Cpu.FLAG_OF);
 
-        }
-        else {
-            Cpu.Opcode.flagsPszc8(cpu, value);
+        // AF is only based on lower nipple of low byte
+        if (0x0F < ((dst & 0x0F) + (src & 0x0F)))
+            cpu.setFlag(Cpu.FLAG_AF);
+        else
+            cpu.resetFlag(Cpu.FLAG_AF);
 
-            if (((dst & Cpu.BYTE_MASK_SIGN) == (src & Cpu.BYTE_MASK_SIGN)) &&
-                    ((dst & Cpu.BYTE_MASK_SIGN) != (value & Cpu.BYTE_MASK_SIGN)))
-                cpu.setFlag(Cpu.FLAG_OF);
-            else
-                cpu.resetFlag(Cpu.FLAG_OF);
-        }
+        return value;
+    }
+
+    /**
+     * word version of {@link #flags(Cpu, boolean, int, int)}
+     *
+     * @param cpu ref to cpu
+     * @param dst first operand
+     * @param src second operand
+     * @return sum of operands, used for flags calculation
+     */
+    public static int flags16(Cpu cpu, int dst, int src)
+    {
+        int value = dst + src;
+
+        Cpu.Opcode.flagsPszc16(cpu, value);
+
+        // todo: optimize
+        if (((dst & Cpu.WORD_MASK_SIGN) == (src & Cpu.WORD_MASK_SIGN)) &&
+                ((dst & Cpu.WORD_MASK_SIGN) != (value & Cpu.WORD_MASK_SIGN)))
+            cpu.setFlag(Cpu.FLAG_OF);
+        else
+            cpu.resetFlag(Cpu.FLAG_OF);
 
         // AF is only based on lower nipple of low byte
         if (0x0F < ((dst & 0x0F) + (src & 0x0F)))
@@ -152,21 +186,45 @@ public class Add implements Cpu.ClockedOpcodeConfiguration {
     /**
      * Addition of reg/mem with reg
      */
-    public static class AddRmR extends Cpu.FixedClockOpcode {
+    public static class AddRmR extends Cpu.WidthOpcode {
         @Override
-        public void executeClocked(Cpu cpu, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean d = (opcode & 0b0000_0010) == 0b10;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            int sum = flags(cpu, w, cpu.mrrRegValue, cpu.mrrModValue);
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.FixedClockOpcode {
+            @Override
+            public void executeClocked(Cpu cpu, int opcode) {
+                int sum = flags8(cpu, cpu.mrrRegValue, cpu.mrrModValue);
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, sum);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(sum);
+                }
+            }
+        }
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, sum);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, sum);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.FixedClockOpcode {
+            @Override
+            public void executeClocked(Cpu cpu, int opcode) {
+                int sum = flags16(cpu, cpu.mrrRegValue, cpu.mrrModValue);
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, sum);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(sum);
+                }
             }
         }
     }
@@ -198,22 +256,32 @@ public class Add implements Cpu.ClockedOpcodeConfiguration {
     /**
      * Addition of accumulator with immediate
      */
-    public static class AddAccImm extends Cpu.FixedClockOpcode {
+    public static class AddAccImm extends Cpu.WidthOpcode {
         @Override
-        public void executeClocked(Cpu cpu, int opcode) {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            // extract immediate value
-            int imm;
-            if (w) {
-                imm = cpu.ipRead16();
-            } else {
-                imm = cpu.ipRead8();
+        /**
+         * byte variant (w=0), AL + imm8
+         */
+        public static class W8 extends Cpu.FixedClockOpcode {
+            @Override
+            public void executeClocked(Cpu cpu, int opcode) {
+                int sum = flags8(cpu, cpu.registers[Cpu.AX] & 0x00FF, cpu.ipRead8());
+                cpu.writeRegisterLowByte(Cpu.AX, sum);
             }
+        }
 
-            int sum = flags(cpu, w, cpu.registers[Cpu.AX], imm);
-
-            cpu.writeRegister(w, Cpu.AX, sum);
+        /**
+         * word variant (w=1), AX + imm16
+         */
+        public static class W16 extends Cpu.FixedClockOpcode {
+            @Override
+            public void executeClocked(Cpu cpu, int opcode) {
+                int sum = flags16(cpu, cpu.registers[Cpu.AX], cpu.ipRead16());
+                cpu.writeRegisterWord(Cpu.AX, sum);
+            }
         }
     }
 
@@ -275,18 +343,21 @@ public class Add implements Cpu.ClockedOpcodeConfiguration {
 
             // extract immediate value
             int imm;
+            int acc = cpu.registers[Cpu.AX];
             if (w) {
                 imm = cpu.ipRead16();
             } else {
                 imm = cpu.ipRead8();
+                // use only AL part
+                acc &= 0x00FF;
             }
 
             int cf = (cpu.flags >> Cpu.FLAG_CF_POS) & 1;
 
             // todo separate CF addition as in sbb ? check logic
-            int sum = flags(cpu, w, cpu.registers[Cpu.AX], imm + cf);
+            int sum = flags(cpu, w, acc, imm + cf);
 
-            cpu.writeByModRegRm(w, sum);
+            cpu.writeRegister(w, Cpu.AX, sum);
         }
     }
 
@@ -333,7 +404,7 @@ public class Add implements Cpu.ClockedOpcodeConfiguration {
                 cpu.flags |= (Cpu.FLAG_AF | Cpu.FLAG_CF);
             } else {
                 // clear af, cf
-                cpu.flags &= (~Cpu.FLAG_AF | ~Cpu.FLAG_CF);
+                cpu.flags &= ~(Cpu.FLAG_AF | Cpu.FLAG_CF);
             }
             // clear AL high nipple
             ax &= 0xFF0F;
@@ -130,7 +130,7 @@ public class Cpu
     public void interrupt(int number)
     {
         push16(flags);
-        flags &= (~Cpu.FLAG_TF | ~Cpu.FLAG_IF);
+        flags &= ~(Cpu.FLAG_TF | Cpu.FLAG_IF);
         push16(registers[Cpu.CS]);
         push16(ip);
 
@@ -233,6 +233,27 @@ public class Cpu
         }
     }
 
+    /**
+     * writes one of common byte registers (AL..BH) based on reg index,
+     * byte (w=0) version of {@link #writeRegister(boolean, int, int)}
+     * @param regIndex index of the register to write (0..7, xL or xH)
+     * @param value value to write (8 bits)
+     */
+    public void writeRegister8(int regIndex, int value)
+    {
+        int regPartIndex = regIndex & 0b11;
+        int regFullValue = registers[regPartIndex];
+
+        if ((regIndex & 0b100) == 0) {
+            // lower part (AL, ..)
+            regFullValue = (regFullValue & 0xFF00) | (value & 0xFF);
+        } else {
+            // upper part (AH, ..)
+            regFullValue = (regFullValue & 0x00FF) | ((value & 0xFF) << 8);
+        }
+        registers[regPartIndex] = regFullValue;
+    }
+
     /**
      * writes one of common registers based on reg index
      * value is cleared with word (0xffff) mask
@@ -320,6 +341,21 @@ public class Cpu
      * @param opcode current opcode to which mod-reg-r/m belongs to
      */
     int readModRegRm(int opcode)
+    {
+        // check if opcode is in word (16 bit) mode ir 8 bit mode
+        if ((opcode & 0b0000_0001) == 1) {
+            return readModRegRm16();
+        } else {
+            return readModRegRm8();
+        }
+    }
+
+    /**
+     * Byte (w=0) version of {@link #readModRegRm(int)},
+     * used by width specialized opcodes
+     * @return mrr byte read
+     */
+    int readModRegRm8()
     {
         // read and divide mod-reg-r/m byte into local variables
         int mrr = ipRead8();
@@ -327,103 +363,84 @@ public class Cpu
         mrrReg = (mrr & 0b00111000) >> 3;
         mrrRm  = (mrr & 0b00000111);
 
-        // check if opcode is in word (16 bit) mode ir 8 bit mode
-        boolean w = (opcode & 0b0000_0001) == 1;
-
-        // parse -reg- part (it could be an opcode extension sometimes)
+        // parse -reg- part (it could be an opcode extension sometimes),
+        // 8 bit mode, only 4 register - xH or xL
+        // mrrRegIndex &= 0b011; <-- we need original index to distinguish xH/xL later on write
         mrrRegIndex = mrrReg;
-        if (w) {
-            // 16 bit mode, all 8 registers
-            mrrRegValue = registers[mrrRegIndex];
+        // read full register and adjust
+        mrrRegValue = registers[mrrRegIndex & 0b011];
+        if ((mrrReg & 0b100) == 0) {
+            mrrRegValue &= 0xFF;
         } else {
-            // 8 bit mode, only 4 register - xH or xL
-            // mrrRegIndex &= 0b011; <-- we need original index to distinguish xH/xL later on write
-            // read full register and adjust
-            mrrRegValue = registers[mrrRegIndex & 0b011];
-            if ((mrrReg & 0b100) == 0) {
-                mrrRegValue &= 0xFF;
-            } else {
-                mrrRegValue >>= 8;
-            }
+            mrrRegValue >>= 8;
         }
 
         // process mod- and -rm parts together
         if ((mrrMod ^ 0b11) == 0)
         {
-            // mod==11, r/m points to a register
-            mrrModRegIndex = mrrRm;
-            if (w) {
-                // 16 bit mode, all 8 registers
-                mrrModRegValue = registers[mrrModRegIndex];
+            // mod==11, r/m points to a register,
+            // 8 bit mode, only 4 register - xH or xL
+            mrrModRegIndex = mrrRm & 0b011;
+            // read full register and adjust
+            mrrModRegValue = registers[mrrModRegIndex];
+            if ((mrrRm & 0b100) == 0) {
+                mrrModRegValue &= 0xFF;
             } else {
-                // 8 bit mode, only 4 register - xH or xL
-                mrrModRegIndex &= 0b011;
-                // read full register and adjust
-                mrrModRegValue = registers[mrrModRegIndex];
-                if ((mrrRm & 0b100) == 0) {
-                    mrrModRegValue &= 0xFF;
-                } else {
-                    mrrModRegValue >>= 8;
-                }
+                mrrModRegValue >>= 8;
             }
             // provide unified access to mod-r/m value
             mrrModValue = mrrModRegValue;
         }
         else {
             // mod!=11, mod+r/m give effective address
+            readModRmEA();
 
-            // default memory segment for the opcode
-            int eff = Cpu.DS;
+            // pre-read value from memory, it will be consumed
+            // by the operation or will be updated (so let it be in cache)
+            mrrModEAValue = mread8(mrrModEA);
 
-            if (mrrMod == 0b00)
-            {
-                // no displacement
-                switch (mrrRm) {
-                    case 0b000:               mrrModEA = registers[BX] + registers[SI]; clocks += 7; break;
-                    case 0b001:               mrrModEA = registers[BX] + registers[DI]; clocks += 8; break;
-                    case 0b010: eff = Cpu.SS; mrrModEA = registers[BP] + registers[SI]; clocks += 8; break;
-                    case 0b011: eff = Cpu.SS; mrrModEA = registers[BP] + registers[DI]; clocks += 7; break;
-                    case 0b100:               mrrModEA = registers[SI];                 clocks += 5; break;
-                    case 0b101:               mrrModEA = registers[DI];                 clocks += 5; break;
-                    case 0b110: eff = Cpu.DS; mrrModEA = ipRead16();                    clocks += 6; break;    /* segment is DS */
-                    case 0b111:               mrrModEA = registers[BX];                 clocks += 5; break;
-                }
-            }
-            else {
-                // 8 or 16 bit displacement
-                switch (mrrRm) {
-                    case 0b000:               mrrModEA = registers[BX] + registers[SI]; clocks += 11; break;
-                    case 0b001:               mrrModEA = registers[BX] + registers[DI]; clocks += 12; break;
-                    case 0b010: eff = Cpu.SS; mrrModEA = registers[BP] + registers[SI]; clocks += 12; break;
-                    case 0b011: eff = Cpu.SS; mrrModEA = registers[BP] + registers[DI]; clocks += 11; break;
-                    case 0b100:               mrrModEA = registers[SI];                 clocks += 9; break;
-                    case 0b101:               mrrModEA = registers[DI];                 clocks += 9; break;
-                    case 0b110: eff = Cpu.SS; mrrModEA = registers[BP];                 clocks += 9; break;
-                    case 0b111:               mrrModEA = registers[BX];                 clocks += 9; break;
-                }
+            // provide unified access to mod-r/m value
+            mrrModValue = mrrModEAValue;
+        }
 
-                int value;
-                if (mrrMod == 0b01) {
-                    value = ipRead8();
-                } else {
-                    // mrrMod === 0b10
-                    value = ipRead16();
-                }
-                mrrModEA += value;
-            }
+        return mrr;
+    }
 
+    /**
+     * Word (w=1) version of {@link #readModRegRm(int)},
+     * used by width specialized opcodes
+     * @return mrr byte read
+     */
+    int readModRegRm16()
+    {
+        // read and divide mod-reg-r/m byte into local variables
+        int mrr = ipRead8();
+        mrrMod = mrr >> 6;
+        mrrReg = (mrr & 0b00111000) >> 3;
+        mrrRm  = (mrr & 0b00000111);
 
-            // prepare linear address of opcode mem segment,
-            // will be used in mread/mwrite
-            if (overrideSegmentIndex != -1) {
-                effOpcodeMemSegment = segments[overrideSegmentIndex] << 4;
-            } else {
-                effOpcodeMemSegment = segments[eff] << 4;
-            }
+        // parse -reg- part (it could be an opcode extension sometimes),
+        // 16 bit mode, all 8 registers
+        mrrRegIndex = mrrReg;
+        mrrRegValue = registers[mrrRegIndex];
+
+        // process mod- and -rm parts together
+        if ((mrrMod ^ 0b11) == 0)
+        {
+            // mod==11, r/m points to a register,
+            // 16 bit mode, all 8 registers
+            mrrModRegIndex = mrrRm;
+            mrrModRegValue = registers[mrrModRegIndex];
+            // provide unified access to mod-r/m value
+            mrrModValue = mrrModRegValue;
+        }
+        else {
+            // mod!=11, mod+r/m give effective address
+            readModRmEA();
 
             // pre-read value from memory, it will be consumed
             // by the operation or will be updated (so let it be in cache)
-            mrrModEAValue = mread(w, mrrModEA);
+            mrrModEAValue = mread16(mrrModEA);
 
             // provide unified access to mod-r/m value
             mrrModValue = mrrModEAValue;
@@ -432,6 +449,63 @@ public class Cpu
         return mrr;
     }
 
+    /**
+     * calculates effective address for mod!=11 case of mod-reg-r/m byte
+     * into {@link #mrrModEA} and prepares {@link #effOpcodeMemSegment},
+     * reads displacement if present and adds EA clocks
+     */
+    private void readModRmEA()
+    {
+        // default memory segment for the opcode
+        int eff = Cpu.DS;
+
+        if (mrrMod == 0b00)
+        {
+            // no displacement
+            switch (mrrRm) {
+                case 0b000:               mrrModEA = registers[BX] + registers[SI]; clocks += 7; break;
+                case 0b001:               mrrModEA = registers[BX] + registers[DI]; clocks += 8; break;
+                case 0b010: eff = Cpu.SS; mrrModEA = registers[BP] + registers[SI]; clocks += 8; break;
+                case 0b011: eff = Cpu.SS; mrrModEA = registers[BP] + registers[DI]; clocks += 7; break;
+                case 0b100:               mrrModEA = registers[SI];                 clocks += 5; break;
+                case 0b101:               mrrModEA = registers[DI];                 clocks += 5; break;
+                case 0b110: eff = Cpu.DS; mrrModEA = ipRead16();                    clocks += 6; break;    /* segment is DS */
+                case 0b111:               mrrModEA = registers[BX];                 clocks += 5; break;
+            }
+        }
+        else {
+            // 8 or 16 bit displacement
+            switch (mrrRm) {
+                case 0b000:               mrrModEA = registers[BX] + registers[SI]; clocks += 11; break;
+                case 0b001:               mrrModEA = registers[BX] + registers[DI]; clocks += 12; break;
+                case 0b010: eff = Cpu.SS; mrrModEA = registers[BP] + registers[SI]; clocks += 12; break;
+                case 0b011: eff = Cpu.SS; mrrModEA = registers[BP] + registers[DI]; clocks += 11; break;
+                case 0b100:               mrrModEA = registers[SI];                 clocks += 9; break;
+                case 0b101:               mrrModEA = registers[DI];                 clocks += 9; break;
+                case 0b110: eff = Cpu.SS; mrrModEA = registers[BP];                 clocks += 9; break;
+                case 0b111:               mrrModEA = registers[BX];                 clocks += 9; break;
+            }
+
+            int value;
+            if (mrrMod == 0b01) {
+                value = ipRead8();
+            } else {
+                // mrrMod === 0b10
+                value = ipRead16();
+            }
+            mrrModEA += value;
+        }
+
+
+        // prepare linear address of opcode mem segment,
+        // will be used in mread/mwrite
+        if (overrideSegmentIndex != -1) {
+            effOpcodeMemSegment = segments[overrideSegmentIndex] << 4;
+        } else {
+            effOpcodeMemSegment = segments[eff] << 4;
+        }
+    }
+
     /**
      * writes value to a register or it's part as pointer by mod-reg-r/m,
      * with mod=11 and (r/m, word) pointing to a destination
@@ -481,6 +555,46 @@ public class Cpu
         }
     }
 
+    /**
+     * writes byte value to register/mem pointed by mod-r/m parts of mrr,
+     * byte (w=0) version of {@link #writeByModRegRm(boolean, int)}
+     *
+     * @param value value to write
+     */
+    public void writeByModRegRm8(int value)
+    {
+        if ((mrrMod ^ 0b11) == 0) {
+            // mod r/m is a register, xL or xH
+            int regFullValue = registers[mrrModRegIndex];
+            if ((mrrRm & 0b100) == 0) {
+                regFullValue = (regFullValue & 0xFF00) | (value & 0xFF);
+            } else {
+                regFullValue = (regFullValue & 0x00FF) | ((value & 0xFF) << 8);
+            }
+            registers[mrrModRegIndex] = regFullValue;
+        } else {
+            // mod r/m is memory
+            mwrite8(mrrModEA, value);
+        }
+    }
+
+    /**
+     * writes word value to register/mem pointed by mod-r/m parts of mrr,
+     * word (w=1) version of {@link #writeByModRegRm(boolean, int)}
+     *
+     * @param value value to write
+     */
+    public void writeByModRegRm16(int value)
+    {
+        if ((mrrMod ^ 0b11) == 0) {
+            // mod r/m is a register
+            registers[mrrModRegIndex] = value & 0xFFFF;
+        } else {
+            // mod r/m is memory
+            mwrite16(mrrModEA, value);
+        }
+    }
+
 
     /**
      *   logical address sources (table 2-2)
@@ -622,6 +736,12 @@ public class Cpu
         }
     }
 
+    void mwrite8(int offset, int value)
+    {
+        int la = effOpcodeMemSegment + offset;
+        memory[la] = (byte)value;
+    }
+
     void mwrite16(int offset, int value)
     {
         int la = effOpcodeMemSegment + offset;
@@ -1066,7 +1186,7 @@ public class Cpu
      * that follows the opcode, this provides a way to register several @{@link Opcode}
      * under the same opcode and call them dynamically based on mod-reg-r/m byte
      */
-    public final /*todo remove final*/ static class MrrBasedDemux extends Opcode {
+    public static class MrrBasedDemux extends Opcode {
         /**
          * demuxed opcodes to be called based on mrr byte
          */
@@ -1078,6 +1198,70 @@ public class Cpu
             int mrr = cpu.readModRegRm(opcode);
             exits[mrr].execute(cpu, opcode);
         }
+
+        /**
+         * creates demux that reads mrr byte with the method
+         * matching w bit of the target opcode
+         * @param opcode target opcode
+         * @return width specific demux
+         */
+        static MrrBasedDemux of(int opcode)
+        {
+            if ((opcode & 0b0000_0001) == 1) {
+                return new W16();
+            } else {
+                return new W8();
+            }
+        }
+
+        /**
+         * byte variant (w=0)
+         */
+        static final class W8 extends MrrBasedDemux {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                int mrr = cpu.readModRegRm8();
+                exits[mrr].execute(cpu, opcode);
+            }
+        }
+
+        /**
+         * word variant (w=1)
+         */
+        static final class W16 extends MrrBasedDemux {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                int mrr = cpu.readModRegRm16();
+                exits[mrr].execute(cpu, opcode);
+            }
+        }
+    }
+
+    /**
+     * Opcodes that handle both byte and word forms (w bit, the lowest bit of the opcode)
+     * with one class could provide separate implementations for each width,
+     * registry is populated with the variant matching w bit of every opcode,
+     * so the variant doesn't need to check the bit on each execution
+     */
+    public interface WidthSpecialized {
+        /**
+         * @param w word (true) or byte (false) mode of the target opcode
+         * @return opcode implementation for the specified width
+         */
+        Opcode specialize(boolean w);
+    }
+
+    /**
+     * Holder of byte and word variants of an opcode, registry is populated
+     * with the variants only, so the holder itself MUST NOT be executed
+     */
+    public static abstract class WidthOpcode extends Opcode implements WidthSpecialized {
+        @Override
+        public final void execute(Cpu cpu, int opcode) {
+            throw new IllegalStateException("width variant is not installed for " + getClass().getSimpleName());
+        }
     }
 
     /**
@@ -1294,9 +1478,10 @@ public class Cpu
          */
         default void config(Opcode[] config, String opMask, SimpleConfiguration opConfig, boolean override)
         {
-            // we can use only 1 instance as parameters are the same,
+            // we can use only 1 instance (per width) as parameters are the same,
             // this must decrease cache usage
             Opcode opImpl = op(opConfig);
+            Opcode[] opWidthImpl = new Opcode[2];
 
             String[] opVariants = ClockedOpcodeConfiguration.extend(opMask);
             for (String opVariant: opVariants) {
@@ -1304,7 +1489,7 @@ public class Cpu
                 if (!override && (config[opcode] != null)) {
                     throw new RuntimeException("opcode configuration " + opMask + " already defined ("+ opVariant +")");
                 }
-                config[opcode] = opImpl;
+                config[opcode] = specialize(opImpl, opcode, opWidthImpl);
             }
         }
 
@@ -1348,6 +1533,7 @@ public class Cpu
             String[] mrrVariants = ClockedOpcodeConfiguration.extend(mrrMask);
 
             Opcode op = op(opConfig);
+            Opcode[] opWidthImpl = new Opcode[2];
 
             for (String opVariant: opVariants)
             {
@@ -1361,21 +1547,49 @@ public class Cpu
 
                 // preallocate mrr demux
                 if (config[opcode] == null) {
-                    config[opcode] = new MrrBasedDemux();
+                    config[opcode] = MrrBasedDemux.of(opcode);
                 }
 
                 MrrBasedDemux demux = (MrrBasedDemux) config[opcode];
+                Opcode opImpl = specialize(op, opcode, opWidthImpl);
                 for (String mrrVariant: mrrVariants)
                 {
                     int mrr = Integer.parseInt(mrrVariant, 2);
                     if (!override && (demux.exits[mrr] != null)) {
                         throw new RuntimeException("opcode configuration [" + opMask + ", " + mrrMask  + ", " + mrrVariant + "] already defined ");
                     }
-                    demux.exits[mrr] = op;
+                    demux.exits[mrr] = opImpl;
                 }
             }
         }
 
+        /**
+         * replaces generic opcode implementation with the one specialized for w bit
+         * of the target opcode if the implementation supports it,
+         * clocks are copied from the configured generic instance
+         *
+         * @param op configured generic implementation
+         * @param opcode target opcode
+         * @param variants already specialized instances to reuse, [w=0, w=1]
+         * @return specialized or original implementation
+         */
+        static Opcode specialize(Opcode op, int opcode, Opcode[] variants)
+        {
+            if (!(op instanceof WidthSpecialized)) {
+                return op;
+            }
+
+            int w = opcode & 0b0000_0001;
+            if (variants[w] == null) {
+                Opcode variant = ((WidthSpecialized) op).specialize(w == 1);
+                variant.clocks = op.clocks;
+                variant.clocksAlt = op.clocksAlt;
+                variant.clocksAlt2 = op.clocksAlt2;
+                variants[w] = variant;
+            }
+            return variants[w];
+        }
+
         /**
          * merges to configurations together validating intersections
          * @param dst destination configuration
@@ -668,25 +668,52 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
         }
     }
 
-    public static class AndRmR extends Cpu.Opcode {
+    public static class AndRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            final boolean w = (opcode & 0b0000_0001) != 0;
-            final boolean d = (opcode & 0b0000_0010) != 0;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue & cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                final int value = cpu.mrrRegValue & cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(value);
+                }
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, value);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, value);
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, value);
             }
+        }
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                final int value = cpu.mrrRegValue & cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, value);
+            }
         }
     }
 
@@ -703,7 +730,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = imm & cpu.mrrModValue;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeByModRegRm(w, value);
         }
@@ -722,7 +749,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = cpu.registers[Cpu.AX] & imm;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeRegister(w, Cpu.AX, value);
         }
@@ -741,22 +768,38 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             final int imm = cpu.ipRead8WithSign();
             final int value = imm & cpu.mrrModValue;
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeByModRegRm(w, value);
         }
     }
 
-    public static class TestRmR extends Cpu.Opcode {
+    public static class TestRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            final boolean w = (opcode & 0b0000_0001) == 0b01;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue & cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, cpu.mrrRegValue & cpu.mrrModValue);
+            }
+        }
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, cpu.mrrRegValue & cpu.mrrModValue);
+            }
         }
     }
 
@@ -773,7 +816,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = imm & cpu.mrrModValue;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
         }
     }
@@ -791,7 +834,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = cpu.registers[Cpu.AX] & imm;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
         }
     }
@@ -803,30 +846,57 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             final int imm = cpu.ipRead8WithSign();
             final int value = imm & cpu.mrrModValue;
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
         }
     }
 
-    public static class XorRmR extends Cpu.Opcode {
+    public static class XorRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            final boolean w = (opcode & 0b0000_0001) == 0b01;
-            final boolean d = (opcode & 0b0000_0010) == 0b10;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue ^ cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                final int value = cpu.mrrRegValue ^ cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(value);
+                }
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, value);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, value);
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, value);
             }
+        }
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                final int value = cpu.mrrRegValue ^ cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, value);
+            }
         }
     }
 
@@ -843,7 +913,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = imm ^ cpu.mrrModValue;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeByModRegRm(w, value);
         }
@@ -862,7 +932,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = cpu.registers[Cpu.AX] ^ imm;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeRegister(w, Cpu.AX, value);
         }
@@ -877,31 +947,58 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             final int imm = cpu.ipRead8WithSign();
             final int value = imm ^ cpu.mrrModValue;
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeByModRegRm(w, value);
         }
     }
 
-    public static class OrRmR extends Cpu.Opcode {
+    public static class OrRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            final boolean w = (opcode & 0b0000_0001) == 0b01;
-            final boolean d = (opcode & 0b0000_0010) == 0b10;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue | cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                final int value = cpu.mrrRegValue | cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(value);
+                }
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, value);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, value);
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, value);
             }
+        }
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                final int value = cpu.mrrRegValue | cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, value);
+            }
         }
     }
 
@@ -918,7 +1015,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = imm | cpu.mrrModValue;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeByModRegRm(w, value);
         }
@@ -937,7 +1034,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             }
 
             final int value = cpu.registers[Cpu.AX] | imm;
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeRegister(w, Cpu.AX, value);
         }
@@ -951,7 +1048,7 @@ public class Logic implements Cpu.ClockedOpcodeConfiguration
             final int imm = cpu.ipRead8WithSign();
             final int value = imm | cpu.mrrModValue;
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
             Cpu.Opcode.flagsPsz(cpu, w, value);
             cpu.writeByModRegRm(w, value);
         }
@@ -64,7 +64,7 @@ public class Multiplication implements Cpu.ClockedOpcodeConfiguration {
                 if ((value & 0xFFFF0000) != 0) {
                     cpu.flags |= (Cpu.FLAG_OF | Cpu.FLAG_CF);
                 } else {
-                    cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+                    cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
                 }
                 cpu.writeRegisterWord(Cpu.AX, value);
                 cpu.writeRegisterWord(Cpu.DX, value >> 16);
@@ -74,7 +74,7 @@ public class Multiplication implements Cpu.ClockedOpcodeConfiguration {
                 if ((value & 0xFF00) != 0) {
                     cpu.flags |= (Cpu.FLAG_OF | Cpu.FLAG_CF);
                 } else {
-                    cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+                    cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
                 }
                 cpu.writeRegisterWord(Cpu.AX, value);
             }
@@ -94,7 +94,7 @@ public class Multiplication implements Cpu.ClockedOpcodeConfiguration {
         {
             boolean w = (opcode & 0b0000_0001) == 0b01;
 
-            cpu.flags &= (~Cpu.FLAG_OF | ~Cpu.FLAG_CF);
+            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
 
             if (w) {
                 int value = cpu.registers[Cpu.AX] * cpu.mrrModValue;
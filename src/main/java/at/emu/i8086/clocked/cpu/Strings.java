@@ -39,85 +39,117 @@ public class Strings implements Cpu.ClockedOpcodeConfiguration {
     /**
      * Moves word/byte from DS:SI to ES:DI (DS could be overridden)
      */
-    public static class Movs extends Cpu.StringClockOpcode {
+    public static class Movs extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+        /**
+         * byte variant (w=0), MOVSB
+         */
+        public static class W8 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            if (w) {
-                int data = cpu.mread16(cpu.registers[Cpu.SI]);
-                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], data);
+                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread8(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                int data = cpu.mread8(cpu.registers[Cpu.SI]);
-                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], data);
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
             }
-            cpu.registers[Cpu.SI] += delta;
-            cpu.registers[Cpu.DI] += delta;
 
-            // no repetition, fixed clock
-            cpu.clocks(clocks);
+            /**
+             * rep movsb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode movs opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // movs opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
+
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                // base clocks
+                cpu.clocks(clocksAlt);
+
+                while (cpu.registers[Cpu.CX] != 0) {
+                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread8(cpu.registers[Cpu.SI]));
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.CX]--;
+
+                    // repetition clocks
+                    cpu.clocks(clocksAlt2);
+                }
+            }
         }
 
         /**
-         * rep movs variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode movs opcode
+         * word variant (w=1), MOVSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean z = (rep & 0b0000_0001) == 0b01;
-
-            if (!z) {
-                // movs opcode only used with
-                // rep/repe/repz, where z == 1
-                cpu.hlt = true;
-                return;
-            }
-
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+        public static class W16 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            // base clocks
-            cpu.clocks(clocksAlt);
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread16(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-                while (cpu.registers[Cpu.CX] != 0) {
-                    int data = cpu.mread16(cpu.registers[Cpu.SI]);
-                    cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], data);
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
-                    cpu.registers[Cpu.CX]--;
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
+            }
 
-                    // repetition clock
-                    cpu.clocks(clocksAlt2);
+            /**
+             * rep movsw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode movs opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // movs opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
                 }
-            } else {
+
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                // base clocks
+                cpu.clocks(clocksAlt);
+
                 while (cpu.registers[Cpu.CX] != 0) {
-                    int data = cpu.mread8(cpu.registers[Cpu.SI]);
-                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], data);
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
+                    cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread16(cpu.registers[Cpu.SI]));
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // repetition clock
+                    // repetition clocks
                     cpu.clocks(clocksAlt2);
                 }
             }
@@ -128,77 +160,60 @@ public class Strings implements Cpu.ClockedOpcodeConfiguration {
      * Compares word/byte from DS:SI with ES:DI (DS could be overridden),
      * updates  (af,cf,of,pf,sf,zf) based on ([si] - [di])
      */
-    public static class Cmps extends Cpu.StringClockOpcode {
+    public static class Cmps extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            int dst, src;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        /**
+         * byte variant (w=0), CMPSB
+         */
+        public static class W8 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                int src = cpu.mread8(cpu.registers[Cpu.SI]);
+                int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-            if (w) {
-                src = cpu.mread16(cpu.registers[Cpu.SI]);
-                dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                Sub.flags8(cpu, src, dst);
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                src = cpu.mread8(cpu.registers[Cpu.SI]);
-                dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
             }
 
-            cpu.registers[Cpu.SI] += delta;
-            cpu.registers[Cpu.DI] += delta;
-
-            // this is inverse of the src-dst pair in terms of Sub,
-            // here [si] - [di]  is used
-            Sub.flags(cpu, w, src, dst);
-
-            // no repetition, fixed clock
-            cpu.clocks(clocks);
-        }
-
-        /**
-         * rep cmps variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode cmps opcode
-         */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            int     z = (rep & 0b0000_0001);
-
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
-
-            // base clocks
-            cpu.clocks(clocksAlt);
+            /**
+             * rep cmpsb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode cmps opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+                // base clocks
+                cpu.clocks(clocksAlt);
 
                 while (cpu.registers[Cpu.CX] != 0) {
-                    int src = cpu.mread16(cpu.registers[Cpu.SI]);
-                    int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
-
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
+                    int src = cpu.mread8(cpu.registers[Cpu.SI]);
+                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here [si] - [di]  is used
-                    Sub.flags(cpu, true, src, dst);
+                    Sub.flags8(cpu, src, dst);
 
                     // repetition clocks
                     cpu.clocks(clocksAlt2);
@@ -207,17 +222,57 @@ public class Strings implements Cpu.ClockedOpcodeConfiguration {
                         break;
                     }
                 }
-            } else {
+            }
+        }
+
+        /**
+         * word variant (w=1), CMPSW
+         */
+        public static class W16 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                int src = cpu.mread16(cpu.registers[Cpu.SI]);
+                int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+
+                Sub.flags16(cpu, src, dst);
+
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
+            }
+
+            /**
+             * rep cmpsw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode cmps opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                // base clocks
+                cpu.clocks(clocksAlt);
+
                 while (cpu.registers[Cpu.CX] != 0) {
-                    int src = cpu.mread8(cpu.registers[Cpu.SI]);
-                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
+                    int src = cpu.mread16(cpu.registers[Cpu.SI]);
+                    int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here [si] - [di]  is used
-                    Sub.flags(cpu, true, src, dst);
+                    Sub.flags16(cpu, src, dst);
 
                     // repetition clocks
                     cpu.clocks(clocksAlt2);
@@ -228,83 +283,63 @@ public class Strings implements Cpu.ClockedOpcodeConfiguration {
                 }
             }
         }
-
     }
 
     /**
      * Scans word/byte from ES:DI
      * updates (af,cf,of,pf,sf,zf) based on (AL/AX - [di])
      */
-    public static class Scas extends Cpu.StringClockOpcode {
+    public static class Scas extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            int dst;
-
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
-
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
-
-            if (w) {
-                dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
-
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
-            }
-
-            cpu.registers[Cpu.DI] += delta;
-
-            // this is inverse of the src-dst pair in terms of Sub,
-            // here ax - [di]  is used
-            int ax = cpu.registers[Cpu.AX];
-            Sub.flags(cpu, w, ax, dst);
-
-            // no repetition, fixed clock
-            cpu.clocks(clocks);
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
         }
 
-
         /**
-         * rep cmps variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode cmps opcode
+         * byte variant (w=0), SCASB
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            int     z = (rep & 0b0000_0001);
+        public static class W8 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            int ax = cpu.registers[Cpu.AX];
+                int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                Sub.flags8(cpu, cpu.registers[Cpu.AX] & 0xFF, dst);
 
-            // base clocks
-            cpu.clocks(clocksAlt);
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
+            }
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+            /**
+             * rep scasb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode scas opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int al = cpu.registers[Cpu.AX] & 0xFF;
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                // base clocks
+                cpu.clocks(clocksAlt);
 
                 while (cpu.registers[Cpu.CX] != 0) {
-                    int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
-
-                    cpu.registers[Cpu.DI] += delta;
+                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here ax - [di]  is used
-                    Sub.flags(cpu, true, ax, dst);
+                    Sub.flags8(cpu, al, dst);
 
                     // repetition clocks
                     cpu.clocks(clocksAlt2);
@@ -313,15 +348,54 @@ public class Strings implements Cpu.ClockedOpcodeConfiguration {
                         break;
                     }
                 }
-            } else {
+            }
+        }
+
+        /**
+         * word variant (w=1), SCASW
+         */
+        public static class W16 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+
+                Sub.flags16(cpu, cpu.registers[Cpu.AX], dst);
+
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
+            }
+
+            /**
+             * rep scasw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode scas opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int ax = cpu.registers[Cpu.AX];
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                // base clocks
+                cpu.clocks(clocksAlt);
+
                 while (cpu.registers[Cpu.CX] != 0) {
-                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
-                    cpu.registers[Cpu.DI] += delta;
+                    int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here ax - [di]  is used
-                    Sub.flags(cpu, true, ax, dst);
+                    Sub.flags16(cpu, ax, dst);
 
                     // repetition clocks
                     cpu.clocks(clocksAlt2);
@@ -337,162 +411,248 @@ public class Strings implements Cpu.ClockedOpcodeConfiguration {
     /**
      * Loads word/byte from DS:SI (DS could be overridden) to AL/AX
      */
-    public static class Lods extends Cpu.StringClockOpcode {
+    public static class Lods extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            int src;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
+
+        /**
+         * byte variant (w=0), LODSB
+         */
+        public static class W8 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                cpu.writeRegisterLowByte(Cpu.AX, cpu.mread8(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
             }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+            /**
+             * rep lodsb variant of the instruction,
+             * only last value will be stored into AX
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode lods opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // lods opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // base clocks
+                cpu.clocks(clocksAlt);
 
-            if (w) {
-                src = cpu.mread16(cpu.registers[Cpu.SI]);
+                int cx = cpu.registers[Cpu.CX];
+                if (cx == 0) {
+                    return;
+                }
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                src = cpu.mread8(cpu.registers[Cpu.SI]);
-            }
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            cpu.writeRegisterWord(Cpu.SI, cpu.registers[Cpu.SI] + delta);
-            cpu.writeRegister(w, Cpu.AX, src);
+                // there are no side effects except the last element,
+                // so the whole sequence is done at once
+                int offset = (cpu.registers[Cpu.SI] + (cx - 1) * delta) & 0xFFFF;
+                cpu.writeRegisterLowByte(Cpu.AX, cpu.mread8(offset));
 
-            // no repetition, fixed clock
-            cpu.clocks(clocks);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + cx * delta) & 0xFFFF;
+                cpu.registers[Cpu.CX] = 0;
+
+                // repetition clocks
+                cpu.clocks((short)(clocksAlt2 * cx));
+            }
         }
 
         /**
-         * rep lods variant of the instruction,
-         * that is VERY strange as it has no any meaning,
-         * only last value will be stored into AX
-         * (todo: simulate repetitions)
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode lods opcode
+         * word variant (w=1), LODSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean z = (rep & 0b0000_0001) == 0b01;
-
-            if (!z) {
-                // lods opcode only used with
-                // rep/repe/repz, where z == 1
-                cpu.hlt = true;
-                return;
+        public static class W16 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                cpu.writeRegisterWord(Cpu.AX, cpu.mread16(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
             }
 
-            int ax;
-            int cx = cpu.registers[Cpu.CX];
+            /**
+             * rep lodsw variant of the instruction,
+             * only last value will be stored into AX
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode lods opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // lods opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // base clocks
+                cpu.clocks(clocksAlt);
 
-            // base clocks
-            cpu.clocks(clocksAlt);
+                int cx = cpu.registers[Cpu.CX];
+                if (cx == 0) {
+                    return;
+                }
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
-                int offset = cpu.registers[Cpu.SI] + cx * delta;
-                ax = cpu.mread16(offset);
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-                // repetition clocks
-                cpu.clocks((short)(clocksAlt2 * cx));
-                cpu.writeRegisterWord(Cpu.CX, 0);
+                // there are no side effects except the last element,
+                // so the whole sequence is done at once
+                int offset = (cpu.registers[Cpu.SI] + (cx - 1) * delta) & 0xFFFF;
+                cpu.writeRegisterWord(Cpu.AX, cpu.mread16(offset));
 
-            } else {
-                int offset = cpu.registers[Cpu.SI] + cx * delta;
-                ax = cpu.mread8(offset);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + cx * delta) & 0xFFFF;
+                cpu.registers[Cpu.CX] = 0;
 
                 // repetition clocks
                 cpu.clocks((short)(clocksAlt2 * cx));
-                cpu.writeRegisterWord(Cpu.CX, 0);
             }
-
-            cpu.writeRegister(w, Cpu.AX, ax);
         }
     }
 
     /**
      * Stores word/byte from AL/AX to ES:DI
      */
-    public static class Stos extends Cpu.StringClockOpcode {
+    public static class Stos extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
+
+        /**
+         * byte variant (w=0), STOSB
+         */
+        public static class W8 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            int ax = cpu.registers[Cpu.AX];
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], cpu.registers[Cpu.AX]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-            if (w) {
-                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], ax);
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], ax);
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
             }
 
-            cpu.writeRegisterWord(Cpu.DI, cpu.registers[Cpu.DI] + delta);
+            /**
+             * rep stosb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode stos opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // stos opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
+
+                int al = cpu.registers[Cpu.AX];
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                // base clocks
+                cpu.clocks(clocksAlt);
 
-            // no repetition, fixed clock
-            cpu.clocks(clocks);
+                while (cpu.registers[Cpu.CX] != 0) {
+                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], al);
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.CX]--;
+
+                    // repetition clocks
+                    cpu.clocks(clocksAlt2);
+                }
+            }
         }
 
         /**
-         * rep stos variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode stos opcode
+         * word variant (w=1), STOSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean z = (rep & 0b0000_0001) == 0b01;
-
-            if (!z) {
-                // stos opcode only used with
-                // rep/repe/repz, where z == 1
-                cpu.hlt = true;
-                return;
+        public static class W16 extends Cpu.StringClockOpcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], cpu.registers[Cpu.AX]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+
+                // no repetition, fixed clock
+                cpu.clocks(clocks);
             }
 
-            int ax = cpu.registers[Cpu.AX];
+            /**
+             * rep stosw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode stos opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // stos opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                int ax = cpu.registers[Cpu.AX];
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+                // base clocks
+                cpu.clocks(clocksAlt);
 
                 while (cpu.registers[Cpu.CX] != 0) {
                     cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], ax);
-                    cpu.registers[Cpu.DI] += delta;
-                    cpu.registers[Cpu.CX]--;
-                }
-            } else {
-                while (cpu.registers[Cpu.CX] != 0) {
-                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], ax);
-                    cpu.registers[Cpu.DI] += delta;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
+
+                    // repetition clocks
+                    cpu.clocks(clocksAlt2);
                 }
             }
         }
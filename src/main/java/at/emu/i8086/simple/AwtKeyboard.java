@@ -0,0 +1,157 @@
+package at.emu.i8086.simple;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+
+/**
+ * Translates host AWT key events into XT (set 1) scan codes,
+ * key release has bit 7 set, auto repeat of the host
+ * is passed as is like keyboard typematic
+ */
+public class AwtKeyboard implements KeyListener
+{
+    /**
+     * set 1 make codes indexed by AWT virtual key code, 0 if not mapped
+     */
+    private static final int[] CODES = new int[0x10000];
+    static {
+        map(KeyEvent.VK_ESCAPE, 0x01);
+        map(KeyEvent.VK_1, 0x02);
+        map(KeyEvent.VK_2, 0x03);
+        map(KeyEvent.VK_3, 0x04);
+        map(KeyEvent.VK_4, 0x05);
+        map(KeyEvent.VK_5, 0x06);
+        map(KeyEvent.VK_6, 0x07);
+        map(KeyEvent.VK_7, 0x08);
+        map(KeyEvent.VK_8, 0x09);
+        map(KeyEvent.VK_9, 0x0A);
+        map(KeyEvent.VK_0, 0x0B);
+        map(KeyEvent.VK_MINUS, 0x0C);
+        map(KeyEvent.VK_EQUALS, 0x0D);
+        map(KeyEvent.VK_BACK_SPACE, 0x0E);
+        map(KeyEvent.VK_TAB, 0x0F);
+        map(KeyEvent.VK_Q, 0x10);
+        map(KeyEvent.VK_W, 0x11);
+        map(KeyEvent.VK_E, 0x12);
+        map(KeyEvent.VK_R, 0x13);
+        map(KeyEvent.VK_T, 0x14);
+        map(KeyEvent.VK_Y, 0x15);
+        map(KeyEvent.VK_U, 0x16);
+        map(KeyEvent.VK_I, 0x17);
+        map(KeyEvent.VK_O, 0x18);
+        map(KeyEvent.VK_P, 0x19);
+        map(KeyEvent.VK_OPEN_BRACKET, 0x1A);
+        map(KeyEvent.VK_CLOSE_BRACKET, 0x1B);
+        map(KeyEvent.VK_ENTER, 0x1C);
+        map(KeyEvent.VK_CONTROL, 0x1D);
+        map(KeyEvent.VK_A, 0x1E);
+        map(KeyEvent.VK_S, 0x1F);
+        map(KeyEvent.VK_D, 0x20);
+        map(KeyEvent.VK_F, 0x21);
+        map(KeyEvent.VK_G, 0x22);
+        map(KeyEvent.VK_H, 0x23);
+        map(KeyEvent.VK_J, 0x24);
+        map(KeyEvent.VK_K, 0x25);
+        map(KeyEvent.VK_L, 0x26);
+        map(KeyEvent.VK_SEMICOLON, 0x27);
+        map(KeyEvent.VK_QUOTE, 0x28);
+        map(KeyEvent.VK_BACK_QUOTE, 0x29);
+        map(KeyEvent.VK_SHIFT, 0x2A);
+        map(KeyEvent.VK_BACK_SLASH, 0x2B);
+        map(KeyEvent.VK_Z, 0x2C);
+        map(KeyEvent.VK_X, 0x2D);
+        map(KeyEvent.VK_C, 0x2E);
+        map(KeyEvent.VK_V, 0x2F);
+        map(KeyEvent.VK_B, 0x30);
+        map(KeyEvent.VK_N, 0x31);
+        map(KeyEvent.VK_M, 0x32);
+        map(KeyEvent.VK_COMMA, 0x33);
+        map(KeyEvent.VK_PERIOD, 0x34);
+        map(KeyEvent.VK_SLASH, 0x35);
+        map(KeyEvent.VK_MULTIPLY, 0x37);
+        map(KeyEvent.VK_ALT, 0x38);
+        map(KeyEvent.VK_SPACE, 0x39);
+        map(KeyEvent.VK_CAPS_LOCK, 0x3A);
+        map(KeyEvent.VK_F1, 0x3B);
+        map(KeyEvent.VK_F2, 0x3C);
+        map(KeyEvent.VK_F3, 0x3D);
+        map(KeyEvent.VK_F4, 0x3E);
+        map(KeyEvent.VK_F5, 0x3F);
+        map(KeyEvent.VK_F6, 0x40);
+        map(KeyEvent.VK_F7, 0x41);
+        map(KeyEvent.VK_F8, 0x42);
+        map(KeyEvent.VK_F9, 0x43);
+        map(KeyEvent.VK_F10, 0x44);
+        map(KeyEvent.VK_NUM_LOCK, 0x45);
+        map(KeyEvent.VK_SCROLL_LOCK, 0x46);
+        // keypad, navigation keys are only there on xt keyboard
+        map(KeyEvent.VK_NUMPAD7, 0x47);
+        map(KeyEvent.VK_HOME, 0x47);
+        map(KeyEvent.VK_NUMPAD8, 0x48);
+        map(KeyEvent.VK_UP, 0x48);
+        map(KeyEvent.VK_NUMPAD9, 0x49);
+        map(KeyEvent.VK_PAGE_UP, 0x49);
+        map(KeyEvent.VK_SUBTRACT, 0x4A);
+        map(KeyEvent.VK_NUMPAD4, 0x4B);
+        map(KeyEvent.VK_LEFT, 0x4B);
+        map(KeyEvent.VK_NUMPAD5, 0x4C);
+        map(KeyEvent.VK_NUMPAD6, 0x4D);
+        map(KeyEvent.VK_RIGHT, 0x4D);
+        map(KeyEvent.VK_ADD, 0x4E);
+        map(KeyEvent.VK_NUMPAD1, 0x4F);
+        map(KeyEvent.VK_END, 0x4F);
+        map(KeyEvent.VK_NUMPAD2, 0x50);
+        map(KeyEvent.VK_DOWN, 0x50);
+        map(KeyEvent.VK_NUMPAD3, 0x51);
+        map(KeyEvent.VK_PAGE_DOWN, 0x51);
+        map(KeyEvent.VK_NUMPAD0, 0x52);
+        map(KeyEvent.VK_INSERT, 0x52);
+        map(KeyEvent.VK_DECIMAL, 0x53);
+        map(KeyEvent.VK_DELETE, 0x53);
+    }
+
+    private static void map(int vk, int code) {
+        CODES[vk] = code;
+    }
+
+    /**
+     * @param vk AWT virtual key code
+     * @return set 1 make code or 0 if key is not mapped
+     */
+    public static int scanCode(int vk) {
+        return ((vk < 0) || (CODES.length <= vk)) ? 0 : CODES[vk];
+    }
+
+    /**
+     * keyboard to send codes to
+     */
+    private final XtKeyboard keyboard;
+
+    public AwtKeyboard(XtKeyboard keyboard) {
+        this.keyboard = keyboard;
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e)
+    {
+        int code = scanCode(e.getKeyCode());
+        if (code != 0) {
+            keyboard.offer(code);
+            e.consume();
+        }
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e)
+    {
+        int code = scanCode(e.getKeyCode());
+        if (code != 0) {
+            keyboard.offer(code | 0x80);
+            e.consume();
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package at.emu.i8086.simple;
 
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class CGA extends Cpu.PortHandler
 {
@@ -182,19 +181,249 @@ public class CGA extends Cpu.PortHandler
      */
 
 
-    volatile int regMode;
-    volatile int regColor;
-    AtomicInteger regStatus = new AtomicInteger();
+    /**
+     * full CGA palette (see above) as RGB
+     */
+    public static final int[] PALETTE = new int[] {
+            0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xAA5500, 0xAAAAAA,
+            0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF
+    };
+
+    /*
+     * Timing
+     *  dot clock is 14.31818 MHz, that is 3 dots per cpu clock,
+     *  character is 8 dots wide in 80x25 mode and 16 dots in all others,
+     *  so with standard register values each scan line is 912 dots (304 cpu clocks)
+     *  and frame is 262 lines (79648 cpu clocks).
+     *  Vertical sync on CGA is fixed to 16 scan lines.
+     */
+    public static final int DOTS_PER_CLOCK      = 3;
+    public static final int VSYNC_LINES         = 16;
+
+    /**
+     * called on each vertical retrace start
+     */
+    public interface VsyncListener {
+        /**
+         * @param frame number of the frame just finished
+         */
+        void vsync(long frame);
+    }
+
+    /**
+     * cpu to take clocks from
+     */
+    final Cpu cpu;
+
+    // 80x25 color text on power up, matches 6845 defaults
+    int regMode = MASK_MODE_TEXT_80 | MASK_MODE_ENABLE | MASK_MODE_BLINK;
+    int regColor;
     int reg6845Index;
 
-    int[] reg6845 = new int[18];
+    /**
+     * 6845 registers, initialized with 80x25 text mode values
+     */
+    int[] reg6845 = new int[] {
+            0x71, 0x50, 0x5A, 0x0A, 0x1F, 0x06, 0x19, 0x1C, 0x02,
+            0x07, 0x06, 0x07, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+
+    /**
+     * timing derived from 6845 registers and mode,
+     * recalculated on writes, all in dots
+     */
+    private long lineDots;
+    private long frameDots;
+    private long displayDots;
+    private long displayLines;
+    private long vsyncStart;
+    private long vsyncEnd;
+
+    /**
+     * optional listener for vertical retrace events
+     */
+    private VsyncListener vsyncListener;
+    /**
+     * number of the last frame reported to listener
+     */
+    private long frame;
+
+    public CGA(Cpu cpu) {
+        this.cpu = cpu;
+        timing();
+    }
+
+    /**
+     * recalculates timing after mode or 6845 registers change
+     */
+    private void timing()
+    {
+        boolean hiresText = ((regMode & MASK_MODE_TEXT_80) != 0) && ((regMode & MASK_MODE_GRAPHICS) == 0);
+        int charDots = hiresText ? 8 : 16;
+
+        int scanLines = (reg6845[9] & 0x1F) + 1;
+        lineDots = (long) ((reg6845[0] & 0xFF) + 1) * charDots;
+        displayDots = Math.min(lineDots, (long) (reg6845[1] & 0xFF) * charDots);
+
+        long lines = (long) ((reg6845[4] & 0x7F) + 1) * scanLines + (reg6845[5] & 0x1F);
+        displayLines = Math.min(lines, (long) (reg6845[6] & 0x7F) * scanLines);
+        vsyncStart = Math.min(lines - 1, (long) (reg6845[7] & 0x7F) * scanLines);
+        vsyncEnd = vsyncStart + VSYNC_LINES;
+
+        frameDots = lineDots * lines;
+    }
+
+    /**
+     * @return number of the frame at the current cpu clocks,
+     * frame changes at the start of vertical retrace
+     */
+    long frame() {
+        return Math.floorDiv(cpu.clocks * DOTS_PER_CLOCK - vsyncStart * lineDots, frameDots);
+    }
+
+    /**
+     * @return cpu clocks of the next vertical retrace start
+     */
+    public long nextVsyncClocks()
+    {
+        long next = (frame() + 1) * frameDots + vsyncStart * lineDots;
+        return (next + DOTS_PER_CLOCK - 1) / DOTS_PER_CLOCK;
+    }
+
+    /**
+     * sets listener for vertical retrace events,
+     * they are reported from {@link #clock(long)}
+     * @param listener listener or null to disable
+     */
+    public void setVsyncListener(VsyncListener listener) {
+        this.vsyncListener = listener;
+        this.frame = frame();
+    }
+
+    /**
+     * @return true if vsync events are requested
+     */
+    public boolean hasVsyncListener() {
+        return vsyncListener != null;
+    }
+
+    /**
+     * synchronizes with cpu clocks and reports vsync
+     * to the listener if new frame started
+     * @param cpuClocks current cpu clocks
+     */
+    public void clock(long cpuClocks)
+    {
+        if (vsyncListener == null) {
+            return;
+        }
+        long current = frame();
+        if (current != frame) {
+            frame = current;
+            vsyncListener.vsync(current);
+        }
+    }
+
+    /**
+     * Calculates status register from the beam position,
+     * doesn't allocate and doesn't lock.
+     * @return status register value
+     */
+    int status()
+    {
+        long position = (cpu.clocks * DOTS_PER_CLOCK) % frameDots;
+        long line = position / lineDots;
+        long dot = position - line * lineDots;
+
+        int status = 0;
+        if ((dot >= displayDots) || (line >= displayLines)) {
+            // horizontal or vertical blanking,
+            // memory could be accessed without snow
+            status |= MASK_STATUS_REGEN;
+        }
+        if ((line >= vsyncStart) && (line < vsyncEnd)) {
+            status |= MASK_STATUS_VERTICAL;
+        }
+        // light pen switch is off
+        return status | MASK_STATUS_LP_SW;
+    }
+
+    /**
+     * font for text modes, rasterized from host font if not set
+     */
+    private CGAFont font;
+    /**
+     * renderers, created on the first use
+     */
+    private CGATextRenderer textRenderer;
+    private CGAGraphicsRenderer graphicsRenderer;
+    /**
+     * true if graphics renderer was used for the previous frame
+     */
+    private boolean graphics;
+
+    /**
+     * sets font to be used for text modes
+     * @param font font
+     */
+    public void setFont(CGAFont font) {
+        this.font = font;
+        this.textRenderer = null;
+    }
+
+    /**
+     * Renders current screen into the buffer (640x400), only changes
+     * since the previous call are drawn
+     * @param buffer destination buffer
+     * @param offset offset of the top left pixel in the buffer
+     * @param stride width of the buffer line
+     * @param frame frame number, used for blinking
+     * @return true if anything was drawn
+     */
+    public boolean render(int[] buffer, int offset, int stride, long frame)
+    {
+        if ((regMode & MASK_MODE_GRAPHICS) != 0)
+        {
+            if (graphicsRenderer == null) {
+                graphicsRenderer = new CGAGraphicsRenderer();
+            }
+            if (!graphics) {
+                graphicsRenderer.invalidate();
+                graphics = true;
+            }
+            return graphicsRenderer.render(this, cpu.memory, buffer, offset, stride);
+        }
+        else {
+            if (textRenderer == null) {
+                if (font == null) {
+                    font = CGAFont.rasterize();
+                }
+                textRenderer = new CGATextRenderer(font);
+            }
+            if (graphics) {
+                textRenderer.invalidate();
+                graphics = false;
+            }
+            return textRenderer.render(this, cpu.memory, buffer, offset, stride, frame);
+        }
+    }
 
     void write6845Data(int value) {
-        System.out.println("6845 [" + reg6845Index + "] = " + Integer.toHexString(value));
-        reg6845[reg6845Index] = value;
+        cpu.log.add(DeviceLog.CGA, DeviceLog.DEBUG, DeviceLog.KIND_REGISTER, reg6845Index, value);
+        if (reg6845Index < reg6845.length) {
+            reg6845[reg6845Index] = value;
+            if (reg6845Index < 10) {
+                timing();
+            }
+        }
     }
 
-    int read6845Data() {
+    int read6845Data()
+    {
+        // only cursor and light pen registers are readable
+        if ((14 <= reg6845Index) && (reg6845Index < reg6845.length)) {
+            return reg6845[reg6845Index];
+        }
         return 0;
     }
 
@@ -203,103 +432,41 @@ public class CGA extends Cpu.PortHandler
     {
         if (port == REG_MODE)
         {
-            System.out.println("CGA [" + Integer.toHexString(port) + "] = " + Integer.toHexString(value));
+            cpu.log.add(DeviceLog.CGA, DeviceLog.INFO, DeviceLog.KIND_WRITE, port, value);
             regMode = value;
-            statusCallCounter = 0;
+            timing();
         }
         else if (port == REG_COLOR_SEL)
         {
-            System.out.println("CGA [" + Integer.toHexString(port) + "] = " + Integer.toHexString(value));
+            cpu.log.add(DeviceLog.CGA, DeviceLog.INFO, DeviceLog.KIND_WRITE, port, value);
             regColor = value;
         }
         else if (port == REG_6845_INDEX)
         {
-            reg6845Index = value;
+            reg6845Index = value & 0x1F;
         }
         else if (port == REG_6845_DATA)
         {
             write6845Data(value);
         }
         else {
-            System.out.println("CGA: unhandled write [" + port + "] = " + Integer.toHexString(value));
+            cpu.log.add(DeviceLog.CGA, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_WRITE, port, value);
         }
     }
 
-    int statusCallCounter;
-
     @Override
     int pin(boolean word, int port)
     {
         if (port == REG_STATUS) {
-            //System.out.println("CGA: unhandled status read");
-
-            // after mode set bios checks for
-            // bit 3 on, bit 3 off
-            // bit 0 on, bit 3 off
-            // hack that for starting 4 calls???
-            if (statusCallCounter < 4) {
-                int bit = (statusCallCounter + 1) & 0x01;
-                statusCallCounter++;
-                return (bit << 3) | bit;
-            } else {
-                return 0x09; // retrace
-                //return regStatus.get();
-            }
+            return status();
         }
         else if (port == REG_6845_DATA)
         {
             return read6845Data();
         }
         else {
-            System.out.println("CGA: unhandled read [" + port + "]");
+            cpu.log.add(DeviceLog.CGA, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_READ, port, 0);
         }
         return 0;
     }
-
-    Drawer drawer;
-    public void start() {
-        //drawer = new Drawer();
-        //drawer.start();
-    }
-
-    class Drawer extends Thread {
-        @Override
-        public void run()
-        {
-            while (true) {
-                try {
-                    Thread.sleep(16);
-                } catch (Exception e) {
-                }
-/*
- *                                 [0]: 1 ->> regen-buffer memory access can be made without interfering with display (no snow)
- *                                 [1]: 1 ->> positive-going edge from light pen has set light pen's trigger.
- *                                              trigger is reset on power on and may be cleared on outp[3DB]
- *                                 [2]: reflects light pen switch, 0 ->> switch is on
- *                                 [3]: 1 ->> raster is in a vertical retrace mode, screen buffer updating can be performed
-
- */
-                boolean updated = false;
-                do {
-                    int tmp = regStatus.get();
-                    updated = regStatus.compareAndSet(tmp, tmp & 0xF6);
-                } while (!updated);
-
-                try {
-                    Thread.sleep(1);
-                } catch (Exception e) {
-                }
-
-                do {
-                    int tmp = regStatus.get();
-                    updated = regStatus.compareAndSet(tmp, tmp | 0x09);
-                } while (!updated);
-                System.out.println(Integer.toHexString(regStatus.get()));
-            }
-
-
-        }
-    }
-
-
 }
@@ -0,0 +1,148 @@
+package at.emu.i8086.simple;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 8x8 character generator for CGA, 256 glyphs by 8 rows,
+ * each row is a byte with the leftmost pixel in the highest bit.
+ * Glyphs are loaded from a character rom dump or rasterized
+ * from a host monospaced font when there is no rom.
+ */
+public class CGAFont
+{
+    /**
+     * glyph size
+     */
+    public static final int WIDTH  = 8;
+    public static final int HEIGHT = 8;
+
+    /**
+     * cp437 glyphs for control codes, 0x00..0x1F
+     */
+    private static final String CONTROL_GLYPHS =
+            " \u263A\u263B\u2665\u2666\u2663\u2660\u2022\u25D8\u25CB\u25D9\u2642\u2640\u266A\u266B\u263C" +
+            "\u25BA\u25C4\u2195\u203C\u00B6\u00A7\u25AC\u21A8\u2191\u2193\u2192\u2190\u221F\u2194\u25B2\u25BC";
+
+    /**
+     * rows of all glyphs, 256 * 8 bytes
+     */
+    final byte[] rows;
+
+    private CGAFont(byte[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Loads font from rom dump, supports 2K dump (8x8 font only) and
+     * 8K IBM CGA character rom (8x8 double dot font is located at 0x1800).
+     * @param path path to the rom file
+     * @return font
+     * @throws IOException if read fails
+     */
+    public static CGAFont load(Path path) throws IOException
+    {
+        byte[] rom = Files.readAllBytes(path);
+        byte[] rows = new byte[256 * HEIGHT];
+        if (rom.length == 8192) {
+            System.arraycopy(rom, 0x1800, rows, 0, rows.length);
+        } else if (rom.length == rows.length) {
+            System.arraycopy(rom, 0, rows, 0, rows.length);
+        } else {
+            throw new IllegalArgumentException("unsupported character rom size: " + rom.length);
+        }
+        return new CGAFont(rows);
+    }
+
+    /**
+     * @return unicode characters for all 256 cp437 codes including control ones
+     */
+    static char[] chars()
+    {
+        byte[] codes = new byte[256];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = (byte) i;
+        }
+        char[] chars = new String(codes, Charset.forName("IBM437")).toCharArray();
+        CONTROL_GLYPHS.getChars(0, CONTROL_GLYPHS.length(), chars, 0);
+        chars[0x7F] = '\u2302';
+        return chars;
+    }
+
+    /**
+     * Rasterizes cp437 characters with the host monospaced font,
+     * block and shade characters are generated directly
+     * @return font
+     */
+    public static CGAFont rasterize()
+    {
+        char[] chars = chars();
+        byte[] rows = new byte[256 * HEIGHT];
+
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 9));
+        FontMetrics metrics = g.getFontMetrics();
+
+        for (int c = 0; c < 256; c++)
+        {
+            if (block(c, rows)) {
+                continue;
+            }
+
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            g.setColor(Color.WHITE);
+            String s = String.valueOf(chars[c]);
+            int x = (WIDTH - metrics.stringWidth(s)) / 2;
+            g.drawString(s, x, HEIGHT - 1);
+
+            for (int y = 0; y < HEIGHT; y++) {
+                int row = 0;
+                for (int x0 = 0; x0 < WIDTH; x0++) {
+                    if ((image.getRGB(x0, y) & 0x00800000) != 0) {
+                        row |= 0x80 >> x0;
+                    }
+                }
+                rows[c * HEIGHT + y] = (byte) row;
+            }
+        }
+        g.dispose();
+
+        return new CGAFont(rows);
+    }
+
+    /**
+     * generates shade and block glyphs, they must fill the whole cell
+     * @param c character code
+     * @param rows glyph rows to fill
+     * @return true if character was generated
+     */
+    private static boolean block(int c, byte[] rows)
+    {
+        int offset = c * HEIGHT;
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            int row;
+            switch (c) {
+                case 0xB0: row = ((y & 1) == 0) ? 0x88 : 0x22; break;
+                case 0xB1: row = ((y & 1) == 0) ? 0xAA : 0x55; break;
+                case 0xB2: row = ((y & 1) == 0) ? 0xDD : 0x77; break;
+                case 0xDB: row = 0xFF; break;
+                case 0xDC: row = (y < HEIGHT / 2) ? 0x00 : 0xFF; break;
+                case 0xDD: row = 0xF0; break;
+                case 0xDE: row = 0x0F; break;
+                case 0xDF: row = (y < HEIGHT / 2) ? 0xFF : 0x00; break;
+                default:
+                    return false;
+            }
+            rows[offset + y] = (byte) row;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package at.emu.i8086.simple;
+
+import java.util.Arrays;
+
+/**
+ * Renderer of CGA graphics modes 320x200 (4 colors) and 640x200 (2 colors).
+ * Video memory is split into 2 banks, even scan lines are at B8000
+ * and odd ones at BA000, 80 bytes per line in both modes.
+ * Each byte is converted into 8 output pixels via lookup table prepared
+ * for the current palette (320x200 pixels are doubled), only lines which
+ * bytes changed since the previous frame are drawn. Lines are doubled,
+ * so the output is always 640x400.
+ */
+public class CGAGraphicsRenderer
+{
+    public static final int SCREEN_WIDTH  = 640;
+    public static final int SCREEN_HEIGHT = 400;
+
+    /**
+     * bytes per scan line and number of lines
+     */
+    private static final int LINE_BYTES = 80;
+    private static final int LINES = 200;
+
+    /**
+     * offset of the odd lines bank
+     */
+    private static final int ODD_BANK = 0x2000;
+
+    /**
+     * 320x200 palettes, color indexes 1..3,
+     * 0 is background from color select register
+     */
+    private static final int[][] PALETTES_320 = new int[][] {
+            {2, 4, 6},      // green, red, brown
+            {3, 5, 7},      // cyan, magenta, white
+            {3, 4, 7}       // cyan, red, white (b/w mode bit)
+    };
+
+    /**
+     * output pixels of each byte for the current palette: [byte][8 pixels]
+     */
+    private final int[] bytePixels = new int[256 * 8];
+
+    /**
+     * copy of the both banks rendered last time
+     */
+    private final byte[] shadow = new byte[2 * ODD_BANK];
+
+    /**
+     * state of the previous frame, any change redraws the whole screen
+     */
+    private boolean invalid = true;
+    private int lastMode = -1;
+    private int lastColor = -1;
+    private int lastStart = -1;
+
+    /**
+     * forces full redraw on the next frame
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * rebuilds lookup table for the mode and color select register
+     * @param mode mode register
+     * @param color color select register
+     */
+    private void palette(int mode, int color)
+    {
+        if ((mode & CGA.MASK_MODE_640) != 0)
+        {
+            // 1 bit per pixel, foreground is selected by color register
+            int fg = CGA.PALETTE[color & 0x0F];
+            int bg = CGA.PALETTE[0];
+            for (int b = 0; b < 256; b++) {
+                for (int x = 0; x < 8; x++) {
+                    bytePixels[(b << 3) + x] = ((b & (0x80 >> x)) != 0) ? fg : bg;
+                }
+            }
+        }
+        else {
+            // 2 bits per pixel, each pixel is doubled
+            int[] set = PALETTES_320[((mode & CGA.MASK_MODE_BW) != 0) ? 2 : ((color & CGA.MASK_COLOR_320) >> 5)];
+            int intense = ((color & CGA.MASK_COLOR_ALT) != 0) ? 8 : 0;
+            int[] colors = new int[] {
+                    CGA.PALETTE[color & 0x0F],
+                    CGA.PALETTE[set[0] | intense],
+                    CGA.PALETTE[set[1] | intense],
+                    CGA.PALETTE[set[2] | intense]
+            };
+            for (int b = 0; b < 256; b++) {
+                for (int x = 0; x < 4; x++) {
+                    int pixel = colors[(b >> (6 - x * 2)) & 0b11];
+                    bytePixels[(b << 3) + x * 2] = pixel;
+                    bytePixels[(b << 3) + x * 2 + 1] = pixel;
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders changed scan lines into the buffer
+     * @param cga video adapter with mode and 6845 registers
+     * @param memory cpu memory
+     * @param buffer destination buffer
+     * @param offset offset of the top left pixel in the buffer
+     * @param stride width of the buffer line
+     * @return true if anything was drawn
+     */
+    public boolean render(CGA cga, byte[] memory, int[] buffer, int offset, int stride)
+    {
+        int mode = cga.regMode;
+        int color = cga.regColor;
+        // start address is in words
+        int start = ((((cga.reg6845[12] & 0x3F) << 8) | (cga.reg6845[13] & 0xFF)) << 1) & (ODD_BANK - 1);
+
+        boolean full = invalid || (mode != lastMode) || (start != lastStart);
+        if (full || (color != lastColor)) {
+            palette(mode, color);
+            full = true;
+        }
+
+        boolean drawn = false;
+        for (int line = 0; line < LINES; line++)
+        {
+            int bank = (line & 1) * ODD_BANK;
+            int lineOffset = (start + (line >> 1) * LINE_BYTES) & (ODD_BANK - 1);
+            int src = 0xB8000 + bank + lineOffset;
+            int s = bank + lineOffset;
+
+            // line that wraps inside the bank is rare, it's always redrawn
+            boolean wraps = lineOffset + LINE_BYTES > ODD_BANK;
+            if (!full && !wraps && (Arrays.mismatch(memory, src, src + LINE_BYTES, shadow, s, s + LINE_BYTES) == -1)) {
+                continue;
+            }
+
+            int p = offset + (line << 1) * stride;
+            for (int i = 0; i < LINE_BYTES; i++) {
+                int b = memory[0xB8000 + bank + ((lineOffset + i) & (ODD_BANK - 1))] & 0xFF;
+                shadow[bank + ((lineOffset + i) & (ODD_BANK - 1))] = (byte) b;
+                System.arraycopy(bytePixels, b << 3, buffer, p + (i << 3), 8);
+            }
+            // doubled scan line
+            System.arraycopy(buffer, p, buffer, p + stride, SCREEN_WIDTH);
+            drawn = true;
+        }
+
+        invalid = false;
+        lastMode = mode;
+        lastColor = color;
+        lastStart = start;
+
+        return drawn;
+    }
+}
@@ -0,0 +1,192 @@
+package at.emu.i8086.simple;
+
+/**
+ * Incremental renderer of CGA text modes (40x25 and 80x25).
+ * Characters are drawn from precalculated rows of pixels for each
+ * foreground/background pair and glyph row, only cells that changed since
+ * the previous frame (tracked via shadow copy of the video memory) and cells
+ * affected by blinking or cursor are drawn.
+ * Each scan line is doubled, so the output is always 640x400.
+ */
+public class CGATextRenderer
+{
+    public static final int SCREEN_WIDTH  = 640;
+    public static final int SCREEN_HEIGHT = 400;
+
+    /**
+     * max number of cells (80x25)
+     */
+    private static final int CELLS = 80 * 25;
+
+    /**
+     * cursor blinks every 8 frames, characters every 16
+     */
+    private static final int CURSOR_BLINK_MASK = 0b0_1000;
+    private static final int CHAR_BLINK_MASK   = 0b1_0000;
+
+    /**
+     * font to draw characters with
+     */
+    private final CGAFont font;
+
+    /**
+     * pixels of each glyph row: [fg << 4 | bg][row bits][8 pixels]
+     */
+    private final int[] rowPixels = new int[256 * 256 * 8];
+
+    /**
+     * copy of characters and attributes rendered last time
+     */
+    private final byte[] shadow = new byte[CELLS * 2];
+
+    /**
+     * state of the previous frame,
+     * any change of the mode or start address redraws the whole screen
+     */
+    private boolean invalid = true;
+    private int lastMode;
+    private int lastStart;
+    private int lastCursor = -1;
+    private boolean lastCursorOn;
+    private boolean lastBlinkOn;
+
+    public CGATextRenderer(CGAFont font)
+    {
+        this.font = font;
+
+        for (int colors = 0; colors < 256; colors++) {
+            int fg = CGA.PALETTE[colors >> 4];
+            int bg = CGA.PALETTE[colors & 0x0F];
+            for (int bits = 0; bits < 256; bits++) {
+                int offset = (colors << 11) | (bits << 3);
+                for (int x = 0; x < 8; x++) {
+                    rowPixels[offset + x] = ((bits & (0x80 >> x)) != 0) ? fg : bg;
+                }
+            }
+        }
+    }
+
+    /**
+     * forces full redraw on the next frame
+     */
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Renders changes of the text screen into the buffer
+     * @param cga video adapter with mode and 6845 registers
+     * @param memory cpu memory
+     * @param buffer destination buffer
+     * @param offset offset of the top left pixel in the buffer
+     * @param stride width of the buffer line
+     * @param frame frame number, used for blinking
+     * @return true if anything was drawn
+     */
+    public boolean render(CGA cga, byte[] memory, int[] buffer, int offset, int stride, long frame)
+    {
+        int mode = cga.regMode;
+        int[] r = cga.reg6845;
+
+        boolean wide = (mode & CGA.MASK_MODE_TEXT_80) == 0;
+        int cols = wide ? 40 : 80;
+        int cells = cols * 25;
+
+        // start and cursor addresses are in characters
+        int start = ((r[12] & 0x3F) << 8) | (r[13] & 0xFF);
+        int cursor = (((r[14] & 0x3F) << 8) | (r[15] & 0xFF)) - start;
+        if ((cursor < 0) || (cells <= cursor)) {
+            cursor = -1;
+        }
+
+        // 6845 cursor start register bits 6-5 == 01 disables cursor
+        boolean cursorOn = (cursor != -1) && ((frame & CURSOR_BLINK_MASK) == 0) && ((r[10] & 0x60) != 0x20);
+        boolean blinkEnabled = (mode & CGA.MASK_MODE_BLINK) != 0;
+        boolean blinkOn = (frame & CHAR_BLINK_MASK) == 0;
+
+        boolean full = invalid || (mode != lastMode) || (start != lastStart);
+        boolean blinkChanged = blinkEnabled && (blinkOn != lastBlinkOn);
+        boolean cursorChanged = (cursor != lastCursor) || (cursorOn != lastCursorOn);
+
+        boolean drawn = false;
+        int base = 0xB8000;
+        int address = start << 1;
+        for (int cell = 0; cell < cells; cell++, address += 2)
+        {
+            int la = base + (address & 0x3FFF);
+            byte ch = memory[la];
+            byte attr = memory[la + 1];
+
+            int s = cell << 1;
+            if (full
+                    || (ch != shadow[s]) || (attr != shadow[s + 1])
+                    || (blinkChanged && (attr < 0))
+                    || (cursorChanged && ((cell == cursor) || (cell == lastCursor))))
+            {
+                shadow[s] = ch;
+                shadow[s + 1] = attr;
+                drawCell(cga, buffer, offset, stride, cols, cell, ch & 0xFF, attr & 0xFF,
+                        blinkEnabled, blinkOn, cursorOn && (cell == cursor));
+                drawn = true;
+            }
+        }
+
+        invalid = false;
+        lastMode = mode;
+        lastStart = start;
+        lastCursor = cursor;
+        lastCursorOn = cursorOn;
+        lastBlinkOn = blinkOn;
+
+        return drawn;
+    }
+
+    /**
+     * draws one character cell, 8 (or 16 for 40 columns) pixels by 16 lines
+     */
+    private void drawCell(CGA cga, int[] buffer, int offset, int stride, int cols, int cell,
+                          int ch, int attr, boolean blinkEnabled, boolean blinkOn, boolean cursor)
+    {
+        int fg = attr & 0x0F;
+        int bg = attr >> 4;
+        if (blinkEnabled) {
+            // high bit is blinking, not intensity
+            bg &= 0x07;
+            if (((attr & 0x80) != 0) && !blinkOn) {
+                fg = bg;
+            }
+        }
+        int colors = ((fg << 4) | bg) << 11;
+
+        int cursorStart = cga.reg6845[10] & 0x1F;
+        int cursorEnd = cga.reg6845[11] & 0x1F;
+
+        boolean wide = cols == 40;
+        int cellWidth = wide ? 16 : 8;
+        int x = (cell % cols) * cellWidth;
+        int y = (cell / cols) * 16;
+        int p = offset + y * stride + x;
+
+        int glyph = ch * CGAFont.HEIGHT;
+        for (int row = 0; row < CGAFont.HEIGHT; row++, p += stride * 2)
+        {
+            int bits = font.rows[glyph + row] & 0xFF;
+            if (cursor && (cursorStart <= row) && (row <= cursorEnd)) {
+                bits = 0xFF;
+            }
+
+            int src = colors | (bits << 3);
+            if (wide) {
+                for (int i = 0; i < 8; i++) {
+                    int pixel = rowPixels[src + i];
+                    buffer[p + i * 2] = pixel;
+                    buffer[p + i * 2 + 1] = pixel;
+                }
+            } else {
+                System.arraycopy(rowPixels, src, buffer, p, 8);
+            }
+            // doubled scan line
+            System.arraycopy(buffer, p, buffer, p + stride, cellWidth);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk image with LRU cache of tracks for slow (network) storage.
+ * Whole track is read on the first access to any of its sectors,
+ * modified sectors are written back on eviction or flush in runs
+ * of adjacent sectors, one write per run.
+ */
+public class CachedDisk extends DiskImage
+{
+    /**
+     * default number of cached tracks, whole 360K floppy
+     */
+    public static final int DEFAULT_CAPACITY = 80;
+
+    /**
+     * one cached track
+     */
+    private static class Track {
+        final int index;
+        final ByteBuffer data;
+        // bit per modified sector (up to 63 sectors)
+        long dirty;
+
+        Track(int index, ByteBuffer data) {
+            this.index = index;
+            this.data = data;
+        }
+    }
+
+    private final FileChannel channel;
+
+    /**
+     * cached tracks in access order
+     */
+    private final LinkedHashMap<Integer, Track> tracks;
+
+    /**
+     * last accessed track, shortcut for sequential access
+     */
+    private Track last;
+
+    /**
+     * counters
+     */
+    private long hits;
+    private long misses;
+    private long writeBacks;
+    private long sectorsWritten;
+
+    /**
+     * @param channel opened file channel
+     * @param readOnly true to disable writes
+     * @param capacity max number of cached tracks
+     */
+    private CachedDisk(FileChannel channel, boolean readOnly, int cylinders, int heads, int sectors, int capacity)
+    {
+        super(readOnly, cylinders, heads, sectors);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.channel = channel;
+        this.tracks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Track> eldest)
+            {
+                if (size() <= capacity) {
+                    return false;
+                }
+                writeBack(eldest.getValue());
+                if (last == eldest.getValue()) {
+                    last = null;
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Opens floppy image with cache, geometry is detected by the file size
+     * @param path image file
+     * @param readOnly true to disable writes
+     * @param capacity max number of cached tracks
+     * @return image
+     * @throws IOException if any
+     */
+    public static CachedDisk floppy(Path path, boolean readOnly, int capacity) throws IOException
+    {
+        FileChannel channel = open(path, readOnly);
+        int[] g = floppyGeometry(channel);
+        return new CachedDisk(channel, readOnly, g[0], g[1], g[2], capacity);
+    }
+
+    /**
+     * Opens hard disk image with cache
+     * @param path image file
+     * @param readOnly true to disable writes
+     * @param cylinders number of cylinders (up to 1024)
+     * @param heads number of heads (up to 255)
+     * @param sectors number of sectors per track (up to 63)
+     * @param capacity max number of cached tracks
+     * @return image
+     * @throws IOException if any
+     */
+    public static CachedDisk hardDisk(Path path, boolean readOnly, int cylinders, int heads, int sectors, int capacity) throws IOException
+    {
+        FileChannel channel = open(path, readOnly);
+        checkGeometry(channel, cylinders, heads, sectors);
+        return new CachedDisk(channel, readOnly, cylinders, heads, sectors, capacity);
+    }
+
+    /**
+     * @param lba logical sector number
+     * @return cached track of the sector, loaded if needed
+     */
+    private Track track(int lba)
+    {
+        int index = lba / sectors;
+        Track track = last;
+        if ((track != null) && (track.index == index)) {
+            hits++;
+            return track;
+        }
+
+        track = tracks.get(index);
+        if (track != null) {
+            hits++;
+        }
+        else {
+            misses++;
+            track = load(index);
+            tracks.put(index, track);
+        }
+        last = track;
+        return track;
+    }
+
+    /**
+     * reads the whole track from file
+     * @param index track index
+     * @return new track
+     */
+    private Track load(int index)
+    {
+        ByteBuffer data = ByteBuffer.allocate(sectors * SECTOR_SIZE);
+        long position = (long) index * sectors * SECTOR_SIZE;
+        try {
+            while (data.hasRemaining()) {
+                if (channel.read(data, position + data.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Track(index, data);
+    }
+
+    /**
+     * writes modified sectors of the track, adjacent ones with one write
+     * @param track track
+     */
+    private void writeBack(Track track)
+    {
+        long dirty = track.dirty;
+        if (dirty == 0) {
+            return;
+        }
+
+        long base = (long) track.index * sectors * SECTOR_SIZE;
+        try {
+            while (dirty != 0) {
+                int from = Long.numberOfTrailingZeros(dirty);
+                int to = Long.numberOfTrailingZeros(~(dirty >>> from)) + from;
+                ByteBuffer run = track.data.duplicate();
+                run.limit(to * SECTOR_SIZE).position(from * SECTOR_SIZE);
+                while (run.hasRemaining()) {
+                    channel.write(run, base + run.position());
+                }
+                writeBacks++;
+                sectorsWritten += to - from;
+                dirty &= -1L << to;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        track.dirty = 0;
+    }
+
+    @Override
+    ByteBuffer buffer(int lba) {
+        return track(lba).data;
+    }
+
+    @Override
+    int offset(int lba) {
+        return (lba % sectors) * SECTOR_SIZE;
+    }
+
+    @Override
+    void modified(int lba)
+    {
+        Track track = last;
+        if ((track == null) || (track.index != lba / sectors)) {
+            track = track(lba);
+        }
+        track.dirty |= 1L << (lba % sectors);
+    }
+
+    /**
+     * writes back all modified tracks in file order
+     */
+    @Override
+    public void flush()
+    {
+        List<Track> dirty = new ArrayList<>();
+        for (Track track : tracks.values()) {
+            if (track.dirty != 0) {
+                dirty.add(track);
+            }
+        }
+        dirty.sort((a, b) -> Integer.compare(a.index, b.index));
+        for (Track track : dirty) {
+            writeBack(track);
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!readOnly) {
+            flush();
+        }
+        channel.close();
+    }
+
+    /**
+     * @return number of sector accesses served from cache
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of sector accesses that loaded a track
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return hits to all accesses ratio
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return number of write operations of write back
+     */
+    public long writeBacks() {
+        return writeBacks;
+    }
+
+    /**
+     * @return short statistics
+     */
+    public String report() {
+        return String.format("cache: tracks %d, hits %d, misses %d, hit rate %.1f%%, write backs %d (%d sectors)",
+                tracks.size(), hits, misses, hitRate() * 100, writeBacks, sectorsWritten);
+    }
+}
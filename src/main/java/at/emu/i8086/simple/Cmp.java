@@ -50,20 +50,44 @@ public class Cmp implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigurat
     /**
      *  RegMem with Reg
      */
-    public static class CmpRmR extends Cpu.Opcode
+    public static class CmpRmR extends Cpu.WidthOpcode
     {
-        public void execute(Cpu cpu, int opcode)
+        @Override
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
+
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode
         {
-            cpu.readModRegRm(opcode);
-            boolean w = (opcode & 0b0000_0001) == 1;
-            boolean d = (opcode & 0b0000_0010) == 0b10;
+            public void execute(Cpu cpu, int opcode)
+            {
+                cpu.readModRegRm8();
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    Sub.flags8(cpu, cpu.mrrRegValue, cpu.mrrModValue);
+                } else {
+                    Sub.flags8(cpu, cpu.mrrModValue, cpu.mrrRegValue);
+                }
+            }
+        }
 
-            if (d) {
-                // reg <<- mor r/m
-                Sub.flags(cpu, w, cpu.mrrRegValue, cpu.mrrModRegValue);
-            } else {
-                // mod r/m <<- reg
-                Sub.flags(cpu, w, cpu.mrrModRegValue, cpu.mrrRegValue);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode
+        {
+            public void execute(Cpu cpu, int opcode)
+            {
+                cpu.readModRegRm16();
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    Sub.flags16(cpu, cpu.mrrRegValue, cpu.mrrModValue);
+                } else {
+                    Sub.flags16(cpu, cpu.mrrModValue, cpu.mrrRegValue);
+                }
             }
         }
     }
@@ -99,26 +123,30 @@ public class Cmp implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigurat
     /**
      * Imm wth Accumulator
      */
-    public static class CmpAccImm extends Cpu.Opcode {
+    public static class CmpAccImm extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            boolean w = (opcode & 0b0000_0001) == 1;
-
-            // accumulator
-            int ax = cpu.registers[Cpu.AX];
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            // extract immediate value,
-            // size depends on w bit
-            int imm;
-            if (w) {
-                imm = cpu.ipRead16();
-            } else {
-                imm = cpu.ipRead8();
-                // use only AL part
-                ax &= 0x00FF;
+        /**
+         * byte variant (w=0), AL with imm8
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                Sub.flags8(cpu, cpu.registers[Cpu.AX] & 0x00FF, cpu.ipRead8());
             }
+        }
 
-            Sub.flags(cpu, w, ax, imm);
+        /**
+         * word variant (w=1), AX with imm16
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                Sub.flags16(cpu, cpu.registers[Cpu.AX], cpu.ipRead16());
+            }
         }
     }
 }
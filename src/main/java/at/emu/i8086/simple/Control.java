@@ -110,6 +110,7 @@ public class Control implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfig
         @Override
         public void execute(Cpu cpu, int opcode) {
             cpu.flags |= Cpu.FLAG_IF;
+            cpu.flagsEvents();
         }
     }
     public static class Lahf extends Cpu.Opcode {
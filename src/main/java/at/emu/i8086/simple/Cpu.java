@@ -1,5 +1,7 @@
 package at.emu.i8086.simple;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -110,27 +112,151 @@ public class Cpu
     public static final int INT_19_SYS_BOOT_LOAD    = 0x19;
     public static final int INT_1A_TIME             = 0x1A;
     public static final int INT_1C_TIME             = 0x1C;
+    public static final int INT_20_DOS_TERMINATE    = 0x20;
+    public static final int INT_21_DOS              = 0x21;
 
 
 
-    public void nmi(int number) {
+    /*
+     * Pending events, raised by devices or other threads and checked
+     * by the run loop between instructions with one load and compare,
+     * all the interrupt acceptance logic is only executed when non zero
+     */
+    public static final int EVENT_IRQ   = 0b0000_0001;    // pic has interrupt request(s)
+    public static final int EVENT_NMI   = 0b0000_0010;    // non maskable interrupt
+    public static final int EVENT_TRAP  = 0b0000_0100;    // TF is set, single step interrupt after each instruction
+    public static final int EVENT_BREAK = 0b0000_1000;    // debugger break requested
+    public static final int EVENT_STOP  = 0b0001_0000;    // stop of execution requested
+    public static final int EVENT_INPUT = 0b0010_0000;    // host input for devices or irq lines unmasked
+
+    /**
+     * events raised and not yet served, must be modified
+     * only via {@link #raiseEvent(int)} and {@link #clearEvent(int)}
+     */
+    private int pendingEvents;
+
+    private static final VarHandle PENDING_EVENTS;
+    static {
+        try {
+            PENDING_EVENTS = MethodHandles.lookup().findVarHandle(Cpu.class, "pendingEvents", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * atomically sets event bits, could be called from any thread
+     * @param events event bit(s) to set
+     */
+    public void raiseEvent(int events) {
+        PENDING_EVENTS.getAndBitwiseOr(this, events);
+    }
+
+    /**
+     * atomically clears event bits, could be called from any thread
+     * @param events event bit(s) to clear
+     */
+    public void clearEvent(int events) {
+        PENDING_EVENTS.getAndBitwiseAnd(this, ~events);
+    }
+
+    /**
+     * cheap check of the events to be used by run loops
+     * @return currently pending events
+     */
+    public int pendingEvents() {
+        return (int) PENDING_EVENTS.getOpaque(this);
+    }
+
+    /**
+     * requests non maskable interrupt (#2),
+     * will be executed after the current instruction
+     */
+    public void nmi() {
+        raiseEvent(EVENT_NMI);
+    }
+
+    /**
+     * Slow path of the run loop, called only when there are pending events,
+     * accepts at most one interrupt with the priority NMI, INTR (if IF is set)
+     * and single step (if TF is set).
+     * Break and stop events are not consumed, that is up to the run loop.
+     * @return events left for the run loop (break, stop)
+     */
+    public int serviceEvents()
+    {
+        int events = pendingEvents();
+
+        if ((events & EVENT_INPUT) != 0) {
+            // devices could raise irq here
+            clearEvent(EVENT_INPUT);
+            keyboard.service();
+            events = pendingEvents();
+        }
+
+        if ((events & EVENT_NMI) != 0) {
+            clearEvent(EVENT_NMI);
+            interrupt(INT_2_NMI);
+        }
+        else if ((events & EVENT_IRQ) != 0) {
+            if ((flags & FLAG_IF) == 0) {
+                // will be raised again when IF is set
+                clearEvent(EVENT_IRQ);
+            } else {
+                pic.runInterruptHandler(this);
+            }
+        }
+        else if ((events & EVENT_TRAP) != 0) {
+            if ((flags & FLAG_TF) == 0) {
+                clearEvent(EVENT_TRAP);
+            } else {
+                interrupt(INT_1_SINGLE_STEP);
+            }
+        }
+
+        return events & (EVENT_BREAK | EVENT_STOP);
+    }
+
+    /**
+     * Synchronizes events that depends on IF and TF flags,
+     * must be called by opcodes that set them (sti, popf, iret)
+     */
+    void flagsEvents()
+    {
+        int events = pendingEvents();
+        if ((flags & FLAG_TF) != 0) {
+            if ((events & EVENT_TRAP) == 0) {
+                raiseEvent(EVENT_TRAP);
+            }
+        } else if ((events & EVENT_TRAP) != 0) {
+            clearEvent(EVENT_TRAP);
+        }
+
+        if (((flags & FLAG_IF) != 0) && ((events & EVENT_IRQ) == 0) && pic.hasPendingRequests()) {
+            raiseEvent(EVENT_IRQ);
+        }
     }
 
-    
     /**
      * Executes interrupt of the specified number,
      * doesn't perform any checks.
      * Can be used for cpu interrupts (int x, into, div zero) directly as they are not masked,
      * can also be used for NMI and INTR(pic) after mask checks.
      *
-     * Saves flags and cs:ip into the stack, resets TF and IF
+     * Saves flags and cs:ip into the stack, resets TF and IF,
+     * resumes halted cpu
      * @param number number of the interrupt
      */
     public void interrupt(int number)
     {
+        hlt = false;
         push16(flags);
+        if ((flags & Cpu.FLAG_TF) != 0) {
+            // no single step inside the handler
+            clearEvent(EVENT_TRAP);
+        }
         flags &= ~(Cpu.FLAG_TF | Cpu.FLAG_IF);
-        push16(registers[Cpu.CS]);
+        push16(segments[Cpu.CS]);
         push16(ip);
 
         // interrupt vector
@@ -171,6 +297,21 @@ public class Cpu
     boolean repPrefix;
     // value of the rep prefix
     int     rep;
+    // ip of the rep prefix, used to restart
+    // string instruction interrupted in the middle
+    int     repIp;
+
+    // estimated number of clocks executed,
+    // based on the clocked configuration (no EA, no prefetch)
+    long clocks;
+    // clocks value when the current run slice must end,
+    // long string instructions are split to not cross it
+    long clocksLimit = Long.MAX_VALUE;
+
+    // typical clocks of each opcode
+    int[] opcodeClocks = new int[256];
+    // per iteration clocks of rep [string] opcodes
+    int[] repClocks = new int[256];
 
 
 
@@ -235,6 +376,27 @@ public class Cpu
         }
     }
 
+    /**
+     * writes one of common byte registers (AL..BH) based on reg index,
+     * byte (w=0) version of {@link #writeRegister(boolean, int, int)}
+     * @param regIndex index of the register to write (0..7, xL or xH)
+     * @param value value to write (8 bits)
+     */
+    public void writeRegister8(int regIndex, int value)
+    {
+        int regPartIndex = regIndex & 0b11;
+        int regFullValue = registers[regPartIndex];
+
+        if ((regIndex & 0b100) == 0) {
+            // lower part (AL, ..)
+            regFullValue = (regFullValue & 0xFF00) | (value & 0xFF);
+        } else {
+            // upper part (AH, ..)
+            regFullValue = (regFullValue & 0x00FF) | ((value & 0xFF) << 8);
+        }
+        registers[regPartIndex] = regFullValue;
+    }
+
     /**
      * writes one of common registers based on reg index
      * value is cleared with word (0xffff) mask
@@ -309,6 +471,20 @@ public class Cpu
      * @param opcode current opcode to which mod-reg-r/m belongs to
      */
     void readModRegRm(int opcode)
+    {
+        // check if opcode is in word (16 bit) mode ir 8 bit mode
+        if ((opcode & 0b0000_0001) == 1) {
+            readModRegRm16();
+        } else {
+            readModRegRm8();
+        }
+    }
+
+    /**
+     * Byte (w=0) version of {@link #readModRegRm(int)},
+     * could be called directly by width specialized opcodes
+     */
+    void readModRegRm8()
     {
         // read and divide mod-reg-r/m byte into local variables
         int mrr = ipRead8();
@@ -316,106 +492,141 @@ public class Cpu
         mrrReg = (mrr & 0b00111000) >> 3;
         mrrRm  = (mrr & 0b00000111);
 
-        // check if opcode is in word (16 bit) mode ir 8 bit mode
-        boolean w = (opcode & 0b0000_0001) == 1;
-
-        // parse -reg- part (it could be an opcode extension sometimes)
+        // parse -reg- part (it could be an opcode extension sometimes),
+        // 8 bit mode, only 4 register - xH or xL
+        // mrrRegIndex &= 0b011; <-- we need original index to distinguish xH/xL later on write
         mrrRegIndex = mrrReg;
-        if (w) {
-            // 16 bit mode, all 8 registers
-            mrrRegValue = registers[mrrRegIndex];
+        // read full register and adjust
+        mrrRegValue = registers[mrrRegIndex & 0b011];
+        if ((mrrReg & 0b100) == 0) {
+            mrrRegValue &= 0xFF;
         } else {
-            // 8 bit mode, only 4 register - xH or xL
-            // mrrRegIndex &= 0b011; <-- we need original index to distinguish xH/xL later on write
-            // read full register and adjust
-            mrrRegValue = registers[mrrRegIndex & 0b011];
-            if ((mrrReg & 0b100) == 0) {
-                mrrRegValue &= 0xFF;
-            } else {
-                mrrRegValue >>= 8;
-            }
+            mrrRegValue >>= 8;
         }
 
         // process mod- and -rm parts together
         if ((mrrMod ^ 0b11) == 0)
         {
-            // mod==11, r/m points to a register
-            mrrModRegIndex = mrrRm;
-            if (w) {
-                // 16 bit mode, all 8 registers
-                mrrModRegValue = registers[mrrModRegIndex];
+            // mod==11, r/m points to a register,
+            // 8 bit mode, only 4 register - xH or xL
+            mrrModRegIndex = mrrRm & 0b011;
+            // read full register and adjust
+            mrrModRegValue = registers[mrrModRegIndex];
+            if ((mrrRm & 0b100) == 0) {
+                mrrModRegValue &= 0xFF;
             } else {
-                // 8 bit mode, only 4 register - xH or xL
-                mrrModRegIndex &= 0b011;
-                // read full register and adjust
-                mrrModRegValue = registers[mrrModRegIndex];
-                if ((mrrRm & 0b100) == 0) {
-                    mrrModRegValue &= 0xFF;
-                } else {
-                    mrrModRegValue >>= 8;
-                }
+                mrrModRegValue >>= 8;
             }
             // provide unified access to mod-r/m value
             mrrModValue = mrrModRegValue;
         }
         else {
             // mod!=11, mod+r/m give effective address
+            readModRmEA();
 
-            // default memory segment for the opcode
-            int eff = Cpu.DS;
-
-            // base template for all variants for mod: 00|01|10
-            switch (mrrRm) {
-                case 0b000:               mrrModEA = registers[BX] + registers[SI]; break;
-                case 0b001:               mrrModEA = registers[BX] + registers[DI]; break;
-                case 0b010: eff = Cpu.SS; mrrModEA = registers[BP] + registers[SI]; break;
-                case 0b011: eff = Cpu.SS; mrrModEA = registers[BP] + registers[DI]; break;
-                case 0b100:               mrrModEA = registers[SI]; break;
-                case 0b101:               mrrModEA = registers[DI]; break;
-                case 0b110: eff = Cpu.SS; mrrModEA = registers[BP]; break;
-                case 0b111:               mrrModEA = registers[BX]; break;
-            }
+            // pre-read value from memory, it will be consumed
+            // by the operation or will be updated (so let it be in cache)
+            mrrModEAValue = mread8(mrrModEA);
 
-            if (mrrMod == 0b00)
-            {
-                if (mrrRm == 0b110) {
-                    // mod=00 is the template above except for r/m=110,
-                    // that uses a direct address from the displacement
-                    // and DS based addressing
-                    mrrModEA = ipRead16();
-                    eff = Cpu.DS;
-                }
-            }
-            else if (mrrMod == 0b01)
-            {
-                // mod=01 is the template + data8
-                int value = ipRead8();
-                mrrModEA += value;
-            }
-            else if (mrrMod == 0b10)
-            {
-                // mod=10 is the template + data16
-                int value = ipRead16();
-                mrrModEA += value;
-            }
+            // provide unified access to mod-r/m value
+            mrrModValue = mrrModEAValue;
+        }
+    }
 
-            // prepare linear address of opcode mem segment,
-            // will be used in mread/mwrite
-            if (overrideSegmentIndex != -1) {
-                effOpcodeMemSegment = segments[overrideSegmentIndex] << 4;
-            } else {
-                effOpcodeMemSegment = segments[eff] << 4;
-            }
+    /**
+     * Word (w=1) version of {@link #readModRegRm(int)},
+     * could be called directly by width specialized opcodes
+     */
+    void readModRegRm16()
+    {
+        // read and divide mod-reg-r/m byte into local variables
+        int mrr = ipRead8();
+        mrrMod = mrr >> 6;
+        mrrReg = (mrr & 0b00111000) >> 3;
+        mrrRm  = (mrr & 0b00000111);
+
+        // parse -reg- part (it could be an opcode extension sometimes),
+        // 16 bit mode, all 8 registers
+        mrrRegIndex = mrrReg;
+        mrrRegValue = registers[mrrRegIndex];
+
+        // process mod- and -rm parts together
+        if ((mrrMod ^ 0b11) == 0)
+        {
+            // mod==11, r/m points to a register,
+            // 16 bit mode, all 8 registers
+            mrrModRegIndex = mrrRm;
+            mrrModRegValue = registers[mrrModRegIndex];
+            // provide unified access to mod-r/m value
+            mrrModValue = mrrModRegValue;
+        }
+        else {
+            // mod!=11, mod+r/m give effective address
+            readModRmEA();
 
             // pre-read value from memory, it will be consumed
             // by the operation or will be updated (so let it be in cache)
-            mrrModEAValue = mread(w, mrrModEA);
+            mrrModEAValue = mread16(mrrModEA);
 
             // provide unified access to mod-r/m value
             mrrModValue = mrrModEAValue;
         }
     }
 
+    /**
+     * calculates effective address for mod!=11 case of mod-reg-r/m byte
+     * into {@link #mrrModEA} and prepares {@link #effOpcodeMemSegment},
+     * reads displacement if present
+     */
+    private void readModRmEA()
+    {
+        // default memory segment for the opcode
+        int eff = Cpu.DS;
+
+        // base template for all variants for mod: 00|01|10
+        switch (mrrRm) {
+            case 0b000:               mrrModEA = registers[BX] + registers[SI]; break;
+            case 0b001:               mrrModEA = registers[BX] + registers[DI]; break;
+            case 0b010: eff = Cpu.SS; mrrModEA = registers[BP] + registers[SI]; break;
+            case 0b011: eff = Cpu.SS; mrrModEA = registers[BP] + registers[DI]; break;
+            case 0b100:               mrrModEA = registers[SI]; break;
+            case 0b101:               mrrModEA = registers[DI]; break;
+            case 0b110: eff = Cpu.SS; mrrModEA = registers[BP]; break;
+            case 0b111:               mrrModEA = registers[BX]; break;
+        }
+
+        if (mrrMod == 0b00)
+        {
+            if (mrrRm == 0b110) {
+                // mod=00 is the template above except for r/m=110,
+                // that uses a direct address from the displacement
+                // and DS based addressing
+                mrrModEA = ipRead16();
+                eff = Cpu.DS;
+            }
+        }
+        else if (mrrMod == 0b01)
+        {
+            // mod=01 is the template + data8
+            int value = ipRead8();
+            mrrModEA += value;
+        }
+        else if (mrrMod == 0b10)
+        {
+            // mod=10 is the template + data16
+            int value = ipRead16();
+            mrrModEA += value;
+        }
+
+        // prepare linear address of opcode mem segment,
+        // will be used in mread/mwrite
+        if (overrideSegmentIndex != -1) {
+            effOpcodeMemSegment = segments[overrideSegmentIndex] << 4;
+        } else {
+            effOpcodeMemSegment = segments[eff] << 4;
+        }
+    }
+
     /**
      * writes value to a register or it's part as pointer by mod-reg-r/m,
      * with mod=11 and (r/m, word) pointing to a destination
@@ -465,6 +676,46 @@ public class Cpu
         }
     }
 
+    /**
+     * writes byte value to register/mem pointed by mod-r/m parts of mrr,
+     * byte (w=0) version of {@link #writeByModRegRm(boolean, int)}
+     *
+     * @param value value to write
+     */
+    public void writeByModRegRm8(int value)
+    {
+        if ((mrrMod ^ 0b11) == 0) {
+            // mod r/m is a register, xL or xH
+            int regFullValue = registers[mrrModRegIndex];
+            if ((mrrRm & 0b100) == 0) {
+                regFullValue = (regFullValue & 0xFF00) | (value & 0xFF);
+            } else {
+                regFullValue = (regFullValue & 0x00FF) | ((value & 0xFF) << 8);
+            }
+            registers[mrrModRegIndex] = regFullValue;
+        } else {
+            // mod r/m is memory
+            mwrite8(mrrModEA, value);
+        }
+    }
+
+    /**
+     * writes word value to register/mem pointed by mod-r/m parts of mrr,
+     * word (w=1) version of {@link #writeByModRegRm(boolean, int)}
+     *
+     * @param value value to write
+     */
+    public void writeByModRegRm16(int value)
+    {
+        if ((mrrMod ^ 0b11) == 0) {
+            // mod r/m is a register
+            registers[mrrModRegIndex] = value & 0xFFFF;
+        } else {
+            // mod r/m is memory
+            mwrite16(mrrModEA, value);
+        }
+    }
+
 
     /**
      *   logical address sources (table 2-2)
@@ -606,6 +857,12 @@ public class Cpu
         }
     }
 
+    void mwrite8(int offset, int value)
+    {
+        int la = effOpcodeMemSegment + offset;
+        memory[la] = (byte)value;
+    }
+
     void mwrite16(int offset, int value)
     {
         int la = effOpcodeMemSegment + offset;
@@ -754,7 +1011,7 @@ public class Cpu
         if (handler != null) {
             handler.pout(word, port, value);
         } else {
-            System.out.printf("-XX OUT[%04X] no handler%n", port);
+            log.add(DeviceLog.PORTS, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_WRITE, port, value);
         }
     }
 
@@ -764,20 +1021,30 @@ public class Cpu
             int value = ports[port].pin(word, port);
             return value;
         } else {
-            System.out.printf("-XX  IN[%04X] no handler%n", port);
+            log.add(DeviceLog.PORTS, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_READ, port, 0);
             return 0;
         }
     }
 
     PortHandler[] ports = new PortHandler[65536];
 
-    PIC8259 pic = new PIC8259(0x20, 0x21, true);
-    PTI8253 pti = new PTI8253(pic);
-    DMA8237 dma = new DMA8237();
+    /**
+     * log of device events, devices write into it instead of printing
+     */
+    DeviceLog log = new DeviceLog(this);
+
+    PIC8259 pic = new PIC8259(this, 0x20, 0x21, true);
+    PTI8253 pti = new PTI8253(this, pic);
+    Speaker speaker = new Speaker(this, pti);
+    DMA8237 dma = new DMA8237(this);
 
-    XtKeyboard keyboard = new XtKeyboard();
-    PPI8255 ppi = new PPI8255(keyboard);
-    CGA video = new CGA();
+    XtKeyboard keyboard = new XtKeyboard(this, pic);
+    PPI8255 ppi = new PPI8255(keyboard, pti, speaker, log);
+    CGA video = new CGA(this);
+    NEC765 fdc = new NEC765(pic, dma);
+    UART8250 com1 = new UART8250(this, pic, UART8250.COM1_BASE, UART8250.COM1_IRQ);
+    UART8250 com2 = new UART8250(this, pic, UART8250.COM2_BASE, UART8250.COM2_IRQ);
+    ParallelPort lpt1 = new ParallelPort(pic, ParallelPort.LPT1_BASE, ParallelPort.LPT1_IRQ);
 
     {
         ports[0x20] = pic;
@@ -800,7 +1067,19 @@ public class Cpu
         ports[0x42] = pti;
         ports[0x43] = pti;
 
-        video.start();
+        for (int port = 0x3F0; port <= 0x3F7; port++) {
+            ports[port] = fdc;
+        }
+
+        for (int port = 0; port < 8; port++) {
+            ports[UART8250.COM1_BASE + port] = com1;
+            ports[UART8250.COM2_BASE + port] = com2;
+        }
+
+        for (int port = 0; port < 3; port++) {
+            ports[ParallelPort.LPT1_BASE + port] = lpt1;
+        }
+
         ports[0x3D8] = video;
         ports[0x3D9] = video;
         ports[0x3DA] = video;
@@ -814,6 +1093,23 @@ public class Cpu
         }
     }
 
+    /**
+     * Host implementation of a software interrupt (int xx), called instead
+     * of the guest handler, used for high level bios services
+     */
+    public interface InterruptTrap {
+        /**
+         * @param cpu ref to cpu
+         * @return true if interrupt was handled, false to run guest handler
+         */
+        boolean trap(Cpu cpu);
+    }
+
+    /**
+     * host traps of software interrupts, null if not set
+     */
+    InterruptTrap[] traps = new InterruptTrap[256];
+
     static class PortHandler {
 
         void pout(boolean word, int port, int value) {
@@ -861,6 +1157,84 @@ public class Cpu
         }
 
         OpcodeConfiguration.dump(opcodes);
+
+        initClocks();
+    }
+
+    /**
+     * populates clock tables from the clocked configuration,
+     * mrr based opcodes use the fastest variant (register form usually)
+     */
+    private void initClocks()
+    {
+        Map<String, ClockedOpcodeConfiguration.Configuration> config = new HashMap<>();
+        for (int i = 0; i < configurations.length; i++) {
+            if (configurations[i] instanceof ClockedOpcodeConfiguration) {
+                ClockedOpcodeConfiguration.merge(config,
+                        ((ClockedOpcodeConfiguration) configurations[i]).getClockedConfiguration());
+            }
+        }
+
+        config.forEach((key, opConfig) -> {
+            int opcode = Integer.parseInt(key, 2);
+            if (opConfig instanceof ClockedOpcodeConfiguration.SimpleConfiguration) {
+                ClockedOpcodeConfiguration.SimpleConfiguration simple = (ClockedOpcodeConfiguration.SimpleConfiguration) opConfig;
+                opcodeClocks[opcode] = simple.clocks;
+                if (simple.type == ClockedOpcodeConfiguration.SimpleConfiguration.Type.REP) {
+                    repClocks[opcode] = simple.clocksAlt2;
+                }
+            } else {
+                opcodeClocks[opcode] = ((ClockedOpcodeConfiguration.ModRegRmConfiguration) opConfig).mrr.values().stream()
+                        .mapToInt(c -> c.clocks)
+                        .min().orElse(0);
+            }
+        });
+    }
+
+    /**
+     * Calculates number of iterations of rep [string] instruction to be executed
+     * in one go, that is bounded by CX, remaining clocks till the limit and pending
+     * events (only one iteration is executed then). Clocks of the iterations
+     * are accounted here.
+     * @param opcode string opcode
+     * @return number of iterations, could be less than CX
+     */
+    int repChunk(int opcode)
+    {
+        int cx = registers[CX];
+        int perIteration = repClocks[opcode];
+
+        int chunk = cx;
+        if ((cx > 1) && (pendingEvents() != 0)) {
+            chunk = 1;
+        }
+        else if ((perIteration != 0) && (clocks + (long) cx * perIteration > clocksLimit)) {
+            chunk = (int) Math.max(1, (clocksLimit - clocks) / perIteration);
+        }
+
+        clocks += (long) chunk * perIteration;
+        return chunk;
+    }
+
+    /**
+     * returns clocks of the iterations that were accounted by
+     * {@link #repChunk(int)} but not executed as instruction terminated by ZF
+     * @param opcode string opcode
+     * @param iterations number of iterations not executed
+     */
+    void repCancel(int opcode, int iterations) {
+        clocks -= (long) iterations * repClocks[opcode];
+    }
+
+    /**
+     * moves ip back to the rep prefix if the instruction has not
+     * finished (CX != 0), so it will be resumed by the next step
+     * after interrupts and devices are served
+     */
+    void repSuspend() {
+        if (registers[CX] != 0) {
+            ip = repIp;
+        }
     }
 
     /**
@@ -873,6 +1247,7 @@ public class Cpu
         ip = 0xFFF0;
         flags = 0;
         hlt = false;
+        clearEvent(EVENT_IRQ | EVENT_NMI | EVENT_TRAP);
         overrideSegmentIndex = -1;
     }
 
@@ -899,6 +1274,8 @@ public class Cpu
             return;
         }
 
+        clocks += opcodeClocks[code];
+
         // call opcode implementation
         opcode.execute(this, code);
     }
@@ -1029,6 +1406,31 @@ public class Cpu
 
     }
 
+    /**
+     * Opcodes that handle both byte and word forms (w bit, the lowest bit of the opcode)
+     * with one class could provide separate implementations for each width,
+     * registry is populated with the variant matching w bit of every opcode,
+     * so the variant doesn't need to check the bit on each execution
+     */
+    public interface WidthSpecialized {
+        /**
+         * @param w word (true) or byte (false) mode of the target opcode
+         * @return opcode implementation for the specified width
+         */
+        Opcode specialize(boolean w);
+    }
+
+    /**
+     * Holder of byte and word variants of an opcode, registry is populated
+     * with the variants only, so the holder itself MUST NOT be executed
+     */
+    public static abstract class WidthOpcode extends Opcode implements WidthSpecialized {
+        @Override
+        public final void execute(Cpu cpu, int opcode) {
+            throw new IllegalStateException("width variant is not installed for " + getClass().getSimpleName());
+        }
+    }
+
     /**
      * Some cpu commands share the same opcode and distinguished with 'reg' part of mod-reg-r/m byte
      * that follows the opcode, this provides a way to create child opcodes that MUST NOT read
@@ -1269,13 +1671,34 @@ public class Cpu
                         instance = opClass.getDeclaredConstructor().newInstance();
                         instances.put(opClass, instance);
                     }
-                    registry[iOpcode] = instance;
+                    registry[iOpcode] = specialize(instances, instance, iOpcode);
                 } catch (Exception e) {
                     throw new IllegalArgumentException("error creating instance of " + opClass, e);
                 }
             }
         }
 
+        /**
+         * replaces opcode implementation with the one specialized for w bit
+         * of the target opcode if the implementation supports it
+         *
+         * @param instances cache of Opcode instance to reuse
+         * @param instance generic implementation of the opcode
+         * @param iOpcode target opcode
+         * @return specialized or original implementation
+         */
+        private static Opcode specialize(
+                Map<Class<? extends  Opcode>, Opcode> instances,
+                Opcode instance, int iOpcode)
+        {
+            if (!(instance instanceof WidthSpecialized)) {
+                return instance;
+            }
+            Opcode variant = ((WidthSpecialized) instance).specialize((iOpcode & 0b0000_0001) == 1);
+            Opcode cached = instances.putIfAbsent(variant.getClass(), variant);
+            return (cached != null) ? cached : variant;
+        }
+
         /**
          * applies configuration template to the registry of opcodes to be used for execution,
          * handles Map<String, Class<? extends DemuxedOpcode>> case
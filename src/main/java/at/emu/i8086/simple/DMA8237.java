@@ -1,5 +1,7 @@
 package at.emu.i8086.simple;
 
+import java.nio.ByteBuffer;
+
 class DMA8237 extends Cpu.PortHandler
 {
     /**
@@ -150,16 +152,36 @@ class DMA8237 extends Cpu.PortHandler
     short[] REG_MULTICHANNEL    = new short[] {0x0F, 0xDE};
 
 
+    public static final int MASK_REG_CMD_MMT    = 0b0000_0001;
+    public static final int MASK_REG_CMD_ADHE   = 0b0000_0010;
     public static final int MASK_REG_CMD_COND   = 0b0000_0100;
 
+    public static final int MASK_MODE_TYPE      = 0b0000_1100;
+    public static final int MODE_TYPE_VERIFY    = 0b0000_0000;
+    public static final int MODE_TYPE_WRITE     = 0b0000_0100;
+    public static final int MODE_TYPE_READ      = 0b0000_1000;
+    public static final int MASK_MODE_AUTOINIT  = 0b0001_0000;
+    public static final int MASK_MODE_DECREMENT = 0b0010_0000;
+    public static final int MASK_MODE_SELECT    = 0b1100_0000;
+    public static final int MODE_SELECT_DEMAND  = 0b0000_0000;
+    public static final int MODE_SELECT_SINGLE  = 0b0100_0000;
+    public static final int MODE_SELECT_BLOCK   = 0b1000_0000;
+    public static final int MODE_SELECT_CASCADE = 0b1100_0000;
+
+    public static final int MASK_REQ_SET        = 0b0000_0100;
 
-//    short[] address     = new short[8];
-//    short[] count       = new short[8];
-//    short[] page        = new short[8]; // it's byte
-//    short[] mode        = new short[8];
+    /**
+     * ref to cpu to access memory
+     */
+    private final Cpu cpu;
 
     short[] status      = new short[] {0, 0};
-    boolean[] enabled   = new boolean[2];
+    boolean[] enabled   = new boolean[] {true, true};
+    int[] command       = new int[2];
+    /**
+     * last byte transferred in mem-to-mem mode
+     */
+    int[] temporary     = new int[2];
 
     //  7654 3210
     //  0000_0000
@@ -173,8 +195,14 @@ class DMA8237 extends Cpu.PortHandler
         public static final int MASK_CNT_WRITE  = 0b010000_00000000;
         public static final int MASK_CNT_READ   = 0b100000_00000000;
 
+        public static final int MASK_FLIP_FLOPS = MASK_ADDR_WRITE | MASK_ADDR_READ | MASK_CNT_WRITE | MASK_CNT_READ;
+
         short address;
         short count;
+        // values to reload on autoinit,
+        // written together with current ones
+        short baseAddress;
+        short baseCount;
         //        | address read byte state
         //        || address write byte state (0 low, 1 high)
         //        ||     |enabled          | mode (8 bytes)
@@ -193,6 +221,7 @@ class DMA8237 extends Cpu.PortHandler
                 mode &= ~MASK_ADDR_WRITE;
                 address = (short)((address & 0x00FF) | ((value & 0xFF) << 8));
             }
+            baseAddress = address;
         }
 
         int address()
@@ -215,6 +244,7 @@ class DMA8237 extends Cpu.PortHandler
                 mode &= ~MASK_CNT_WRITE;
                 count = (short)((count & 0x00FF) | ((value & 0xFF) << 8));
             }
+            baseCount = count;
         }
 
         int count()
@@ -233,7 +263,15 @@ class DMA8237 extends Cpu.PortHandler
         }
 
         int page() {
-            return page;
+            return page & 0xFF;
+        }
+
+        /**
+         * @return physical address of the current transfer byte,
+         * only 4 bits of page are wired on xt (1M)
+         */
+        int physical() {
+            return ((page & 0x0F) << 16) | (address & 0xFFFF);
         }
     }
 
@@ -242,10 +280,14 @@ class DMA8237 extends Cpu.PortHandler
             new Channel(), new Channel(), new Channel(), new Channel()
     };
 
+    public DMA8237(Cpu cpu) {
+        this.cpu = cpu;
+    }
+
     @Override
     void pout(boolean word, int port, int value)
     {
-        System.out.printf("->> DMA OUT[%04X] (%X)%n", port, value);
+        cpu.log.add(DeviceLog.DMA, DeviceLog.DEBUG, DeviceLog.KIND_WRITE, port, value);
         int index;
         if ((index = contains(REG_ADDRESS, (short) port)) != -1) {
             channels[index].address(value);
@@ -258,13 +300,14 @@ class DMA8237 extends Cpu.PortHandler
         }
 
         else if ((index = contains(REG_CMD_CMD, (short) port)) != -1) {
-            // due to osdev.wiki the only working/useful bit is COND
+            // due to osdev.wiki the only working/useful bit is COND,
+            // mem-to-mem bits are supported for software requests
+            command[index] = value & 0xFF;
             enabled[index] = (value & MASK_REG_CMD_COND) == 0;
         }
 
         else if ((index = contains(REG_CMD_REQ, (short) port)) != -1) {
-            // mem-to-mem operations, not used/useless ???
-            throw new RuntimeException("DMA8237 request register access, review [" + port + "," + value + "]");
+            request(index, value);
         }
 
         else if ((index = contains(REG_CMD_SCMR, (short) port)) != -1)
@@ -280,41 +323,37 @@ class DMA8237 extends Cpu.PortHandler
         else if ((index = contains(REG_MULTICHANNEL, (short) port)) != -1)
         {   // multi channel mask
             if (index == 0) {
-                masked &= 0x0F;
+                masked &= 0xF0;
                 masked |= (value & 0x0F);
             } else {
-                masked &= 0xF0;
+                masked &= 0x0F;
                 masked |= (value & 0x0F) << 4;
             }
         }
 
-        /*
-         *   0x0B          	0xD6       Byte 	W 	            (cmd) Mode Register
-         *   0x0C          	0xD8       Byte 	W 	            (cmd) Flip-Flop Reset Register
-         *   0x0D          	0xDA       Byte 	W 	            (cmd) Master Reset Register
-         *   0x0E          	0xDC       Byte 	W 	            (cmd) Mask Reset Register
-
-         */
-
         else if ((index = contains(REG_CMD_MODE, (short) port)) != -1) {
             // [0..3] + [0|4]
             int channel = (value & 0b0011) + index * 4;
-            channels[channel].mode = (short) value;
+            Channel c = channels[channel];
+            c.mode = (short) ((c.mode & 0xFF00) | (value & 0xFF));
         }
 
         else if ((index = contains(REG_CMD_FFRR, (short) port)) != -1) {
-            // flip flop are not used for now
+            flipFlops(index);
         }
 
         else if ((index = contains(REG_CMD_MSTR, (short) port)) != -1) {
             // command, status, request, temporary, internal flip/flop are cleared, mask is set,
-            enabled[index] = false; // command
+            enabled[index] = true;
+            command[index] = 0;
             status[index] = 0;
-            masked = 0xFF;
+            temporary[index] = 0;
+            masked |= 0x0F << (index * 4);
+            flipFlops(index);
         }
 
         else if ((index = contains(REG_CMD_MSKR, (short) port)) != -1) {
-            masked = 0;
+            masked &= ~(0x0F << (index * 4));
         }
     }
 
@@ -324,7 +363,6 @@ class DMA8237 extends Cpu.PortHandler
         int index;
 
         if ((index = contains(REG_ADDRESS, (short) port)) != -1) {
-            //return state[index].address;
             return channels[index].address();
         }
         else if ((index = contains(REG_COUNT, (short) port)) != -1) {
@@ -334,23 +372,257 @@ class DMA8237 extends Cpu.PortHandler
             return channels[index].page();
         }
 
-
-
         if ((index = contains(REG_STATUS, (short) port)) != -1) {
-            return status[index];
+            // read resets terminal count bits
+            int value = status[index];
+            status[index] &= 0xF0;
+            return value;
         }
         else if ((index = contains(REG_INTERMEDIATE, (short) port)) != -1) {
-            //return temp[index];
-            return 0;
+            return temporary[index];
         }
         else if ((index = contains(REG_MULTICHANNEL, (short) port)) != -1) {
-            return masked;
+            return (masked >> (index * 4)) & 0x0F;
         }
 
-        //System.out.printf("->>  IN[%04X] (%X)%n", port);
         return 0;
     }
 
+    /**
+     * resets byte flip-flops of all the chip channels
+     * @param chip chip index, 0 or 1
+     */
+    private void flipFlops(int chip) {
+        for (int i = 0; i < 4; i++) {
+            channels[chip * 4 + i].mode &= ~Channel.MASK_FLIP_FLOPS;
+        }
+    }
+
+    /**
+     * Handles software request, sets or clears request status bit,
+     * request of channel 0 with mem-to-mem enabled copies memory
+     * from channel 0 address to channel 1 address
+     * @param chip chip index, 0 or 1
+     * @param value request register value
+     */
+    private void request(int chip, int value)
+    {
+        int channel = value & 0b0011;
+        if ((value & MASK_REQ_SET) == 0) {
+            status[chip] &= ~(0x10 << channel);
+            return;
+        }
+        status[chip] |= 0x10 << channel;
+
+        if ((channel == 0) && ((command[chip] & MASK_REG_CMD_MMT) != 0) && enabled[chip]) {
+            memToMem(chip);
+            status[chip] &= ~0x10;
+        }
+    }
+
+    /**
+     * mem-to-mem transfer, count is taken from channel 1,
+     * rarely used so goes byte by byte
+     * @param chip chip index, 0 or 1
+     */
+    private void memToMem(int chip)
+    {
+        Channel src = channels[chip * 4];
+        Channel dst = channels[chip * 4 + 1];
+        boolean hold = (command[chip] & MASK_REG_CMD_ADHE) != 0;
+        int srcStep = ((src.mode & MASK_MODE_DECREMENT) != 0) ? -1 : 1;
+        int dstStep = ((dst.mode & MASK_MODE_DECREMENT) != 0) ? -1 : 1;
+
+        int length = (dst.count & 0xFFFF) + 1;
+        byte[] memory = cpu.memory;
+        for (int i = 0; i < length; i++) {
+            int value = memory[src.physical()];
+            memory[dst.physical()] = (byte) value;
+            temporary[chip] = value & 0xFF;
+            if (!hold) {
+                src.address += srcStep;
+            }
+            dst.address += dstStep;
+        }
+        src.count -= length;
+        dst.count = (short) 0xFFFF;
+        terminalCount(chip * 4 + 1);
+    }
+
+    /**
+     * moves chunk of data between device buffer and memory
+     */
+    private interface Mover {
+        /**
+         * @param toMemory true for write transfer, false for read transfer
+         * @param memory cpu memory
+         * @param address physical address
+         * @param offset offset in the device buffer
+         * @param length number of bytes
+         */
+        void move(boolean toMemory, byte[] memory, int address, int offset, int length);
+    }
+
+    /**
+     * Device to memory transfer (write transfer),
+     * could be called by devices with any amount of data they have ready
+     * @param channel channel number (0..3)
+     * @param data source buffer
+     * @param offset offset in the buffer
+     * @param length number of bytes device has
+     * @return number of bytes transferred, could be less than length at terminal count
+     * or 0 if channel is not ready
+     */
+    public int write(int channel, byte[] data, int offset, int length) {
+        return transfer(channel, MODE_TYPE_WRITE, (toMemory, memory, address, o, l) ->
+                System.arraycopy(data, o, memory, address, l), offset, length);
+    }
+
+    /**
+     * Device to memory transfer directly from the buffer (mapped disk image)
+     * @param channel channel number (0..3)
+     * @param data source buffer, position is not changed
+     * @param offset absolute offset in the buffer
+     * @param length number of bytes device has
+     * @return number of bytes transferred
+     */
+    public int write(int channel, ByteBuffer data, int offset, int length) {
+        return transfer(channel, MODE_TYPE_WRITE, (toMemory, memory, address, o, l) ->
+                data.get(o, memory, address, l), offset, length);
+    }
+
+    /**
+     * Memory to device transfer (read transfer),
+     * could be called by devices with any amount of data they could accept
+     * @param channel channel number (0..3)
+     * @param data destination buffer
+     * @param offset offset in the buffer
+     * @param length number of bytes device needs
+     * @return number of bytes transferred, could be less than length at terminal count
+     * or 0 if channel is not ready
+     */
+    public int read(int channel, byte[] data, int offset, int length) {
+        return transfer(channel, MODE_TYPE_READ, (toMemory, memory, address, o, l) ->
+                System.arraycopy(memory, address, data, o, l), offset, length);
+    }
+
+    /**
+     * Memory to device transfer directly into the buffer (mapped disk image)
+     * @param channel channel number (0..3)
+     * @param data destination buffer, position is not changed
+     * @param offset absolute offset in the buffer
+     * @param length number of bytes device needs
+     * @return number of bytes transferred
+     */
+    public int read(int channel, ByteBuffer data, int offset, int length) {
+        return transfer(channel, MODE_TYPE_READ, (toMemory, memory, address, o, l) ->
+                data.put(o, memory, address, l), offset, length);
+    }
+
+    /**
+     * @param channel channel number (0..3)
+     * @return number of bytes left till terminal count
+     */
+    public int remaining(int channel) {
+        return (channels[channel].count & 0xFFFF) + 1;
+    }
+
+    /**
+     * @param channel channel number (0..3)
+     * @return true if channel could transfer data now (enabled and unmasked)
+     */
+    public boolean ready(int channel) {
+        return enabled[channel >> 2] && ((masked & (1 << channel)) == 0);
+    }
+
+    /**
+     * Moves data in bulk between device buffer and memory,
+     * all the bytes device has are moved at once in any mode (single, block
+     * and demand differ only in bus release, not visible to the cpu here).
+     * Address wraps inside 64K, page is not changed.
+     * Verify mode only updates address and count.
+     * @param index channel number (0..3)
+     * @param type expected transfer type
+     * @param mover moves chunks between device buffer and memory
+     * @param offset offset in the device buffer
+     * @param length max number of bytes to transfer
+     * @return number of bytes transferred
+     */
+    private int transfer(int index, int type, Mover mover, int offset, int length)
+    {
+        if ((index < 0) || (3 < index)) {
+            throw new IllegalArgumentException("only 8 bit channels 0..3 are supported: " + index);
+        }
+        if (!ready(index)) {
+            return 0;
+        }
+
+        Channel channel = channels[index];
+        int mode = channel.mode & 0xFF;
+        int modeType = mode & MASK_MODE_TYPE;
+        if (((mode & MASK_MODE_SELECT) == MODE_SELECT_CASCADE)
+                || ((modeType != type) && (modeType != MODE_TYPE_VERIFY)))
+        {
+            // channel is not programmed for this direction
+            return 0;
+        }
+
+        int remaining = (channel.count & 0xFFFF) + 1;
+        int total = Math.min(length, remaining);
+        byte[] memory = cpu.memory;
+        int page = (channel.page & 0x0F) << 16;
+        int address = channel.address & 0xFFFF;
+        boolean verify = modeType == MODE_TYPE_VERIFY;
+        boolean toMemory = modeType == MODE_TYPE_WRITE;
+
+        if ((mode & MASK_MODE_DECREMENT) != 0)
+        {
+            for (int i = 0; i < total; i++) {
+                if (!verify) {
+                    mover.move(toMemory, memory, page | address, offset + i, 1);
+                }
+                address = (address - 1) & 0xFFFF;
+            }
+        }
+        else
+        {
+            // at most 2 chunks due to 64K wrap
+            int done = 0;
+            while (done < total) {
+                int chunk = Math.min(total - done, 0x10000 - address);
+                if (!verify) {
+                    mover.move(toMemory, memory, page | address, offset + done, chunk);
+                }
+                address = (address + chunk) & 0xFFFF;
+                done += chunk;
+            }
+        }
+
+        channel.address = (short) address;
+        channel.count = (short) (remaining - total - 1);
+        if (total == remaining) {
+            terminalCount(index);
+        }
+        return total;
+    }
+
+    /**
+     * sets terminal count status, reloads channel in autoinit mode
+     * or masks it otherwise
+     * @param index channel number
+     */
+    private void terminalCount(int index)
+    {
+        Channel channel = channels[index];
+        status[index >> 2] |= 1 << (index & 0b11);
+        if ((channel.mode & MASK_MODE_AUTOINIT) != 0) {
+            channel.address = channel.baseAddress;
+            channel.count = channel.baseCount;
+        } else {
+            masked |= 1 << index;
+        }
+    }
+
     public static int contains(short[] array, short value) {
         for (int i = 0; i < array.length; i++) {
             if (array[i] == value) {
@@ -359,7 +631,4 @@ class DMA8237 extends Cpu.PortHandler
         }
         return -1;
     }
-
-
-
 }
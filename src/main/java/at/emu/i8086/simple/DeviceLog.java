@@ -0,0 +1,329 @@
+package at.emu.i8086.simple;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log of device events (port accesses, commands, unhandled cases) for the i/o path.
+ * Events are stored as fixed size binary records (clocks, device, kind, port, value)
+ * into a preallocated ring, oldest records are overwritten, nothing is formatted
+ * on the cpu thread. Records are formatted and sent to slf4j (logger per device)
+ * by a background thread or on demand with {@link #dump()}.
+ * Each device has its own level, event below the level costs one branch.
+ */
+public class DeviceLog
+{
+    /**
+     * levels, device logs events with level up to its own one
+     */
+    public static final int OFF     = 0;
+    public static final int WARN    = 1;
+    public static final int INFO    = 2;
+    public static final int DEBUG   = 3;
+
+    /**
+     * devices
+     */
+    public static final int PORTS   = 0;
+    public static final int PIC     = 1;
+    public static final int PIT     = 2;
+    public static final int PPI     = 3;
+    public static final int DMA     = 4;
+    public static final int CGA     = 5;
+    public static final int FDC     = 6;
+    public static final int UART    = 7;
+    public static final int LPT     = 8;
+    public static final int DOS     = 9;
+
+    private static final String[] DEVICES = new String[] {
+            "ports", "pic", "pit", "ppi", "dma", "cga", "fdc", "uart", "lpt", "dos"
+    };
+
+    /**
+     * kinds of events
+     */
+    public static final int KIND_WRITE              = 0;
+    public static final int KIND_READ               = 1;
+    public static final int KIND_UNHANDLED_WRITE    = 2;
+    public static final int KIND_UNHANDLED_READ     = 3;
+    public static final int KIND_COMMAND            = 4;
+    public static final int KIND_REGISTER           = 5;
+    public static final int KIND_UNSUPPORTED        = 6;
+
+    private static final String[] KINDS = new String[] {
+            "write", "read", "unhandled write", "unhandled read", "command", "register", "unsupported"
+    };
+
+    /**
+     * default size of the ring, records
+     */
+    public static final int DEFAULT_SIZE = 1 << 14;
+
+    private static final VarHandle TAIL;
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(DeviceLog.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * cpu to take clocks from
+     */
+    private final Cpu cpu;
+
+    /**
+     * levels of devices, checked inline
+     */
+    final int[] levels = new int[DEVICES.length];
+
+    /**
+     * records: cpu clocks and packed event
+     * [51..48] level, [47..40] device, [39..32] kind, [31..16] port, [15..0] value
+     */
+    private final long[] clocks;
+    private final long[] events;
+    private final int mask;
+
+    /**
+     * next record to write, modified by cpu thread only
+     */
+    private long tail;
+
+    /**
+     * next record to format, modified by the reader only
+     */
+    private long head;
+    private long lost;
+
+    private final Logger[] loggers = new Logger[DEVICES.length];
+
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param cpu ref to cpu
+     * @param size size of the ring, power of 2, last size - 1 records are kept
+     */
+    public DeviceLog(Cpu cpu, int size)
+    {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be power of 2: " + size);
+        }
+        this.cpu = cpu;
+        this.clocks = new long[size];
+        this.events = new long[size];
+        this.mask = size - 1;
+        setLevel(WARN);
+    }
+
+    /**
+     * @param cpu ref to cpu
+     */
+    public DeviceLog(Cpu cpu) {
+        this(cpu, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param device device
+     * @param level new level
+     */
+    public void setLevel(int device, int level) {
+        levels[device] = level;
+    }
+
+    /**
+     * sets the same level for all devices
+     * @param level new level
+     */
+    public void setLevel(int level) {
+        for (int d = 0; d < levels.length; d++) {
+            levels[d] = level;
+        }
+    }
+
+    /**
+     * Records event if device level allows, called by devices on the cpu thread
+     * @param device device
+     * @param level level of the event
+     * @param kind kind of the event
+     * @param port port (or another 16 bit id)
+     * @param value value
+     */
+    public void add(int device, int level, int kind, int port, int value)
+    {
+        if (levels[device] < level) {
+            return;
+        }
+        long t = tail;
+        int index = (int) t & mask;
+        clocks[index] = cpu.clocks;
+        events[index] = ((long) level << 48) | ((long) device << 40) | ((long) kind << 32)
+                | ((port & 0xFFFFL) << 16) | (value & 0xFFFFL);
+        TAIL.setRelease(this, t + 1);
+    }
+
+    /**
+     * @return total number of records written
+     */
+    public long written() {
+        return (long) TAIL.getAcquire(this);
+    }
+
+    /**
+     * @return number of records overwritten before they were formatted
+     */
+    public long lost() {
+        return lost;
+    }
+
+    /**
+     * Formats the records not formatted yet, they are removed from the log,
+     * only one reader must be active (background thread or on demand calls)
+     * @param out consumer of formatted records and their levels
+     */
+    private synchronized void drain(Output out)
+    {
+        // the slot of record tail - size could be in use by the writer,
+        // so only size - 1 last records are available
+        long t = (long) TAIL.getAcquire(this);
+        if (t - head > mask) {
+            lost += t - head - mask;
+            head = t - mask;
+        }
+
+        long from = head;
+        int count = (int) (t - from);
+        long[] c = new long[count];
+        long[] e = new long[count];
+        for (int i = 0; i < count; i++) {
+            int index = (int) (from + i) & mask;
+            c[i] = clocks[index];
+            e[i] = events[index];
+        }
+
+        // records that were overwritten while copying are skipped,
+        // copying loads must not be reordered after the tail re-read
+        VarHandle.loadLoadFence();
+        long overwritten = (long) TAIL.getAcquire(this) - clocks.length + 1;
+        int skip = (int) Math.max(0, Math.min(count, overwritten - from));
+        lost += skip;
+        head = t;
+
+        for (int i = skip; i < count; i++) {
+            out.accept((int) (e[i] >>> 48) & 0xF, (int) (e[i] >>> 40) & 0xFF, format(c[i], e[i]));
+        }
+    }
+
+    private interface Output {
+        void accept(int level, int device, String text);
+    }
+
+    /**
+     * @return formatted record
+     */
+    static String format(long clocks, long event)
+    {
+        int device = (int) (event >>> 40) & 0xFF;
+        int kind = (int) (event >>> 32) & 0xFF;
+        int port = (int) (event >>> 16) & 0xFFFF;
+        int value = (int) event & 0xFFFF;
+
+        String name = (device < DEVICES.length) ? DEVICES[device] : Integer.toString(device);
+        String what = (kind < KINDS.length) ? KINDS[kind] : Integer.toString(kind);
+        switch (kind) {
+            case KIND_UNHANDLED_READ:
+                return String.format("%12d %s: %s [%04X]", clocks, name, what, port);
+            case KIND_REGISTER:
+                return String.format("%12d %s: %s [%02X] = %02X", clocks, name, what, port, value);
+            case KIND_UNSUPPORTED:
+                return String.format("%12d %s: %s %04X (%04X)", clocks, name, what, port, value);
+            default:
+                return String.format("%12d %s: %s [%04X] = %02X", clocks, name, what, port, value);
+        }
+    }
+
+    /**
+     * sends record to slf4j logger of the device
+     */
+    private void log(int level, int device, String text)
+    {
+        Logger logger = loggers[device];
+        if (logger == null) {
+            logger = loggers[device] = LoggerFactory.getLogger("x86emu.device." + DEVICES[device]);
+        }
+        if (level == WARN) {
+            logger.warn(text);
+        } else if (level == INFO) {
+            logger.info(text);
+        } else {
+            logger.debug(text);
+        }
+    }
+
+    /**
+     * formats pending records and sends them to slf4j
+     */
+    public void flush() {
+        drain(this::log);
+    }
+
+    /**
+     * formats pending records without logging them, could be used
+     * with the machine stopped or from the background thread only
+     * @return formatted records, oldest first
+     */
+    public List<String> dump()
+    {
+        List<String> lines = new ArrayList<>();
+        drain((level, device, text) -> lines.add(text));
+        return lines;
+    }
+
+    /**
+     * starts background thread that sends records to slf4j
+     * @param periodMillis period of drains
+     */
+    public void start(long periodMillis)
+    {
+        if (thread != null) {
+            throw new IllegalStateException("log is already started");
+        }
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(periodMillis));
+                flush();
+            }
+            flush();
+        }, "device-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * stops background thread, pending records are logged
+     */
+    public void stop()
+    {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+}
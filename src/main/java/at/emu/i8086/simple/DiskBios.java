@@ -0,0 +1,255 @@
+package at.emu.i8086.simple;
+
+/**
+ * High level INT 13h implementation over disk images,
+ * replaces bios routines and floppy controller programming when installed.
+ * Floppies are taken from the controller drives (0x00..0x03),
+ * hard disks (0x80..) are only available via this trap.
+ * Trap is skipped when the vector points below the rom (hooked by guest or dos),
+ * so the hook runs and chains to rom bios code.
+ *
+ * Functions (AH)
+ *   0x00 reset
+ *   0x01 status of the last operation
+ *   0x02 read sectors       AL count, CH cylinder, CL sector (bits 7-6 cylinder high), DH head, ES:BX buffer
+ *   0x03 write sectors      same
+ *   0x04 verify sectors     same, no data transfer
+ *   0x08 drive parameters   CH/CL max cylinder and sector, DH max head, DL number of drives
+ *   0x15 disk type          AH 1 - floppy without change line, 3 - hard disk (CX:DX sectors)
+ *   0x16 disk change        AH 0 - not changed
+ * CF is set on error, AH has status.
+ */
+public class DiskBios implements Cpu.InterruptTrap
+{
+    public static final int STATUS_OK               = 0x00;
+    public static final int STATUS_BAD_COMMAND      = 0x01;
+    public static final int STATUS_WRITE_PROTECTED  = 0x03;
+    public static final int STATUS_NOT_FOUND        = 0x04;
+    public static final int STATUS_DMA_OVERRUN      = 0x08;
+    public static final int STATUS_BOUNDARY         = 0x09;
+    public static final int STATUS_TIMEOUT          = 0x80;
+
+    /**
+     * bios data area: floppy and hard disk status, number of hard disks
+     */
+    private static final int BDA_FLOPPY_STATUS  = 0x441;
+    private static final int BDA_DISK_STATUS    = 0x474;
+    private static final int BDA_DISK_COUNT     = 0x475;
+
+    /**
+     * segment of the bios rom, vector below it is a guest handler
+     */
+    private static final int ROM_SEGMENT = 0xF000;
+
+    private final NEC765 fdc;
+    private final DiskImage[] hardDisks;
+
+    /**
+     * status of the last operation per drive type
+     */
+    private int floppyStatus;
+    private int diskStatus;
+
+    /**
+     * @param fdc controller with floppy drives
+     * @param hardDisks hard disk images, could be empty
+     */
+    public DiskBios(NEC765 fdc, DiskImage... hardDisks) {
+        this.fdc = fdc;
+        this.hardDisks = hardDisks;
+    }
+
+    /**
+     * installs trap into cpu
+     * @param cpu ref to cpu
+     */
+    public void install(Cpu cpu) {
+        cpu.traps[Cpu.INT_13_DISK] = this;
+    }
+
+    /**
+     * @param drive bios drive number (DL)
+     * @return image or null if there is no disk
+     */
+    private DiskImage image(int drive)
+    {
+        if ((drive & 0x80) == 0) {
+            return (drive < fdc.drives.length) ? fdc.drives[drive] : null;
+        }
+        drive &= 0x7F;
+        return (drive < hardDisks.length) ? hardDisks[drive] : null;
+    }
+
+    @Override
+    public boolean trap(Cpu cpu)
+    {
+        byte[] m = cpu.memory;
+        int[] r = cpu.registers;
+
+        // guest (or dos) has hooked the vector, leave it alone
+        int vector = Cpu.INT_13_DISK * 4 + 2;
+        if (((m[vector] & 0xFF) | ((m[vector + 1] & 0xFF) << 8)) < ROM_SEGMENT) {
+            return false;
+        }
+
+        int function = (r[Cpu.AX] >> 8) & 0xFF;
+        int drive = r[Cpu.DX] & 0xFF;
+        boolean hard = (drive & 0x80) != 0;
+        DiskImage disk = image(drive);
+
+        // hard disks count is kept up to date as bios post overwrites it
+        cpu.memory[BDA_DISK_COUNT] = (byte) hardDisks.length;
+
+        int status;
+        switch (function)
+        {
+            case 0x00:
+                status = STATUS_OK;
+                break;
+
+            case 0x01:
+                // last status is not changed by this function
+                finish(cpu, hard, hard ? diskStatus : floppyStatus, false);
+                return true;
+
+            case 0x02:
+            case 0x03:
+            case 0x04:
+                status = transfer(cpu, disk, function);
+                break;
+
+            case 0x08:
+                if (disk == null) {
+                    status = STATUS_NOT_FOUND;
+                    break;
+                }
+                int maxCylinder = disk.cylinders - 1;
+                r[Cpu.CX] = ((maxCylinder & 0xFF) << 8) | ((maxCylinder >> 2) & 0xC0) | (disk.sectors & 0x3F);
+                r[Cpu.DX] = ((disk.heads - 1) << 8) | (hard ? hardDisks.length : count(fdc.drives));
+                if (!hard) {
+                    // drive type in BL (1 - 360K, 2 - 1.2M, 3 - 720K, 4 - 1.44M)
+                    int type = (disk.sectors == 15) ? 2 : (disk.sectors == 18) ? 4 : (disk.cylinders == 80) ? 3 : 1;
+                    cpu.writeRegister8(0b011, type);
+                }
+                status = STATUS_OK;
+                break;
+
+            case 0x15:
+                finish(cpu, hard, STATUS_OK, false);
+                // AH is disk type here: 0 - no disk, 1 - floppy, 3 - hard disk
+                if (disk == null) {
+                    cpu.writeRegister8(0b100, 0);
+                } else if (hard) {
+                    r[Cpu.CX] = disk.size() >>> 16;
+                    r[Cpu.DX] = disk.size() & 0xFFFF;
+                    cpu.writeRegister8(0b100, 3);
+                } else {
+                    cpu.writeRegister8(0b100, 1);
+                }
+                return true;
+
+            case 0x16:
+                status = (disk == null) ? STATUS_TIMEOUT : STATUS_OK;
+                break;
+
+            default:
+                status = STATUS_BAD_COMMAND;
+        }
+
+        finish(cpu, hard, status, true);
+        return true;
+    }
+
+    /**
+     * reads, writes or verifies sectors directly between image and memory
+     * @param cpu ref to cpu
+     * @param disk image
+     * @param function 2 - read, 3 - write, 4 - verify
+     * @return status
+     */
+    private int transfer(Cpu cpu, DiskImage disk, int function)
+    {
+        if (disk == null) {
+            return STATUS_TIMEOUT;
+        }
+
+        int[] r = cpu.registers;
+        int count = r[Cpu.AX] & 0xFF;
+        int cylinder = ((r[Cpu.CX] >> 8) & 0xFF) | ((r[Cpu.CX] & 0xC0) << 2);
+        int sector = r[Cpu.CX] & 0x3F;
+        int head = (r[Cpu.DX] >> 8) & 0xFF;
+
+        int lba = disk.lba(cylinder, head, sector);
+        if ((count == 0) || (lba == -1) || (disk.size() < lba + count)) {
+            cpu.writeRegister8(0b000, 0);
+            return STATUS_NOT_FOUND;
+        }
+
+        int address = (cpu.segments[Cpu.ES] << 4) + r[Cpu.BX];
+        int size = count * DiskImage.SECTOR_SIZE;
+        if (cpu.memory.length < address + size) {
+            // buffer above the end of memory
+            cpu.writeRegister8(0b000, 0);
+            return STATUS_DMA_OVERRUN;
+        }
+        if ((function != 0x04) && ((address & 0xFFFF) + size > 0x10000)) {
+            // dma can't cross 64K page
+            cpu.writeRegister8(0b000, 0);
+            return STATUS_BOUNDARY;
+        }
+
+        if (function == 0x02) {
+            disk.read(lba, count, cpu.memory, address);
+        } else if (function == 0x03) {
+            if (disk.readOnly) {
+                cpu.writeRegister8(0b000, 0);
+                return STATUS_WRITE_PROTECTED;
+            }
+            disk.write(lba, count, cpu.memory, address);
+        }
+        // AL keeps number of sectors transferred
+        return STATUS_OK;
+    }
+
+    /**
+     * sets AH, CF and bios data area status
+     * @param cpu ref to cpu
+     * @param hard true for hard disk
+     * @param status status for AH and CF
+     * @param save true to save status as the last one
+     */
+    private void finish(Cpu cpu, boolean hard, int status, boolean save)
+    {
+        if (save) {
+            if (hard) {
+                diskStatus = status;
+                cpu.memory[BDA_DISK_STATUS] = (byte) status;
+            } else {
+                floppyStatus = status;
+                cpu.memory[BDA_FLOPPY_STATUS] = (byte) status;
+            }
+        }
+        cpu.writeRegister8(0b100, status);
+
+        if (status == STATUS_OK) {
+            cpu.flags &= ~Cpu.FLAG_CF;
+        } else {
+            cpu.flags |= Cpu.FLAG_CF;
+        }
+    }
+
+    /**
+     * @param drives drives
+     * @return number of non empty drives
+     */
+    private static int count(DiskImage[] drives)
+    {
+        int count = 0;
+        for (DiskImage drive : drives) {
+            if (drive != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,293 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Raw disk image (floppy or hard disk) with chs geometry,
+ * devices access sectors directly in the buffers provided by
+ * the implementation: memory mapped file ({@link Mapped})
+ * or track cache ({@link CachedDisk})
+ */
+public abstract class DiskImage implements AutoCloseable
+{
+    public static final int SECTOR_SIZE = 512;
+
+    /**
+     * standard floppy formats: size in KB, cylinders, heads, sectors per track
+     */
+    private static final int[][] FLOPPIES = new int[][] {
+            { 160, 40, 1,  8},
+            { 180, 40, 1,  9},
+            { 320, 40, 2,  8},
+            { 360, 40, 2,  9},
+            { 720, 80, 2,  9},
+            {1200, 80, 2, 15},
+            {1440, 80, 2, 18},
+            {2880, 80, 2, 36}
+    };
+
+    /**
+     * geometry
+     */
+    final int cylinders;
+    final int heads;
+    final int sectors;
+
+    final boolean readOnly;
+
+    /**
+     * @param readOnly true to disable writes
+     * @param cylinders number of cylinders
+     * @param heads number of heads
+     * @param sectors number of sectors per track
+     */
+    protected DiskImage(boolean readOnly, int cylinders, int heads, int sectors)
+    {
+        this.readOnly = readOnly;
+        this.cylinders = cylinders;
+        this.heads = heads;
+        this.sectors = sectors;
+    }
+
+    /**
+     * Opens floppy image mapped into memory, geometry is detected by the file size
+     * @param path image file
+     * @param readOnly true to disable writes
+     * @return image
+     * @throws IOException if any
+     */
+    public static DiskImage floppy(Path path, boolean readOnly) throws IOException
+    {
+        FileChannel channel = open(path, readOnly);
+        int[] g = floppyGeometry(channel);
+        return new Mapped(channel, readOnly, g[0], g[1], g[2]);
+    }
+
+    /**
+     * Opens hard disk image mapped into memory, image must fit into one mapping (2G),
+     * larger ones could be opened with {@link CachedDisk}
+     * @param path image file
+     * @param readOnly true to disable writes
+     * @param cylinders number of cylinders (up to 1024)
+     * @param heads number of heads (up to 255)
+     * @param sectors number of sectors per track (up to 63)
+     * @return image
+     * @throws IOException if any
+     */
+    public static DiskImage hardDisk(Path path, boolean readOnly, int cylinders, int heads, int sectors) throws IOException
+    {
+        FileChannel channel = open(path, readOnly);
+        checkGeometry(channel, cylinders, heads, sectors);
+        long size = (long) cylinders * heads * sectors * SECTOR_SIZE;
+        if (Integer.MAX_VALUE < size) {
+            channel.close();
+            throw new IllegalArgumentException("image is too large to be mapped: " + size + ", use CachedDisk");
+        }
+        return new Mapped(channel, readOnly, cylinders, heads, sectors);
+    }
+
+    /**
+     * @param channel image channel, closed on error
+     * @return cylinders, heads and sectors of standard floppy of the channel size
+     * @throws IOException if any
+     */
+    static int[] floppyGeometry(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        for (int[] f : FLOPPIES) {
+            if (size == f[0] * 1024L) {
+                return new int[] {f[1], f[2], f[3]};
+            }
+        }
+        channel.close();
+        throw new IllegalArgumentException("unsupported floppy image size: " + size);
+    }
+
+    /**
+     * checks hard disk geometry against limits and image size
+     * @param channel image channel, closed on error
+     * @throws IOException if any
+     */
+    static void checkGeometry(FileChannel channel, int cylinders, int heads, int sectors) throws IOException
+    {
+        if ((cylinders < 1) || (1024 < cylinders) || (heads < 1) || (255 < heads) || (sectors < 1) || (63 < sectors)) {
+            channel.close();
+            throw new IllegalArgumentException("unsupported geometry: " + cylinders + "/" + heads + "/" + sectors);
+        }
+        if (channel.size() < (long) cylinders * heads * sectors * SECTOR_SIZE) {
+            long size = channel.size();
+            channel.close();
+            throw new IllegalArgumentException("image is smaller than geometry: " + size);
+        }
+    }
+
+    static FileChannel open(Path path, boolean readOnly) throws IOException
+    {
+        if (readOnly) {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } else {
+            return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * @param cylinder cylinder
+     * @param head head
+     * @param sector sector, 1 based
+     * @return logical sector number or -1 if chs is out of the disk
+     */
+    public int lba(int cylinder, int head, int sector)
+    {
+        if ((cylinders <= cylinder) || (heads <= head) || (sector < 1) || (sectors < sector)) {
+            return -1;
+        }
+        return (cylinder * heads + head) * sectors + sector - 1;
+    }
+
+    /**
+     * @return total number of sectors
+     */
+    public int size() {
+        return cylinders * heads * sectors;
+    }
+
+    /**
+     * Provides buffer with the sector data, it's only valid
+     * till the next access to another sector
+     * @param lba logical sector number
+     * @return buffer with the sector at {@link #offset(int)}
+     */
+    abstract ByteBuffer buffer(int lba);
+
+    /**
+     * @param lba logical sector number
+     * @return offset of the sector in the {@link #buffer(int)}
+     */
+    abstract int offset(int lba);
+
+    /**
+     * marks sector modified after direct write into its buffer
+     * @param lba logical sector number
+     */
+    abstract void modified(int lba);
+
+    /**
+     * copies sectors into memory
+     * @param lba first sector
+     * @param count number of sectors
+     * @param memory destination
+     * @param address address in the destination
+     */
+    public void read(int lba, int count, byte[] memory, int address)
+    {
+        for (int i = 0; i < count; i++) {
+            buffer(lba + i).get(offset(lba + i), memory, address + i * SECTOR_SIZE, SECTOR_SIZE);
+        }
+    }
+
+    /**
+     * copies sectors from memory
+     * @param lba first sector
+     * @param count number of sectors
+     * @param memory source
+     * @param address address in the source
+     */
+    public void write(int lba, int count, byte[] memory, int address)
+    {
+        if (readOnly) {
+            throw new IllegalStateException("image is read only");
+        }
+        for (int i = 0; i < count; i++) {
+            buffer(lba + i).put(offset(lba + i), memory, address + i * SECTOR_SIZE, SECTOR_SIZE);
+            modified(lba + i);
+        }
+    }
+
+    /**
+     * writes modified data back to the file
+     */
+    public abstract void flush();
+
+    /**
+     * writes modified data back and closes the file
+     * @throws IOException if any
+     */
+    @Override
+    public abstract void close() throws IOException;
+
+    /**
+     * Image mapped into memory as a whole,
+     * writes reach the file on {@link #flush()}
+     */
+    public static class Mapped extends DiskImage
+    {
+        /**
+         * mapped image and its channel
+         */
+        final MappedByteBuffer buffer;
+        private final FileChannel channel;
+
+        /**
+         * true if image was modified after the last flush
+         */
+        private boolean dirty;
+
+        Mapped(FileChannel channel, boolean readOnly, int cylinders, int heads, int sectors) throws IOException
+        {
+            super(readOnly, cylinders, heads, sectors);
+            this.channel = channel;
+            this.buffer = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                    0, (long) cylinders * heads * sectors * SECTOR_SIZE);
+        }
+
+        @Override
+        ByteBuffer buffer(int lba) {
+            return buffer;
+        }
+
+        @Override
+        int offset(int lba) {
+            return lba * SECTOR_SIZE;
+        }
+
+        @Override
+        void modified(int lba) {
+            dirty = true;
+        }
+
+        @Override
+        public void read(int lba, int count, byte[] memory, int address) {
+            buffer.get(offset(lba), memory, address, count * SECTOR_SIZE);
+        }
+
+        @Override
+        public void write(int lba, int count, byte[] memory, int address)
+        {
+            if (readOnly) {
+                throw new IllegalStateException("image is read only");
+            }
+            buffer.put(offset(lba), memory, address, count * SECTOR_SIZE);
+            dirty = true;
+        }
+
+        @Override
+        public void flush()
+        {
+            if (dirty) {
+                buffer.force();
+                dirty = false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+}
@@ -3,66 +3,119 @@ package at.emu.i8086.simple;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 /**
- * Some kind of visualization
+ * Some kind of visualization.
+ * Frames are rendered by the video adapter on the emulator thread at vertical
+ * retrace and handed off to the render thread via lock free triple buffer,
+ * so the emulator never waits for the screen. Render thread is paced
+ * by the new frames (or configured fps) and draws the latest one.
  */
-public class Display extends JFrame {
+public class Display extends JFrame implements CGA.VsyncListener
+{
+    public static int BUFFER_WIDTH = CGATextRenderer.SCREEN_WIDTH;
+    public static int BUFFER_HEIGHT = CGATextRenderer.SCREEN_HEIGHT;
 
-    public void BaseGraphics()
-    {
+    /**
+     * flag of the middle buffer index, marks frame not seen by the render thread
+     */
+    private static final int FRESH = 0b100;
 
-        // init window
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(getDimension());
-        setVisible(true);
+    /**
+     * max time render thread waits for a frame in vsync mode,
+     * keeps overlay updated when the screen doesn't change
+     */
+    private static final long IDLE_NANOS = 100_000_000L;
 
-        // set up buffering
-        try {
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-        }
-        createBufferStrategy(2);
-        BufferStrategy strategy = getBufferStrategy();
+    /**
+     * video adapter to render frames from
+     */
+    private final CGA cga;
 
-        // Main loop
-        while (true) {
+    /**
+     * source of the executed instructions counter
+     */
+    private final LongSupplier instructions;
 
-            // Prepare for rendering the next frame
+    /**
+     * frames per second to draw, 0 to follow frames from the adapter
+     */
+    private final int fps;
 
-            // Render single frame
-            do {
-                // The following loop ensures that the contents of the drawing buffer
-                // are consistent in case the underlying surface was recreated
-                do {
-                    // Get a new graphics context every time through the loop
-                    // to make sure the strategy is validated
-                    Graphics graphics = strategy.getDrawGraphics();
+    /**
+     * internal array for direct drawing,
+     * adapter renders here incrementally (emulator thread)
+     */
+    int[] buffer;
 
-                    // Render to graphics
-                    draw(graphics);
+    /**
+     * frames for hand off, indexes of back (emulator thread),
+     * front (render thread) and middle (shared) ones
+     */
+    private final int[][] frames = new int[3][];
+    private int back = 0;
+    private int front = 1;
+    private final AtomicInteger middle = new AtomicInteger(2);
 
-                    // Dispose the graphics
-                    graphics.dispose();
+    /**
+     * instructions counter sampled at the last retrace
+     */
+    private volatile long frameInstructions;
 
-                    // Repeat the rendering if the drawing buffer contents
-                    // were restored
-                } while (strategy.contentsRestored());
+    /**
+     * magic classes to perform quick buffer drawing,
+     * image is drawn by the render thread only
+     */
+    ColorModel colorModel;
+    SampleModel sm;
+    DataBuffer dBuffer;
+    WritableRaster raster;
+    BufferedImage image;
+    int[] pixels;
+    /**
+     * cached reference to font
+     */
+    Font font;
 
-                // Display the buffer
-                strategy.show();
+    /**
+     * render thread
+     */
+    private Thread thread;
+    private volatile boolean running;
 
-                // Repeat the rendering if the drawing buffer was lost
-            } while (strategy.contentsLost());
-        }
+    /**
+     * measured values for the overlay
+     */
+    private double measuredFps;
+    private double measuredMips;
 
-        // Dispose the window
-        //setVisible(false);
-        //dispose();
+    /**
+     * @param machine machine to display video adapter of
+     */
+    public Display(Machine machine)
+    {
+        this(machine.cpu.video, machine::instructions, 0);
+        // key events are the only producer of scan codes
+        setFocusTraversalKeysEnabled(false);
+        addKeyListener(new AwtKeyboard(machine.cpu.keyboard));
     }
 
-    public static int BUFFER_WIDTH = 800;
-    public static int BUFFER_HEIGHT = 600;
+    /**
+     * @param cga video adapter
+     * @param instructions source of the executed instructions counter
+     * @param fps frames per second to draw, 0 to draw on each new frame
+     */
+    public Display(CGA cga, LongSupplier instructions, int fps)
+    {
+        super("x86emu");
+        this.cga = cga;
+        this.instructions = instructions;
+        this.fps = fps;
+        initModelState();
+    }
 
     /**
      * @return buffer dimensions for the underlying impl
@@ -72,75 +125,168 @@ public class Display extends JFrame {
     }
 
     /**
-     *
-     * called to render the frame
-     * @param g graphics
+     * shows window, starts render thread and subscribes for frames
      */
-    protected void draw(Graphics g) {
+    public void start()
+    {
+        // init window
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setIgnoreRepaint(true);
+        setVisible(true);
+        Insets insets = getInsets();
+        Dimension size = getDimension();
+        setSize(size.width + insets.left + insets.right, size.height + insets.top + insets.bottom);
 
-        // draw points to buffer
-        // draw buffer
-        BufferedImage img = new BufferedImage(colorModel, raster, false, null);
-        g.drawImage(img, 0, 0, null);
+        // set up buffering
+        createBufferStrategy(2);
 
-        // draw fps
-        g.setFont(font);
-        g.setColor(Color.WHITE);
-        g.drawString("fps: "  + 1000,10,40);
+        running = true;
+        thread = new Thread(this::renderLoop, "display");
+        thread.setDaemon(true);
+        thread.start();
+
+        cga.setVsyncListener(this);
     }
 
     /**
-     * internal array for direct drawing,
-     * app will draw points here
+     * stops render thread and closes window
      */
-    int[] buffer;
+    public void stop()
+    {
+        cga.setVsyncListener(null);
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        dispose();
+    }
 
     /**
-     * magic classes to perform quick buffer drawing
+     * Called on the emulator thread at the start of vertical retrace,
+     * renders changes into the buffer and publishes a copy if anything was drawn
+     * @param frame number of the frame
      */
-    ColorModel colorModel;
-    SampleModel sm;
-    DataBuffer dBuffer;
-    WritableRaster raster;
+    @Override
+    public void vsync(long frame)
+    {
+        frameInstructions = instructions.getAsLong();
+
+        if (!cga.render(buffer, 0, BUFFER_WIDTH, frame)) {
+            return;
+        }
+
+        System.arraycopy(buffer, 0, frames[back], 0, buffer.length);
+        back = middle.getAndSet(back | FRESH) & 0b11;
+
+        if (fps == 0) {
+            LockSupport.unpark(thread);
+        }
+    }
+
     /**
-     * cached reference to font
+     * render thread main loop
      */
-    Font font;
+    private void renderLoop()
+    {
+        BufferStrategy strategy = getBufferStrategy();
+        long period = (fps == 0) ? IDLE_NANOS : 1_000_000_000L / fps;
+        long next = System.nanoTime();
+
+        long statNanos = next;
+        long statInstructions = frameInstructions;
+        int statFrames = 0;
+
+        while (running)
+        {
+            if ((middle.get() & FRESH) != 0) {
+                front = middle.getAndSet(front) & 0b11;
+                System.arraycopy(frames[front], 0, pixels, 0, pixels.length);
+                statFrames++;
+            }
+
+            long now = System.nanoTime();
+            if (now - statNanos >= 1_000_000_000L) {
+                long executed = frameInstructions;
+                measuredFps = statFrames * 1e9 / (now - statNanos);
+                measuredMips = (executed - statInstructions) * 1e3 / (now - statNanos);
+                statNanos = now;
+                statInstructions = executed;
+                statFrames = 0;
+            }
+
+            // Render single frame
+            do {
+                // The following loop ensures that the contents of the drawing buffer
+                // are consistent in case the underlying surface was recreated
+                do {
+                    Graphics graphics = strategy.getDrawGraphics();
+                    draw(graphics);
+                    graphics.dispose();
+                } while (strategy.contentsRestored());
+
+                strategy.show();
+            } while (strategy.contentsLost());
+
+            if (fps == 0) {
+                // woken up by the next frame
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+            else {
+                next += period;
+                long delay = next - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(this, delay);
+                } else {
+                    // too slow, don't try to catch up
+                    next = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * called to render the frame
+     * @param g graphics
+     */
+    protected void draw(Graphics g)
+    {
+        Insets insets = getInsets();
+        g.drawImage(image, insets.left, insets.top,
+                getWidth() - insets.left - insets.right,
+                getHeight() - insets.top - insets.bottom, null);
 
+        // draw fps and emulation speed
+        g.setFont(font);
+        g.setColor(Color.WHITE);
+        g.drawString(String.format("fps: %.1f  mips: %.2f", measuredFps, measuredMips),
+                insets.left + 10, getHeight() - insets.bottom - 10);
+    }
 
     /**
      * called to initialize model state,
      * sets up buffer and other 2d stuff
      */
-    protected void initModelState() {
-
-        // allocate buffer for direct drawing
+    protected void initModelState()
+    {
+        // allocate buffers for direct drawing and hand off
         buffer = new int[BUFFER_WIDTH * BUFFER_HEIGHT];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new int[buffer.length];
+        }
 
-        // init *magic* stuff
+        // init *magic* stuff, image is reused for all frames
+        pixels = new int[buffer.length];
         colorModel = new DirectColorModel(32, 0xFF0000, 0xFF00, 0xFF);
-        dBuffer = new DataBufferInt(buffer, buffer.length);
+        dBuffer = new DataBufferInt(pixels, pixels.length);
         sm = colorModel.createCompatibleSampleModel(BUFFER_WIDTH, BUFFER_HEIGHT);
         raster = Raster.createWritableRaster(sm, dBuffer, null);
+        image = new BufferedImage(colorModel, raster, false, null);
         font = Font.decode("Arial");
-
-
-
-/*
-            GraphicsConfiguration gfxConfig = GraphicsEnvironment.
-                    getLocalGraphicsEnvironment().getDefaultScreenDevice().
-                    getDefaultConfiguration();
-
-            BufferedImage newImage = gfxConfig.createCompatibleImage(
-                    image.getWidth(), image.getHeight(), image.getTransparency());
-
-            Graphics2D g2d = newImage.createGraphics();
-
-            // actually draw the image and dispose of context no longer needed
-            g2d.drawImage(image, 0, 0, null);
-            g2d.dispose();
-*/
-
     }
-
 }
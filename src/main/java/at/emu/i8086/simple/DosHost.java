@@ -0,0 +1,645 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * High level INT 21h (and INT 20h) to run dos programs without dos itself,
+ * files are mapped into a sandbox host directory (all drives are the same),
+ * console is mapped to host streams. File data is copied directly between
+ * host channels and cpu memory.
+ *
+ * Functions (AH)
+ *   0x00 terminate, same as int 20h
+ *   0x01 read character with echo          returns AL
+ *   0x02 write character                   DL
+ *   0x06 direct console i/o                DL character or 0xFF to read (ZF is set if there is no input)
+ *   0x07 read character without echo      returns AL
+ *   0x08 read character without echo      same
+ *   0x09 write string                      DS:DX string ended with '$'
+ *   0x0A buffered input                    DS:DX buffer (max, count, characters)
+ *   0x0B input status                      returns AL 0xFF if character is available
+ *   0x0E select drive                      returns AL number of drives
+ *   0x19 get current drive                 returns AL (always C:)
+ *   0x25 set interrupt vector              AL number, DS:DX handler
+ *   0x30 get version                       returns AL major, AH minor
+ *   0x35 get interrupt vector              AL number, returns ES:BX
+ *   0x3C create file                       DS:DX name, returns AX handle
+ *   0x3D open file                         DS:DX name, AL access (0 - read, 1 - write, 2 - both), returns AX handle
+ *   0x3E close file                        BX handle
+ *   0x3F read                              BX handle, CX count, DS:DX buffer, returns AX bytes read
+ *   0x40 write                             BX handle, CX count (0 truncates), DS:DX buffer, returns AX bytes written
+ *   0x41 delete file                       DS:DX name
+ *   0x42 seek                              BX handle, AL origin, CX:DX offset, returns DX:AX position
+ *   0x47 get current directory             DS:SI buffer (always root)
+ *   0x4C terminate with return code        AL code
+ * CF is set on error of the handle functions, AX has error code.
+ */
+public class DosHost implements Cpu.InterruptTrap
+{
+    public static final int ERROR_INVALID_FUNCTION  = 0x01;
+    public static final int ERROR_FILE_NOT_FOUND    = 0x02;
+    public static final int ERROR_PATH_NOT_FOUND    = 0x03;
+    public static final int ERROR_TOO_MANY_FILES    = 0x04;
+    public static final int ERROR_ACCESS_DENIED     = 0x05;
+    public static final int ERROR_INVALID_HANDLE    = 0x06;
+    public static final int ERROR_INVALID_ACCESS    = 0x0C;
+
+    /**
+     * max number of handles including standard devices
+     */
+    public static final int HANDLES = 20;
+
+    /**
+     * standard handles: stdin, stdout, stderr, aux, prn
+     */
+    private static final int STANDARD_HANDLES = 5;
+
+    /**
+     * max length of dos path including drive and terminating zero
+     */
+    private static final int MAX_PATH = 128;
+
+    /**
+     * sandbox directory
+     */
+    private final Path root;
+
+    /**
+     * console streams
+     */
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * opened files by handle, standard ones are always null
+     */
+    private final FileChannel[] files = new FileChannel[HANDLES];
+
+    /**
+     * true after program termination
+     */
+    private boolean terminated;
+    private int exitCode;
+
+    /**
+     * @param root sandbox directory for all files
+     * @param in console input
+     * @param out console output
+     */
+    public DosHost(Path root, InputStream in, OutputStream out)
+    {
+        this.root = root.toAbsolutePath().normalize();
+        this.in = in;
+        this.out = out;
+    }
+
+    /**
+     * installs traps for int 21h and int 20h (terminate) into cpu
+     * @param cpu ref to cpu
+     */
+    public void install(Cpu cpu) {
+        cpu.traps[Cpu.INT_20_DOS_TERMINATE] = c -> {
+            terminate(c, 0);
+            return true;
+        };
+        cpu.traps[Cpu.INT_21_DOS] = this;
+    }
+
+    /**
+     * @return true if program has terminated
+     */
+    public boolean terminated() {
+        return terminated;
+    }
+
+    /**
+     * @return return code of the terminated program
+     */
+    public int exitCode() {
+        return exitCode;
+    }
+
+    @Override
+    public boolean trap(Cpu cpu)
+    {
+        int[] r = cpu.registers;
+        int function = (r[Cpu.AX] >> 8) & 0xFF;
+        try {
+            switch (function)
+            {
+                case 0x00:
+                    terminate(cpu, 0);
+                    break;
+
+                case 0x01:
+                    cpu.writeRegister8(0b000, input(true));
+                    break;
+
+                case 0x02:
+                    out.write(r[Cpu.DX] & 0xFF);
+                    break;
+
+                case 0x06:
+                    if ((r[Cpu.DX] & 0xFF) != 0xFF) {
+                        out.write(r[Cpu.DX] & 0xFF);
+                    } else if (0 < in.available()) {
+                        cpu.writeRegister8(0b000, input(false));
+                        cpu.flags &= ~Cpu.FLAG_ZF;
+                    } else {
+                        cpu.writeRegister8(0b000, 0);
+                        cpu.flags |= Cpu.FLAG_ZF;
+                    }
+                    break;
+
+                case 0x07:
+                case 0x08:
+                    cpu.writeRegister8(0b000, input(false));
+                    break;
+
+                case 0x09:
+                    // string wraps inside of the segment and is limited by its size
+                    for (int i = 0; i < 0x10000; i++) {
+                        byte c = cpu.memory[address(cpu, Cpu.DS, (r[Cpu.DX] + i) & 0xFFFF)];
+                        if (c == '$') {
+                            break;
+                        }
+                        out.write(c);
+                    }
+                    break;
+
+                case 0x0A:
+                    bufferedInput(cpu, address(cpu, Cpu.DS, r[Cpu.DX]));
+                    break;
+
+                case 0x0B:
+                    cpu.writeRegister8(0b000, (0 < in.available()) ? 0xFF : 0);
+                    break;
+
+                case 0x0E:
+                    cpu.writeRegister8(0b000, 3);
+                    break;
+
+                case 0x19:
+                    cpu.writeRegister8(0b000, 2);
+                    break;
+
+                case 0x25: {
+                    int vector = (r[Cpu.AX] & 0xFF) * 4;
+                    write16(cpu.memory, vector, r[Cpu.DX]);
+                    write16(cpu.memory, vector + 2, cpu.segments[Cpu.DS]);
+                    break;
+                }
+
+                case 0x30:
+                    r[Cpu.AX] = 0x0005;
+                    r[Cpu.BX] = 0;
+                    r[Cpu.CX] = 0;
+                    break;
+
+                case 0x35: {
+                    int vector = (r[Cpu.AX] & 0xFF) * 4;
+                    r[Cpu.BX] = read16(cpu.memory, vector);
+                    cpu.writeSegment(Cpu.ES, read16(cpu.memory, vector + 2));
+                    break;
+                }
+
+                case 0x3C:
+                    open(cpu, name(cpu), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    break;
+
+                case 0x3D:
+                    switch (r[Cpu.AX] & 0b111) {
+                        case 0: open(cpu, name(cpu), StandardOpenOption.READ); break;
+                        case 1: open(cpu, name(cpu), StandardOpenOption.WRITE); break;
+                        case 2: open(cpu, name(cpu), StandardOpenOption.READ, StandardOpenOption.WRITE); break;
+                        default: error(cpu, ERROR_INVALID_ACCESS);
+                    }
+                    break;
+
+                case 0x3E:
+                    close(cpu);
+                    break;
+
+                case 0x3F:
+                    read(cpu);
+                    break;
+
+                case 0x40:
+                    write(cpu);
+                    break;
+
+                case 0x41: {
+                    Path path = name(cpu);
+                    if (path == null) {
+                        error(cpu, ERROR_PATH_NOT_FOUND);
+                    } else if (Files.isDirectory(path)) {
+                        error(cpu, ERROR_ACCESS_DENIED);
+                    } else {
+                        Files.delete(path);
+                        success(cpu);
+                    }
+                    break;
+                }
+
+                case 0x42:
+                    seek(cpu);
+                    break;
+
+                case 0x47:
+                    cpu.memory[address(cpu, Cpu.DS, r[Cpu.SI])] = 0;
+                    success(cpu);
+                    break;
+
+                case 0x4C:
+                    terminate(cpu, r[Cpu.AX] & 0xFF);
+                    break;
+
+                default:
+                    cpu.log.add(DeviceLog.DOS, DeviceLog.WARN, DeviceLog.KIND_UNSUPPORTED, function, r[Cpu.AX]);
+                    error(cpu, ERROR_INVALID_FUNCTION);
+            }
+        }
+        catch (NoSuchFileException e) {
+            error(cpu, ERROR_FILE_NOT_FOUND);
+        }
+        catch (IOException e) {
+            error(cpu, ERROR_ACCESS_DENIED);
+        }
+        return true;
+    }
+
+    /**
+     * stops machine with the program return code, opened files are closed
+     * @param cpu ref to cpu
+     * @param code return code
+     */
+    private void terminate(Cpu cpu, int code)
+    {
+        terminated = true;
+        exitCode = code;
+        closeAll();
+        try {
+            out.flush();
+        } catch (IOException ignored) {
+        }
+        // halted forever, run loop ends right after the current instruction
+        cpu.flags &= ~Cpu.FLAG_IF;
+        cpu.hlt = true;
+        cpu.raiseEvent(Cpu.EVENT_STOP);
+    }
+
+    /**
+     * closes all the files opened by the program
+     */
+    public void closeAll()
+    {
+        for (int h = STANDARD_HANDLES; h < HANDLES; h++) {
+            if (files[h] != null) {
+                try {
+                    files[h].close();
+                } catch (IOException ignored) {
+                }
+                files[h] = null;
+            }
+        }
+    }
+
+    /**
+     * reads one character from console, end of input is returned as ctrl-z
+     * @param echo true to echo character
+     * @return character
+     */
+    private int input(boolean echo) throws IOException
+    {
+        out.flush();
+        int c = in.read();
+        if (c == -1) {
+            return 0x1A;
+        }
+        if (echo) {
+            out.write(c);
+        }
+        return c;
+    }
+
+    /**
+     * reads line into dos input buffer, line is ended with cr
+     * @param cpu ref to cpu
+     * @param buffer address of the buffer
+     */
+    private void bufferedInput(Cpu cpu, int buffer) throws IOException
+    {
+        byte[] m = cpu.memory;
+        int max = m[buffer] & 0xFF;
+        if (max == 0) {
+            return;
+        }
+
+        out.flush();
+        int count = 0;
+        int c;
+        while (((c = in.read()) != -1) && (c != '\n')) {
+            if ((c != '\r') && (count < max - 1)) {
+                m[buffer + 2 + count++] = (byte) c;
+                out.write(c);
+            }
+        }
+        m[buffer + 1] = (byte) count;
+        m[buffer + 2 + count] = '\r';
+        out.write('\r');
+        out.write('\n');
+    }
+
+    /**
+     * opens file into the first free handle
+     * @param cpu ref to cpu
+     * @param path host path or null if name is outside of the sandbox
+     * @param options open options
+     */
+    private void open(Cpu cpu, Path path, StandardOpenOption... options) throws IOException
+    {
+        if (path == null) {
+            error(cpu, ERROR_PATH_NOT_FOUND);
+            return;
+        }
+        if (Files.isDirectory(path)) {
+            error(cpu, ERROR_ACCESS_DENIED);
+            return;
+        }
+
+        int handle = STANDARD_HANDLES;
+        while ((handle < HANDLES) && (files[handle] != null)) {
+            handle++;
+        }
+        if (handle == HANDLES) {
+            error(cpu, ERROR_TOO_MANY_FILES);
+            return;
+        }
+
+        files[handle] = FileChannel.open(path, options);
+        cpu.registers[Cpu.AX] = handle;
+        success(cpu);
+    }
+
+    private void close(Cpu cpu) throws IOException
+    {
+        int handle = cpu.registers[Cpu.BX];
+        if (handle < STANDARD_HANDLES) {
+            success(cpu);
+            return;
+        }
+        FileChannel file = channel(handle);
+        if (file == null) {
+            error(cpu, ERROR_INVALID_HANDLE);
+            return;
+        }
+        files[handle] = null;
+        file.close();
+        success(cpu);
+    }
+
+    private void read(Cpu cpu) throws IOException
+    {
+        int[] r = cpu.registers;
+        int handle = r[Cpu.BX];
+        int address = address(cpu, Cpu.DS, r[Cpu.DX]);
+        int count = Math.min(r[Cpu.CX], cpu.memory.length - address);
+
+        if (handle == 0) {
+            // console reads the line
+            out.flush();
+            int n = 0;
+            int c;
+            while ((n < count) && ((c = in.read()) != -1)) {
+                cpu.memory[address + n++] = (byte) c;
+                if (c == '\n') {
+                    break;
+                }
+            }
+            r[Cpu.AX] = n;
+            success(cpu);
+            return;
+        }
+        if (handle < STANDARD_HANDLES) {
+            r[Cpu.AX] = 0;
+            success(cpu);
+            return;
+        }
+
+        FileChannel file = channel(handle);
+        if (file == null) {
+            error(cpu, ERROR_INVALID_HANDLE);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(cpu.memory, address, count);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer) <= 0) {
+                break;
+            }
+        }
+        r[Cpu.AX] = buffer.position() - address;
+        success(cpu);
+    }
+
+    private void write(Cpu cpu) throws IOException
+    {
+        int[] r = cpu.registers;
+        int handle = r[Cpu.BX];
+        int address = address(cpu, Cpu.DS, r[Cpu.DX]);
+        int count = Math.min(r[Cpu.CX], cpu.memory.length - address);
+
+        if ((handle == 1) || (handle == 2)) {
+            out.write(cpu.memory, address, count);
+            r[Cpu.AX] = count;
+            success(cpu);
+            return;
+        }
+        if (handle < STANDARD_HANDLES) {
+            r[Cpu.AX] = count;
+            success(cpu);
+            return;
+        }
+
+        FileChannel file = channel(handle);
+        if (file == null) {
+            error(cpu, ERROR_INVALID_HANDLE);
+            return;
+        }
+        if (count == 0) {
+            file.truncate(file.position());
+        } else {
+            ByteBuffer buffer = ByteBuffer.wrap(cpu.memory, address, count);
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+        }
+        r[Cpu.AX] = count;
+        success(cpu);
+    }
+
+    private void seek(Cpu cpu) throws IOException
+    {
+        int[] r = cpu.registers;
+        FileChannel file = channel(r[Cpu.BX]);
+        if (file == null) {
+            if ((0 <= r[Cpu.BX]) && (r[Cpu.BX] < STANDARD_HANDLES)) {
+                r[Cpu.AX] = 0;
+                r[Cpu.DX] = 0;
+                success(cpu);
+            } else {
+                error(cpu, ERROR_INVALID_HANDLE);
+            }
+            return;
+        }
+
+        // signed 32 bit offset
+        long offset = (short) r[Cpu.CX] * 0x10000L + r[Cpu.DX];
+        long position;
+        switch (r[Cpu.AX] & 0xFF) {
+            case 0: position = offset; break;
+            case 1: position = file.position() + offset; break;
+            case 2: position = file.size() + offset; break;
+            default:
+                error(cpu, ERROR_INVALID_FUNCTION);
+                return;
+        }
+        if (position < 0) {
+            error(cpu, ERROR_INVALID_FUNCTION);
+            return;
+        }
+        file.position(position);
+        r[Cpu.AX] = (int) (position & 0xFFFF);
+        r[Cpu.DX] = (int) ((position >> 16) & 0xFFFF);
+        success(cpu);
+    }
+
+    /**
+     * @param handle dos handle
+     * @return opened file or null
+     */
+    private FileChannel channel(int handle) {
+        return ((STANDARD_HANDLES <= handle) && (handle < HANDLES)) ? files[handle] : null;
+    }
+
+    /**
+     * maps dos name at DS:DX into the sandbox, drive is ignored, each part
+     * of the path is matched ignoring case if there is no exact one
+     * @param cpu ref to cpu
+     * @return host path or null if it's outside of the sandbox or not terminated
+     */
+    private Path name(Cpu cpu) throws IOException
+    {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < MAX_PATH; i++) {
+            byte c = cpu.memory[address(cpu, Cpu.DS, (cpu.registers[Cpu.DX] + i) & 0xFFFF)];
+            if (c == 0) {
+                return resolve(name.toString());
+            }
+            name.append((char) (c & 0xFF));
+        }
+        return null;
+    }
+
+    /**
+     * @param name dos name
+     * @return host path or null if it's outside of the sandbox
+     */
+    Path resolve(String name) throws IOException
+    {
+        if ((2 <= name.length()) && (name.charAt(1) == ':')) {
+            name = name.substring(2);
+        }
+
+        Path path = root;
+        for (String part : name.split("[\\\\/]")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                if (path.equals(root)) {
+                    return null;
+                }
+                path = path.getParent();
+                continue;
+            }
+            path = child(path, part);
+        }
+        if (!path.normalize().startsWith(root)) {
+            return null;
+        }
+
+        // links could point outside, so the nearest existing part
+        // of the path is checked after resolving them
+        Path existing = path;
+        while ((existing != null) && !Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            return null;
+        }
+        try {
+            return existing.toRealPath().startsWith(root.toRealPath()) ? path : null;
+        } catch (NoSuchFileException e) {
+            // dangling link
+            return null;
+        }
+    }
+
+    /**
+     * @param directory host directory
+     * @param name dos name of the child
+     * @return child with the same name ignoring case or exact name if there is none
+     */
+    private static Path child(Path directory, String name) throws IOException
+    {
+        Path exact = directory.resolve(name);
+        if (Files.exists(exact) || !Files.isDirectory(directory)) {
+            return exact;
+        }
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+            for (Path child : children) {
+                if (child.getFileName().toString().toUpperCase(Locale.ROOT).equals(name.toUpperCase(Locale.ROOT))) {
+                    return child;
+                }
+            }
+        }
+        return exact;
+    }
+
+    /**
+     * @return linear address
+     */
+    private static int address(Cpu cpu, int segment, int offset) {
+        return ((cpu.segments[segment] << 4) + offset) & 0xFFFFF;
+    }
+
+    private static void success(Cpu cpu) {
+        cpu.flags &= ~Cpu.FLAG_CF;
+    }
+
+    private static void error(Cpu cpu, int code) {
+        cpu.registers[Cpu.AX] = code;
+        cpu.flags |= Cpu.FLAG_CF;
+    }
+
+    private static int read16(byte[] m, int address) {
+        return (m[address] & 0xFF) | ((m[address + 1] & 0xFF) << 8);
+    }
+
+    private static void write16(byte[] m, int address, int value) {
+        m[address] = (byte) value;
+        m[address + 1] = (byte) (value >> 8);
+    }
+}
@@ -0,0 +1,335 @@
+package at.emu.i8086.simple;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Display without window, receives frames the same way as {@link Display}
+ * and writes them to files: png snapshots on demand, raw rgb or y4m stream
+ * of all the frames, text dump of the character plane.
+ * Encoding is done on a background thread, emulator thread only copies
+ * the frame into a free buffer and queues it, frame is dropped
+ * if all the buffers are busy.
+ */
+public class HeadlessDisplay implements CGA.VsyncListener, AutoCloseable
+{
+    public static final int WIDTH = CGATextRenderer.SCREEN_WIDTH;
+    public static final int HEIGHT = CGATextRenderer.SCREEN_HEIGHT;
+
+    /**
+     * number of frame buffers, bounds the queue of the writer
+     */
+    public static final int QUEUE_SIZE = 4;
+
+    /**
+     * y4m frame rate of standard 80x25 timings,
+     * 14.318181 MHz dots clock, 912x262 dots per frame
+     */
+    private static final String Y4M_RATE = "F14318181:238944";
+
+    /**
+     * unicode characters of cp437 codes for text dumps
+     */
+    private static final char[] CHARS = CGAFont.chars();
+
+    /**
+     * stream formats
+     */
+    public enum Format {
+        /**
+         * 24 bit rgb pixels, no headers
+         */
+        RGB,
+        /**
+         * yuv4mpeg2 4:4:4
+         */
+        Y4M
+    }
+
+    /**
+     * job for the writer thread
+     */
+    private static class Job {
+        final int[] pixels;
+        final long frame;
+        final Path snapshot;
+
+        Job(int[] pixels, long frame, Path snapshot) {
+            this.pixels = pixels;
+            this.frame = frame;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * marks end of jobs
+     */
+    private static final Job END = new Job(null, -1, null);
+
+    /**
+     * video adapter to render frames from
+     */
+    private final CGA cga;
+
+    /**
+     * frame rendered incrementally by the adapter (emulator thread)
+     */
+    final int[] buffer = new int[WIDTH * HEIGHT];
+
+    /**
+     * free frame buffers and queued jobs
+     */
+    private final BlockingQueue<int[]> free = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final BlockingQueue<Job> jobs = new ArrayBlockingQueue<>(QUEUE_SIZE + 1);
+
+    /**
+     * writer thread
+     */
+    private final Thread thread;
+
+    /**
+     * stream of frames if enabled
+     */
+    private volatile OutputStream stream;
+    private volatile Format format;
+
+    /**
+     * path to write snapshot of the next frame to,
+     * cleared by the emulator thread when the frame is queued
+     */
+    private final AtomicReference<Path> snapshot = new AtomicReference<>();
+
+    /**
+     * number of frames dropped as writer was busy
+     */
+    private volatile long dropped;
+
+    /**
+     * first error of the writer thread
+     */
+    private volatile IOException error;
+
+    /**
+     * @param cga video adapter, display subscribes for its frames
+     */
+    public HeadlessDisplay(CGA cga)
+    {
+        this.cga = cga;
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            free.add(new int[WIDTH * HEIGHT]);
+        }
+
+        thread = new Thread(this::writerLoop, "headless-display");
+        thread.setDaemon(true);
+        thread.start();
+
+        cga.setVsyncListener(this);
+    }
+
+    /**
+     * requests png snapshot of the next frame
+     * @param path file to write to
+     */
+    public void snapshot(Path path) {
+        snapshot.set(path);
+    }
+
+    /**
+     * starts writing all the frames to file
+     * @param path file to write to
+     * @param format stream format
+     * @throws IOException if any
+     */
+    public void startStream(Path path, Format format) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 20);
+        if (format == Format.Y4M) {
+            out.write(("YUV4MPEG2 W" + WIDTH + " H" + HEIGHT + " " + Y4M_RATE + " Ip A1:1 C444\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+        this.format = format;
+        this.stream = out;
+    }
+
+    /**
+     * @return number of frames dropped as writer was busy
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * Called on the emulator thread at the start of vertical retrace,
+     * renders changes and queues the frame if it's needed by anyone
+     * @param frame number of the frame
+     */
+    @Override
+    public void vsync(long frame)
+    {
+        cga.render(buffer, 0, WIDTH, frame);
+
+        Path path = snapshot.get();
+        if ((path == null) && (stream == null)) {
+            return;
+        }
+
+        int[] pixels = free.poll();
+        if (pixels == null) {
+            dropped++;
+            return;
+        }
+        if (path != null) {
+            // request made meanwhile stays for the next frame
+            snapshot.compareAndSet(path, null);
+        }
+
+        System.arraycopy(buffer, 0, pixels, 0, buffer.length);
+        jobs.add(new Job(pixels, frame, path));
+    }
+
+    /**
+     * writer thread main loop
+     */
+    private void writerLoop()
+    {
+        byte[] bytes = new byte[WIDTH * HEIGHT * 3];
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        while (true)
+        {
+            Job job;
+            try {
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == END) {
+                return;
+            }
+
+            try {
+                if (job.snapshot != null) {
+                    image.setRGB(0, 0, WIDTH, HEIGHT, job.pixels, 0, WIDTH);
+                    ImageIO.write(image, "png", job.snapshot.toFile());
+                }
+                OutputStream out = stream;
+                if (out != null) {
+                    if (format == Format.Y4M) {
+                        yuv(job.pixels, bytes);
+                        out.write("FRAME\n".getBytes(StandardCharsets.US_ASCII));
+                    } else {
+                        rgb(job.pixels, bytes);
+                    }
+                    out.write(bytes);
+                }
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+
+            free.add(job.pixels);
+        }
+    }
+
+    /**
+     * converts pixels into packed rgb
+     * @param pixels source pixels
+     * @param bytes destination
+     */
+    private static void rgb(int[] pixels, byte[] bytes)
+    {
+        for (int i = 0, b = 0; i < pixels.length; i++, b += 3) {
+            int p = pixels[i];
+            bytes[b] = (byte) (p >> 16);
+            bytes[b + 1] = (byte) (p >> 8);
+            bytes[b + 2] = (byte) p;
+        }
+    }
+
+    /**
+     * converts pixels into planar yuv 4:4:4 (bt.601, studio range)
+     * @param pixels source pixels
+     * @param bytes destination
+     */
+    private static void yuv(int[] pixels, byte[] bytes)
+    {
+        int plane = pixels.length;
+        for (int i = 0; i < plane; i++) {
+            int p = pixels[i];
+            int r = (p >> 16) & 0xFF;
+            int g = (p >> 8) & 0xFF;
+            int b = p & 0xFF;
+            bytes[i]             = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+            bytes[plane + i]     = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+            bytes[2 * plane + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+        }
+    }
+
+    /**
+     * Dumps character plane of the text mode, rows are separated with new lines
+     * @param cga video adapter
+     * @param memory cpu memory
+     * @return text of the screen
+     */
+    public static String text(CGA cga, byte[] memory)
+    {
+        char[] chars = CHARS;
+        int cols = ((cga.regMode & CGA.MASK_MODE_TEXT_80) != 0) ? 80 : 40;
+        int[] r = cga.reg6845;
+        int address = (((r[12] & 0x3F) << 8) | (r[13] & 0xFF)) << 1;
+
+        StringBuilder text = new StringBuilder((cols + 1) * 25);
+        for (int row = 0; row < 25; row++) {
+            for (int col = 0; col < cols; col++, address += 2) {
+                text.append(chars[memory[0xB8000 + (address & 0x3FFF)] & 0xFF]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * writes text dump of the character plane
+     * @param path file to write to
+     * @throws IOException if any
+     */
+    public void writeText(Path path) throws IOException {
+        Files.writeString(path, text(cga, cga.cpu.memory), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stops writer after all queued frames are written
+     * and closes the stream
+     * @throws IOException first error of the writer if any
+     */
+    @Override
+    public void close() throws IOException
+    {
+        cga.setVsyncListener(null);
+        jobs.add(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        OutputStream out = stream;
+        stream = null;
+        if (out != null) {
+            out.close();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
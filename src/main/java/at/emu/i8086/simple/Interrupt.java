@@ -59,6 +59,10 @@ public class Interrupt implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConf
         public void execute(Cpu cpu, int opcode)
         {
             int type = cpu.ipRead8();
+            Cpu.InterruptTrap trap = cpu.traps[type];
+            if ((trap != null) && trap.trap(cpu)) {
+                return;
+            }
             cpu.interrupt(type);
         }
     }
@@ -95,8 +99,9 @@ public class Interrupt implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConf
         public void execute(Cpu cpu, int opcode)
         {
             cpu.ip = cpu.pop16();
-            cpu.registers[Cpu.CS] = cpu.pop16();
+            cpu.writeSegment(Cpu.CS, cpu.pop16());
             cpu.flags = cpu.pop16();
+            cpu.flagsEvents();
         }
     }
 }
@@ -0,0 +1,362 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Keystrokes script to drive guest programs without a human.
+ * All the timing is in guest clocks, script is advanced by the run loop
+ * as a condition of {@link Machine#runUntil(Predicate)}, so replay is
+ * the same at any host speed and could run unthrottled.
+ * Script is the only producer of scan codes then (no AwtKeyboard).
+ *
+ * Format, one command per line, '#' starts a comment line:
+ *   type &lt;text&gt;        types the rest of the line (shift is pressed when needed)
+ *   key &lt;NAME&gt;...      presses and releases keys, combinations as CTRL+ALT+DEL
+ *   down &lt;NAME&gt;        presses key
+ *   up &lt;NAME&gt;          releases key
+ *   wait &lt;n&gt;[ms|clocks] pauses for guest time, ms by default
+ *   waitfor &lt;text&gt;     waits until text screen contains text
+ *   timeout &lt;n&gt;[ms|clocks] max time of the following waitfor commands
+ *   rate &lt;n&gt;[ms|clocks]  delay after each key event
+ */
+public class KeyScript implements Predicate<Machine>
+{
+    /**
+     * default delay after each key event
+     */
+    public static final long DEFAULT_KEY_DELAY_MS = 20;
+
+    /**
+     * default timeout of waitfor
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 60_000;
+
+    /**
+     * interval of screen checks by waitfor
+     */
+    private static final long POLL_CLOCKS = Pacer.CPU_HZ / 1000;
+
+    private static final int CODE_SHIFT = 0x2A;
+
+    /**
+     * characters for typing, unshifted and shifted ones, from code 0x02
+     */
+    private static final String[] ROWS = new String[] {
+            "\u00001234567890-=", "\u0000!@#$%^&*()_+",
+            "qwertyuiop[]",   "QWERTYUIOP{}",
+            "asdfghjkl;'`",   "ASDFGHJKL:\"~",
+            "\\zxcvbnm,./",   "|ZXCVBNM<>?"
+    };
+    private static final int[] ROW_CODES = new int[] {0x01, 0x10, 0x1E, 0x2B};
+
+    /**
+     * scan codes of characters, bit 8 is set when shift is needed
+     */
+    private static final int[] CHARS = new int[128];
+
+    /**
+     * scan codes of key names
+     */
+    private static final Map<String, Integer> KEYS = new HashMap<>();
+
+    static {
+        for (int r = 0; r < ROW_CODES.length; r++) {
+            for (int shift = 0; shift < 2; shift++) {
+                String row = ROWS[r * 2 + shift];
+                for (int i = 0; i < row.length(); i++) {
+                    if (row.charAt(i) != 0) {
+                        CHARS[row.charAt(i)] = (ROW_CODES[r] + i) | (shift << 8);
+                    }
+                }
+            }
+        }
+        CHARS[' '] = 0x39;
+        CHARS['\t'] = 0x0F;
+        CHARS['\n'] = 0x1C;
+
+        String[] names = new String[] {
+                "ESC", "BACKSPACE", "TAB", "ENTER", "CTRL", "SHIFT", "RSHIFT", "ALT", "SPACE",
+                "CAPSLOCK", "NUMLOCK", "SCROLLLOCK",
+                "HOME", "UP", "PGUP", "LEFT", "RIGHT", "END", "DOWN", "PGDN", "INS", "DEL"
+        };
+        int[] codes = new int[] {
+                0x01, 0x0E, 0x0F, 0x1C, 0x1D, 0x2A, 0x36, 0x38, 0x39,
+                0x3A, 0x45, 0x46,
+                0x47, 0x48, 0x49, 0x4B, 0x4D, 0x4F, 0x50, 0x51, 0x52, 0x53
+        };
+        for (int i = 0; i < names.length; i++) {
+            KEYS.put(names[i], codes[i]);
+        }
+        for (int f = 1; f <= 10; f++) {
+            KEYS.put("F" + f, 0x3A + f);
+        }
+    }
+
+    /**
+     * kinds of steps
+     */
+    private static final int KEY = 0;
+    private static final int DELAY = 1;
+    private static final int WAIT_TEXT = 2;
+
+    /**
+     * one compiled step of the script
+     */
+    private static class Step {
+        final int kind;
+        final long value;
+        final String text;
+        final int line;
+
+        Step(int kind, long value, String text, int line) {
+            this.kind = kind;
+            this.value = value;
+            this.text = text;
+            this.line = line;
+        }
+    }
+
+    private final List<Step> steps;
+
+    /**
+     * index of the next step
+     */
+    private int index;
+
+    /**
+     * clocks to continue at
+     */
+    private long resume;
+
+    /**
+     * clocks of the current waitfor start, -1 if not waiting
+     */
+    private long waitStart = -1;
+
+    private KeyScript(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * @param path file with script
+     * @return parsed script
+     * @throws IOException if any
+     */
+    public static KeyScript load(Path path) throws IOException {
+        return parse(Files.readString(path));
+    }
+
+    /**
+     * @param script text of the script
+     * @return parsed script
+     */
+    public static KeyScript parse(String script)
+    {
+        List<Step> steps = new ArrayList<>();
+        long keyDelay = ms(DEFAULT_KEY_DELAY_MS);
+        long timeout = ms(DEFAULT_TIMEOUT_MS);
+
+        String[] lines = script.split("\r?\n");
+        for (int l = 0; l < lines.length; l++)
+        {
+            int line = l + 1;
+            String text = lines[l].strip();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+
+            int space = text.indexOf(' ');
+            String command = ((space == -1) ? text : text.substring(0, space)).toLowerCase(Locale.ROOT);
+            // argument of type and waitfor is taken as is
+            String arg = (space == -1) ? "" : lines[l].stripLeading().substring(space + 1);
+
+            switch (command)
+            {
+                case "type":
+                    for (int i = 0; i < arg.length(); i++) {
+                        char c = arg.charAt(i);
+                        int code = (c < CHARS.length) ? CHARS[c] : 0;
+                        if (code == 0) {
+                            throw new IllegalArgumentException("line " + line + ": can't type character: " + c);
+                        }
+                        if ((code & 0x100) != 0) {
+                            key(steps, CODE_SHIFT, keyDelay, line);
+                        }
+                        key(steps, code & 0xFF, keyDelay, line);
+                        key(steps, (code & 0xFF) | 0x80, keyDelay, line);
+                        if ((code & 0x100) != 0) {
+                            key(steps, CODE_SHIFT | 0x80, keyDelay, line);
+                        }
+                    }
+                    break;
+
+                case "key":
+                    for (String combination : arg.strip().split("\\s+")) {
+                        String[] names = combination.split("\\+");
+                        int[] codes = new int[names.length];
+                        for (int i = 0; i < names.length; i++) {
+                            codes[i] = code(names[i], line);
+                            key(steps, codes[i], keyDelay, line);
+                        }
+                        for (int i = codes.length - 1; 0 <= i; i--) {
+                            key(steps, codes[i] | 0x80, keyDelay, line);
+                        }
+                    }
+                    break;
+
+                case "down":
+                    key(steps, code(arg.strip(), line), keyDelay, line);
+                    break;
+
+                case "up":
+                    key(steps, code(arg.strip(), line) | 0x80, keyDelay, line);
+                    break;
+
+                case "wait":
+                    steps.add(new Step(DELAY, clocks(arg, line), null, line));
+                    break;
+
+                case "waitfor":
+                    if (arg.isEmpty()) {
+                        throw new IllegalArgumentException("line " + line + ": text expected");
+                    }
+                    steps.add(new Step(WAIT_TEXT, timeout, arg, line));
+                    break;
+
+                case "timeout":
+                    timeout = clocks(arg, line);
+                    break;
+
+                case "rate":
+                    keyDelay = clocks(arg, line);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("line " + line + ": unknown command: " + command);
+            }
+        }
+
+        return new KeyScript(steps);
+    }
+
+    /**
+     * adds key event followed by delay
+     */
+    private static void key(List<Step> steps, int code, long delay, int line) {
+        steps.add(new Step(KEY, code, null, line));
+        if (delay != 0) {
+            steps.add(new Step(DELAY, delay, null, line));
+        }
+    }
+
+    /**
+     * @param name key name or single character
+     * @param line line number for errors
+     * @return make code of the key
+     */
+    private static int code(String name, int line)
+    {
+        Integer code = KEYS.get(name.toUpperCase(Locale.ROOT));
+        if (code != null) {
+            return code;
+        }
+        if (name.length() == 1) {
+            char c = Character.toLowerCase(name.charAt(0));
+            if ((c < CHARS.length) && (CHARS[c] != 0)) {
+                return CHARS[c] & 0xFF;
+            }
+        }
+        throw new IllegalArgumentException("line " + line + ": unknown key: " + name);
+    }
+
+    /**
+     * @param value time with optional unit, ms or clocks
+     * @param line line number for errors
+     * @return guest clocks
+     */
+    private static long clocks(String value, int line)
+    {
+        String v = value.strip().toLowerCase(Locale.ROOT);
+        try {
+            if (v.endsWith("clocks")) {
+                return Long.parseLong(v.substring(0, v.length() - 6).strip());
+            }
+            if (v.endsWith("ms")) {
+                v = v.substring(0, v.length() - 2).strip();
+            }
+            return ms(Long.parseLong(v));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("line " + line + ": bad time: " + value);
+        }
+    }
+
+    /**
+     * @param ms guest milliseconds
+     * @return guest clocks
+     */
+    private static long ms(long ms) {
+        return ms * Pacer.CPU_HZ / 1000;
+    }
+
+    /**
+     * @return true if all the steps are done
+     */
+    public boolean finished() {
+        return index == steps.size();
+    }
+
+    /**
+     * Advances script, called by the run loop between batches
+     * @param machine machine to drive
+     * @return true when script is finished
+     * @throws IllegalStateException on waitfor timeout
+     */
+    @Override
+    public boolean test(Machine machine)
+    {
+        Cpu cpu = machine.cpu;
+        long now = cpu.clocks;
+
+        while ((index < steps.size()) && (resume <= now))
+        {
+            Step step = steps.get(index);
+            if (step.kind == KEY) {
+                if (!cpu.keyboard.offer((int) step.value)) {
+                    // guest doesn't read keyboard fast enough
+                    resume = now + POLL_CLOCKS;
+                    return false;
+                }
+                index++;
+            }
+            else if (step.kind == DELAY) {
+                resume = now + step.value;
+                index++;
+            }
+            else {
+                if (waitStart == -1) {
+                    waitStart = now;
+                }
+                if (HeadlessDisplay.text(cpu.video, cpu.memory).contains(step.text)) {
+                    waitStart = -1;
+                    index++;
+                }
+                else if (step.value <= now - waitStart) {
+                    throw new IllegalStateException("line " + step.line + ": timeout waiting for: " + step.text);
+                }
+                else {
+                    resume = now + POLL_CLOCKS;
+                }
+            }
+        }
+
+        return index == steps.size();
+    }
+}
@@ -666,25 +666,56 @@ public class Logic implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigur
         }
     }
 
-    public static class AndRmR extends Cpu.Opcode {
+    public static class AndRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            final boolean w = (opcode & 0b0000_0001) != 0;
-            final boolean d = (opcode & 0b0000_0010) != 0;
-            cpu.readModRegRm(opcode);
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue & cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, value);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, value);
+                final int value = cpu.mrrRegValue & cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, value);
             }
+        }
 
-            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+
+                final int value = cpu.mrrRegValue & cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, value);
+            }
         }
     }
 
@@ -745,16 +776,34 @@ public class Logic implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigur
         }
     }
 
-    public static class TestRmR extends Cpu.Opcode {
+    public static class TestRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            final boolean w = (opcode & 0b0000_0001) == 0b01;
-            cpu.readModRegRm(opcode);
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue & cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, cpu.mrrRegValue & cpu.mrrModValue);
+            }
+        }
 
-            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, cpu.mrrRegValue & cpu.mrrModValue);
+            }
         }
     }
 
@@ -806,25 +855,56 @@ public class Logic implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigur
         }
     }
 
-    public static class XorRmR extends Cpu.Opcode {
+    public static class XorRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            final boolean w = (opcode & 0b0000_0001) == 0b01;
-            final boolean d = (opcode & 0b0000_0010) == 0b10;
-            cpu.readModRegRm(opcode);
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue ^ cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, value);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, value);
+                final int value = cpu.mrrRegValue ^ cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, value);
             }
+        }
 
-            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+
+                final int value = cpu.mrrRegValue ^ cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, value);
+            }
         }
     }
 
@@ -881,25 +961,56 @@ public class Logic implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigur
         }
     }
 
-    public static class OrRmR extends Cpu.Opcode {
+    public static class OrRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            final boolean w = (opcode & 0b0000_0001) == 0b01;
-            final boolean d = (opcode & 0b0000_0010) == 0b10;
-            cpu.readModRegRm(opcode);
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            final int value = cpu.mrrRegValue | cpu.mrrModValue;
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, value);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, value);
+                final int value = cpu.mrrRegValue | cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz8(cpu, value);
             }
+        }
 
-            cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
-            Cpu.Opcode.flagsPsz(cpu, w, value);
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+
+                final int value = cpu.mrrRegValue | cpu.mrrModValue;
+
+                if ((opcode & 0b0000_0010) != 0) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, value);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(value);
+                }
+
+                cpu.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+                Cpu.Opcode.flagsPsz16(cpu, value);
+            }
         }
     }
 
@@ -0,0 +1,298 @@
+package at.emu.i8086.simple;
+
+import java.util.function.Predicate;
+
+/**
+ * Top level run loop for the cpu and its devices, could be used headless.
+ * Instructions are executed in batches, pending cpu events are checked
+ * between instructions (one load when there are none), while devices
+ * and stop conditions are only handled at batch boundaries.
+ */
+public class Machine
+{
+    /**
+     * max number of instructions in one batch
+     */
+    public static final int BATCH_INSTRUCTIONS = 1024;
+    /**
+     * max number of cpu clocks in one batch,
+     * defines granularity of devices updates
+     */
+    public static final int BATCH_CLOCKS = 4096;
+
+    /**
+     * reason of the last run end
+     */
+    public enum Exit {
+        /**
+         * instructions or clocks budget exhausted
+         */
+        BUDGET,
+        /**
+         * run condition was satisfied
+         */
+        CONDITION,
+        /**
+         * cpu halted with interrupts disabled or on unknown opcode
+         */
+        HALT,
+        /**
+         * debugger break event
+         */
+        BREAK,
+        /**
+         * stop event
+         */
+        STOP
+    }
+
+    /**
+     * cpu with devices attached
+     */
+    final Cpu cpu;
+
+    /**
+     * total number of instructions executed,
+     * updated after each batch
+     */
+    volatile long instructions;
+
+    /**
+     * reason of the last run end
+     */
+    Exit exit;
+
+    /**
+     * sampling profiler, null if not profiling
+     */
+    private Profiler profiler;
+
+    /**
+     * creates machine with new initialized cpu
+     */
+    public Machine() {
+        this(new Cpu());
+        cpu.init();
+        cpu.reset();
+    }
+
+    /**
+     * creates machine over already initialized cpu
+     * @param cpu ref to cpu
+     */
+    public Machine(Cpu cpu) {
+        this.cpu = cpu;
+    }
+
+    /**
+     * @return ref to cpu
+     */
+    public Cpu cpu() {
+        return cpu;
+    }
+
+    /**
+     * sets profiler to sample guest code with, previous one is detached
+     * @param profiler profiler or null to stop profiling
+     */
+    public void setProfiler(Profiler profiler)
+    {
+        if (this.profiler != null) {
+            this.profiler.detach();
+        }
+        this.profiler = profiler;
+        if (profiler != null) {
+            profiler.attach(cpu);
+        }
+    }
+
+    /**
+     * @return total number of instructions executed
+     */
+    public long instructions() {
+        return instructions;
+    }
+
+    /**
+     * @return reason of the last run end
+     */
+    public Exit exit() {
+        return exit;
+    }
+
+    /**
+     * requests the current run to stop at the next instruction,
+     * could be called from any thread
+     */
+    public void stop() {
+        cpu.raiseEvent(Cpu.EVENT_STOP);
+    }
+
+    /**
+     * runs the specified number of instructions (or less if cpu halts or stop is requested)
+     * @param maxInstructions max number of instructions to execute
+     * @return number of instructions executed
+     */
+    public long run(long maxInstructions) {
+        return execute(maxInstructions, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * runs the specified number of cpu clocks, last instruction could cross the limit
+     * @param clocks number of clocks to run
+     * @return number of instructions executed
+     */
+    public long runClocks(long clocks) {
+        return execute(Long.MAX_VALUE, cpu.clocks + clocks, null);
+    }
+
+    /**
+     * runs till the condition is satisfied, condition is checked only
+     * at batch boundaries (see {@link #BATCH_INSTRUCTIONS})
+     * @param condition condition to check
+     * @return number of instructions executed
+     */
+    public long runUntil(Predicate<Machine> condition) {
+        return execute(Long.MAX_VALUE, Long.MAX_VALUE, condition);
+    }
+
+    /**
+     * runs till the condition is satisfied with real time pacing,
+     * condition is checked at batch boundaries
+     * @param pacer pacer to use
+     * @param condition condition to check, could be null to run till stop or halt
+     * @return number of instructions executed
+     */
+    public long runPaced(Pacer pacer, Predicate<Machine> condition)
+    {
+        long executed = 0;
+        pacer.start(cpu.clocks);
+        while (true) {
+            executed += execute(Long.MAX_VALUE, cpu.clocks + pacer.sliceClocks(), condition);
+            if (exit != Exit.BUDGET) {
+                return executed;
+            }
+            pacer.pace(cpu.clocks);
+        }
+    }
+
+    /**
+     * main run loop
+     * @param maxInstructions max instructions to execute
+     * @param clocksLimit clocks value to stop at
+     * @param condition optional stop condition
+     * @return number of instructions executed
+     */
+    private long execute(long maxInstructions, long clocksLimit, Predicate<Machine> condition)
+    {
+        Cpu cpu = this.cpu;
+        long executed = 0;
+
+        while (true)
+        {
+            if (maxInstructions <= executed || clocksLimit <= cpu.clocks) {
+                exit = Exit.BUDGET;
+                break;
+            }
+
+            // batch is bounded by both instructions and clocks,
+            // and ends exactly at the next timer irq,
+            // long rep instructions will be split at the clocks limit
+            int batch = (int) Math.min(BATCH_INSTRUCTIONS, maxInstructions - executed);
+            long batchLimit = Math.min(Math.min(clocksLimit, cpu.clocks + BATCH_CLOCKS), cpu.pti.nextIrqClocks());
+            if (cpu.video.hasVsyncListener()) {
+                // frames are reported exactly at retrace start
+                batchLimit = Math.min(batchLimit, cpu.video.nextVsyncClocks());
+            }
+            // serial interrupts are not delayed till the end of the batch
+            batchLimit = Math.min(batchLimit, Math.min(cpu.com1.nextEventClocks(), cpu.com2.nextEventClocks()));
+            // batch ends exactly at the next sample
+            Profiler profiler = this.profiler;
+            if (profiler != null) {
+                batch = (int) Math.min(batch, profiler.instructionsToSample());
+                batchLimit = Math.min(batchLimit, profiler.clocksToSample());
+            }
+            cpu.clocksLimit = batchLimit;
+
+            int events = 0;
+            int i = 0;
+            while ((i < batch) && (cpu.clocks < batchLimit))
+            {
+                if (cpu.pendingEvents() != 0) {
+                    events = cpu.serviceEvents();
+                    if (events != 0) {
+                        break;
+                    }
+                }
+
+                if (cpu.hlt) {
+                    break;
+                }
+
+                cpu.step();
+                i++;
+            }
+            executed += i;
+            // kept up to date for monitoring from other threads
+            instructions += i;
+
+            if (profiler != null) {
+                profiler.advance(cpu, i);
+            }
+
+            devices();
+
+            if (events != 0) {
+                // stop takes precedence over break
+                exit = (events & Cpu.EVENT_STOP) != 0 ? Exit.STOP : Exit.BREAK;
+                cpu.clearEvent(events);
+                break;
+            }
+
+            if (cpu.hlt && !halted(clocksLimit)) {
+                exit = Exit.HALT;
+                break;
+            }
+
+            if ((condition != null) && condition.test(this)) {
+                exit = Exit.CONDITION;
+                break;
+            }
+        }
+
+        cpu.clocksLimit = Long.MAX_VALUE;
+        return executed;
+    }
+
+    /**
+     * Handles halted cpu, it could only be woken up by an interrupt,
+     * so time is moved to the next timer irq (or the end of the batch)
+     * to allow devices to raise them.
+     * @param clocksLimit clocks limit of the current run
+     * @return true if cpu could be woken up later and false if it's halted forever
+     */
+    private boolean halted(long clocksLimit)
+    {
+        if (((cpu.flags & Cpu.FLAG_IF) == 0) && ((cpu.pendingEvents() & Cpu.EVENT_NMI) == 0)) {
+            return false;
+        }
+
+        if (cpu.pendingEvents() == 0) {
+            long next = Math.min(cpu.clocks + BATCH_CLOCKS, cpu.pti.nextIrqClocks());
+            cpu.clocks = Math.max(cpu.clocks, Math.min(clocksLimit, next));
+            devices();
+        }
+        return true;
+    }
+
+    /**
+     * synchronizes devices with cpu clocks
+     */
+    private void devices() {
+        cpu.pti.clock(cpu.clocks);
+        cpu.video.clock(cpu.clocks);
+        cpu.com1.clock(cpu.clocks);
+        cpu.com2.clock(cpu.clocks);
+        cpu.speaker.update(cpu.clocks);
+    }
+}
@@ -0,0 +1,469 @@
+package at.emu.i8086.simple;
+
+import java.nio.ByteBuffer;
+
+/**
+ * NEC 765 floppy disk controller (with xt adapter digital output register),
+ * data is transferred via dma channel 2, irq#6 is raised on completion.
+ * Commands complete immediately, sectors are moved by dma directly
+ * between the image buffers and memory.
+ *
+ * Ports
+ *   0x3F2  W   digital output register
+ *              [7 6 5 4 3 2 1 0]
+ *                           | +-- (10): drive select
+ *                           +---- (2): 0 - reset controller, 1 - normal
+ *                              -- (3): 1 - dma and irq enabled
+ *                            --(7654): motors of drives 3..0
+ *   0x3F4  R   main status register
+ *              [7 6 5 4 3 2 1 0]
+ *                               +-- (3210): drive is seeking
+ *                                -- (4): CB, controller busy (command in progress)
+ *                                -- (5): NDMA, non dma mode
+ *                                -- (6): DIO, 1 - controller to cpu (result), 0 - cpu to controller
+ *                                -- (7): RQM, data register is ready
+ *   0x3F5  RW  data register, command and result bytes
+ *   0x3F7  R   digital input register (at), bit 7 - disk change
+ *
+ * Commands (low 5 bits of the first byte, MT|MFM|SK in high bits)
+ *   0x02 read track        9 bytes, 7 result
+ *   0x03 specify           3 bytes, no result
+ *   0x04 sense drive       2 bytes, 1 result (ST3)
+ *   0x05 write data        9 bytes, 7 result
+ *   0x06 read data         9 bytes, 7 result
+ *   0x07 recalibrate       2 bytes, no result, irq
+ *   0x08 sense interrupt   1 byte,  2 result (ST0, PCN)
+ *   0x0A read id           2 bytes, 7 result
+ *   0x0D format track      6 bytes, 7 result
+ *   0x0F seek              3 bytes, no result, irq
+ *   invalid                          1 result (ST0 = 0x80)
+ */
+public class NEC765 extends Cpu.PortHandler
+{
+    public static final int PORT_DOR    = 0x3F2;
+    public static final int PORT_MSR    = 0x3F4;
+    public static final int PORT_DATA   = 0x3F5;
+    public static final int PORT_DIR    = 0x3F7;
+
+    public static final int DMA_CHANNEL = 2;
+    public static final int IRQ         = 6;
+
+    public static final int MASK_DOR_DRIVE  = 0b0000_0011;
+    public static final int MASK_DOR_RESET  = 0b0000_0100;
+    public static final int MASK_DOR_DMA    = 0b0000_1000;
+
+    public static final int MASK_MSR_BUSY   = 0b0001_0000;
+    public static final int MASK_MSR_DIO    = 0b0100_0000;
+    public static final int MASK_MSR_RQM    = 0b1000_0000;
+
+    public static final int MASK_CMD_MT     = 0b1000_0000;
+
+    public static final int CMD_READ_TRACK  = 0x02;
+    public static final int CMD_SPECIFY     = 0x03;
+    public static final int CMD_SENSE_DRIVE = 0x04;
+    public static final int CMD_WRITE_DATA  = 0x05;
+    public static final int CMD_READ_DATA   = 0x06;
+    public static final int CMD_RECALIBRATE = 0x07;
+    public static final int CMD_SENSE_INT   = 0x08;
+    public static final int CMD_READ_ID     = 0x0A;
+    public static final int CMD_FORMAT      = 0x0D;
+    public static final int CMD_SEEK        = 0x0F;
+
+    // status register 0
+    public static final int ST0_ABNORMAL    = 0b0100_0000;
+    public static final int ST0_INVALID     = 0b1000_0000;
+    public static final int ST0_POLLING     = 0b1100_0000;
+    public static final int ST0_SEEK_END    = 0b0010_0000;
+    public static final int ST0_NOT_READY   = 0b0000_1000;
+    // status register 1
+    public static final int ST1_END_OF_CYLINDER = 0b1000_0000;
+    public static final int ST1_OVERRUN     = 0b0001_0000;
+    public static final int ST1_NO_DATA     = 0b0000_0100;
+    public static final int ST1_NOT_WRITABLE = 0b0000_0010;
+    // status register 3
+    public static final int ST3_WRITE_PROTECTED = 0b0100_0000;
+    public static final int ST3_READY       = 0b0010_0000;
+    public static final int ST3_TRACK_0     = 0b0001_0000;
+    public static final int ST3_TWO_SIDE    = 0b0000_1000;
+
+    /**
+     * command lengths by opcode, 0 for invalid ones
+     */
+    private static final int[] COMMAND_LENGTH = new int[32];
+    static {
+        COMMAND_LENGTH[CMD_READ_TRACK]  = 9;
+        COMMAND_LENGTH[CMD_SPECIFY]     = 3;
+        COMMAND_LENGTH[CMD_SENSE_DRIVE] = 2;
+        COMMAND_LENGTH[CMD_WRITE_DATA]  = 9;
+        COMMAND_LENGTH[CMD_READ_DATA]   = 9;
+        COMMAND_LENGTH[CMD_RECALIBRATE] = 2;
+        COMMAND_LENGTH[CMD_SENSE_INT]   = 1;
+        COMMAND_LENGTH[CMD_READ_ID]     = 2;
+        COMMAND_LENGTH[CMD_FORMAT]      = 6;
+        COMMAND_LENGTH[CMD_SEEK]        = 3;
+    }
+
+    private final PIC8259 pic;
+    private final DMA8237 dma;
+
+    /**
+     * inserted images, null if drive is empty
+     */
+    final DiskImage[] drives = new DiskImage[4];
+
+    /**
+     * current cylinder of each drive head
+     */
+    private final int[] cylinders = new int[4];
+
+    /**
+     * digital output register
+     */
+    private int dor;
+
+    /**
+     * command being received
+     */
+    private final int[] command = new int[9];
+    private int commandIndex;
+    private int commandLength;
+
+    /**
+     * result being sent
+     */
+    private final int[] result = new int[7];
+    private int resultIndex;
+    private int resultLength;
+
+    /**
+     * status of the last seek/recalibrate for sense interrupt, -1 if none
+     */
+    private int interruptSt0 = -1;
+
+    /**
+     * number of sense interrupt commands expected after reset (one per drive)
+     */
+    private int resetSense;
+
+    public NEC765(PIC8259 pic, DMA8237 dma) {
+        this.pic = pic;
+        this.dma = dma;
+    }
+
+    /**
+     * inserts image into the drive
+     * @param drive drive number 0..3
+     * @param image image or null to eject
+     * @return previously inserted image or null
+     */
+    public DiskImage insert(int drive, DiskImage image)
+    {
+        DiskImage previous = drives[drive];
+        drives[drive] = image;
+        return previous;
+    }
+
+    @Override
+    void pout(boolean word, int port, int value)
+    {
+        if (port == PORT_DOR)
+        {
+            boolean reset = (dor & MASK_DOR_RESET) == 0;
+            dor = value & 0xFF;
+            if ((value & MASK_DOR_RESET) == 0) {
+                commandIndex = 0;
+                resultLength = 0;
+            }
+            else if (reset) {
+                // leaving reset state, controller reports
+                // status change of each drive
+                interruptSt0 = -1;
+                resetSense = 4;
+                interrupt();
+            }
+        }
+        else if (port == PORT_DATA)
+        {
+            if (resultIndex < resultLength) {
+                // result is not read, cpu must not write
+                return;
+            }
+
+            if (commandIndex == 0) {
+                int length = COMMAND_LENGTH[value & 0x1F];
+                if (length == 0) {
+                    result(ST0_INVALID);
+                    return;
+                }
+                commandLength = length;
+            }
+            command[commandIndex++] = value & 0xFF;
+            if (commandIndex == commandLength) {
+                commandIndex = 0;
+                execute();
+            }
+        }
+    }
+
+    @Override
+    int pin(boolean word, int port)
+    {
+        if (port == PORT_MSR)
+        {
+            if (resultIndex < resultLength) {
+                return MASK_MSR_RQM | MASK_MSR_DIO | MASK_MSR_BUSY;
+            }
+            return MASK_MSR_RQM | ((commandIndex != 0) ? MASK_MSR_BUSY : 0);
+        }
+        else if (port == PORT_DATA)
+        {
+            if (resultIndex < resultLength) {
+                return result[resultIndex++];
+            }
+            return 0;
+        }
+        else if (port == PORT_DOR) {
+            return dor;
+        }
+        return 0;
+    }
+
+    /**
+     * sets result bytes for the cpu to read
+     * @param values result bytes
+     */
+    private void result(int... values)
+    {
+        System.arraycopy(values, 0, result, 0, values.length);
+        resultIndex = 0;
+        resultLength = values.length;
+    }
+
+    /**
+     * requests irq#6 if enabled
+     */
+    private void interrupt() {
+        if ((dor & MASK_DOR_DMA) != 0) {
+            pic.interrupt(IRQ);
+        }
+    }
+
+    /**
+     * executes received command
+     */
+    private void execute()
+    {
+        int drive = command[1] & 0b11;
+        int head = (command[1] >> 2) & 1;
+        int unit = (head << 2) | drive;
+        DiskImage disk = drives[drive];
+
+        switch (command[0] & 0x1F)
+        {
+            case CMD_SPECIFY:
+                // step rate, head load/unload times and dma mode are not used
+                break;
+
+            case CMD_SENSE_DRIVE:
+            {
+                int st3 = unit | ST3_READY | ((cylinders[drive] == 0) ? ST3_TRACK_0 : 0);
+                if (disk != null) {
+                    st3 |= ((disk.heads == 2) ? ST3_TWO_SIDE : 0) | (disk.readOnly ? ST3_WRITE_PROTECTED : 0);
+                }
+                result(st3);
+                break;
+            }
+
+            case CMD_RECALIBRATE:
+                cylinders[drive] = 0;
+                interruptSt0 = ST0_SEEK_END | drive | ((disk == null) ? ST0_ABNORMAL | ST0_NOT_READY : 0);
+                interrupt();
+                break;
+
+            case CMD_SEEK:
+                cylinders[drive] = command[2];
+                interruptSt0 = ST0_SEEK_END | unit | ((disk == null) ? ST0_ABNORMAL | ST0_NOT_READY : 0);
+                interrupt();
+                break;
+
+            case CMD_SENSE_INT:
+                if (interruptSt0 != -1) {
+                    result(interruptSt0, cylinders[interruptSt0 & 0b11]);
+                    interruptSt0 = -1;
+                }
+                else if (resetSense != 0) {
+                    int d = 4 - resetSense--;
+                    result(ST0_POLLING | d, cylinders[d]);
+                }
+                else {
+                    result(ST0_INVALID);
+                }
+                break;
+
+            case CMD_READ_ID:
+                if (disk == null) {
+                    result(ST0_ABNORMAL | ST0_NOT_READY | unit, 0, 0, cylinders[drive], head, 1, 2);
+                } else {
+                    result(unit, 0, 0, cylinders[drive], head, 1, 2);
+                }
+                interrupt();
+                break;
+
+            case CMD_READ_DATA:
+            case CMD_READ_TRACK:
+                transfer(disk, unit, false);
+                interrupt();
+                break;
+
+            case CMD_WRITE_DATA:
+                transfer(disk, unit, true);
+                interrupt();
+                break;
+
+            case CMD_FORMAT:
+                format(disk, unit);
+                interrupt();
+                break;
+
+            default:
+                result(ST0_INVALID);
+        }
+    }
+
+    /**
+     * Reads or writes sectors starting from C/H/R of the command till
+     * dma terminal count (normal end) or end of track (cylinder with MT),
+     * each sector is moved by dma directly from/to mapped image.
+     * @param disk disk image
+     * @param unit head and drive bits for status
+     * @param write true for write command
+     */
+    private void transfer(DiskImage disk, int unit, boolean write)
+    {
+        int c = command[2];
+        int h = command[3];
+        int r = command[4];
+        int n = command[5];
+        int eot = command[6];
+        boolean multiTrack = (command[0] & MASK_CMD_MT) != 0;
+
+        if (disk == null) {
+            result(ST0_ABNORMAL | ST0_NOT_READY | unit, 0, 0, c, h, r, n);
+            return;
+        }
+        if (write && disk.readOnly) {
+            result(ST0_ABNORMAL | unit, ST1_NOT_WRITABLE, 0, c, h, r, n);
+            return;
+        }
+        if (!dma.ready(DMA_CHANNEL)) {
+            result(ST0_ABNORMAL | unit, ST1_OVERRUN, 0, c, h, r, n);
+            return;
+        }
+
+        int left = dma.remaining(DMA_CHANNEL);
+        int st0 = unit;
+        int st1 = 0;
+
+        while (true)
+        {
+            int lba = disk.lba(c, h, r);
+            if ((lba == -1) || (eot < r)) {
+                st0 |= ST0_ABNORMAL;
+                st1 |= ST1_NO_DATA;
+                break;
+            }
+
+            int size = Math.min(DiskImage.SECTOR_SIZE, left);
+            int moved;
+            if (write) {
+                moved = dma.read(DMA_CHANNEL, disk.buffer(lba), disk.offset(lba), size);
+                if (moved != 0) {
+                    disk.modified(lba);
+                }
+            } else {
+                moved = dma.write(DMA_CHANNEL, disk.buffer(lba), disk.offset(lba), size);
+            }
+            if (moved < size) {
+                // channel is programmed for another direction or cascade
+                st0 |= ST0_ABNORMAL;
+                st1 |= ST1_OVERRUN;
+                break;
+            }
+            left -= size;
+
+            // next sector id
+            boolean endOfTrack = (r == eot);
+            if (!endOfTrack) {
+                r++;
+            } else {
+                r = 1;
+                if (multiTrack && (h == 0)) {
+                    h = 1;
+                    endOfTrack = false;
+                } else {
+                    h = multiTrack ? 0 : h;
+                    c++;
+                }
+            }
+
+            if (left == 0) {
+                // terminal count, normal end
+                break;
+            }
+            if (endOfTrack) {
+                st0 |= ST0_ABNORMAL;
+                st1 |= ST1_END_OF_CYLINDER;
+                break;
+            }
+        }
+
+        result(st0, st1, 0, c, h, r, n);
+    }
+
+    /**
+     * formats track filling sectors with the filler byte,
+     * sector ids (C, H, R, N) are read by dma
+     * @param disk disk image
+     * @param unit head and drive bits for status
+     */
+    private void format(DiskImage disk, int unit)
+    {
+        int n = command[2];
+        int count = command[3];
+        int filler = command[5];
+        int head = (unit >> 2) & 1;
+
+        if (disk == null) {
+            result(ST0_ABNORMAL | ST0_NOT_READY | unit, 0, 0, cylinders[unit & 0b11], head, 1, n);
+            return;
+        }
+        if (disk.readOnly) {
+            result(ST0_ABNORMAL | unit, ST1_NOT_WRITABLE, 0, cylinders[unit & 0b11], head, 1, n);
+            return;
+        }
+
+        byte[] ids = new byte[count * 4];
+        int read = dma.read(DMA_CHANNEL, ids, 0, ids.length);
+        int st0 = unit;
+        int st1 = 0;
+        if (read < ids.length) {
+            st0 |= ST0_ABNORMAL;
+            st1 |= ST1_OVERRUN;
+        }
+        for (int i = 0; i + 4 <= read; i += 4) {
+            int lba = disk.lba(ids[i] & 0xFF, ids[i + 1] & 0xFF, ids[i + 2] & 0xFF);
+            if (lba == -1) {
+                st0 |= ST0_ABNORMAL;
+                continue;
+            }
+            ByteBuffer buffer = disk.buffer(lba);
+            int offset = disk.offset(lba);
+            for (int b = 0; b < DiskImage.SECTOR_SIZE; b++) {
+                buffer.put(offset + b, (byte) filler);
+            }
+            disk.modified(lba);
+        }
+
+        result(st0, st1, 0, cylinders[unit & 0b11], head, 1, n);
+    }
+}
@@ -0,0 +1,333 @@
+package at.emu.i8086.simple;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts executions and clocks per opcode byte and per exit (reg part of mod-reg-r/m)
+ * of demuxed opcodes. Counting is enabled by swapping cpu registry with a table of
+ * wrapping opcodes and disabled by restoring the original one, so there is no
+ * cost when counters are not attached.
+ * Clocks of an opcode include its base clocks and clocks accounted during execution,
+ * clocks of instructions executed by prefixes are accounted to those instructions only.
+ */
+public class OpcodeCounters
+{
+    /**
+     * number of exits in demuxed opcodes
+     */
+    private static final int EXITS = 8;
+
+    /**
+     * counters per opcode and per opcode * 8 + reg
+     */
+    final long[] counts = new long[256];
+    final long[] clocks = new long[256];
+    final long[] exitCounts = new long[256 * EXITS];
+    final long[] exitClocks = new long[256 * EXITS];
+
+    /**
+     * clocks spent by nested instructions (prefixed ones) of the current opcode
+     */
+    private long nested;
+
+    /**
+     * cpu with counters attached, its original registry
+     * and registry with wrapped opcodes installed instead,
+     * original registry is kept after detach to name counted opcodes
+     */
+    private Cpu cpu;
+    private Cpu.Opcode[] original;
+    private Cpu.Opcode[] installed;
+
+    /**
+     * Wraps opcode to count it
+     */
+    private final class Counted extends Cpu.Opcode
+    {
+        private final Cpu.Opcode opcode;
+
+        Counted(Cpu.Opcode opcode) {
+            this.opcode = opcode;
+        }
+
+        @Override
+        public void execute(Cpu cpu, int code)
+        {
+            long start = cpu.clocks;
+            long outer = nested;
+            nested = 0;
+            opcode.execute(cpu, code);
+            long spent = cpu.clocks - start + cpu.opcodeClocks[code];
+            counts[code]++;
+            clocks[code] += spent - nested;
+            nested = outer + spent;
+        }
+    }
+
+    /**
+     * Replaces demux to count its exits too
+     */
+    private final class CountedDemux extends Cpu.Opcode
+    {
+        private final Cpu.DemuxedOpcode[] exits;
+
+        CountedDemux(Cpu.RegBasedDemux demux) {
+            this.exits = demux.exits;
+        }
+
+        @Override
+        public void execute(Cpu cpu, int code)
+        {
+            long start = cpu.clocks;
+            long outer = nested;
+            nested = 0;
+            cpu.readModRegRm(code);
+            int reg = cpu.mrrReg;
+            exits[reg].demuxed(cpu, code);
+            long spent = cpu.clocks - start + cpu.opcodeClocks[code] - nested;
+            counts[code]++;
+            clocks[code] += spent;
+            exitCounts[code * EXITS + reg]++;
+            exitClocks[code * EXITS + reg] += spent;
+            nested = outer + spent + nested;
+        }
+    }
+
+    /**
+     * starts counting by replacing registry of the cpu with wrapping opcodes,
+     * counters are not reset
+     * @param cpu ref to initialized cpu
+     */
+    public void attach(Cpu cpu)
+    {
+        if (this.cpu != null) {
+            throw new IllegalStateException("counters are already attached");
+        }
+        Cpu.Opcode[] registry = cpu.opcodes;
+        Cpu.Opcode[] wrapped = new Cpu.Opcode[registry.length];
+        for (int i = 0; i < registry.length; i++) {
+            Cpu.Opcode opcode = registry[i];
+            if (opcode instanceof Cpu.RegBasedDemux) {
+                wrapped[i] = new CountedDemux((Cpu.RegBasedDemux) opcode);
+            } else if (opcode != null) {
+                wrapped[i] = new Counted(opcode);
+            }
+        }
+        this.cpu = cpu;
+        this.original = registry;
+        this.installed = wrapped;
+        cpu.opcodes = wrapped;
+    }
+
+    /**
+     * stops counting and restores original registry of the cpu,
+     * anything that replaced registry after attach must be detached first
+     * @throws IllegalStateException if registry of the cpu was replaced
+     */
+    public void detach()
+    {
+        if (cpu == null) {
+            return;
+        }
+        if (cpu.opcodes != installed) {
+            throw new IllegalStateException("registry was replaced after counters were attached");
+        }
+        cpu.opcodes = original;
+        installed = null;
+        cpu = null;
+    }
+
+    /**
+     * clears all the counters
+     */
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        Arrays.fill(clocks, 0);
+        Arrays.fill(exitCounts, 0);
+        Arrays.fill(exitClocks, 0);
+    }
+
+    /**
+     * @param opcode opcode byte
+     * @return number of executions
+     */
+    public long count(int opcode) {
+        return counts[opcode];
+    }
+
+    /**
+     * @param opcode opcode byte
+     * @return clocks spent
+     */
+    public long clocks(int opcode) {
+        return clocks[opcode];
+    }
+
+    /**
+     * @param opcode demuxed opcode byte
+     * @param reg reg part of mod-reg-r/m
+     * @return number of executions of the exit
+     */
+    public long count(int opcode, int reg) {
+        return exitCounts[opcode * EXITS + reg];
+    }
+
+    /**
+     * @param opcode demuxed opcode byte
+     * @param reg reg part of mod-reg-r/m
+     * @return clocks spent in the exit
+     */
+    public long clocks(int opcode, int reg) {
+        return exitClocks[opcode * EXITS + reg];
+    }
+
+    /**
+     * @return registry to take opcode names from
+     */
+    private Cpu.Opcode[] registry() {
+        return (original != null) ? original : new Cpu.Opcode[256];
+    }
+
+    /**
+     * @return name of the opcode or exit implementation
+     */
+    private static String name(Cpu.Opcode[] registry, int opcode, int reg)
+    {
+        Cpu.Opcode op = registry[opcode];
+        if ((reg >= 0) && (op instanceof Cpu.RegBasedDemux)) {
+            op = ((Cpu.RegBasedDemux) op).exits[reg];
+        }
+        return (op == null) ? "" : op.getClass().getSimpleName();
+    }
+
+    /**
+     * sums counters by implementation class,
+     * exits of demuxed opcodes are accounted to their own classes
+     * @return class name to {count, clocks}, sorted by clocks
+     */
+    public Map<String, long[]> byClass()
+    {
+        Cpu.Opcode[] registry = registry();
+        Map<String, long[]> result = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (registry[i] instanceof Cpu.RegBasedDemux) {
+                for (int reg = 0; reg < EXITS; reg++) {
+                    if (exitCounts[i * EXITS + reg] != 0) {
+                        long[] sum = result.computeIfAbsent(name(registry, i, reg), k -> new long[2]);
+                        sum[0] += exitCounts[i * EXITS + reg];
+                        sum[1] += exitClocks[i * EXITS + reg];
+                    }
+                }
+            } else {
+                long[] sum = result.computeIfAbsent(name(registry, i, -1), k -> new long[2]);
+                sum[0] += counts[i];
+                sum[1] += clocks[i];
+            }
+        }
+
+        Map<String, long[]> sorted = new LinkedHashMap<>();
+        result.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return sorted;
+    }
+
+    /**
+     * @return csv with header: opcode,reg,class,count,clocks,
+     *          reg is empty for opcodes and set for exits of demuxed ones
+     */
+    public String toCsv()
+    {
+        Cpu.Opcode[] registry = registry();
+        StringBuilder text = new StringBuilder("opcode,reg,class,count,clocks\n");
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            text.append(String.format("%02X,,%s,%d,%d\n", i, name(registry, i, -1), counts[i], clocks[i]));
+            for (int reg = 0; reg < EXITS; reg++) {
+                int index = i * EXITS + reg;
+                if (exitCounts[index] != 0) {
+                    text.append(String.format("%02X,%d,%s,%d,%d\n", i, reg, name(registry, i, reg), exitCounts[index], exitClocks[index]));
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return json array of executed opcodes, demuxed ones have "exits" array
+     */
+    public String toJson()
+    {
+        Cpu.Opcode[] registry = registry();
+        StringBuilder text = new StringBuilder("[");
+        boolean first = true;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            text.append(first ? "\n" : ",\n");
+            first = false;
+            text.append(String.format("  {\"opcode\": %d, \"class\": \"%s\", \"count\": %d, \"clocks\": %d",
+                    i, name(registry, i, -1), counts[i], clocks[i]));
+
+            if (registry[i] instanceof Cpu.RegBasedDemux) {
+                text.append(", \"exits\": [");
+                boolean firstExit = true;
+                for (int reg = 0; reg < EXITS; reg++) {
+                    int index = i * EXITS + reg;
+                    if (exitCounts[index] != 0) {
+                        text.append(firstExit ? "" : ", ");
+                        firstExit = false;
+                        text.append(String.format("{\"reg\": %d, \"class\": \"%s\", \"count\": %d, \"clocks\": %d}",
+                                reg, name(registry, i, reg), exitCounts[index], exitClocks[index]));
+                    }
+                }
+                text.append("]");
+            }
+            text.append("}");
+        }
+        return text.append("\n]\n").toString();
+    }
+
+    /**
+     * @return table in the form of {@link Cpu.OpcodeConfiguration#dump(Cpu.Opcode[])}
+     *          with counters, executed opcodes only
+     */
+    public String toTable()
+    {
+        Cpu.Opcode[] registry = registry();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            String bin = String.format("%8s", Integer.toBinaryString(i)).replace(' ', '0');
+            text.append(String.format("%s_%s    %-24s %14d %16d\n",
+                    bin.substring(0, 4), bin.substring(4), name(registry, i, -1), counts[i], clocks[i]));
+            for (int reg = 0; reg < EXITS; reg++) {
+                int index = i * EXITS + reg;
+                if (exitCounts[index] != 0) {
+                    String value = String.format("%3s", Integer.toBinaryString(reg)).replace(' ', '0');
+                    text.append(String.format("             %s    %-20s %14d %16d\n",
+                            value, name(registry, i, reg), exitCounts[index], exitClocks[index]));
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * dumps table of counters to stdout
+     */
+    public void dump() {
+        System.out.print(toTable());
+    }
+}
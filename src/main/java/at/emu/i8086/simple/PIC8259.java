@@ -131,6 +131,10 @@ class PIC8259 extends Cpu.PortHandler
     public static final int OCW3_SMASK_SET      = 0b0110_0000;
     public static final int OCW3_SMASK_RESET    = 0b0100_0000;
 
+    /**
+     * cpu to raise interrupt request events on
+     */
+    private final Cpu cpu;
     /**
      * command port for this pic
      */
@@ -200,7 +204,8 @@ class PIC8259 extends Cpu.PortHandler
      */
     private boolean hasRequests = false;
 
-    public PIC8259(int cmdPort, int dataPort, boolean master) {
+    public PIC8259(Cpu cpu, int cmdPort, int dataPort, boolean master) {
+        this.cpu = cpu;
         this.cmdPort = cmdPort;
         this.dataPort = dataPort;
         this.master = master;
@@ -209,18 +214,22 @@ class PIC8259 extends Cpu.PortHandler
     /**
      * public api for cpu, checks if there are some
      * interrupt requests in IRR register and call cpu to process
-     * the one with highest priority
+     * the one with highest priority,
+     * called by cpu only when {@link Cpu#EVENT_IRQ} is pending
      */
     public void runInterruptHandler(Cpu cpu)
     {
         if (!hasRequests) {
+            cpu.clearEvent(Cpu.EVENT_IRQ);
             return;
         }
 
         if ((isr != 0) && !sMask) {
             // don't send interrupts to cpu if
             // some is being processed already and
-            // nester interrupts are disallowed
+            // nester interrupts are disallowed,
+            // event will be raised again on eoi
+            cpu.clearEvent(Cpu.EVENT_IRQ);
             return;
         }
 
@@ -241,11 +250,22 @@ class PIC8259 extends Cpu.PortHandler
             // clear global flag is there are no requests active
             if (irr == 0) {
                 hasRequests = false;
+                cpu.clearEvent(Cpu.EVENT_IRQ);
             }
+        } else {
+            cpu.clearEvent(Cpu.EVENT_IRQ);
         }
     }
 
 
+    /**
+     * @return true if there are requests that could be
+     * reported to cpu (may be blocked by isr)
+     */
+    boolean hasPendingRequests() {
+        return hasRequests;
+    }
+
     /**
      * called by slave devices to indicate interrupt request
      * at the specified physical lane
@@ -260,6 +280,7 @@ class PIC8259 extends Cpu.PortHandler
 
             // indicate we a request to global flag
             hasRequests = true;
+            cpu.raiseEvent(Cpu.EVENT_IRQ);
         }
     }
 
@@ -276,6 +297,7 @@ class PIC8259 extends Cpu.PortHandler
         if (!(sMask && ((imr & bitMask) != 0))) {
             isr &= ~bitMask;
         }
+        eoiEvents();
     }
 
     /**
@@ -285,6 +307,18 @@ class PIC8259 extends Cpu.PortHandler
     private void eoi(int bit)
     {
         isr &= ~(1 << bit);
+        eoiEvents();
+    }
+
+    /**
+     * raises cpu event again if some requests were
+     * blocked by the interrupt being serviced
+     */
+    private void eoiEvents()
+    {
+        if ((irr & ~isr) != 0) {
+            cpu.raiseEvent(Cpu.EVENT_IRQ);
+        }
     }
 
     /**
@@ -404,10 +438,10 @@ class PIC8259 extends Cpu.PortHandler
                 }
                 else if (rSlEoi == 0b1100_0000) {
                     // set priory command
-                    System.out.println("PIC8259: set priority command");
+                    cpu.log.add(DeviceLog.PIC, DeviceLog.WARN, DeviceLog.KIND_UNSUPPORTED, port, value);
                 }
                 else {
-                    System.out.println("PIC8259: unhandled OCW write " + Integer.toBinaryString(value));
+                    cpu.log.add(DeviceLog.PIC, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_WRITE, port, value);
                 }
             }
             else if (ocw23Selector == OCW3_SELECTOR)
@@ -425,6 +459,7 @@ class PIC8259 extends Cpu.PortHandler
                     // reset global flag to allow
                     // detailed check for ready interrupts
                     hasRequests = true;
+                    cpu.raiseEvent(Cpu.EVENT_IRQ);
                 } else if (smask == OCW3_SMASK_RESET) {
                     sMask = false;
                 }
@@ -442,7 +477,12 @@ class PIC8259 extends Cpu.PortHandler
             // only allowed write to data register is ocw1
             // which overrides IMR register,
             // 0xFF is used to mask all channels (disable pic)
+            int unmasked = imr & ~value;
             imr = value & 0xFF;
+            if (unmasked != 0) {
+                // devices holding their requests could raise them now
+                cpu.raiseEvent(Cpu.EVENT_INPUT);
+            }
         }
     }
 
@@ -99,15 +99,39 @@ class PPI8255 extends Cpu.PortHandler
      */
     private boolean readHighSwitches;
 
+    /**
+     * last value written to port B, read back by
+     * software that toggles single bits (speaker)
+     */
+    private int portB;
+
     /**
      * reference to keyboard for passing commands too
      * and reading codes from
      */
     private final XtKeyboard keyboard;
 
-    
-    public PPI8255(XtKeyboard keyboard) {
+    /**
+     * timer, channel 2 gate is controlled
+     * and output is read via ppi
+     */
+    private final PTI8253 pti;
+
+    /**
+     * speaker, enabled via port B
+     */
+    private final Speaker speaker;
+
+    /**
+     * log for commands and unhandled accesses
+     */
+    private final DeviceLog log;
+
+    public PPI8255(XtKeyboard keyboard, PTI8253 pti, Speaker speaker, DeviceLog log) {
         this.keyboard = keyboard;
+        this.pti = pti;
+        this.speaker = speaker;
+        this.log = log;
     }
 
     /**
@@ -121,12 +145,8 @@ class PPI8255 extends Cpu.PortHandler
     {
         if (port == PORT_CMD)
         {
-            if ((value & 0b1000_0000) != 0) {
-                // command byte A
-                System.out.printf("PPI8255A: command byte A: %02X%n", value);
-            } else {
-                System.out.printf("PPI8255A: command byte B: %02X%n", value);
-            }
+            // mode set (bit 7 is set) or bit set/reset command, not used by bios
+            log.add(DeviceLog.PPI, DeviceLog.INFO, DeviceLog.KIND_COMMAND, port, value);
         }
 
         else if (port == PORT_A) {
@@ -136,15 +156,18 @@ class PPI8255 extends Cpu.PortHandler
 
         else if ((port == PORT_B))
         {
+            portB = value & 0xFF;
+
             if ((value & MASK_PORT_B_SWITCHES) == 0) {
                 readHighSwitches = false;
             } else {
                 readHighSwitches = true;
             }
 
-            if ((value & MASK_PORT_B_TIMER) != 0) {
-                // pti.gateChannel2();
-            }
+            // sound is rendered with the old state before the change
+            speaker.sync();
+            speaker.enable((value & MASK_PORT_B_SPEAKER) != 0);
+            pti.gate(2, (value & MASK_PORT_B_TIMER) != 0);
 
             // first handle clear part as it could
             // drop internal buffer
@@ -173,16 +196,21 @@ class PPI8255 extends Cpu.PortHandler
         }
         else if (port == PORT_C)
         {
+            // bit 5 reflects timer channel 2 output
+            int out2 = pti.output(2) ? 0b0010_0000 : 0;
             if (readHighSwitches) {
                 // 1 diskette, 80x25 display
-                return 0b0000_0010;
+                return 0b0000_0010 | out2;
             } else {
                 // 640K, no coprocessor, no loop
-                return 0b0000_1100;
+                return 0b0000_1100 | out2;
             }
         }
+        else if (port == PORT_B) {
+            return portB;
+        }
         else {
-            System.out.printf("PPI8255A: unhandled read from port %02X%n", port);
+            log.add(DeviceLog.PPI, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_READ, port, 0);
             return 0;
         }
     }
@@ -192,6 +220,6 @@ class PPI8255 extends Cpu.PortHandler
      * @param value byte value
      */
     private void diagnostic(int value) {
-        System.out.printf("diagnostic: %02X%n", value & 0xFF);
+        log.add(DeviceLog.PPI, DeviceLog.INFO, DeviceLog.KIND_WRITE, PORT_A, value & 0xFF);
     }
 }
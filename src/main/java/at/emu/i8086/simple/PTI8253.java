@@ -68,12 +68,14 @@ class PTI8253 extends Cpu.PortHandler
     public static final int CHANNEL0_IRQ    = 0;
 
     /**
-     * Holds state for each channel
+     * Holds state for each channel.
+     * Counter and output are not stored but calculated from the number of
+     * timer ticks elapsed since the counter was loaded (or triggered),
+     * so the cost of the timer is proportional to the number of accesses.
      */
     static class State
     {
         // masks to check data in #state field
-        public static final int MASK_MODE           = 0b0000_0011;
         public static final int MASK_ACCMODE        = 0b0000_1100;
         public static final int MASK_LOHI_WRITE     = 0b0001_0000;
         public static final int MASK_LOHI_READ      = 0b0010_0000;
@@ -84,22 +86,37 @@ class PTI8253 extends Cpu.PortHandler
         public static final int ACCESS_LOHI_BYTES   = 0b001100;
 
         /**
-         * holds mode, access mode, and r/w state in case of LO/HI mode
+         * holds access mode and r/w state in case of LO/HI mode
          * lowest bits are:
          *                     + access mode
-         *                     |          + mode
+         *                     |
          * __00______0__0______00_________00
          *           |  + program state for lo/hi access mode (0 - lo, 1 - hi)
          *           + read state for lo/hi access mode (0 - lo, 1 - hi)
         */
         int state   = ACCESS_LO_BYTE;
 
-        // internal counter to track periods
-        int counter;
+        // operating mode 0..5
+        int mode;
 
         // reload value as programmed,
-        // valid values are 1 - 65535(6), 0 - not initialized
+        // valid values are 1 - 65536, 0 - not initialized
         int reload;
+        // value being written by lo/hi bytes
+        int written;
+
+        // true when counter is loaded (triggered for modes 1, 5)
+        // and counts down from #base starting at #baseTick
+        boolean counting;
+        // counter value at #baseTick
+        int base;
+        // timer tick the counter was loaded at
+        long baseTick;
+
+        // gate input, always high for channels 0, 1
+        boolean gate = true;
+        // output state when not counting
+        boolean out = true;
 
         // latch value after latch command,
         // -1: not initialized
@@ -108,10 +125,13 @@ class PTI8253 extends Cpu.PortHandler
         /**
          * stores latch value to be read later
          * from channel port (only useful in LO/HI mode)
+         * @param tick current timer tick
          */
-        void latch()
+        void latch(long tick)
         {
-            latch = counter;
+            if (latch == -1) {
+                latch = counter(tick);
+            }
             // reset read state for lo/hi access mode
             state &= ~MASK_LOHI_READ;
         }
@@ -128,22 +148,30 @@ class PTI8253 extends Cpu.PortHandler
         }
 
         /**
-         * set channel's operating mode
+         * set channel's operating mode, counting is stopped till the next
+         * reload value is written, output state is defined by the mode
          * @param mode new mode
          */
-        void setMode(int mode) {
-            state = (state & ~MASK_MODE) | mode;
+        void setMode(int mode)
+        {
+            this.mode = mode;
+            counting = false;
+            latch = -1;
+            // mode 0 output goes low on mode set, all others are high
+            out = (mode != 0);
         }
 
         /**
          * write divisor value to reload field based on LO,HI or LO/HI access mode,
          * tracks state for LO/HI mode
          * @param value new byte value to write
+         * @param tick current timer tick
          */
-        void write(int value)
+        void write(int value, long tick)
         {
             // assume we must handle lo byte now
             boolean loByte = true;
+            boolean complete = true;
 
             // current access mode
             int amode = state & MASK_ACCMODE;
@@ -153,6 +181,7 @@ class PTI8253 extends Cpu.PortHandler
                 if ((state & MASK_LOHI_WRITE) == 0) {
                     // first(lo) byte, stay in loByte and prepare for hi byte
                     state |= MASK_LOHI_WRITE;
+                    complete = false;
                 } else {
                     // switch back to be ready for lo byte on the next turn
                     state &= ~MASK_LOHI_WRITE;
@@ -163,26 +192,279 @@ class PTI8253 extends Cpu.PortHandler
                 loByte = false;
             }
 
-            // todo: investigate if we need to reset upper/low part on write?
-
             if (loByte) {
-                reload &= 0xFF00;
-                reload |= (value);
+                written = (amode == ACCESS_LO_BYTE) ? value : (written & 0xFF00) | value;
             }
             else {
-                reload &= 0x00FF;
-                reload |= (value << 8);
+                written = (amode == ACCESS_HI_BYTE) ? (value << 8) : (written & 0x00FF) | (value << 8);
+            }
+
+            if (!complete) {
+                // mode 0 output goes low when the first byte is written,
+                // counting is suspended till the second one
+                if (mode == 0) {
+                    base = counter(tick);
+                    counting = false;
+                    out = false;
+                }
+                return;
+            }
+
+            // 0 means max count
+            int value16 = written == 0 ? 65536 : written;
+
+            if ((mode == 1) || (mode == 5)) {
+                // hardware triggered, wait for gate rising edge,
+                // new value doesn't affect the current cycle
+                reload = value16;
+                return;
+            }
+            if (((mode == 2) || (mode == 3)) && counting) {
+                // new value is used from the next period
+                base = (int) (nextRisingEdge(tick) - tick);
+                baseTick = tick;
+                reload = value16;
+                return;
+            }
+
+            reload = value16;
+            counting = gate;
+            base = reload;
+            baseTick = tick;
+            out = (mode != 0);
+        }
+
+        /**
+         * handles gate input change
+         * @param gate new gate state
+         * @param tick current timer tick
+         */
+        void gate(boolean gate, long tick)
+        {
+            if (this.gate == gate) {
+                return;
+            }
+
+            if (!gate) {
+                // stop counting, remember state
+                if (counting) {
+                    if ((mode == 0) || (mode == 4)) {
+                        base = counter(tick);
+                        out = output(tick);
+                        counting = false;
+                    } else if ((mode == 2) || (mode == 3)) {
+                        // output is forced high
+                        counting = false;
+                        out = true;
+                    }
+                    // modes 1, 5 are not affected by low gate
+                }
+            }
+            else if (reload != 0) {
+                if ((mode == 0) || (mode == 4)) {
+                    // continue counting from the same value
+                    counting = true;
+                    baseTick = tick;
+                } else {
+                    // rising edge (re)triggers the counter
+                    counting = true;
+                    base = reload;
+                    baseTick = tick;
+                    out = true;
+                }
+            }
+
+            this.gate = gate;
+        }
+
+        /**
+         * calculates counter value at the specified tick
+         * @param tick timer tick
+         * @return counter value 0..65535
+         */
+        int counter(long tick)
+        {
+            if (!counting) {
+                return base & 0xFFFF;
             }
 
-            // todo: review 00 ->> FFFF or 10000 (bios checks 00-->FF)
-            reload = reload == 0 ? 65536 : reload;
+            long elapsed = tick - baseTick;
+            switch (mode) {
+                case 2: {
+                    // counts N..1 and reloads
+                    if (elapsed < base) {
+                        return base - (int) elapsed;
+                    }
+                    return reload - (int) ((elapsed - base) % reload);
+                }
+                case 3: {
+                    // counts by 2 during each half period
+                    int phase = phase(elapsed);
+                    int high = (reload + 1) >> 1;
+                    int value = (phase < high) ? reload - 2 * phase : reload - 2 * (phase - high);
+                    return value & 0xFFFE;
+                }
+                default:
+                    // one shot modes, counter wraps and continues
+                    return (int) ((base - elapsed) & 0xFFFF);
+            }
+        }
+
+        /**
+         * calculates position inside the period for periodic modes (2, 3),
+         * first period could be shorter after reprogramming
+         * @param elapsed ticks elapsed since #baseTick
+         * @return position inside the period, 0 - right after reload
+         */
+        private int phase(long elapsed)
+        {
+            if (elapsed < base) {
+                return (int) Math.max(0, elapsed + reload - base);
+            }
+            return (int) ((elapsed - base) % reload);
+        }
+
+        /**
+         * calculates output state at the specified tick
+         * @param tick timer tick
+         * @return true if output is high
+         */
+        boolean output(long tick)
+        {
+            if (!counting) {
+                return out;
+            }
+
+            long elapsed = tick - baseTick;
+            switch (mode) {
+                case 0:
+                    // low till terminal count
+                    return base <= elapsed;
+                case 1:
+                    // low after trigger till terminal count
+                    return base <= elapsed;
+                case 2:
+                    // low for one tick when counter is 1
+                    return counter(tick) != 1;
+                case 3: {
+                    int phase = phase(elapsed);
+                    return phase < ((reload + 1) >> 1);
+                }
+                default:
+                    // modes 4, 5, low for one tick on terminal count
+                    return elapsed != base;
+            }
+        }
+
+        /**
+         * calculates how long output is high in the range of ticks,
+         * that is output integrated over time, matches {@link #output(long)}
+         * @param from first tick
+         * @param to tick after the last one
+         * @return number of ticks with high output
+         */
+        long highTicks(long from, long to)
+        {
+            if (!counting) {
+                return out ? to - from : 0;
+            }
+
+            long e0 = from - baseTick;
+            long e1 = to - baseTick;
+            switch (mode) {
+                case 0:
+                case 1:
+                    // high from terminal count
+                    return (to - from) - (clamp(base, e0, e1) - e0);
+                case 2:
+                    // low at counter 1, ticks base-1 + k*reload
+                    return (to - from) - pulses(base - 1, reload, e0, e1);
+                case 3: {
+                    // virtual time from the start of the first (full) period,
+                    // first period is shorter after reprogramming
+                    long shift = reload - base;
+                    long high = (reload + 1) >> 1;
+                    long u0 = e0 + shift;
+                    long u1 = e1 + shift;
+                    // negative virtual time is phase 0, high
+                    long before = clamp(0, u0, u1) - u0;
+                    return before + square(Math.max(u1, 0), high) - square(Math.max(u0, 0), high);
+                }
+                default:
+                    // one tick low at terminal count
+                    return (to - from) - (((e0 <= base) && (base < e1)) ? 1 : 0);
+            }
+        }
+
+        /**
+         * @return number of high ticks of square wave in [0, u)
+         */
+        private long square(long u, long high) {
+            return (u / reload) * high + Math.min(u % reload, high);
+        }
+
+        /**
+         * @return number of ticks first + k * period (k &gt;= 0) in [e0, e1)
+         */
+        private static long pulses(long first, long period, long e0, long e1)
+        {
+            long from = Math.max(e0, first);
+            if (e1 <= from) {
+                return 0;
+            }
+            // first pulse at or after from, and pulses before e1
+            long a = (from - first + period - 1) / period;
+            long b = (e1 - 1 - first) / period;
+            return Math.max(0, b - a + 1);
+        }
+
+        private static long clamp(long value, long min, long max) {
+            return Math.max(min, Math.min(max, value));
+        }
+
+        /**
+         * calculates the first tick after the specified one
+         * when output goes from low to high (edge triggered irq)
+         * @param tick timer tick
+         * @return tick of the next rising edge or Long.MAX_VALUE if there will be none
+         */
+        long nextRisingEdge(long tick)
+        {
+            if (!counting) {
+                return Long.MAX_VALUE;
+            }
+
+            long elapsed = tick - baseTick;
+            switch (mode) {
+                case 0:
+                case 1: {
+                    // only one edge at terminal count
+                    long edge = baseTick + base;
+                    return (edge > tick) ? edge : Long.MAX_VALUE;
+                }
+                case 2:
+                case 3: {
+                    // edges at reload points
+                    if (elapsed < base) {
+                        return baseTick + base;
+                    }
+                    long periods = (elapsed - base) / reload + 1;
+                    return baseTick + base + periods * reload;
+                }
+                default: {
+                    // output goes high right after the strobe
+                    long edge = baseTick + base + 1;
+                    return (edge > tick) ? edge : Long.MAX_VALUE;
+                }
+            }
         }
 
         /**
          * reads current counter or latch if it was requested be port write
+         * @param tick current timer tick
          * @return LO or HI byte
          */
-        int read()
+        int read(long tick)
         {
             // assume we must handle lo byte now
             boolean loByte = true;
@@ -210,7 +492,7 @@ class PTI8253 extends Cpu.PortHandler
 
             int value = latch;
             if (value == -1) {
-                value = counter;
+                value = counter(tick);
             }
             else if (resetLatch) {
                 // latch is active and must be reset
@@ -234,53 +516,95 @@ class PTI8253 extends Cpu.PortHandler
     };
 
 
-    long ns;
+    /**
+     * cpu to read clocks from, timer input runs at 1/4 of the cpu clock
+     */
+    private final Cpu cpu;
     PIC8259 pic;
 
-    public PTI8253(PIC8259 pic) {
+    /**
+     * timer tick of the last synchronization
+     */
+    private long tick;
+    /**
+     * tick of the next irq0 (channel 0 rising edge)
+     */
+    private long irqTick = Long.MAX_VALUE;
+
+    public PTI8253(Cpu cpu, PIC8259 pic) {
+        this.cpu = cpu;
         this.pic = pic;
     }
 
     /**
-     * must be called periodically to update timer counters
-     * timer doesn't count during programming period (between setup cmd and channel write(s)),
-     * could be supported via additional bits in #State.state field
+     * @return current timer tick derived from cpu clocks
      */
-    public void update()
+    private long tick() {
+        return cpu.clocks >> 2;
+    }
+
+    /**
+     * synchronizes timer with cpu clocks, raises irq0
+     * if channel 0 output went high since the last call
+     * @param cpuClocks current cpu clocks
+     */
+    public void clock(long cpuClocks)
     {
-        //long now = System.nanoTime();
-
-        State state = states[0];
-        //boolean programming = (state.state & State.MASK_PRG) != 0;
-        if ((state.reload != 0)) {
-            state.counter -= 1;
-            if (state.counter < 0) {
-                state.counter = state.reload + state.counter;
-                // switch case mode
-                pic.interrupt(CHANNEL0_IRQ);
-            }
+        tick = cpuClocks >> 2;
+        if (irqTick <= tick) {
+            pic.interrupt(CHANNEL0_IRQ);
+            irqTick = states[0].nextRisingEdge(tick);
         }
+    }
 
-        state = states[1];
-        //programming = (state.state & State.MASK_PRG) != 0;
-        if ((state.reload != 0)) {
-            state.counter -= 1;
-            if (state.counter < 0) {
-                state.counter = state.reload + state.counter;
-                // switch case mode
-            }
-        }
+    /**
+     * @return cpu clocks of the next channel 0 irq, Long.MAX_VALUE if none
+     */
+    public long nextIrqClocks() {
+        return irqTick == Long.MAX_VALUE ? Long.MAX_VALUE : irqTick << 2;
+    }
 
-        state = states[2];
-        //programming = (state.state & State.MASK_PRG) != 0;
-        if ((state.reload != 0)) {
-            state.counter -= 1;
-            if (state.counter < 0) {
-                state.counter = state.reload + state.counter;
-                // switch case mode
-            }
-        }
+    /**
+     * changes gate input of the channel (only channel 2 is controllable on XT)
+     * @param channel channel
+     * @param gate gate state
+     */
+    public void gate(int channel, boolean gate) {
+        states[channel].gate(gate, tick());
+    }
+
+    /**
+     * @param channel channel
+     * @return current output state of the channel
+     */
+    public boolean output(int channel) {
+        return states[channel].output(tick());
+    }
+
+    /**
+     * @param channel channel
+     * @param fromClocks start of the range in cpu clocks
+     * @param toClocks end of the range in cpu clocks
+     * @return number of timer ticks the output is high in the range
+     */
+    public long highTicks(int channel, long fromClocks, long toClocks) {
+        return states[channel].highTicks(fromClocks >> 2, toClocks >> 2);
+    }
 
+    /**
+     * @param channel channel
+     * @return state of the channel
+     */
+    State state(int channel) {
+        return states[channel];
+    }
+
+    /**
+     * re-calculates irq0 deadline after channel 0 reprogramming
+     * @param tick current tick
+     */
+    private void reschedule(long tick) {
+        irqTick = states[0].nextRisingEdge(tick);
     }
 
     /**
@@ -293,6 +617,12 @@ class PTI8253 extends Cpu.PortHandler
     void pout(boolean word, int port, int value)
     {
         value &= 0xFF;
+        long tick = tick();
+
+        if ((port == PORT_TIMER2) || ((port == PORT_COMMAND) && ((value >> 6) == 2))) {
+            // sound is rendered with the old channel 2 state up to now
+            cpu.speaker.sync();
+        }
 
         if (port == PORT_COMMAND)
         {
@@ -312,7 +642,7 @@ class PTI8253 extends Cpu.PortHandler
                 if (aMode == 0)
                 {
                     // latch command, no mode change
-                    state.latch();
+                    state.latch(tick);
                 }
                 else {
                     // channel setup command
@@ -327,31 +657,36 @@ class PTI8253 extends Cpu.PortHandler
                         mode &= 0b011;
                     }
                     state.setMode(mode);
+                    if (channel == 0) {
+                        reschedule(tick);
+                    }
                 }
             }
         }
         else if (port == PORT_TIMER2) {
-            states[2].write(value);
+            states[2].write(value, tick);
         }
         else if (port == PORT_TIMER0) {
-            states[0].write(value);
+            states[0].write(value, tick);
+            reschedule(tick);
         }
         else if (port == PORT_TIMER1) {
-            states[1].write(value);
+            states[1].write(value, tick);
         }
     }
 
     @Override
     int pin(boolean word, int port)
     {
+        long tick = tick();
         if (port == PORT_TIMER2) {
-            return states[2].read();
+            return states[2].read(tick);
         }
         else if (port == PORT_TIMER0) {
-            return states[0].read();
+            return states[0].read(tick);
         }
         else if (port == PORT_TIMER1) {
-            return states[1].read();
+            return states[1].read(tick);
         }
         else {
             return 0;
@@ -0,0 +1,243 @@
+package at.emu.i8086.simple;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces emulation against real time, compares guest time (cpu clocks)
+ * with host time and parks the thread when guest is ahead.
+ * Works with any clocks counter (simple or clocked core).
+ *
+ * Expected usage: run guest for {@link #sliceClocks()} and call
+ * {@link #pace(long)} with the current clocks value.
+ * Speed could be changed from any thread, it's applied by the
+ * pacing thread on the next call.
+ */
+public class Pacer
+{
+    /**
+     * clock of the original PC/XT cpu, 14.31818 MHz / 3
+     */
+    public static final long CPU_HZ = 4_772_727;
+
+    /**
+     * speed multipliers
+     */
+    public static final double SPEED_1X = 1.0;
+    public static final double SPEED_2X = 2.0;
+    public static final double SPEED_TURBO = 4.0;
+    public static final double SPEED_UNTHROTTLED = 0.0;
+
+    /**
+     * default slice of guest time between checks
+     */
+    public static final long SLICE_NANOS = 500_000;
+
+    /**
+     * parking is not precise, don't park for less
+     */
+    private static final long MIN_PARK_NANOS = 50_000;
+
+    /**
+     * when guest is behind more than that (host is too slow or was suspended),
+     * time base is reset instead of trying to catch up
+     */
+    private static final long MAX_LAG_NANOS = 100_000_000;
+
+    /**
+     * speed requested by {@link #speed(double)}, could be set by any thread
+     */
+    private volatile double requested;
+
+    /**
+     * speed multiplier applied by the pacing thread, 0 ->> no pacing
+     */
+    private double speed = -1;
+    /**
+     * clocks per nanosecond for the current speed
+     */
+    private double clocksPerNano;
+
+    /**
+     * source of host time
+     */
+    private final LongSupplier clock;
+
+    /**
+     * time base, host time and guest clocks at the moment of sync,
+     * valid only when synced
+     */
+    private boolean synced;
+    private long baseNanos;
+    private long baseClocks;
+
+    /**
+     * last drift, host time minus guest time, positive ->> guest is behind
+     */
+    private long drift;
+    /**
+     * max drift detected since start
+     */
+    private long maxDrift;
+    /**
+     * total host time dropped on resynchronizations
+     */
+    private long lostNanos;
+    /**
+     * total time spent parked
+     */
+    private long parkedNanos;
+
+    /**
+     * creates pacer running at the original speed
+     */
+    public Pacer() {
+        this(SPEED_1X);
+    }
+
+    /**
+     * @param speed speed multiplier, {@link #SPEED_UNTHROTTLED} disables pacing
+     */
+    public Pacer(double speed) {
+        this(speed, System::nanoTime);
+    }
+
+    /**
+     * @param speed speed multiplier
+     * @param clock source of host time in nanoseconds
+     */
+    Pacer(double speed, LongSupplier clock) {
+        this.clock = clock;
+        speed(speed);
+    }
+
+    /**
+     * changes speed, could be called from any thread,
+     * new speed is applied and time base is reset on the next
+     * {@link #sliceClocks()} or {@link #pace(long)}
+     * @param speed speed multiplier
+     */
+    public void speed(double speed)
+    {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative: " + speed);
+        }
+        this.requested = speed;
+    }
+
+    /**
+     * @return current speed multiplier (requested one)
+     */
+    public double speed() {
+        return requested;
+    }
+
+    /**
+     * applies requested speed if it was changed, called by the pacing thread
+     */
+    private void apply()
+    {
+        double requested = this.requested;
+        if (requested != speed) {
+            speed = requested;
+            clocksPerNano = CPU_HZ * requested / 1_000_000_000.0;
+            synced = false;
+        }
+    }
+
+    /**
+     * @return number of guest clocks to run between calls to {@link #pace(long)}
+     */
+    public long sliceClocks()
+    {
+        apply();
+        if (speed == SPEED_UNTHROTTLED) {
+            return Machine.BATCH_CLOCKS * 64;
+        }
+        return Math.max(1, (long) (SLICE_NANOS * clocksPerNano));
+    }
+
+    /**
+     * synchronizes time base with the current guest clocks
+     * @param clocks current guest clocks
+     */
+    public void start(long clocks)
+    {
+        apply();
+        baseNanos = clock.getAsLong();
+        baseClocks = clocks;
+        synced = true;
+        drift = 0;
+    }
+
+    /**
+     * Compares guest time with host one and parks the current
+     * thread if guest is ahead.
+     * @param clocks current guest clocks
+     */
+    public void pace(long clocks)
+    {
+        apply();
+        if (speed == SPEED_UNTHROTTLED) {
+            return;
+        }
+        if (!synced) {
+            start(clocks);
+            return;
+        }
+
+        long now = clock.getAsLong();
+        long target = baseNanos + (long) ((clocks - baseClocks) / clocksPerNano);
+
+        drift = now - target;
+        if (drift < -MIN_PARK_NANOS) {
+            // guest is ahead, wait for the host
+            LockSupport.parkNanos(-drift);
+            parkedNanos += clock.getAsLong() - now;
+        }
+        else if (drift > MAX_LAG_NANOS) {
+            // too far behind, skip lost time
+            lostNanos += drift;
+            start(clocks);
+        }
+        else if (drift > maxDrift) {
+            maxDrift = drift;
+        }
+    }
+
+    /**
+     * @return last drift in nanoseconds, positive when guest is behind the host
+     */
+    public long drift() {
+        return drift;
+    }
+
+    /**
+     * @return max drift (guest behind) detected, excluding resynchronizations
+     */
+    public long maxDrift() {
+        return maxDrift;
+    }
+
+    /**
+     * @return total host time dropped because guest couldn't catch up
+     */
+    public long lostNanos() {
+        return lostNanos;
+    }
+
+    /**
+     * @return total time spent parked
+     */
+    public long parkedNanos() {
+        return parkedNanos;
+    }
+
+    /**
+     * @return string with drift statistics
+     */
+    public String report() {
+        return String.format("speed: %.1fx  drift: %dus  max: %dus  lost: %dms  parked: %dms",
+                requested, drift / 1000, maxDrift / 1000, lostNanos / 1_000_000, parkedNanos / 1_000_000);
+    }
+}
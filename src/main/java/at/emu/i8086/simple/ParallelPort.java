@@ -0,0 +1,274 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Parallel printer port (lpt1 at 0x378, irq#7) with a printer that is always ready,
+ * byte is printed on the strobe and acknowledged immediately, so guests never wait.
+ * Printed bytes could be captured into a host file, they are buffered on the cpu thread
+ * and written to the file by a separate thread.
+ *
+ * Ports (base +)
+ *   0  RW  data
+ *   1  R   status
+ *              (3): ~ERROR, (4): SELECT, (5): PAPER OUT, (6): ~ACK, (7): ~BUSY
+ *   2  RW  control
+ *              (0): STROBE, (1): AUTO FEED, (2): ~INIT, (3): SELECT IN, (4): irq enable
+ */
+public class ParallelPort extends Cpu.PortHandler
+{
+    public static final int LPT1_BASE   = 0x378;
+    public static final int LPT1_IRQ    = 7;
+
+    public static final int MASK_STATUS_ERROR   = 0b0000_1000;
+    public static final int MASK_STATUS_SELECT  = 0b0001_0000;
+    public static final int MASK_STATUS_PE      = 0b0010_0000;
+    public static final int MASK_STATUS_ACK     = 0b0100_0000;
+    public static final int MASK_STATUS_BUSY    = 0b1000_0000;
+
+    public static final int MASK_CONTROL_STROBE = 0b0000_0001;
+    public static final int MASK_CONTROL_INIT   = 0b0000_0100;
+    public static final int MASK_CONTROL_IRQ    = 0b0001_0000;
+
+    /**
+     * status of the ready printer: not busy, no ack, selected, no error
+     */
+    public static final int STATUS_READY = MASK_STATUS_BUSY | MASK_STATUS_ACK | MASK_STATUS_SELECT | MASK_STATUS_ERROR | 0b111;
+
+    private final PIC8259 pic;
+    private final int base;
+    private final int irq;
+
+    int data;
+    int control = MASK_CONTROL_INIT;
+
+    /**
+     * number of bytes printed
+     */
+    private long printed;
+
+    /**
+     * output capture, null if bytes are dropped
+     */
+    private Capture capture;
+
+    /**
+     * @param pic interrupt controller
+     * @param base base port
+     * @param irq irq line
+     */
+    public ParallelPort(PIC8259 pic, int base, int irq) {
+        this.pic = pic;
+        this.base = base;
+        this.irq = irq;
+    }
+
+    /**
+     * attaches capture, previous one is not closed
+     * @param capture capture or null to drop printed bytes
+     */
+    public void attach(Capture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * @return number of bytes printed
+     */
+    public long printed() {
+        return printed;
+    }
+
+    @Override
+    void pout(boolean word, int port, int value)
+    {
+        value &= 0xFF;
+        switch (port - base)
+        {
+            case 0:
+                data = value;
+                break;
+
+            case 2:
+            {
+                boolean strobe = (value & ~control & MASK_CONTROL_STROBE) != 0;
+                control = value & 0x3F;
+                if (strobe && ((control & MASK_CONTROL_INIT) != 0)) {
+                    print();
+                }
+                break;
+            }
+
+            default:
+        }
+    }
+
+    /**
+     * prints data byte and acknowledges it
+     */
+    private void print()
+    {
+        printed++;
+        if (capture != null) {
+            capture.put((byte) data);
+        }
+        if ((control & MASK_CONTROL_IRQ) != 0) {
+            pic.interrupt(irq);
+        }
+    }
+
+    @Override
+    int pin(boolean word, int port)
+    {
+        switch (port - base)
+        {
+            case 0:
+                return data;
+
+            case 1:
+                return STATUS_READY;
+
+            case 2:
+                return control | 0b1110_0000;
+
+            default:
+                return 0xFF;
+        }
+    }
+
+    /**
+     * Appends printed bytes to a file, bytes are collected into one buffer
+     * by the cpu thread while the other one is written by the flush thread,
+     * cpu thread only waits when the buffer is full
+     */
+    public static class Capture implements AutoCloseable
+    {
+        /**
+         * size of each of the buffers
+         */
+        public static final int BUFFER_SIZE = 64 * 1024;
+
+        /**
+         * max time printed bytes could stay in memory
+         */
+        private static final long FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+        private final FileChannel channel;
+        private final Thread thread;
+
+        /**
+         * buffer filled by the cpu thread and buffer written to the file,
+         * swapped under lock of this capture
+         */
+        private ByteBuffer filling = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer draining = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private volatile boolean closed;
+        private volatile IOException failure;
+
+        /**
+         * @param path file to append to, created if needed
+         * @throws IOException if any
+         */
+        public Capture(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            thread = new Thread(this::run, "lpt-capture");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * adds printed byte, called by the cpu thread
+         * @param value byte
+         */
+        synchronized void put(byte value)
+        {
+            while (!filling.hasRemaining()) {
+                if (failure != null) {
+                    throw new UncheckedIOException(failure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("capture is closed");
+                }
+                LockSupport.unpark(thread);
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            filling.put(value);
+            if (filling.position() == BUFFER_SIZE / 2) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void run()
+        {
+            while (!closed) {
+                LockSupport.parkNanos(FLUSH_NANOS);
+                drain();
+            }
+        }
+
+        /**
+         * writes all the collected bytes, called by the flush thread only
+         */
+        private void drain()
+        {
+            ByteBuffer data;
+            synchronized (this) {
+                if (filling.position() == 0) {
+                    return;
+                }
+                data = filling;
+                filling = draining;
+                draining = data;
+                notifyAll();
+            }
+
+            data.flip();
+            try {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } catch (IOException e) {
+                failure = e;
+                closed = true;
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+            data.clear();
+        }
+
+        /**
+         * writes the rest of the bytes and closes the file
+         * @throws IOException if any including failed background writes
+         */
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drain();
+            channel.close();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
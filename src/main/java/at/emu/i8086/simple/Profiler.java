@@ -0,0 +1,478 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sampling profiler of guest code, takes linear address of cs:ip every N instructions
+ * or cpu clocks. Samples are taken by {@link Machine} at batch boundaries, batches are
+ * shortened to end exactly at the sample point, so there is no cost per instruction
+ * and results are deterministic.
+ * Optionally keeps a shallow call stack (targets of near direct calls) updated by
+ * wrapping call and return opcodes, so samples form stacks.
+ * Samples are exported as collapsed stacks for flame graphs, addresses are resolved
+ * with linker map files if provided.
+ */
+public class Profiler
+{
+    /**
+     * what the sampling period is counted in
+     */
+    public enum Mode {
+        INSTRUCTIONS,
+        CLOCKS
+    }
+
+    /**
+     * max depth of the tracked call stack,
+     * deeper frames overwrite the oldest ones
+     */
+    public static final int MAX_DEPTH = 64;
+
+    private final Mode mode;
+    private final long period;
+    private final int depth;
+
+    /**
+     * instructions left till the next sample or clocks of the next sample
+     */
+    private long remaining;
+    private long next;
+
+    /**
+     * shallow call stack: linear addresses of call targets,
+     * circular, frames[(sp - 1) % MAX_DEPTH] is the innermost
+     */
+    private final int[] frames = new int[MAX_DEPTH];
+    private int sp;
+
+    /**
+     * sampled stacks
+     */
+    private final StackTable samples = new StackTable();
+    private final int[] stack;
+    private long total;
+
+    private final List<SymbolMap> symbols = new ArrayList<>();
+
+    /**
+     * cpu with profiler attached, its original registry
+     * and registry with wrapped opcodes installed instead
+     */
+    private Cpu cpu;
+    private Cpu.Opcode[] original;
+    private Cpu.Opcode[] installed;
+
+    /**
+     * @param mode what period is counted in
+     * @param period number of instructions or clocks between samples
+     * @param depth number of call frames to sample in addition to cs:ip, 0 to sample cs:ip only
+     */
+    public Profiler(Mode mode, long period, int depth)
+    {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        if ((depth < 0) || (MAX_DEPTH < depth)) {
+            throw new IllegalArgumentException("depth must be in 0.." + MAX_DEPTH + ": " + depth);
+        }
+        this.mode = mode;
+        this.period = period;
+        this.depth = depth;
+        this.stack = new int[depth + 1];
+    }
+
+    /**
+     * adds symbols to resolve addresses with, maps are checked in the order of addition
+     * @param map symbol map
+     */
+    public void addSymbols(SymbolMap map) {
+        symbols.add(map);
+    }
+
+    /**
+     * starts sampling, called by machine,
+     * wraps call and return opcodes if stacks are sampled
+     * @param cpu ref to initialized cpu
+     */
+    void attach(Cpu cpu)
+    {
+        if (this.cpu != null) {
+            throw new IllegalStateException("profiler is already attached");
+        }
+        this.cpu = cpu;
+        remaining = (mode == Mode.INSTRUCTIONS) ? period : Long.MAX_VALUE;
+        next = (mode == Mode.CLOCKS) ? cpu.clocks + period : Long.MAX_VALUE;
+        sp = 0;
+
+        if (depth != 0) {
+            original = cpu.opcodes;
+            Cpu.Opcode[] registry = Arrays.copyOf(original, original.length);
+            wrapCall(registry, 0b1110_1000);
+            wrapReturn(registry, 0b1100_0011);
+            wrapReturn(registry, 0b1100_0010);
+            installed = registry;
+            cpu.opcodes = registry;
+        }
+    }
+
+    /**
+     * stops sampling and restores registry of the cpu,
+     * anything that replaced registry after attach must be detached first
+     * @throws IllegalStateException if registry of the cpu was replaced
+     */
+    void detach()
+    {
+        if (cpu == null) {
+            return;
+        }
+        if (installed != null) {
+            if (cpu.opcodes != installed) {
+                throw new IllegalStateException("registry was replaced after profiler was attached");
+            }
+            cpu.opcodes = original;
+            original = null;
+            installed = null;
+        }
+        cpu = null;
+    }
+
+    /**
+     * pushes call target after the call
+     */
+    private void wrapCall(Cpu.Opcode[] registry, int code)
+    {
+        Cpu.Opcode call = registry[code];
+        if (call == null) {
+            return;
+        }
+        registry[code] = new Cpu.Opcode() {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                call.execute(cpu, opcode);
+                frames[sp & (MAX_DEPTH - 1)] = linear(cpu);
+                sp++;
+            }
+        };
+    }
+
+    /**
+     * pops the innermost frame, returns with empty stack are ignored
+     */
+    private void wrapReturn(Cpu.Opcode[] registry, int code)
+    {
+        Cpu.Opcode ret = registry[code];
+        if (ret == null) {
+            return;
+        }
+        registry[code] = new Cpu.Opcode() {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                ret.execute(cpu, opcode);
+                if (sp > 0) {
+                    sp--;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return linear address of cs:ip
+     */
+    private static int linear(Cpu cpu) {
+        return ((cpu.segments[Cpu.CS] << 4) + (cpu.ip & 0xFFFF)) & 0xFFFFF;
+    }
+
+    /**
+     * @return max number of instructions the next batch could run
+     */
+    long instructionsToSample() {
+        return remaining;
+    }
+
+    /**
+     * @return clocks the next batch must end at
+     */
+    long clocksToSample() {
+        return next;
+    }
+
+    /**
+     * accounts executed batch and takes sample if it's time to,
+     * in clocks mode sample is weighted by the number of periods passed
+     * (halted cpu could skip several ones)
+     * @param cpu ref to cpu
+     * @param instructions number of instructions executed in the batch
+     */
+    void advance(Cpu cpu, int instructions)
+    {
+        if (mode == Mode.INSTRUCTIONS) {
+            remaining -= instructions;
+            if (remaining <= 0) {
+                remaining += period;
+                sample(cpu, 1);
+            }
+        }
+        else if (next <= cpu.clocks) {
+            long periods = (cpu.clocks - next) / period + 1;
+            next += periods * period;
+            sample(cpu, periods);
+        }
+    }
+
+    /**
+     * records current cs:ip with the top of the call stack
+     */
+    private void sample(Cpu cpu, long weight)
+    {
+        int count = Math.min(depth, Math.min(sp, MAX_DEPTH));
+        for (int i = 0; i < count; i++) {
+            // outermost first
+            stack[i] = frames[(sp - count + i) & (MAX_DEPTH - 1)];
+        }
+        stack[count] = linear(cpu);
+        samples.add(stack, count + 1, weight);
+        total += weight;
+    }
+
+    /**
+     * @return total number of samples taken
+     */
+    public long samples() {
+        return total;
+    }
+
+    /**
+     * clears samples
+     */
+    public void reset() {
+        samples.clear();
+        total = 0;
+    }
+
+    /**
+     * @param address linear address
+     * @return symbol name or 5 digit hex address if not resolved
+     */
+    public String resolve(int address)
+    {
+        for (SymbolMap map : symbols) {
+            String name = map.resolve(address);
+            if (name != null) {
+                return name;
+            }
+        }
+        return String.format("%05X", address);
+    }
+
+    /**
+     * @return samples as collapsed stacks "frame;frame;leaf count" for flame graphs,
+     *          stacks with the same resolved names are merged
+     */
+    public String toCollapsed()
+    {
+        Map<String, Long> stacks = new LinkedHashMap<>();
+        for (int e = 0; e < samples.size; e++) {
+            int offset = samples.offsets[e];
+            int length = samples.pool[offset];
+            StringBuilder names = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                if (i != 0) {
+                    names.append(';');
+                }
+                names.append(resolve(samples.pool[offset + 1 + i]));
+            }
+            stacks.merge(names.toString(), samples.counts[e], Long::sum);
+        }
+
+        StringBuilder text = new StringBuilder();
+        stacks.forEach((stack, count) -> text.append(stack).append(' ').append(count).append('\n'));
+        return text.toString();
+    }
+
+    /**
+     * writes collapsed stacks into file
+     * @param path file to create or overwrite
+     * @throws IOException if any
+     */
+    public void writeCollapsed(Path path) throws IOException {
+        Files.writeString(path, toCollapsed(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Open addressing hash table of stacks (int sequences) to counters,
+     * stacks are stored as [length, frames...] in one pool in the order of addition
+     */
+    static class StackTable
+    {
+        /**
+         * entry index + 1 or 0 if slot is empty
+         */
+        int[] slots = new int[1024];
+        int[] hashes = new int[512];
+        int[] offsets = new int[512];
+        long[] counts = new long[512];
+        int[] pool = new int[4096];
+        int size;
+        int poolSize;
+
+        /**
+         * @param stack frames
+         * @param length number of frames
+         * @param weight value to add to the counter
+         */
+        void add(int[] stack, int length, long weight)
+        {
+            int hash = length;
+            for (int i = 0; i < length; i++) {
+                hash = hash * 31 + stack[i];
+            }
+            hash ^= hash >>> 16;
+
+            int mask = slots.length - 1;
+            int slot = hash & mask;
+            while (slots[slot] != 0) {
+                int e = slots[slot] - 1;
+                if ((hashes[e] == hash) && equal(e, stack, length)) {
+                    counts[e] += weight;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (size == offsets.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            if (pool.length < poolSize + length + 1) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length + 1));
+            }
+            pool[poolSize] = length;
+            System.arraycopy(stack, 0, pool, poolSize + 1, length);
+            hashes[size] = hash;
+            offsets[size] = poolSize;
+            counts[size] = weight;
+            poolSize += length + 1;
+            slots[slot] = ++size;
+
+            if (slots.length < size * 2) {
+                rehash();
+            }
+        }
+
+        private boolean equal(int e, int[] stack, int length)
+        {
+            int offset = offsets[e];
+            if (pool[offset] != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (pool[offset + 1 + i] != stack[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash()
+        {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int e = 0; e < size; e++) {
+                int slot = hashes[e] & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = e + 1;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            size = 0;
+            poolSize = 0;
+        }
+    }
+
+    /**
+     * Public symbols of a program from linker map file (ms link / tlink format),
+     * "Publics by Value" lines "SSSS:OOOO name" are read, absolute symbols are skipped,
+     * segment table (if present) bounds addresses resolved by the map
+     */
+    public static class SymbolMap
+    {
+        private static final Pattern PUBLIC = Pattern.compile(
+                "^\\s*([0-9A-Fa-f]{4}):([0-9A-Fa-f]{4})\\s+(Abs\\s+|Imp\\s+)?([A-Za-z_$?@.][\\w$?@.]*)\\s*$");
+        private static final Pattern SEGMENT = Pattern.compile(
+                "^\\s*([0-9A-Fa-f]{5})H\\s+([0-9A-Fa-f]{5})H\\s+([0-9A-Fa-f]{5})H\\s+\\S+");
+
+        private final TreeMap<Integer, String> symbols = new TreeMap<>();
+        private int start = Integer.MAX_VALUE;
+        private int end = -1;
+
+        /**
+         * reads map file
+         * @param path map file
+         * @param loadSegment segment the program is loaded at, segments in map are relative to it
+         *                    (psp + 0x10 for both .exe and .com)
+         * @return symbol map
+         * @throws IOException if any
+         */
+        public static SymbolMap load(Path path, int loadSegment) throws IOException {
+            return parse(Files.readAllLines(path, StandardCharsets.ISO_8859_1), loadSegment);
+        }
+
+        /**
+         * @param lines lines of map file
+         * @param loadSegment segment the program is loaded at
+         * @return symbol map
+         */
+        static SymbolMap parse(List<String> lines, int loadSegment)
+        {
+            SymbolMap map = new SymbolMap();
+            int base = loadSegment << 4;
+            for (String line : lines)
+            {
+                Matcher m = PUBLIC.matcher(line);
+                if (m.matches()) {
+                    if (m.group(3) == null) {
+                        int address = (base + (Integer.parseInt(m.group(1), 16) << 4) + Integer.parseInt(m.group(2), 16)) & 0xFFFFF;
+                        map.symbols.putIfAbsent(address, m.group(4));
+                    }
+                    continue;
+                }
+                m = SEGMENT.matcher(line);
+                if (m.lookingAt()) {
+                    map.start = Math.min(map.start, base + Integer.parseInt(m.group(1), 16));
+                    map.end = Math.max(map.end, base + Integer.parseInt(m.group(2), 16));
+                }
+            }
+            return map;
+        }
+
+        /**
+         * @param address linear address
+         * @return name of the nearest symbol at or below the address,
+         *          null if there is none or address is out of the program segments
+         */
+        public String resolve(int address)
+        {
+            if ((end >= 0) && ((address < start) || (end < address))) {
+                return null;
+            }
+            Map.Entry<Integer, String> entry = symbols.floorEntry(address);
+            return (entry == null) ? null : entry.getValue();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package at.emu.i8086.simple;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Loads dos programs (.COM and MZ .EXE) directly into memory to run them
+ * without dos (see {@link DosHost}). File is mapped and copied once into
+ * its final place, exe relocations are applied in one pass over the
+ * mapped table. Memory layout:
+ *   0x0100:0000 environment block
+ *   0x0200:0000 program segment prefix, followed by the program
+ *   0xA000      top of the memory
+ */
+public class ProgramLoader
+{
+    public static final int ENVIRONMENT_SEGMENT = 0x0100;
+    public static final int PSP_SEGMENT         = 0x0200;
+    public static final int MEMORY_TOP_SEGMENT  = 0xA000;
+
+    /**
+     * size of the psp and max size of the environment block
+     */
+    public static final int PSP_SIZE            = 0x100;
+    public static final int ENVIRONMENT_SIZE    = (PSP_SEGMENT - ENVIRONMENT_SEGMENT) << 4;
+
+    /**
+     * mz header fields
+     */
+    private static final int MZ_LAST_PAGE_BYTES    = 0x02;
+    private static final int MZ_PAGES              = 0x04;
+    private static final int MZ_RELOCATIONS        = 0x06;
+    private static final int MZ_HEADER_PARAGRAPHS  = 0x08;
+    private static final int MZ_MIN_ALLOC          = 0x0A;
+    private static final int MZ_SS                 = 0x0E;
+    private static final int MZ_SP                 = 0x10;
+    private static final int MZ_IP                 = 0x14;
+    private static final int MZ_CS                 = 0x16;
+    private static final int MZ_RELOCATIONS_OFFSET = 0x18;
+    private static final int MZ_HEADER_SIZE        = 0x1C;
+
+    /**
+     * Loads program and sets registers to start it, cpu must be initialized,
+     * flags are not changed
+     * @param cpu ref to cpu
+     * @param path .com or .exe file, exe is detected by signature
+     * @param tail command line tail (without program name, up to 126 characters)
+     * @param environment environment variables, could be empty
+     * @return psp segment
+     * @throws IOException if any
+     * @throws IllegalArgumentException if program doesn't fit or exe header is broken
+     */
+    public static int load(Cpu cpu, Path path, String tail, Map<String, String> environment) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if ((MEMORY_TOP_SEGMENT - PSP_SEGMENT) << 4 < size) {
+                throw new IllegalArgumentException("program is too big: " + size);
+            }
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            file.order(ByteOrder.LITTLE_ENDIAN);
+
+            String name = path.getFileName().toString().toUpperCase(Locale.ROOT);
+            environment(cpu, environment, "C:\\" + name);
+            psp(cpu, tail);
+
+            if ((MZ_HEADER_SIZE <= size) && (((file.get(0) == 'M') && (file.get(1) == 'Z')) || ((file.get(0) == 'Z') && (file.get(1) == 'M')))) {
+                exe(cpu, file);
+            } else {
+                com(cpu, file);
+            }
+        }
+        return PSP_SEGMENT;
+    }
+
+    /**
+     * copies .com image to psp:0100, all segments point to psp,
+     * stack is at the end of the segment with return address to psp:0000 (int 20h)
+     */
+    private static void com(Cpu cpu, MappedByteBuffer file)
+    {
+        int size = file.capacity();
+        if (0x10000 - PSP_SIZE - 2 < size) {
+            throw new IllegalArgumentException("com program is too big: " + size);
+        }
+        file.get(0, cpu.memory, (PSP_SEGMENT << 4) + PSP_SIZE, size);
+
+        for (int s = 0; s < 4; s++) {
+            cpu.writeSegment(s, PSP_SEGMENT);
+        }
+        cpu.memory[(PSP_SEGMENT << 4) + 0xFFFE] = 0;
+        cpu.memory[(PSP_SEGMENT << 4) + 0xFFFF] = 0;
+        registers(cpu, 0xFFFE);
+        cpu.ip = PSP_SIZE;
+    }
+
+    /**
+     * copies .exe load module right after psp, applies relocations
+     * and sets cs:ip and ss:sp from header, ds and es point to psp
+     */
+    private static void exe(Cpu cpu, MappedByteBuffer file)
+    {
+        int pages = file.getShort(MZ_PAGES) & 0xFFFF;
+        int lastPageBytes = file.getShort(MZ_LAST_PAGE_BYTES) & 0xFFFF;
+        int header = (file.getShort(MZ_HEADER_PARAGRAPHS) & 0xFFFF) << 4;
+
+        int end = pages * 512 - ((lastPageBytes == 0) ? 0 : 512 - lastPageBytes);
+        end = Math.min(end, file.capacity());
+        int size = end - header;
+        if (size < 0) {
+            throw new IllegalArgumentException("broken exe header");
+        }
+
+        int loadSegment = PSP_SEGMENT + (PSP_SIZE >> 4);
+        int load = loadSegment << 4;
+        int minAlloc = (file.getShort(MZ_MIN_ALLOC) & 0xFFFF) << 4;
+        if ((MEMORY_TOP_SEGMENT << 4) < load + size + minAlloc) {
+            throw new IllegalArgumentException("exe doesn't fit into memory: " + size + " + " + minAlloc);
+        }
+        file.get(header, cpu.memory, load, size);
+
+        int relocations = file.getShort(MZ_RELOCATIONS) & 0xFFFF;
+        int table = file.getShort(MZ_RELOCATIONS_OFFSET) & 0xFFFF;
+        if (file.capacity() < table + relocations * 4) {
+            throw new IllegalArgumentException("broken relocation table");
+        }
+        byte[] m = cpu.memory;
+        for (int i = 0; i < relocations; i++) {
+            int offset = file.getShort(table + i * 4) & 0xFFFF;
+            int segment = file.getShort(table + i * 4 + 2) & 0xFFFF;
+            int address = (load + (segment << 4) + offset) & 0xFFFFF;
+            int value = ((m[address] & 0xFF) | ((m[address + 1] & 0xFF) << 8)) + loadSegment;
+            m[address] = (byte) value;
+            m[address + 1] = (byte) (value >> 8);
+        }
+
+        cpu.writeSegment(Cpu.ES, PSP_SEGMENT);
+        cpu.writeSegment(Cpu.DS, PSP_SEGMENT);
+        cpu.writeSegment(Cpu.SS, (loadSegment + file.getShort(MZ_SS)) & 0xFFFF);
+        cpu.writeSegment(Cpu.CS, (loadSegment + file.getShort(MZ_CS)) & 0xFFFF);
+        registers(cpu, file.getShort(MZ_SP) & 0xFFFF);
+        cpu.ip = file.getShort(MZ_IP) & 0xFFFF;
+    }
+
+    /**
+     * clears common registers and sets sp
+     */
+    private static void registers(Cpu cpu, int sp)
+    {
+        for (int i = 0; i < cpu.registers.length; i++) {
+            cpu.registers[i] = 0;
+        }
+        cpu.registers[Cpu.SP] = sp;
+        cpu.hlt = false;
+    }
+
+    /**
+     * builds program segment prefix: int 20h, memory top,
+     * environment segment, empty fcbs and command tail
+     * @param cpu ref to cpu
+     * @param tail command tail
+     */
+    private static void psp(Cpu cpu, String tail)
+    {
+        byte[] m = cpu.memory;
+        int psp = PSP_SEGMENT << 4;
+        Arrays.fill(m, psp, psp + PSP_SIZE, (byte) 0);
+
+        m[psp] = (byte) 0xCD;
+        m[psp + 0x01] = (byte) Cpu.INT_20_DOS_TERMINATE;
+        m[psp + 0x02] = (byte) MEMORY_TOP_SEGMENT;
+        m[psp + 0x03] = (byte) (MEMORY_TOP_SEGMENT >> 8);
+        m[psp + 0x2C] = (byte) ENVIRONMENT_SEGMENT;
+        m[psp + 0x2D] = (byte) (ENVIRONMENT_SEGMENT >> 8);
+        Arrays.fill(m, psp + 0x5D, psp + 0x68, (byte) ' ');
+        Arrays.fill(m, psp + 0x6D, psp + 0x78, (byte) ' ');
+
+        byte[] bytes = tail.getBytes(StandardCharsets.ISO_8859_1);
+        if (126 < bytes.length) {
+            throw new IllegalArgumentException("command tail is too long: " + bytes.length);
+        }
+        m[psp + 0x80] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, m, psp + 0x81, bytes.length);
+        m[psp + 0x81 + bytes.length] = 0x0D;
+    }
+
+    /**
+     * builds environment block: NAME=value strings, empty string,
+     * word 1 and full program name
+     * @param cpu ref to cpu
+     * @param environment variables
+     * @param program program name
+     */
+    private static void environment(Cpu cpu, Map<String, String> environment, String program)
+    {
+        StringBuilder block = new StringBuilder();
+        for (Map.Entry<String, String> e : environment.entrySet()) {
+            block.append(e.getKey()).append('=').append(e.getValue()).append('\0');
+        }
+        if (block.length() == 0) {
+            block.append('\0');
+        }
+        block.append('\0').append('\u0001').append('\0').append(program).append('\0');
+
+        byte[] bytes = block.toString().getBytes(StandardCharsets.ISO_8859_1);
+        if (ENVIRONMENT_SIZE < bytes.length) {
+            throw new IllegalArgumentException("environment is too big: " + bytes.length);
+        }
+        System.arraycopy(bytes, 0, cpu.memory, ENVIRONMENT_SEGMENT << 4, bytes.length);
+    }
+}
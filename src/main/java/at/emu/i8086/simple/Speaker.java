@@ -0,0 +1,413 @@
+package at.emu.i8086.simple;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * PC speaker driven by timer channel 2 output and speaker enable bit of ppi port B.
+ * Sound is rendered into 16 bit mono pcm at 44.1 kHz only when output could change
+ * (ppi and channel 2 writes) and at batch boundaries, each sample is the part of
+ * its time the speaker was on, integrated over timer ticks, so there is no cost
+ * per instruction. Samples go through a lock free ring to a {@link Sink} that
+ * is fed by a separate thread.
+ */
+public class Speaker
+{
+    public static final int SAMPLE_RATE = 44_100;
+
+    /**
+     * amplitude of the full on level
+     */
+    public static final int AMPLITUDE = 12_000;
+
+    /**
+     * size of the ring, about 1.5 seconds
+     */
+    public static final int RING_SIZE = 1 << 16;
+
+    /**
+     * dc blocking filter pole, speaker that is just on is silent
+     */
+    private static final double DC_POLE = 0.995;
+
+    /**
+     * Host output for samples, called from the feeding thread only
+     */
+    public interface Sink extends Closeable {
+        /**
+         * @param samples buffer with samples
+         * @param length number of samples in the buffer
+         * @throws IOException if any
+         */
+        void write(short[] samples, int length) throws IOException;
+    }
+
+    /**
+     * Single producer single consumer ring of samples,
+     * producer is cpu thread, consumer is the feeding thread
+     */
+    static class PcmRing
+    {
+        private static final VarHandle HEAD;
+        private static final VarHandle TAIL;
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                HEAD = lookup.findVarHandle(PcmRing.class, "head", long.class);
+                TAIL = lookup.findVarHandle(PcmRing.class, "tail", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final short[] data;
+        final int mask;
+        // next sample to read, modified by consumer only
+        private long head;
+        // next sample to write, modified by producer only
+        private long tail;
+
+        PcmRing(int size) {
+            if (Integer.bitCount(size) != 1) {
+                throw new IllegalArgumentException("size must be power of 2: " + size);
+            }
+            data = new short[size];
+            mask = size - 1;
+        }
+
+        /**
+         * @param value sample
+         * @return false if ring is full and sample was dropped
+         */
+        boolean add(short value)
+        {
+            long t = tail;
+            if (t - (long) HEAD.getAcquire(this) == data.length) {
+                return false;
+            }
+            data[(int) t & mask] = value;
+            TAIL.setRelease(this, t + 1);
+            return true;
+        }
+
+        /**
+         * @param dst buffer to copy samples into
+         * @return number of samples copied
+         */
+        int get(short[] dst)
+        {
+            long h = head;
+            int count = (int) Math.min(dst.length, (long) TAIL.getAcquire(this) - h);
+            for (int i = 0; i < count; i++) {
+                dst[i] = data[(int) (h + i) & mask];
+            }
+            HEAD.setRelease(this, h + count);
+            return count;
+        }
+    }
+
+    private final Cpu cpu;
+    private final PTI8253 pti;
+
+    /**
+     * speaker enable bit of ppi port B
+     */
+    private boolean enabled;
+
+    /**
+     * cpu clocks sound is rendered up to
+     */
+    private long position;
+
+    /**
+     * index of the sample being integrated and its high ticks so far
+     */
+    private long sample;
+    private long high;
+
+    /**
+     * state of the dc blocking filter
+     */
+    private double lastIn;
+    private double lastOut;
+
+    /**
+     * ring and its feeding thread, null if not started
+     */
+    private PcmRing ring;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile IOException failure;
+    private long dropped;
+
+    /**
+     * @param cpu ref to cpu
+     * @param pti timer with channel 2
+     */
+    public Speaker(Cpu cpu, PTI8253 pti) {
+        this.cpu = cpu;
+        this.pti = pti;
+    }
+
+    /**
+     * @param n sample index
+     * @return cpu clocks of the sample start
+     */
+    private static long boundary(long n) {
+        return n * Pacer.CPU_HZ / SAMPLE_RATE;
+    }
+
+    /**
+     * changes speaker enable bit, called by ppi after {@link #sync()}
+     * @param enabled true if speaker is on
+     */
+    void enable(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * renders samples up to the current cpu clocks
+     */
+    void sync() {
+        update(cpu.clocks);
+    }
+
+    /**
+     * renders samples up to the clocks with the current state,
+     * must be called before any change of the speaker or channel 2
+     * @param clocks current cpu clocks
+     */
+    public void update(long clocks)
+    {
+        PcmRing ring = this.ring;
+        if (ring == null) {
+            // nothing to render to
+            position = clocks;
+            sample = clocks * SAMPLE_RATE / Pacer.CPU_HZ;
+            high = 0;
+            return;
+        }
+
+        while (position < clocks)
+        {
+            long next = boundary(sample + 1);
+            long end = Math.min(clocks, next);
+            if (enabled) {
+                high += pti.highTicks(2, position, end);
+            }
+            position = end;
+
+            if (end == next) {
+                long ticks = (next >> 2) - (boundary(sample) >> 2);
+                double in = (ticks == 0) ? 0 : (double) high * AMPLITUDE / ticks;
+                lastOut = in - lastIn + DC_POLE * lastOut;
+                lastIn = in;
+                if (!ring.add((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(lastOut))))) {
+                    dropped++;
+                }
+                high = 0;
+                sample++;
+            }
+        }
+    }
+
+    /**
+     * @return number of samples dropped as sink was too slow
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    /**
+     * starts rendering of samples and thread to feed them into sink
+     * @param sink sink to write samples to
+     */
+    public void start(Sink sink)
+    {
+        if (ring != null) {
+            throw new IllegalStateException("speaker is already started");
+        }
+        update(cpu.clocks);
+        PcmRing r = new PcmRing(RING_SIZE);
+        running = true;
+        thread = new Thread(() -> feed(r, sink), "speaker");
+        thread.setDaemon(true);
+        thread.start();
+        ring = r;
+    }
+
+    /**
+     * stops rendering, writes the rest of samples and closes sink,
+     * must be called from the cpu thread (or when machine is stopped)
+     * @throws IOException if sink failed
+     */
+    public void stop() throws IOException
+    {
+        if (ring == null) {
+            return;
+        }
+        update(cpu.clocks);
+        ring = null;
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * feeding thread, moves samples from ring to sink
+     */
+    private void feed(PcmRing ring, Sink sink)
+    {
+        short[] buffer = new short[SAMPLE_RATE / 50];
+        try (sink) {
+            while (true) {
+                int count = ring.get(buffer);
+                if (count != 0) {
+                    sink.write(buffer, count);
+                } else if (running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Writes samples into wav file, sizes in the header are set on close
+     */
+    public static class WavSink implements Sink
+    {
+        private static final int HEADER_SIZE = 44;
+
+        private final FileChannel channel;
+        private final ByteBuffer bytes = ByteBuffer.allocate(SAMPLE_RATE).order(ByteOrder.LITTLE_ENDIAN);
+        private long dataSize;
+
+        /**
+         * @param path file to create or overwrite
+         * @throws IOException if any
+         */
+        public WavSink(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            writeHeader();
+        }
+
+        private void writeHeader() throws IOException
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put("RIFF".getBytes()).putInt((int) (36 + dataSize)).put("WAVE".getBytes());
+            header.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1)
+                    .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2).putShort((short) 2).putShort((short) 16);
+            header.put("data".getBytes()).putInt((int) dataSize);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+
+        @Override
+        public void write(short[] samples, int length) throws IOException
+        {
+            for (int i = 0; i < length; i++) {
+                if (!bytes.hasRemaining()) {
+                    flush();
+                }
+                bytes.putShort(samples[i]);
+            }
+            flush();
+        }
+
+        private void flush() throws IOException
+        {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                dataSize += channel.write(bytes, HEADER_SIZE + dataSize);
+            }
+            bytes.clear();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            writeHeader();
+            channel.close();
+        }
+    }
+
+    /**
+     * Plays samples with javax.sound, write blocks till there is space in the line
+     */
+    public static class LineSink implements Sink
+    {
+        private final SourceDataLine line;
+        private final byte[] bytes = new byte[SAMPLE_RATE / 5];
+
+        /**
+         * opens default audio line
+         * @throws LineUnavailableException if there is no audio device
+         */
+        public LineSink() throws LineUnavailableException
+        {
+            AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+            try {
+                line = AudioSystem.getSourceDataLine(format);
+            } catch (IllegalArgumentException e) {
+                throw new LineUnavailableException(e.getMessage());
+            }
+            // about 100ms of latency
+            line.open(format, SAMPLE_RATE / 5);
+            line.start();
+        }
+
+        @Override
+        public void write(short[] samples, int length)
+        {
+            int offset = 0;
+            while (offset < length) {
+                int count = Math.min(length - offset, bytes.length / 2);
+                for (int i = 0; i < count; i++) {
+                    short s = samples[offset + i];
+                    bytes[i * 2] = (byte) s;
+                    bytes[i * 2 + 1] = (byte) (s >> 8);
+                }
+                line.write(bytes, 0, count * 2);
+                offset += count;
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            line.drain();
+            line.close();
+        }
+    }
+}
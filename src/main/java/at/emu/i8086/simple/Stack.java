@@ -118,6 +118,7 @@ public class Stack implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigur
         @Override
         public void execute(Cpu cpu, int opcode) {
             cpu.flags = cpu.pop16();
+            cpu.flagsEvents();
         }
     }
 
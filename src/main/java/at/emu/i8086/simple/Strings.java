@@ -55,75 +55,109 @@ public class Strings implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfig
     /**
      * Moves word/byte from DS:SI to ES:DI (DS could be overridden)
      */
-    public static class Movs extends Cpu.Opcode {
+    public static class Movs extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
+
+        /**
+         * byte variant (w=0), MOVSB
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread8(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
             }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+            /**
+             * rep movsb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode movs opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // movs opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            if (w) {
-                int data = cpu.mread16(cpu.registers[Cpu.SI]);
-                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], data);
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
+                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread8(cpu.registers[Cpu.SI]));
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.CX]--;
+                }
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                int data = cpu.mread8(cpu.registers[Cpu.SI]);
-                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], data);
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
             }
-            cpu.registers[Cpu.SI] += delta;
-            cpu.registers[Cpu.DI] += delta;
         }
 
         /**
-         * rep movs variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode movs opcode
+         * word variant (w=1), MOVSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean z = (rep & 0b0000_0001) == 0b01;
-
-            if (!z) {
-                // movs opcode only used with
-                // rep/repe/repz, where z == 1
-                cpu.hlt = true;
-                return;
-            }
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread16(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+            }
 
-                while (cpu.registers[Cpu.CX] != 0) {
-                    int data = cpu.mread16(cpu.registers[Cpu.SI]);
-                    cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], data);
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
-                    cpu.registers[Cpu.CX]--;
+            /**
+             * rep movsw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode movs opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // movs opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
                 }
-            } else {
-                while (cpu.registers[Cpu.CX] != 0) {
-                    int data = cpu.mread8(cpu.registers[Cpu.SI]);
-                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], data);
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
+
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
+                    cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], cpu.mread16(cpu.registers[Cpu.SI]));
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
                 }
+
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
             }
         }
     }
@@ -132,92 +166,121 @@ public class Strings implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfig
      * Compares word/byte from DS:SI with ES:DI (DS could be overridden),
      * updates  (af,cf,of,pf,sf,zf) based on ([si] - [di])
      */
-    public static class Cmps extends Cpu.Opcode {
+    public static class Cmps extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            int dst, src;
-
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+        /**
+         * byte variant (w=0), CMPSB
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            if (w) {
-                src = cpu.mread16(cpu.registers[Cpu.SI]);
-                dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                int src = cpu.mread8(cpu.registers[Cpu.SI]);
+                int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                src = cpu.mread8(cpu.registers[Cpu.SI]);
-                dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                Sub.flags8(cpu, src, dst);
             }
 
-            cpu.registers[Cpu.SI] += delta;
-            cpu.registers[Cpu.DI] += delta;
+            /**
+             * rep cmpsb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode cmps opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
+                    int src = cpu.mread8(cpu.registers[Cpu.SI]);
+                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.CX]--;
+
+                    Sub.flags8(cpu, src, dst);
 
-            // this is inverse of the src-dst pair in terms of Sub,
-            // here [si] - [di]  is used
-            Sub.flags(cpu, w, src, dst);
+                    if (z != ((cpu.flags >> Cpu.FLAG_ZF_POS) & 1)) {
+                        // terminated by zf, give back clocks of the skipped iterations
+                        cpu.repCancel(opcode, chunk);
+                        return;
+                    }
+                }
+
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
+            }
         }
 
         /**
-         * rep cmps variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode cmps opcode
+         * word variant (w=1), CMPSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            int     z = (rep & 0b0000_0001);
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                int src = cpu.mread16(cpu.registers[Cpu.SI]);
+                int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+                Sub.flags16(cpu, src, dst);
+            }
 
-                while (cpu.registers[Cpu.CX] != 0) {
+            /**
+             * rep cmpsw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode cmps opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
                     int src = cpu.mread16(cpu.registers[Cpu.SI]);
                     int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
-
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
+                    cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here [si] - [di]  is used
-                    Sub.flags(cpu, true, src, dst);
+                    Sub.flags16(cpu, src, dst);
 
                     if (z != ((cpu.flags >> Cpu.FLAG_ZF_POS) & 1)) {
-                        break;
+                        // terminated by zf, give back clocks of the skipped iterations
+                        cpu.repCancel(opcode, chunk);
+                        return;
                     }
                 }
-            } else {
-                while (cpu.registers[Cpu.CX] != 0) {
-                    int src = cpu.mread8(cpu.registers[Cpu.SI]);
-                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
-                    cpu.registers[Cpu.SI] += delta;
-                    cpu.registers[Cpu.DI] += delta;
-                    cpu.registers[Cpu.CX]--;
-
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here [si] - [di]  is used
-                    Sub.flags(cpu, true, src, dst);
 
-                    if (z != ((cpu.flags >> Cpu.FLAG_ZF_POS) & 1)) {
-                        break;
-                    }
-                }
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
             }
         }
 
@@ -227,89 +290,115 @@ public class Strings implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfig
      * Scans word/byte from ES:DI
      * updates (af,cf,of,pf,sf,zf) based on (AL/AX - [di])
      */
-    public static class Scas extends Cpu.Opcode {
+    public static class Scas extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            int dst;
-
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+        /**
+         * byte variant (w=0), SCASB
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            if (w) {
-                dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                Sub.flags8(cpu, cpu.registers[Cpu.AX] & 0xFF, dst);
             }
 
-            cpu.registers[Cpu.DI] += delta;
+            /**
+             * rep scasb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode scas opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int al = cpu.registers[Cpu.AX] & 0xFF;
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
+                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.CX]--;
 
-            // this is inverse of the src-dst pair in terms of Sub,
-            // here ax - [di]  is used
-            int ax = cpu.registers[Cpu.AX];
-            Sub.flags(cpu, w, ax, dst);
-        }
+                    Sub.flags8(cpu, al, dst);
 
+                    if (z != ((cpu.flags >> Cpu.FLAG_ZF_POS) & 1)) {
+                        // terminated by zf, give back clocks of the skipped iterations
+                        cpu.repCancel(opcode, chunk);
+                        return;
+                    }
+                }
+
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
+            }
+        }
 
         /**
-         * rep cmps variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode cmps opcode
+         * word variant (w=1), SCASW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            int     z = (rep & 0b0000_0001);
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            int ax = cpu.registers[Cpu.AX];
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+                Sub.flags16(cpu, cpu.registers[Cpu.AX], dst);
+            }
 
-                while (cpu.registers[Cpu.CX] != 0) {
+            /**
+             * rep scasw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode scas opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                int z = (rep & 0b0000_0001);
+                int ax = cpu.registers[Cpu.AX];
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
                     int dst = cpu.mread16(Cpu.ES, cpu.registers[Cpu.DI]);
-
-                    cpu.registers[Cpu.DI] += delta;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here ax - [di]  is used
-                    Sub.flags(cpu, true, ax, dst);
+                    Sub.flags16(cpu, ax, dst);
 
                     if (z != ((cpu.flags >> Cpu.FLAG_ZF_POS) & 1)) {
-                        break;
+                        // terminated by zf, give back clocks of the skipped iterations
+                        cpu.repCancel(opcode, chunk);
+                        return;
                     }
                 }
-            } else {
-                while (cpu.registers[Cpu.CX] != 0) {
-                    int dst = cpu.mread8(Cpu.ES, cpu.registers[Cpu.DI]);
-                    cpu.registers[Cpu.DI] += delta;
-                    cpu.registers[Cpu.CX]--;
 
-                    // this is inverse of the src-dst pair in terms of Sub,
-                    // here ax - [di]  is used
-                    Sub.flags(cpu, true, ax, dst);
-
-                    if (z != ((cpu.flags >> Cpu.FLAG_ZF_POS) & 1)) {
-                        break;
-                    }
-                }
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
             }
         }
     }
@@ -317,156 +406,223 @@ public class Strings implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfig
     /**
      * Loads word/byte from DS:SI (DS could be overridden) to AL/AX
      */
-    public static class Lods extends Cpu.Opcode {
+    public static class Lods extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            int src;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        /**
+         * byte variant (w=0), LODSB
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                cpu.writeRegisterLowByte(Cpu.AX, cpu.mread8(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
+            }
 
-            if (w) {
-                src = cpu.mread16(cpu.registers[Cpu.SI]);
+            /**
+             * rep lodsb variant of the instruction,
+             * only last value will be stored into AX
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode lods opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // lods opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
 
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                src = cpu.mread8(cpu.registers[Cpu.SI]);
-            }
+                int cx = cpu.registers[Cpu.CX];
+                if (cx == 0) {
+                    return;
+                }
 
-            cpu.writeRegisterWord(Cpu.SI, cpu.registers[Cpu.SI] + delta);
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            cpu.writeRegister(w, Cpu.AX, src);
+                // there are no side effects except the last element,
+                // so the whole sequence is done at once
+                int offset = (cpu.registers[Cpu.SI] + (cx - 1) * delta) & 0xFFFF;
+                cpu.writeRegisterLowByte(Cpu.AX, cpu.mread8(offset));
+
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + cx * delta) & 0xFFFF;
+                cpu.registers[Cpu.CX] = 0;
+                cpu.clocks += (long) cx * cpu.repClocks[opcode];
+            }
         }
 
         /**
-         * rep lods variant of the instruction,
-         * that is VERY strange as it has no any meaning,
-         * only last value will be stored into AX
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode lods opcode
+         * word variant (w=1), LODSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean z = (rep & 0b0000_0001) == 0b01;
-
-            if (!z) {
-                // lods opcode only used with
-                // rep/repe/repz, where z == 1
-                cpu.hlt = true;
-                return;
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
+
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                cpu.writeRegisterWord(Cpu.AX, cpu.mread16(cpu.registers[Cpu.SI]));
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + delta) & 0xFFFF;
             }
 
-            int ax;
+            /**
+             * rep lodsw variant of the instruction,
+             * only last value will be stored into AX
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode lods opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // lods opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                int cx = cpu.registers[Cpu.CX];
+                if (cx == 0) {
+                    return;
+                }
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
-                int offset = cpu.registers[Cpu.SI] + cpu.registers[Cpu.CX] * delta;
-                ax = cpu.mread16(offset);
-            } else {
-                int offset = cpu.registers[Cpu.SI] + cpu.registers[Cpu.CX] * delta;
-                ax = cpu.mread8(offset);
-            }
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
+
+                // there are no side effects except the last element,
+                // so the whole sequence is done at once
+                int offset = (cpu.registers[Cpu.SI] + (cx - 1) * delta) & 0xFFFF;
+                cpu.writeRegisterWord(Cpu.AX, cpu.mread16(offset));
 
-            cpu.writeRegister(w, Cpu.AX, ax);
+                cpu.registers[Cpu.SI] = (cpu.registers[Cpu.SI] + cx * delta) & 0xFFFF;
+                cpu.registers[Cpu.CX] = 0;
+                cpu.clocks += (long) cx * cpu.repClocks[opcode];
+            }
         }
     }
 
     /**
      * Stores word/byte from AL/AX to ES:DI
      */
-    public static class Stos extends Cpu.Opcode {
+    public static class Stos extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode)
-        {
-            if (cpu.repPrefix) {
-                int rep = cpu.rep;
-                execute(cpu, rep, opcode);
-                return;
-            }
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            int ax = cpu.registers[Cpu.AX];
+        /**
+         * byte variant (w=0), STOSB
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                // this gives +1/-1 depending on DF
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
 
-            if (w) {
-                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], ax);
-                // correct to +2/-2
-                delta <<= 1;
-            } else {
-                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], ax);
+                cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], cpu.registers[Cpu.AX]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
             }
 
-            cpu.writeRegisterWord(Cpu.DI, cpu.registers[Cpu.DI] + delta);
+            /**
+             * rep stosb variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode stos opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // stos opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
+
+                int al = cpu.registers[Cpu.AX];
+                int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
+                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], al);
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+                    cpu.registers[Cpu.CX]--;
+                }
+
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
+            }
         }
 
         /**
-         * rep stos variant of the instruction
-         * @param cpu ref to cpu
-         * @param rep rep prefix
-         * @param opcode stos opcode
+         * word variant (w=1), STOSW
          */
-        public void execute(Cpu cpu, int rep, int opcode)
-        {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean z = (rep & 0b0000_0001) == 0b01;
-
-            if (!z) {
-                // stos opcode only used with
-                // rep/repe/repz, where z == 1
-                cpu.hlt = true;
-                return;
-            }
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode)
+            {
+                if (cpu.repPrefix) {
+                    execute(cpu, cpu.rep, opcode);
+                    return;
+                }
 
-            int ax = cpu.registers[Cpu.AX];
+                // this gives +2/-2 depending on DF
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-            // this gives +1/-1 depending on DF
-            int delta = 1 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 1)) & 0b10);
+                cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], cpu.registers[Cpu.AX]);
+                cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
+            }
 
-            if (w) {
-                // correct to +2/-2
-                delta <<= 1;
+            /**
+             * rep stosw variant of the instruction
+             * @param cpu ref to cpu
+             * @param rep rep prefix
+             * @param opcode stos opcode
+             */
+            public void execute(Cpu cpu, int rep, int opcode)
+            {
+                if ((rep & 0b0000_0001) == 0) {
+                    // stos opcode only used with
+                    // rep/repe/repz, where z == 1
+                    cpu.hlt = true;
+                    return;
+                }
+
+                int ax = cpu.registers[Cpu.AX];
+                int delta = 2 - ((cpu.flags >> (Cpu.FLAG_DF_POS - 2)) & 0b100);
 
-                while (cpu.registers[Cpu.CX] != 0) {
+                int chunk = cpu.repChunk(opcode);
+                while (chunk-- != 0) {
                     cpu.mwrite16(Cpu.ES, cpu.registers[Cpu.DI], ax);
-                    cpu.registers[Cpu.DI] += delta;
-                    cpu.registers[Cpu.CX]--;
-                }
-            } else {
-                while (cpu.registers[Cpu.CX] != 0) {
-                    cpu.mwrite8(Cpu.ES, cpu.registers[Cpu.DI], ax);
-                    cpu.registers[Cpu.DI] += delta;
+                    cpu.registers[Cpu.DI] = (cpu.registers[Cpu.DI] + delta) & 0xFFFF;
                     cpu.registers[Cpu.CX]--;
                 }
 
-                /*
-                int di = cpu.registers[Cpu.DI];
-                int cx = cpu.registers[Cpu.CX];
-                while (cx != 0) {
-                    cpu.mwrite8(Cpu.ES, di, ax);
-                    di += delta;
-                    cx--;
-                }
-                cpu.registers[Cpu.DI] = di;
-                cpu.registers[Cpu.CX] = 0;
-                */
+                // restart from the prefix if chunk ended before cx
+                cpu.repSuspend();
             }
         }
     }
@@ -481,6 +637,9 @@ public class Strings implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfig
         @Override
         public void execute(Cpu cpu, int opcode)
         {
+            // address of the prefix to restart interrupted instruction,
+            // takes into account segment override prefix placed before
+            cpu.repIp = cpu.ip - (cpu.overrideSegmentIndex == -1 ? 1 : 2);
             cpu.repPrefix = true;
             cpu.rep = opcode;
             cpu.step();
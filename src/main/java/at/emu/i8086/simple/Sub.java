@@ -101,32 +101,67 @@ public class Sub implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigurat
      * @return (dst - src) used during flags calculation
      */
     public static int flags(Cpu cpu, boolean word, int dst, int src)
+    {
+        if (word) {
+            return flags16(cpu, dst, src);
+        } else {
+            return flags8(cpu, dst, src);
+        }
+    }
+
+    /**
+     * byte version of {@link #flags(Cpu, boolean, int, int)}
+     *
+     * @param cpu ref to cpu
+     * @param dst dst operand
+     * @param src src operand
+     * @return (dst - src) used during flags calculation
+     */
+    public static int flags8(Cpu cpu, int dst, int src)
     {
         int value = dst - src;
 
-        if (word)
-        {
-            Cpu.Opcode.flagsPszc16(cpu, value);
+        Cpu.Opcode.flagsPszc8(cpu, value);
 
-            // this is sub specific
-            // todo: optimize
-            if (((dst & Cpu.WORD_MASK_SIGN) != (src & Cpu.WORD_MASK_SIGN)) &&
-                    ((dst & Cpu.WORD_MASK_SIGN) != (value & Cpu.WORD_MASK_SIGN)))
-                cpu.setFlag(Cpu.FLAG_OF);
-            else
-                cpu.resetFlag(Cpu.FLAG_OF);
+        // this is sub specific
+        if (((dst & Cpu.BYTE_MASK_SIGN) != (src & Cpu.BYTE_MASK_SIGN)) &&
+                ((dst & Cpu.BYTE_MASK_SIGN) != (value & Cpu.BYTE_MASK_SIGN)))
+            cpu.setFlag(Cpu.FLAG_OF);
+        else
+            cpu.resetFlag(Cpu.FLAG_OF);
 
-        }
-        else {
-            Cpu.Opcode.flagsPszc8(cpu, value);
+        // AF only base on lower nipple of low byte,
+        // check for borrow from the high nibble
+        // todo: check for 8|4 bit nibble (here=8 and add=4)
+        if ((dst & 0xFF) < (src & 0xFF))
+            cpu.setFlag(Cpu.FLAG_AF);
+        else
+            cpu.resetFlag(Cpu.FLAG_AF);
 
-            // this is sub specific
-            if (((dst & Cpu.BYTE_MASK_SIGN) != (src & Cpu.BYTE_MASK_SIGN)) &&
-                    ((dst & Cpu.BYTE_MASK_SIGN) != (value & Cpu.BYTE_MASK_SIGN)))
-                cpu.setFlag(Cpu.FLAG_OF);
-            else
-                cpu.resetFlag(Cpu.FLAG_OF);
-        }
+        return value;
+    }
+
+    /**
+     * word version of {@link #flags(Cpu, boolean, int, int)}
+     *
+     * @param cpu ref to cpu
+     * @param dst dst operand
+     * @param src src operand
+     * @return (dst - src) used during flags calculation
+     */
+    public static int flags16(Cpu cpu, int dst, int src)
+    {
+        int value = dst - src;
+
+        Cpu.Opcode.flagsPszc16(cpu, value);
+
+        // this is sub specific
+        // todo: optimize
+        if (((dst & Cpu.WORD_MASK_SIGN) != (src & Cpu.WORD_MASK_SIGN)) &&
+                ((dst & Cpu.WORD_MASK_SIGN) != (value & Cpu.WORD_MASK_SIGN)))
+            cpu.setFlag(Cpu.FLAG_OF);
+        else
+            cpu.resetFlag(Cpu.FLAG_OF);
 
         // AF only base on lower nipple of low byte,
         // check for borrow from the high nibble
@@ -191,21 +226,49 @@ public class Sub implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigurat
     /**
      * Implements Sub Reg/mem and reg either operations
      */
-    public static class SubRmR extends Cpu.Opcode {
+    public static class SubRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            cpu.readModRegRm(opcode);
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean d = (opcode & 0b0000_0010) == 0b10;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            if (d) {
-                // reg <<- mor r/m
-                int delta = Sub.flags(cpu, w, cpu.mrrRegValue, cpu.mrrModValue);
-                cpu.writeRegister(w, cpu.mrrRegIndex, delta);
-            } else {
-                // mod r/m <<- reg
-                int delta = Sub.flags(cpu, w, cpu.mrrModValue, cpu.mrrRegValue);
-                cpu.writeByModRegRm(true, delta);
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    // reg <<- mor r/m
+                    int delta = Sub.flags8(cpu, cpu.mrrRegValue, cpu.mrrModValue);
+                    cpu.writeRegister8(cpu.mrrRegIndex, delta);
+                } else {
+                    // mod r/m <<- reg
+                    int delta = Sub.flags8(cpu, cpu.mrrModValue, cpu.mrrRegValue);
+                    cpu.writeByModRegRm8(delta);
+                }
+            }
+        }
+
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    // reg <<- mor r/m
+                    int delta = Sub.flags16(cpu, cpu.mrrRegValue, cpu.mrrModValue);
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, delta);
+                } else {
+                    // mod r/m <<- reg
+                    int delta = Sub.flags16(cpu, cpu.mrrModValue, cpu.mrrRegValue);
+                    cpu.writeByModRegRm16(delta);
+                }
             }
         }
     }
@@ -239,27 +302,32 @@ public class Sub implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigurat
     /**
      * Implements subtraction of imm from accumulator
      */
-    public static class SubAccImm extends Cpu.Opcode {
+    public static class SubAccImm extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-
-            // accumulator
-            int ax = cpu.registers[Cpu.AX];
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            // extract immediate value,
-            // size depends on w bit
-            int imm;
-            if (w) {
-                imm = cpu.ipRead16();
-            } else {
-                imm = cpu.ipRead8();
-                // use only AL part
-                ax &= 0x000F;
+        /**
+         * byte variant (w=0), AL - imm8
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                int delta = Sub.flags8(cpu, cpu.registers[Cpu.AX] & 0x00FF, cpu.ipRead8());
+                cpu.writeRegisterLowByte(Cpu.AX, delta);
             }
+        }
 
-            int delta = Sub.flags(cpu, w, ax, imm);
-            cpu.writeRegister(w, Cpu.AX, delta);
+        /**
+         * word variant (w=1), AX - imm16
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                int delta = Sub.flags16(cpu, cpu.registers[Cpu.AX], cpu.ipRead16());
+                cpu.writeRegisterWord(Cpu.AX, delta);
+            }
         }
     }
 
@@ -345,7 +413,7 @@ public class Sub implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfigurat
             } else {
                 imm = cpu.ipRead8();
                 // use only AL part
-                ax &= 0x000F;
+                ax &= 0x00FF;
             }
 
 
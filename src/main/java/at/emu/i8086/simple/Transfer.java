@@ -113,19 +113,45 @@ public class Transfer implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfi
     /**
      * Register/memory to/ from register
      */
-    public static class MovRmR extends Cpu.Opcode {
+    public static class MovRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            cpu.readModRegRm(opcode);
-            boolean w = (opcode & 0b0000_0001) == 0b01;
-            boolean d = (opcode & 0b0000_0010) == 0b10;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            if (d) {
-                // reg <<- mor r/m
-                cpu.writeRegister(w, cpu.mrrRegIndex, cpu.mrrModValue);
-            } else {
-                // mod r/m <<- reg
-                cpu.writeByModRegRm(w, cpu.mrrRegValue);
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    // reg <<- mor r/m
+                    cpu.writeRegister8(cpu.mrrRegIndex, cpu.mrrModValue);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm8(cpu.mrrRegValue);
+                }
+            }
+        }
+
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+
+                if ((opcode & 0b0000_0010) == 0b10) {
+                    // reg <<- mor r/m
+                    cpu.writeRegisterWord(cpu.mrrRegIndex, cpu.mrrModValue);
+                } else {
+                    // mod r/m <<- reg
+                    cpu.writeByModRegRm16(cpu.mrrRegValue);
+                }
             }
         }
     }
@@ -172,21 +198,41 @@ public class Transfer implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfi
     /**
      * Implements (acc <- mem) and (mem <- acc) commands
      */
-    public static class MovAccMem extends Cpu.Opcode {
+    public static class MovAccMem extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            boolean w = (opcode & 0b0000_0001) != 0b0000;
-            // here 'd' is not standard 'd', but:
-            // 0 - mem to acc
-            // 1 - acc to mem
-            boolean d = (opcode & 0b0000_0010) != 0b0000;
-            int displacement = cpu.ipRead16();
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            if (d) {
-                cpu.mwrite(w, displacement, cpu.registers[Cpu.AX]);
-            } else {
-                int eaValue = cpu.mread(w, displacement);
-                cpu.writeRegister(w, Cpu.AX, eaValue);
+        /**
+         * byte variant (w=0), AL <-> mem
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                int displacement = cpu.ipRead16();
+
+                if ((opcode & 0b0000_0010) != 0b0000) {
+                    cpu.mwrite8(displacement, cpu.registers[Cpu.AX]);
+                } else {
+                    cpu.writeRegisterLowByte(Cpu.AX, cpu.mread8(displacement));
+                }
+            }
+        }
+
+        /**
+         * word variant (w=1), AX <-> mem
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                int displacement = cpu.ipRead16();
+
+                if ((opcode & 0b0000_0010) != 0b0000) {
+                    cpu.mwrite16(displacement, cpu.registers[Cpu.AX]);
+                } else {
+                    cpu.writeRegisterWord(Cpu.AX, cpu.mread16(displacement));
+                }
             }
         }
     }
@@ -235,14 +281,34 @@ public class Transfer implements Cpu.OpcodeConfiguration, Cpu.ClockedOpcodeConfi
     /**
      * Xchg of register/memory with register
      */
-    public static class XchgRmR extends Cpu.Opcode {
+    public static class XchgRmR extends Cpu.WidthOpcode {
         @Override
-        public void execute(Cpu cpu, int opcode) {
-            cpu.readModRegRm(opcode);
-            boolean w = (opcode & 0b0000_0001) == 0b01;
+        public Cpu.Opcode specialize(boolean w) {
+            return w ? new W16() : new W8();
+        }
 
-            cpu.writeRegister(w, cpu.mrrRegIndex, cpu.mrrModValue);
-            cpu.writeByModRegRm(w, cpu.mrrRegValue);
+        /**
+         * byte variant (w=0)
+         */
+        public static class W8 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm8();
+                cpu.writeRegister8(cpu.mrrRegIndex, cpu.mrrModValue);
+                cpu.writeByModRegRm8(cpu.mrrRegValue);
+            }
+        }
+
+        /**
+         * word variant (w=1)
+         */
+        public static class W16 extends Cpu.Opcode {
+            @Override
+            public void execute(Cpu cpu, int opcode) {
+                cpu.readModRegRm16();
+                cpu.writeRegisterWord(cpu.mrrRegIndex, cpu.mrrModValue);
+                cpu.writeByModRegRm16(cpu.mrrRegValue);
+            }
         }
     }
 
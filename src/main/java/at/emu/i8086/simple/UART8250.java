@@ -0,0 +1,674 @@
+package at.emu.i8086.simple;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 8250 UART (no fifo) of a serial port, com1 at 0x3F8 with irq#4 and com2 at 0x2F8 with irq#3.
+ * Characters take time of the baud rate set with divisor latch, all timing is in cpu clocks.
+ * Transmitted characters are collected into a buffer and received ones are taken from
+ * a buffer, both are moved to/from a non blocking {@link Backend} in batches by the run loop,
+ * so cpu thread never waits for host i/o. Receiver only latches the next character when
+ * the previous one was read (no overruns), transmitter waits while output buffer is full.
+ *
+ * Registers (base +)
+ *   0  RW  receiver buffer / transmitter holding, divisor latch low if DLAB is set
+ *   1  RW  interrupt enable, divisor latch high if DLAB is set
+ *              (0): received data, (1): transmitter empty, (2): line status, (3): modem status
+ *   2  R   interrupt identification
+ *              (0): 1 - no interrupt, (21): 11 - line status, 10 - received data, 01 - transmitter empty, 00 - modem
+ *   3  RW  line control
+ *              (10): data bits - 5, (2): stop bits, (543): parity, (6): break, (7): DLAB
+ *   4  RW  modem control
+ *              (0): DTR, (1): RTS, (2): OUT1, (3): OUT2 (enables irq on pc), (4): loopback
+ *   5  R   line status
+ *              (0): data ready, (1): overrun, (5): holding register empty, (6): transmitter empty
+ *   6  R   modem status
+ *              (4): CTS, (5): DSR, (6): RI, (7): DCD, low bits are deltas
+ *   7  RW  scratch
+ */
+public class UART8250 extends Cpu.PortHandler
+{
+    public static final int COM1_BASE   = 0x3F8;
+    public static final int COM2_BASE   = 0x2F8;
+    public static final int COM1_IRQ    = 4;
+    public static final int COM2_IRQ    = 3;
+
+    /**
+     * uart input clock, divisor 1 is 115200 baud
+     */
+    public static final long UART_HZ    = 1_843_200;
+
+    public static final int MASK_IER_RDA    = 0b0000_0001;
+    public static final int MASK_IER_THRE   = 0b0000_0010;
+    public static final int MASK_IER_RLS    = 0b0000_0100;
+    public static final int MASK_IER_MS     = 0b0000_1000;
+
+    public static final int IIR_NONE        = 0b0000_0001;
+    public static final int IIR_RLS         = 0b0000_0110;
+    public static final int IIR_RDA         = 0b0000_0100;
+    public static final int IIR_THRE        = 0b0000_0010;
+    public static final int IIR_MS          = 0b0000_0000;
+
+    public static final int MASK_LCR_DATA   = 0b0000_0011;
+    public static final int MASK_LCR_STOP   = 0b0000_0100;
+    public static final int MASK_LCR_PARITY = 0b0000_1000;
+    public static final int MASK_LCR_DLAB   = 0b1000_0000;
+
+    public static final int MASK_MCR_DTR    = 0b0000_0001;
+    public static final int MASK_MCR_RTS    = 0b0000_0010;
+    public static final int MASK_MCR_OUT1   = 0b0000_0100;
+    public static final int MASK_MCR_OUT2   = 0b0000_1000;
+    public static final int MASK_MCR_LOOP   = 0b0001_0000;
+
+    public static final int MASK_LSR_DR     = 0b0000_0001;
+    public static final int MASK_LSR_OE     = 0b0000_0010;
+    public static final int MASK_LSR_THRE   = 0b0010_0000;
+    public static final int MASK_LSR_TEMT   = 0b0100_0000;
+
+    public static final int MASK_MSR_CTS    = 0b0001_0000;
+    public static final int MASK_MSR_DSR    = 0b0010_0000;
+    public static final int MASK_MSR_RI     = 0b0100_0000;
+    public static final int MASK_MSR_DCD    = 0b1000_0000;
+
+    /**
+     * interval of backend polls
+     */
+    private static final long POLL_CLOCKS = Pacer.CPU_HZ / 1000;
+
+    /**
+     * size of host side buffers
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Non blocking host side of the serial line,
+     * called from the cpu thread only
+     */
+    public interface Backend extends Closeable {
+        /**
+         * reads available data without waiting
+         * @param dst buffer to read into
+         * @throws IOException if any
+         */
+        void read(ByteBuffer dst) throws IOException;
+
+        /**
+         * writes as much as possible without waiting
+         * @param src data to write
+         * @throws IOException if any
+         */
+        void write(ByteBuffer src) throws IOException;
+    }
+
+    private final Cpu cpu;
+    private final PIC8259 pic;
+    private final int base;
+    private final int irq;
+
+    private Backend backend;
+
+    int divisor = 12;
+    int ier;
+    int lcr = 0b0000_0011;
+    int mcr;
+    int lsr = MASK_LSR_THRE | MASK_LSR_TEMT;
+    int msr;
+    int scratch;
+    int rbr;
+
+    /**
+     * true if transmitter empty interrupt is pending,
+     * cleared by iir read and thr write
+     */
+    private boolean threPending;
+
+    /**
+     * state of the interrupt output to pic, irq is raised on its rise
+     */
+    private boolean line;
+
+    /**
+     * clocks of one character at the current rate and format
+     */
+    private long charClocks;
+
+    /**
+     * clocks when transmission of the current character completes,
+     * Long.MAX_VALUE if transmitter is idle
+     */
+    private long txEnd = Long.MAX_VALUE;
+    private int tsr;
+
+    /**
+     * clocks when the next received character could be latched
+     */
+    private long rxNext;
+
+    /**
+     * clocks of the next backend poll
+     */
+    private long pollNext;
+
+    /**
+     * host side buffers, tx is in write mode, rx is in read mode
+     */
+    private final ByteBuffer tx = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer rx = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+    /**
+     * @param cpu ref to cpu (for clocks)
+     * @param pic interrupt controller
+     * @param base base port
+     * @param irq irq line
+     */
+    public UART8250(Cpu cpu, PIC8259 pic, int base, int irq)
+    {
+        this.cpu = cpu;
+        this.pic = pic;
+        this.base = base;
+        this.irq = irq;
+        timing();
+    }
+
+    /**
+     * @return base port
+     */
+    public int base() {
+        return base;
+    }
+
+    /**
+     * attaches host side of the line, previous one is not closed
+     * @param backend backend or null to disconnect (output is dropped)
+     */
+    public void attach(Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * recalculates character time: start, data, parity and stop bits
+     */
+    private void timing()
+    {
+        int bits = 1 + 5 + (lcr & MASK_LCR_DATA) + ((lcr & MASK_LCR_PARITY) != 0 ? 1 : 0) + ((lcr & MASK_LCR_STOP) != 0 ? 2 : 1);
+        long uartClocks = Math.max(divisor, 1) * 16L * bits;
+        charClocks = Math.max(1, uartClocks * Pacer.CPU_HZ / UART_HZ);
+    }
+
+    /**
+     * @return cpu clocks of the next internal event, Long.MAX_VALUE if none
+     */
+    public long nextEventClocks()
+    {
+        if (((lsr & MASK_LSR_DR) == 0) && rx.hasRemaining() && ((mcr & MASK_MCR_LOOP) == 0)) {
+            return Math.min(txEnd, rxNext);
+        }
+        return txEnd;
+    }
+
+    /**
+     * synchronizes transmitter and receiver with cpu clocks
+     * and moves data to/from backend, called by the run loop
+     * @param clocks current cpu clocks
+     */
+    public void clock(long clocks)
+    {
+        update(clocks);
+        if (pollNext <= clocks) {
+            pollNext = clocks + POLL_CLOCKS;
+            poll();
+            update(clocks);
+        }
+    }
+
+    /**
+     * moves buffered data between backend and uart buffers
+     */
+    private void poll()
+    {
+        Backend b = backend;
+        try {
+            if (tx.position() != 0) {
+                if (b == null) {
+                    tx.clear();
+                } else {
+                    tx.flip();
+                    b.write(tx);
+                    tx.compact();
+                }
+            }
+            if ((b != null) && !rx.hasRemaining()) {
+                rx.clear();
+                b.read(rx);
+                rx.flip();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * completes transmission and latches received character if it's time
+     * @param clocks current cpu clocks
+     */
+    private void update(long clocks)
+    {
+        if (txEnd <= clocks)
+        {
+            if ((mcr & MASK_MCR_LOOP) != 0) {
+                // loopback: straight into receiver, previous one is lost
+                if ((lsr & MASK_LSR_DR) != 0) {
+                    lsr |= MASK_LSR_OE;
+                }
+                rbr = tsr;
+                lsr |= MASK_LSR_DR;
+                complete();
+            }
+            else {
+                if (!tx.hasRemaining()) {
+                    poll();
+                }
+                if (tx.hasRemaining()) {
+                    tx.put((byte) tsr);
+                    complete();
+                } else {
+                    // host is slow, line is busy
+                    txEnd = clocks + charClocks;
+                }
+            }
+        }
+
+        if (((lsr & MASK_LSR_DR) == 0) && (rxNext <= clocks) && rx.hasRemaining() && ((mcr & MASK_MCR_LOOP) == 0))
+        {
+            rbr = rx.get() & 0xFF;
+            lsr |= MASK_LSR_DR;
+            rxNext = clocks + charClocks;
+            interrupts();
+        }
+    }
+
+    private void complete()
+    {
+        txEnd = Long.MAX_VALUE;
+        lsr |= MASK_LSR_THRE | MASK_LSR_TEMT;
+        threPending = true;
+        interrupts();
+    }
+
+    /**
+     * @return identification of the highest priority pending interrupt
+     */
+    private int identification()
+    {
+        if (((ier & MASK_IER_RLS) != 0) && ((lsr & MASK_LSR_OE) != 0)) {
+            return IIR_RLS;
+        }
+        if (((ier & MASK_IER_RDA) != 0) && ((lsr & MASK_LSR_DR) != 0)) {
+            return IIR_RDA;
+        }
+        if (((ier & MASK_IER_THRE) != 0) && threPending) {
+            return IIR_THRE;
+        }
+        if (((ier & MASK_IER_MS) != 0) && ((msr & 0x0F) != 0)) {
+            return IIR_MS;
+        }
+        return IIR_NONE;
+    }
+
+    /**
+     * updates interrupt output (gated with OUT2 on pc), irq is requested on its rise
+     */
+    private void interrupts()
+    {
+        boolean active = (identification() != IIR_NONE) && ((mcr & MASK_MCR_OUT2) != 0);
+        if (active && !line) {
+            pic.interrupt(irq);
+        }
+        line = active;
+    }
+
+    /**
+     * @return modem status, in loopback outputs are connected to inputs,
+     * otherwise line is always ready
+     */
+    private int modemStatus()
+    {
+        if ((mcr & MASK_MCR_LOOP) != 0) {
+            return (msr & 0x0F)
+                    | (((mcr & MASK_MCR_RTS) != 0) ? MASK_MSR_CTS : 0)
+                    | (((mcr & MASK_MCR_DTR) != 0) ? MASK_MSR_DSR : 0)
+                    | (((mcr & MASK_MCR_OUT1) != 0) ? MASK_MSR_RI : 0)
+                    | (((mcr & MASK_MCR_OUT2) != 0) ? MASK_MSR_DCD : 0);
+        }
+        return (msr & 0x0F) | MASK_MSR_CTS | MASK_MSR_DSR | MASK_MSR_DCD;
+    }
+
+    @Override
+    void pout(boolean word, int port, int value)
+    {
+        update(cpu.clocks);
+        value &= 0xFF;
+        switch (port - base)
+        {
+            case 0:
+                if ((lcr & MASK_LCR_DLAB) != 0) {
+                    divisor = (divisor & 0xFF00) | value;
+                    timing();
+                    break;
+                }
+                if (txEnd != Long.MAX_VALUE) {
+                    // holding register is overwritten, that's what guest asked for
+                    tsr = value;
+                    break;
+                }
+                tsr = value;
+                txEnd = cpu.clocks + charClocks;
+                lsr &= ~(MASK_LSR_THRE | MASK_LSR_TEMT);
+                threPending = false;
+                interrupts();
+                break;
+
+            case 1:
+                if ((lcr & MASK_LCR_DLAB) != 0) {
+                    divisor = (divisor & 0x00FF) | (value << 8);
+                    timing();
+                    break;
+                }
+                if (((value & ~ier & MASK_IER_THRE) != 0) && ((lsr & MASK_LSR_THRE) != 0)) {
+                    // enabling with empty holding register interrupts immediately
+                    threPending = true;
+                }
+                ier = value & 0x0F;
+                interrupts();
+                break;
+
+            case 3:
+                lcr = value;
+                timing();
+                break;
+
+            case 4:
+                mcr = value & 0x1F;
+                interrupts();
+                break;
+
+            case 7:
+                scratch = value;
+                break;
+
+            default:
+        }
+    }
+
+    @Override
+    int pin(boolean word, int port)
+    {
+        update(cpu.clocks);
+        switch (port - base)
+        {
+            case 0:
+                if ((lcr & MASK_LCR_DLAB) != 0) {
+                    return divisor & 0xFF;
+                }
+                lsr &= ~MASK_LSR_DR;
+                interrupts();
+                // next character could be latched right away if it's time
+                update(cpu.clocks);
+                return rbr;
+
+            case 1:
+                if ((lcr & MASK_LCR_DLAB) != 0) {
+                    return divisor >> 8;
+                }
+                return ier;
+
+            case 2: {
+                int iir = identification();
+                if (iir == IIR_THRE) {
+                    threPending = false;
+                    interrupts();
+                }
+                return iir;
+            }
+
+            case 3:
+                return lcr;
+
+            case 4:
+                return mcr;
+
+            case 5: {
+                int status = lsr;
+                lsr &= ~MASK_LSR_OE;
+                interrupts();
+                return status;
+            }
+
+            case 6: {
+                int status = modemStatus();
+                msr &= ~0x0F;
+                interrupts();
+                return status;
+            }
+
+            case 7:
+                return scratch;
+
+            default:
+                return 0xFF;
+        }
+    }
+
+    /**
+     * In memory line for tests and embedding, host side is thread safe
+     */
+    public static class MemoryBackend implements Backend
+    {
+        private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        /**
+         * adds data to be received by the guest
+         * @param data data
+         * @return false if there is no space
+         */
+        public synchronized boolean send(byte[] data)
+        {
+            input.compact();
+            try {
+                if (input.remaining() < data.length) {
+                    return false;
+                }
+                input.put(data);
+                return true;
+            } finally {
+                input.flip();
+            }
+        }
+
+        /**
+         * @return data transmitted by the guest since the last call
+         */
+        public synchronized byte[] receive()
+        {
+            byte[] data = output.toByteArray();
+            output.reset();
+            return data;
+        }
+
+        @Override
+        public synchronized void read(ByteBuffer dst)
+        {
+            while (input.hasRemaining() && dst.hasRemaining()) {
+                dst.put(input.get());
+            }
+        }
+
+        @Override
+        public synchronized void write(ByteBuffer src) {
+            output.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Output appended to a file, input (optional) is taken from another file till its end
+     */
+    public static class FileBackend implements Backend
+    {
+        private final FileChannel output;
+        private final FileChannel input;
+
+        /**
+         * @param output file for transmitted data, created if needed
+         * @param input file with data to receive, could be null
+         * @throws IOException if any
+         */
+        public FileBackend(Path output, Path input) throws IOException
+        {
+            this.output = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.input = (input == null) ? null : FileChannel.open(input, StandardOpenOption.READ);
+        }
+
+        @Override
+        public void read(ByteBuffer dst) throws IOException {
+            if (input != null) {
+                input.read(dst);
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) {
+                output.write(src);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * Local tcp server, one client at a time, data is dropped while
+     * there is no client, new client replaces the disconnected one
+     */
+    public static class SocketBackend implements Backend
+    {
+        private final Selector selector;
+        private final ServerSocketChannel server;
+        private SocketChannel client;
+
+        /**
+         * @param port local port to listen, 0 for any free one
+         * @throws IOException if any
+         */
+        public SocketBackend(int port) throws IOException
+        {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        }
+
+        /**
+         * @return local port
+         * @throws IOException if any
+         */
+        public int port() throws IOException {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        }
+
+        /**
+         * accepts new client if there is one
+         */
+        private void select() throws IOException
+        {
+            if (selector.selectNow() == 0) {
+                return;
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (key.isValid() && key.isAcceptable()) {
+                    SocketChannel accepted = server.accept();
+                    if (accepted == null) {
+                        continue;
+                    }
+                    if (client != null) {
+                        client.close();
+                    }
+                    accepted.configureBlocking(false);
+                    client = accepted;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+
+        @Override
+        public void read(ByteBuffer dst) throws IOException
+        {
+            select();
+            if (client == null) {
+                return;
+            }
+            try {
+                if (client.read(dst) == -1) {
+                    disconnect();
+                }
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer src) throws IOException
+        {
+            select();
+            if (client == null) {
+                src.position(src.limit());
+                return;
+            }
+            try {
+                client.write(src);
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        private void disconnect() throws IOException {
+            client.close();
+            client = null;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (client != null) {
+                client.close();
+            }
+            server.close();
+            selector.close();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package at.emu.i8086.simple;
+
+/**
+ * High level INT 10h fast path for text modes, console output goes
+ * directly into the text buffer at B8000 and bios data area instead
+ * of running bios routines (hundreds of instructions per character).
+ * Graphics modes, unsupported functions and handlers hooked by the guest
+ * (vector doesn't point into rom) are passed to the guest handler.
+ *
+ * Functions (AH)
+ *   0x02 set cursor position   BH page, DH row, DL column
+ *   0x03 get cursor position   BH page, returns DH/DL position and CX cursor shape
+ *   0x06 scroll window up      AL lines (0 - clear), BH fill attribute, CH/CL upper left, DH/DL lower right
+ *   0x07 scroll window down    same
+ *   0x0E teletype output       AL character, bell is passed to the guest handler
+ *   0x0F get video mode        returns AL mode, AH columns, BH active page
+ */
+public class VideoBios implements Cpu.InterruptTrap
+{
+    /**
+     * text buffer and number of rows in text modes
+     */
+    public static final int TEXT_BUFFER = 0xB8000;
+    public static final int ROWS = 25;
+
+    /**
+     * bios data area: mode, columns, page size and start, cursors, cursor shape, active page
+     */
+    private static final int BDA_MODE           = 0x449;
+    private static final int BDA_COLUMNS        = 0x44A;
+    private static final int BDA_PAGE_SIZE      = 0x44C;
+    private static final int BDA_PAGE_START     = 0x44E;
+    private static final int BDA_CURSORS        = 0x450;
+    private static final int BDA_CURSOR_SHAPE   = 0x460;
+    private static final int BDA_ACTIVE_PAGE    = 0x462;
+
+    /**
+     * 6845 cursor address registers
+     */
+    private static final int REG_CURSOR_HIGH = 14;
+    private static final int REG_CURSOR_LOW  = 15;
+
+    /**
+     * lowest segment of the rom bios handler
+     */
+    private static final int ROM_SEGMENT = 0xF000;
+
+    /**
+     * number of calls served by the trap
+     */
+    private long served;
+
+    /**
+     * installs trap into cpu
+     * @param cpu ref to cpu
+     */
+    public void install(Cpu cpu) {
+        cpu.traps[Cpu.INT_10_VIDEO] = this;
+    }
+
+    /**
+     * @return number of calls served without guest handler
+     */
+    public long served() {
+        return served;
+    }
+
+    @Override
+    public boolean trap(Cpu cpu)
+    {
+        byte[] m = cpu.memory;
+        int[] r = cpu.registers;
+
+        // guest (or tsr) has its own handler, leave it alone
+        if (read16(m, Cpu.INT_10_VIDEO * 4 + 2) < ROM_SEGMENT) {
+            return false;
+        }
+        // text modes only, 40x25 and 80x25
+        int mode = m[BDA_MODE] & 0xFF;
+        int columns = read16(m, BDA_COLUMNS);
+        if ((3 < mode) || ((columns != 40) && (columns != 80))) {
+            return false;
+        }
+
+        int function = (r[Cpu.AX] >> 8) & 0xFF;
+        int page = m[BDA_ACTIVE_PAGE] & 0x07;
+        switch (function)
+        {
+            case 0x02:
+                setCursor(cpu, (r[Cpu.BX] >> 8) & 0x07, (r[Cpu.DX] >> 8) & 0xFF, r[Cpu.DX] & 0xFF);
+                break;
+
+            case 0x03:
+                r[Cpu.DX] = read16(m, BDA_CURSORS + ((r[Cpu.BX] >> 8) & 0x07) * 2);
+                r[Cpu.CX] = read16(m, BDA_CURSOR_SHAPE);
+                break;
+
+            case 0x06:
+            case 0x07:
+                scroll(cpu, page, columns, function == 0x06, r[Cpu.AX] & 0xFF, (r[Cpu.BX] >> 8) & 0xFF,
+                        (r[Cpu.CX] >> 8) & 0xFF, r[Cpu.CX] & 0xFF, (r[Cpu.DX] >> 8) & 0xFF, r[Cpu.DX] & 0xFF);
+                break;
+
+            case 0x0E:
+                if (!teletype(cpu, page, columns, r[Cpu.AX] & 0xFF)) {
+                    return false;
+                }
+                break;
+
+            case 0x0F:
+                r[Cpu.AX] = (columns << 8) | mode;
+                cpu.writeRegister8(0b111, page);
+                break;
+
+            default:
+                return false;
+        }
+
+        served++;
+        return true;
+    }
+
+    /**
+     * writes character like a terminal: bs, cr and lf are interpreted,
+     * screen is scrolled at the bottom line with attribute under cursor
+     * @param cpu ref to cpu
+     * @param page active page
+     * @param columns number of columns
+     * @param c character
+     * @return false to run guest handler (bell)
+     */
+    private boolean teletype(Cpu cpu, int page, int columns, int c)
+    {
+        byte[] m = cpu.memory;
+        int position = read16(m, BDA_CURSORS + page * 2);
+        int row = position >> 8;
+        int column = position & 0xFF;
+
+        switch (c)
+        {
+            case 0x07:
+                // beep is timed by the guest handler with speaker
+                return false;
+
+            case 0x08:
+                if (0 < column) {
+                    column--;
+                }
+                break;
+
+            case 0x0D:
+                column = 0;
+                break;
+
+            case 0x0A:
+                row++;
+                break;
+
+            default:
+                m[cell(m, page, columns, row, column)] = (byte) c;
+                if (++column == columns) {
+                    column = 0;
+                    row++;
+                }
+        }
+
+        if (ROWS <= row) {
+            row = ROWS - 1;
+            int attribute = m[cell(m, page, columns, row, column) + 1] & 0xFF;
+            scroll(cpu, page, columns, true, 1, attribute, 0, 0, ROWS - 1, columns - 1);
+        }
+        setCursor(cpu, page, row, column);
+        return true;
+    }
+
+    /**
+     * scrolls window up or down, empty lines are filled with spaces
+     * @param cpu ref to cpu
+     * @param page page to scroll
+     * @param columns number of columns
+     * @param up true to scroll up
+     * @param lines number of lines, 0 or more than window height to clear it
+     * @param attribute attribute of empty lines
+     */
+    private static void scroll(Cpu cpu, int page, int columns, boolean up, int lines, int attribute,
+                               int top, int left, int bottom, int right)
+    {
+        byte[] m = cpu.memory;
+        bottom = Math.min(bottom, ROWS - 1);
+        right = Math.min(right, columns - 1);
+        if ((bottom < top) || (right < left)) {
+            return;
+        }
+
+        int height = bottom - top + 1;
+        if ((lines == 0) || (height < lines)) {
+            lines = height;
+        }
+
+        int width = (right - left + 1) * 2;
+        int stride = columns * 2;
+        int keep = height - lines;
+
+        if (keep != 0)
+        {
+            int to = cell(m, page, columns, up ? top : bottom, left);
+            int from = to + (up ? lines : -lines) * stride;
+            if (width == stride) {
+                // whole rows are contiguous
+                int start = up ? from : from - (keep - 1) * stride;
+                System.arraycopy(m, start, m, start - from + to, keep * stride);
+            } else {
+                int step = up ? stride : -stride;
+                for (int i = 0; i < keep; i++, from += step, to += step) {
+                    System.arraycopy(m, from, m, to, width);
+                }
+            }
+        }
+
+        int row = up ? bottom - lines + 1 : top;
+        for (int i = 0; i < lines; i++) {
+            int offset = cell(m, page, columns, row + i, left);
+            for (int x = 0; x < width; x += 2) {
+                m[offset + x] = ' ';
+                m[offset + x + 1] = (byte) attribute;
+            }
+        }
+    }
+
+    /**
+     * updates cursor in bios data area and 6845 if page is active
+     * @param cpu ref to cpu
+     * @param page page
+     * @param row row
+     * @param column column
+     */
+    private static void setCursor(Cpu cpu, int page, int row, int column)
+    {
+        byte[] m = cpu.memory;
+        m[BDA_CURSORS + page * 2] = (byte) column;
+        m[BDA_CURSORS + page * 2 + 1] = (byte) row;
+
+        if (page == (m[BDA_ACTIVE_PAGE] & 0x07)) {
+            int columns = read16(m, BDA_COLUMNS);
+            int address = (read16(m, BDA_PAGE_START) >> 1) + row * columns + column;
+            cpu.video.reg6845[REG_CURSOR_HIGH] = (address >> 8) & 0xFF;
+            cpu.video.reg6845[REG_CURSOR_LOW] = address & 0xFF;
+        }
+    }
+
+    /**
+     * @return address of the character in memory
+     */
+    private static int cell(byte[] m, int page, int columns, int row, int column) {
+        return TEXT_BUFFER + page * read16(m, BDA_PAGE_SIZE) + (row * columns + column) * 2;
+    }
+
+    private static int read16(byte[] m, int address) {
+        return (m[address] & 0xFF) | ((m[address + 1] & 0xFF) << 8);
+    }
+}
@@ -1,75 +1,114 @@
 package at.emu.i8086.simple;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 /**
- * this emulates XT keyboard
+ * this emulates XT keyboard,
+ * scan codes are added by host (any single thread) and are delivered
+ * to the cpu thread via lock free ring, cpu is notified with
+ * {@link Cpu#EVENT_INPUT} event and the code is shifted into the port
+ * when the previous one was cleared by the bios, that raises irq#1
  */
 public class XtKeyboard {
 
     /**
-     * Byte buffer for scan codes
+     * Single producer single consumer ring buffer for scan codes,
+     * producer is a host thread (ui or script), consumer is cpu thread
      */
     static class CircularByteBuffer
     {
-        // data in the buffer
+        private static final VarHandle HEAD;
+        private static final VarHandle TAIL;
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                HEAD = lookup.findVarHandle(CircularByteBuffer.class, "head", int.class);
+                TAIL = lookup.findVarHandle(CircularByteBuffer.class, "tail", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        // data in the buffer, size is power of 2
         final byte[] data;
-        // points to the next element to read
-        int head;
-        // number of elements
-        int elements;
+        final int mask;
+        // points to the next element to read, modified by consumer only
+        private int head;
+        // points to the next element to write, modified by producer only
+        private int tail;
 
         public CircularByteBuffer(int size) {
+            if (Integer.bitCount(size) != 1) {
+                throw new IllegalArgumentException("size must be power of 2: " + size);
+            }
             data = new byte[size];
-            clear();
+            mask = size - 1;
         }
 
         /**
-         * adds another code to the buffer
+         * adds another code to the buffer, producer side
          * @param value new value to add
+         * @return false if buffer is full and value was dropped
          */
-        public void add(byte value)
+        public boolean add(byte value)
         {
-            if (elements == data.length) {
+            int t = tail;
+            if (t - (int) HEAD.getAcquire(this) == data.length) {
                 // keyboard replaces the last code,
                 // but that doesn't really matter
-                return;
+                return false;
             }
 
-            int index = (head + elements) % data.length;
-            data[index] = value;
-            elements++;
+            data[t & mask] = value;
+            TAIL.setRelease(this, t + 1);
+            return true;
         }
 
         /**
-         * @return gets next value from the buffer or null if empty
+         * gets next value from the buffer, consumer side
+         * @return next value (0..255) or -1 if empty
          */
-        public int get() {
-            if (elements == 0) {
-                return 0;
-            } else {
-                byte value = data[head];
-                head = (head + 1) % data.length;
-                elements--;
-                return value;
+        public int get()
+        {
+            int h = head;
+            if (h == (int) TAIL.getAcquire(this)) {
+                return -1;
             }
+
+            int value = data[h & mask] & 0xFF;
+            HEAD.setRelease(this, h + 1);
+            return value;
         }
 
         /**
          * @return true if buffer is empty
          */
         public boolean empty() {
-            return elements == 0;
+            return head == (int) TAIL.getAcquire(this);
         }
 
         /**
-         * resets buffer state
+         * drops all the elements, consumer side
          */
         public void clear() {
-            head = 0;
-            elements = 0;
+            HEAD.setRelease(this, (int) TAIL.getAcquire(this));
         }
     }
 
+    /**
+     * code sent by keyboard after successful reset
+     */
+    public static final int CODE_SELF_TEST_OK = 0xAA;
+
+    /**
+     * irq line of the keyboard
+     */
+    public static final int IRQ = 1;
+
+    private final Cpu cpu;
+    private final PIC8259 pic;
+
     /**
      * tracks if clock low has been issued with some previous command,
      * used to reset kbd (bios routines)
@@ -77,28 +116,113 @@ public class XtKeyboard {
     private boolean clockLowSet;
 
     /**
-     * buffer to store scan codes
+     * buffer to store scan codes from host
      */
     private final CircularByteBuffer buffer = new CircularByteBuffer(16);
 
     /**
-     * called on keyboard clear flag set
+     * code available to read from the port,
+     * valid if full is set
+     */
+    private int data;
+    private boolean full;
+
+    /**
+     * keyboard is allowed to send codes (ppi clear bit is low)
+     */
+    private boolean enabled;
+
+    /**
+     * interrupt was not accepted by pic as irq was masked,
+     * will be requested again on unmask
+     */
+    private boolean irqPending;
+
+    /**
+     * code to be sent before codes from the buffer (reset response) or -1
+     */
+    private int internal = -1;
+
+    /**
+     * @param cpu ref to cpu to notify about new codes
+     * @param pic pic to raise irq at
+     */
+    public XtKeyboard(Cpu cpu, PIC8259 pic) {
+        this.cpu = cpu;
+        this.pic = pic;
+    }
+
+    /**
+     * Adds scan code from host, could be called from any single thread,
+     * doesn't block
+     * @param code scan code (set 1), bit 7 is set for key release
+     * @return false if buffer is full and the code was dropped
+     */
+    public boolean offer(int code)
+    {
+        if (!buffer.add((byte) code)) {
+            return false;
+        }
+        cpu.raiseEvent(Cpu.EVENT_INPUT);
+        return true;
+    }
+
+    /**
+     * Called on cpu thread on {@link Cpu#EVENT_INPUT} and on state changes,
+     * shifts the next code into the port if it's free
+     * and (re)requests interrupt if needed
+     */
+    void service()
+    {
+        if (enabled && !full)
+        {
+            int code = internal;
+            if (code != -1) {
+                internal = -1;
+            } else {
+                code = buffer.get();
+            }
+
+            if (code != -1) {
+                data = code;
+                full = true;
+                irqPending = true;
+            }
+        }
+
+        if (irqPending && ((pic.imr & (1 << IRQ)) == 0)) {
+            irqPending = false;
+            pic.interrupt(IRQ);
+        }
+    }
+
+    /**
+     * called on keyboard clear flag set,
+     * drops the code from the port
      */
     public void clear() {
+        enabled = false;
+        full = false;
+        data = 0;
+        irqPending = false;
     }
 
     /**
      *  called on enable bit set (practically always)
      */
     public void enable() {
+        if (!enabled) {
+            enabled = true;
+            service();
+        }
     }
 
     /**
-     * called when read from PPI KBD port (0x61) is issued
-     * @return next scan code available or 0 if now data ready
+     * called when read from PPI KBD port (0x60) is issued
+     * @return scan code available or 0 if no data ready
      */
     public int getNextScanCode() {
-        return 0xAA;
+        return data;
     }
 
     /**
@@ -119,11 +243,12 @@ public class XtKeyboard {
     }
 
     /**
-     * resets keyboards, adds 0xAA code
-     * to the buffer to indicated correctly initialized state
+     * resets keyboards, sends 0xAA code
+     * to indicated correctly initialized state
      */
     private void reset() {
         buffer.clear();
-        buffer.add((byte)0xAA);
+        internal = CODE_SELF_TEST_OK;
+        service();
     }
 }
@@ -0,0 +1,622 @@
+package at.emu.i8086.clocked.cpu;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Runs width specialized opcodes (W8/W16 variants) of the clocked cpu instruction by instruction
+ * and checks results and flags against the generic flag helpers
+ */
+public class WidthVariantsTest {
+
+    /**
+     * code is placed at 0000:0100
+     */
+    private static final int CODE = 0x0100;
+
+    /**
+     * memory operand of mod-reg-rm forms, addressed as [0200]
+     */
+    private static final int DATA = 0x0200;
+
+    /**
+     * status flags, randomized before each instruction
+     */
+    private static final int STATUS = Cpu.FLAG_CF | Cpu.FLAG_PF | Cpu.FLAG_AF
+            | Cpu.FLAG_ZF | Cpu.FLAG_SF | Cpu.FLAG_OF;
+
+    private final Random random = new Random(0x8086);
+
+    private static Cpu cpu()
+    {
+        Cpu cpu = new Cpu();
+        cpu.init();
+        cpu.reset();
+        return cpu;
+    }
+
+    /**
+     * randomizes registers and status flags, places code at 0000:0100
+     */
+    private void prepare(Cpu cpu, int... code)
+    {
+        for (int r = 0; r < 8; r++) {
+            cpu.registers[r] = random.nextInt(0x10000);
+        }
+        cpu.segments[Cpu.CS] = 0;
+        cpu.segments[Cpu.DS] = 0;
+        cpu.segments[Cpu.ES] = 0;
+        cpu.segments[Cpu.SS] = 0;
+        cpu.ip = CODE;
+        cpu.flags = random.nextInt() & STATUS;
+        for (int i = 0; i < code.length; i++) {
+            cpu.memory[CODE + i] = (byte) code[i];
+        }
+    }
+
+    /**
+     * @return register of a mod-reg-rm form (AL..BH for byte ones)
+     */
+    private static int read(int[] registers, boolean w, int index)
+    {
+        if (w) {
+            return registers[index];
+        } else if (index < 4) {
+            return registers[index] & 0xFF;
+        } else {
+            return (registers[index & 0b11] >> 8) & 0xFF;
+        }
+    }
+
+    /**
+     * writes register of a mod-reg-rm form (AL..BH for byte ones)
+     */
+    private static void write(int[] registers, boolean w, int index, int value)
+    {
+        if (w) {
+            registers[index] = value & 0xFFFF;
+        } else if (index < 4) {
+            registers[index] = (registers[index] & 0xFF00) | (value & 0xFF);
+        } else {
+            registers[index & 0b11] = (registers[index & 0b11] & 0x00FF) | ((value & 0xFF) << 8);
+        }
+    }
+
+    /**
+     * @return byte or word at the linear address
+     */
+    private static int memory(Cpu cpu, boolean w, int address) {
+        return (cpu.memory[address] & 0xFF) | (w ? (cpu.memory[address + 1] & 0xFF) << 8 : 0);
+    }
+
+    /**
+     * @return memory operand at [0200]
+     */
+    private static int data(Cpu cpu, boolean w) {
+        return memory(cpu, w, DATA);
+    }
+
+    /**
+     * runs the instruction at 0000:0100 till ip leaves it,
+     * rep prefixed ones could be restarted
+     */
+    private static void run(Cpu cpu, int length)
+    {
+        for (int i = 0; i < 1000 && cpu.ip != CODE + length; i++) {
+            cpu.step();
+        }
+        Assertions.assertEquals(CODE + length, cpu.ip);
+    }
+
+    /**
+     * operation of the generic reference
+     */
+    private interface Operation {
+        /**
+         * @return result of (dst op src) with flags set on the ref cpu
+         */
+        int apply(Cpu ref, boolean w, int dst, int src);
+    }
+
+    /**
+     * @return reference of logic operations, they clear OF and CF
+     */
+    private static Operation logic(IntBinaryOperator operator)
+    {
+        return (ref, w, dst, src) -> {
+            int value = operator.applyAsInt(dst, src);
+            ref.flags &= ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+            Cpu.Opcode.flagsPsz(ref, w, value);
+            return value;
+        };
+    }
+
+    /**
+     * Runs d/w forms of a reg, r/m opcode with register and [0200]
+     * operands and compares registers, memory and flags to the reference
+     * @param base opcode with d=w=0
+     * @param forms 4 for d/w forms, 2 for opcodes with w bit only
+     * @param operation reference
+     * @param store false for the forms that only set flags (cmp, test)
+     */
+    private void rmR(int base, int forms, Operation operation, boolean store)
+    {
+        Cpu cpu = cpu();
+        for (int dw = 0; dw < forms; dw++) {
+            int code = base | dw;
+            boolean w = (dw & 0b01) != 0;
+            boolean d = (dw & 0b10) != 0;
+            for (int i = 0; i < 400; i++) {
+                int reg = random.nextInt(8);
+                boolean memory = random.nextBoolean();
+                int rm = memory ? 0b110 : random.nextInt(8);
+                int mrr = (memory ? 0b00_000_000 : 0b11_000_000) | (reg << 3) | rm;
+                prepare(cpu, code, mrr, DATA & 0xFF, DATA >> 8);
+                cpu.memory[DATA] = (byte) random.nextInt();
+                cpu.memory[DATA + 1] = (byte) random.nextInt();
+
+                int[] registers = cpu.registers.clone();
+                int regValue = read(registers, w, reg);
+                int rmValue = memory ? data(cpu, w) : read(registers, w, rm);
+                int expectedData = data(cpu, true);
+                Cpu ref = reference(cpu);
+
+                cpu.step();
+
+                int result = d ? operation.apply(ref, w, regValue, rmValue)
+                        : operation.apply(ref, w, rmValue, regValue);
+                if (store && d) {
+                    write(registers, w, reg, result);
+                } else if (store && !memory) {
+                    write(registers, w, rm, result);
+                } else if (store) {
+                    expectedData = w ? result & 0xFFFF : (expectedData & 0xFF00) | (result & 0xFF);
+                }
+
+                String what = String.format("%02X %02X", code, mrr);
+                Assertions.assertArrayEquals(registers, cpu.registers, what);
+                Assertions.assertEquals(expectedData, data(cpu, true), what);
+                Assertions.assertEquals(ref.flags, cpu.flags, what);
+                Assertions.assertEquals(CODE + (memory ? 4 : 2), cpu.ip, what);
+            }
+        }
+    }
+
+    /**
+     * @return scratch cpu with the same flags to run generic helpers on
+     */
+    private static Cpu reference(Cpu cpu)
+    {
+        Cpu ref = new Cpu();
+        ref.flags = cpu.flags;
+        return ref;
+    }
+
+    /**
+     * AL op imm8 must use AL only and keep AH, AX op imm16 uses the whole word
+     */
+    @Test
+    public void accImm()
+    {
+        Cpu cpu = cpu();
+        int[] codes = new int[] {0x04, 0x14, 0x1C, 0x2C, 0x3C};
+        for (int code : codes) {
+            for (int w = 0; w < 2; w++) {
+                for (int i = 0; i < 200; i++) {
+                    int imm = random.nextInt(w == 0 ? 0x100 : 0x10000);
+                    prepare(cpu, code | w, imm & 0xFF, imm >> 8);
+                    int[] registers = cpu.registers.clone();
+                    int acc = (w == 0) ? registers[Cpu.AX] & 0xFF : registers[Cpu.AX];
+                    Cpu ref = reference(cpu);
+                    int cf = cpu.flags & Cpu.FLAG_CF;
+
+                    cpu.step();
+
+                    int result;
+                    switch (code) {
+                        case 0x04:
+                            result = Add.flags(ref, w == 1, acc, imm);
+                            break;
+                        case 0x14:
+                            result = Add.flags(ref, w == 1, acc, imm + cf);
+                            break;
+                        case 0x1C:
+                            result = Sub.flagsNoCF(ref, w == 1, acc, imm);
+                            if (cf != 0) {
+                                result = Sub.flags(ref, w == 1, result, 1);
+                            }
+                            break;
+                        default:
+                            result = Sub.flags(ref, w == 1, acc, imm);
+                            break;
+                    }
+                    if (code != 0x3C) {
+                        registers[Cpu.AX] = (w == 0)
+                                ? (registers[Cpu.AX] & 0xFF00) | (result & 0xFF)
+                                : result & 0xFFFF;
+                    }
+
+                    String what = String.format("%02X %04X", code | w, imm);
+                    Assertions.assertArrayEquals(registers, cpu.registers, what);
+                    Assertions.assertEquals(ref.flags, cpu.flags, what);
+                    Assertions.assertEquals(CODE + 2 + w, cpu.ip, what);
+                }
+            }
+        }
+    }
+
+    /**
+     * sub must write the result with the width of the opcode
+     */
+    @Test
+    public void subRmR() {
+        rmR(0x28, 4, Sub::flags, true);
+    }
+
+    /**
+     * add and mov reg/rm forms
+     */
+    @Test
+    public void addMovRmR()
+    {
+        rmR(0x00, 4, Add::flags, true);
+        rmR(0x88, 4, (ref, w, dst, src) -> src, true);
+    }
+
+    /**
+     * xchg reg, r/m swaps register and register or [0200] operands
+     */
+    @Test
+    public void xchgRmR()
+    {
+        Cpu cpu = cpu();
+        for (int w = 0; w < 2; w++) {
+            for (int i = 0; i < 400; i++) {
+                int reg = random.nextInt(8);
+                boolean memory = random.nextBoolean();
+                int rm = memory ? 0b110 : random.nextInt(8);
+                int mrr = (memory ? 0b00_000_000 : 0b11_000_000) | (reg << 3) | rm;
+                prepare(cpu, 0x86 | w, mrr, DATA & 0xFF, DATA >> 8);
+                cpu.memory[DATA] = (byte) random.nextInt();
+                cpu.memory[DATA + 1] = (byte) random.nextInt();
+
+                int[] registers = cpu.registers.clone();
+                int regValue = read(registers, w == 1, reg);
+                int rmValue = memory ? data(cpu, w == 1) : read(registers, w == 1, rm);
+                int expectedData = data(cpu, true);
+                int flags = cpu.flags;
+
+                cpu.step();
+
+                if (memory) {
+                    expectedData = (w == 1) ? regValue : (expectedData & 0xFF00) | regValue;
+                } else {
+                    write(registers, w == 1, rm, regValue);
+                }
+                write(registers, w == 1, reg, rmValue);
+
+                String what = String.format("%02X %02X", 0x86 | w, mrr);
+                Assertions.assertArrayEquals(registers, cpu.registers, what);
+                Assertions.assertEquals(expectedData, data(cpu, true), what);
+                Assertions.assertEquals(flags, cpu.flags, what);
+                Assertions.assertEquals(CODE + (memory ? 4 : 2), cpu.ip, what);
+            }
+        }
+    }
+
+    /**
+     * mov AL/AX, [addr] and mov [addr], AL/AX
+     */
+    @Test
+    public void movAccMem()
+    {
+        Cpu cpu = cpu();
+        for (int code = 0xA0; code <= 0xA3; code++) {
+            boolean w = (code & 1) != 0;
+            boolean store = (code & 2) != 0;
+            for (int i = 0; i < 100; i++) {
+                prepare(cpu, code, DATA & 0xFF, DATA >> 8);
+                cpu.memory[DATA] = (byte) random.nextInt();
+                cpu.memory[DATA + 1] = (byte) random.nextInt();
+                int[] registers = cpu.registers.clone();
+                int expectedData = data(cpu, true);
+                int flags = cpu.flags;
+
+                cpu.step();
+
+                if (store) {
+                    expectedData = w ? registers[Cpu.AX] : (expectedData & 0xFF00) | (registers[Cpu.AX] & 0xFF);
+                } else {
+                    write(registers, w, Cpu.AX, w ? expectedData : expectedData & 0xFF);
+                }
+
+                String what = String.format("%02X", code);
+                Assertions.assertArrayEquals(registers, cpu.registers, what);
+                Assertions.assertEquals(expectedData, data(cpu, true), what);
+                Assertions.assertEquals(flags, cpu.flags, what);
+                Assertions.assertEquals(CODE + 3, cpu.ip, what);
+            }
+        }
+    }
+
+    /**
+     * cmp must compare with the r/m operand, memory one included
+     */
+    @Test
+    public void cmpRmR() {
+        rmR(0x38, 4, Sub::flags, false);
+    }
+
+    /**
+     * logic reg/rm forms clear OF and CF
+     */
+    @Test
+    public void logicRmR()
+    {
+        rmR(0x20, 4, logic((a, b) -> a & b), true);
+        rmR(0x84, 2, logic((a, b) -> a & b), false);
+        rmR(0x30, 4, logic((a, b) -> a ^ b), true);
+        rmR(0x08, 4, logic((a, b) -> a | b), true);
+    }
+
+    /**
+     * logic accumulator, r/m immediate and sign extended immediate forms clear OF and CF
+     */
+    @Test
+    public void logicImm()
+    {
+        // accumulator opcode, r/m opcode and its reg field
+        int[][] opcodes = new int[][] {{0x24, 0x80, 4}, {0xA8, 0xF6, 0}, {0x34, 0x80, 6}, {0x0C, 0x80, 1}};
+        IntBinaryOperator[] operators = new IntBinaryOperator[] {
+                (a, b) -> a & b, (a, b) -> a & b, (a, b) -> a ^ b, (a, b) -> a | b
+        };
+        Cpu cpu = cpu();
+        for (int o = 0; o < opcodes.length; o++) {
+            boolean store = opcodes[o][0] != 0xA8;
+            // accumulator, r/m and sign extended (83, not for test) forms
+            for (int form = 0; form < (store ? 3 : 2); form++) {
+                for (int w = (form == 2 ? 1 : 0); w < 2; w++) {
+                    for (int i = 0; i < 200; i++) {
+                        int rm = (form == 0) ? Cpu.AX : random.nextInt(8);
+                        int imm = random.nextInt(w == 0 || form == 2 ? 0x100 : 0x10000);
+                        int length;
+                        if (form == 0) {
+                            prepare(cpu, opcodes[o][0] | w, imm & 0xFF, imm >> 8);
+                            length = 2 + w;
+                        } else if (form == 1) {
+                            prepare(cpu, opcodes[o][1] | w, 0b11_000_000 | (opcodes[o][2] << 3) | rm, imm & 0xFF, imm >> 8);
+                            length = 3 + w;
+                        } else {
+                            prepare(cpu, 0x83, 0b11_000_000 | (opcodes[o][2] << 3) | rm, imm);
+                            imm = (byte) imm & 0xFFFF;
+                            length = 3;
+                        }
+                        int[] registers = cpu.registers.clone();
+                        Cpu ref = reference(cpu);
+
+                        cpu.step();
+
+                        int result = logic(operators[o]).apply(ref, w == 1, read(registers, w == 1, rm), imm);
+                        if (store) {
+                            write(registers, w == 1, rm, result);
+                        }
+
+                        String what = String.format("%02X %d %d %04X", opcodes[o][0], form, rm, imm);
+                        Assertions.assertArrayEquals(registers, cpu.registers, what);
+                        Assertions.assertEquals(ref.flags, cpu.flags, what);
+                        Assertions.assertEquals(CODE + length, cpu.ip, what);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * mul sets OF and CF if the upper half is not zero and clears them otherwise,
+     * imul clears them for small non-negative operands
+     */
+    @Test
+    public void mulFlags()
+    {
+        Cpu cpu = cpu();
+        for (int w = 0; w < 2; w++) {
+            for (int signed = 0; signed < 2; signed++) {
+                for (int i = 0; i < 200; i++) {
+                    int rm = Cpu.BX;
+                    prepare(cpu, 0xF6 | w, 0b11_000_000 | ((4 + signed) << 3) | rm);
+                    if (signed == 1 || random.nextBoolean()) {
+                        cpu.registers[Cpu.AX] = random.nextInt(8);
+                        cpu.registers[Cpu.BX] = random.nextInt(8);
+                    }
+                    int a = read(cpu.registers, w == 1, Cpu.AX);
+                    int b = read(cpu.registers, w == 1, rm);
+                    int[] registers = cpu.registers.clone();
+                    int expectedFlags = cpu.flags & ~(Cpu.FLAG_OF | Cpu.FLAG_CF);
+
+                    cpu.step();
+
+                    int value = a * b;
+                    if ((value >>> (w == 0 ? 8 : 16)) != 0) {
+                        expectedFlags |= Cpu.FLAG_OF | Cpu.FLAG_CF;
+                    }
+                    registers[Cpu.AX] = value & 0xFFFF;
+                    if (w == 1) {
+                        registers[Cpu.DX] = (value >>> 16) & 0xFFFF;
+                    }
+
+                    String what = String.format("%d %d %04X %04X", w, signed, a, b);
+                    Assertions.assertArrayEquals(registers, cpu.registers, what);
+                    Assertions.assertEquals(expectedFlags, cpu.flags, what);
+                }
+            }
+        }
+    }
+
+    /**
+     * repe/repne cmps and scas compare bytes as bytes and words as words
+     */
+    @Test
+    public void repCmpsScas()
+    {
+        Cpu cpu = cpu();
+        for (int rep = 0xF2; rep <= 0xF3; rep++) {
+            for (int code : new int[] {0xA6, 0xA7, 0xAE, 0xAF}) {
+                boolean w = (code & 1) != 0;
+                boolean scas = code >= 0xAE;
+                for (int i = 0; i < 200; i++) {
+                    prepare(cpu, rep, code);
+                    cpu.flags |= random.nextBoolean() ? Cpu.FLAG_DF : 0;
+                    cpu.registers[Cpu.SI] = 0x0320;
+                    cpu.registers[Cpu.DI] = 0x0420;
+                    cpu.registers[Cpu.CX] = random.nextInt(16);
+                    // few values to have long runs of equal and different elements
+                    cpu.registers[Cpu.AX] = random.nextInt(2) * 0x0101;
+                    for (int a = 0x0300; a < 0x0440; a++) {
+                        cpu.memory[a] = (byte) random.nextInt(2);
+                    }
+
+                    int[] registers = cpu.registers.clone();
+                    Cpu ref = reference(cpu);
+                    int delta = ((cpu.flags & Cpu.FLAG_DF) != 0 ? -1 : 1) * (w ? 2 : 1);
+                    while (registers[Cpu.CX] != 0) {
+                        int dst = scas ? read(registers, w, Cpu.AX) : memory(cpu, w, registers[Cpu.SI]);
+                        int src = memory(cpu, w, registers[Cpu.DI]);
+                        if (!scas) {
+                            registers[Cpu.SI] = (registers[Cpu.SI] + delta) & 0xFFFF;
+                        }
+                        registers[Cpu.DI] = (registers[Cpu.DI] + delta) & 0xFFFF;
+                        registers[Cpu.CX]--;
+                        Sub.flags(ref, w, dst, src);
+                        if ((rep & 1) != ((ref.flags >> Cpu.FLAG_ZF_POS) & 1)) {
+                            break;
+                        }
+                    }
+
+                    run(cpu, 2);
+
+                    String what = String.format("%02X %02X", rep, code);
+                    Assertions.assertArrayEquals(registers, cpu.registers, what);
+                    Assertions.assertEquals(ref.flags, cpu.flags, what);
+                }
+            }
+        }
+    }
+
+    /**
+     * rep stos fills memory and takes base clocks plus clocks of each repetition
+     */
+    @Test
+    public void repStosClocks()
+    {
+        Cpu cpu = cpu();
+        for (int w = 0; w < 2; w++) {
+            for (int count = 0; count < 20; count++) {
+                prepare(cpu, 0xF3, 0xAA | w);
+                cpu.flags &= ~Cpu.FLAG_DF;
+                cpu.registers[Cpu.DI] = 0x0400;
+                cpu.registers[Cpu.CX] = count;
+                int[] registers = cpu.registers.clone();
+                long clocks = cpu.clocks;
+
+                run(cpu, 2);
+
+                Cpu.Opcode stos = cpu.opcodes[0xAA | w];
+                long expected = cpu.opcodes[0xF3].clocks + stos.clocksAlt + count * stos.clocksAlt2;
+                Assertions.assertEquals(expected, cpu.clocks - clocks, "count " + count);
+
+                registers[Cpu.DI] += count * (w + 1);
+                registers[Cpu.CX] = 0;
+                Assertions.assertArrayEquals(registers, cpu.registers);
+                for (int i = 0; i < count; i++) {
+                    Assertions.assertEquals(read(registers, w == 1, Cpu.AX),
+                            memory(cpu, w == 1, 0x0400 + i * (w + 1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * movs, cmps, stos, lods and scas without prefix and with rep prefixes,
+     * data is placed at [0300..0440)
+     */
+    @Test
+    public void strings()
+    {
+        Cpu cpu = cpu();
+        for (int code = 0xA4; code <= 0xAF; code++) {
+            if (code == 0xA8 || code == 0xA9) {
+                // test AL/AX, imm
+                continue;
+            }
+            boolean w = (code & 1) != 0;
+            int op = code & 0xFE;
+            boolean compare = (op == 0xA6) || (op == 0xAE);
+            // no prefix, repne (compare only), rep/repe
+            for (int rep : compare ? new int[] {0, 0xF2, 0xF3} : new int[] {0, 0xF3}) {
+                for (int i = 0; i < 100; i++) {
+                    if (rep == 0) {
+                        prepare(cpu, code);
+                    } else {
+                        prepare(cpu, rep, code);
+                    }
+                    cpu.flags |= random.nextBoolean() ? Cpu.FLAG_DF : 0;
+                    cpu.registers[Cpu.SI] = 0x0320;
+                    cpu.registers[Cpu.DI] = 0x0420;
+                    cpu.registers[Cpu.CX] = random.nextInt(16);
+                    cpu.registers[Cpu.AX] = random.nextInt(2) * 0x0101;
+                    for (int a = 0x0300; a < 0x0440; a++) {
+                        cpu.memory[a] = (byte) random.nextInt(2);
+                    }
+
+                    // reference runs on a copy of the data
+                    Cpu ref = reference(cpu);
+                    System.arraycopy(cpu.memory, 0x0300, ref.memory, 0x0300, 0x0140);
+                    int[] registers = cpu.registers.clone();
+                    int delta = ((cpu.flags & Cpu.FLAG_DF) != 0 ? -1 : 1) * (w ? 2 : 1);
+                    while (rep == 0 || registers[Cpu.CX] != 0) {
+                        int si = registers[Cpu.SI];
+                        int di = registers[Cpu.DI];
+                        if (op == 0xA4) {
+                            ref.memory[di] = ref.memory[si];
+                            ref.memory[di + 1] = w ? ref.memory[si + 1] : ref.memory[di + 1];
+                        } else if (op == 0xA6) {
+                            Sub.flags(ref, w, memory(ref, w, si), memory(ref, w, di));
+                        } else if (op == 0xAA) {
+                            ref.memory[di] = (byte) registers[Cpu.AX];
+                            ref.memory[di + 1] = w ? (byte) (registers[Cpu.AX] >> 8) : ref.memory[di + 1];
+                        } else if (op == 0xAC) {
+                            write(registers, w, Cpu.AX, memory(ref, w, si));
+                        } else {
+                            Sub.flags(ref, w, read(registers, w, Cpu.AX), memory(ref, w, di));
+                        }
+                        if (op == 0xA4 || op == 0xA6 || op == 0xAC) {
+                            registers[Cpu.SI] = (si + delta) & 0xFFFF;
+                        }
+                        if (op != 0xAC) {
+                            registers[Cpu.DI] = (di + delta) & 0xFFFF;
+                        }
+                        if (rep == 0) {
+                            break;
+                        }
+                        registers[Cpu.CX]--;
+                        if (compare && (rep & 1) != ((ref.flags >> Cpu.FLAG_ZF_POS) & 1)) {
+                            break;
+                        }
+                    }
+
+                    run(cpu, rep == 0 ? 1 : 2);
+
+                    String what = String.format("%02X %02X", rep, code);
+                    Assertions.assertArrayEquals(registers, cpu.registers, what);
+                    Assertions.assertEquals(ref.flags, cpu.flags, what);
+                    for (int a = 0x0300; a < 0x0440; a++) {
+                        Assertions.assertEquals(ref.memory[a], cpu.memory[a], what);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks retrace timing derived from cpu clocks and rendering
+ */
+public class CGATest {
+
+    @Test
+    public void retrace()
+    {
+        Cpu cpu = new Cpu();
+        CGA cga = cpu.video;
+
+        // standard 80x25: 912 dots per line, 262 lines
+        long frameClocks = 912 * 262 / CGA.DOTS_PER_CLOCK;
+
+        int vertical = 0;
+        int regen = 0;
+        for (int i = 0; i < frameClocks; i++) {
+            cpu.clocks = i;
+            int status = cga.pin(false, CGA.REG_STATUS);
+            if ((status & CGA.MASK_STATUS_VERTICAL) != 0) {
+                vertical++;
+            }
+            if ((status & CGA.MASK_STATUS_REGEN) == 0) {
+                regen++;
+            }
+        }
+
+        Assertions.assertEquals(304 * CGA.VSYNC_LINES, vertical);
+        // 640 of 912 dots on 200 of 262 lines are visible
+        Assertions.assertEquals(640 / 3 * 200, regen, 200);
+    }
+
+    @Test
+    public void vsync()
+    {
+        Cpu cpu = new Cpu();
+        CGA cga = cpu.video;
+        long[] frames = new long[1];
+        cga.setVsyncListener(frame -> frames[0]++);
+
+        long next = cga.nextVsyncClocks();
+        cpu.clocks = next - 1;
+        cga.clock(cpu.clocks);
+        Assertions.assertEquals(0, frames[0]);
+        Assertions.assertEquals(0, cga.pin(false, CGA.REG_STATUS) & CGA.MASK_STATUS_VERTICAL);
+
+        cpu.clocks = next;
+        cga.clock(cpu.clocks);
+        Assertions.assertEquals(1, frames[0]);
+        Assertions.assertNotEquals(0, cga.pin(false, CGA.REG_STATUS) & CGA.MASK_STATUS_VERTICAL);
+    }
+
+    @Test
+    public void graphics320()
+    {
+        Cpu cpu = new Cpu();
+        CGA cga = cpu.video;
+        cga.regMode = CGA.MASK_MODE_GRAPHICS | CGA.MASK_MODE_ENABLE;
+        // cyan/magenta/white, blue background
+        cga.regColor = CGA.MASK_COLOR_320 | CGA.MASK_COLOR_BLUE;
+
+        // line 0 (even bank) and line 1 (odd bank), pixels 0..3
+        cpu.memory[0xB8000] = (byte) 0b00_01_10_11;
+        cpu.memory[0xBA000] = (byte) 0b11_00_00_00;
+
+        int[] buffer = new int[CGAGraphicsRenderer.SCREEN_WIDTH * CGAGraphicsRenderer.SCREEN_HEIGHT];
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 0));
+
+        Assertions.assertEquals(CGA.PALETTE[1], buffer[0]);
+        Assertions.assertEquals(CGA.PALETTE[3], buffer[2]);
+        Assertions.assertEquals(CGA.PALETTE[5], buffer[4]);
+        Assertions.assertEquals(CGA.PALETTE[7], buffer[7]);
+        // scan lines are doubled
+        Assertions.assertEquals(CGA.PALETTE[7], buffer[640 + 7]);
+        Assertions.assertEquals(CGA.PALETTE[7], buffer[2 * 640]);
+        Assertions.assertEquals(CGA.PALETTE[1], buffer[2 * 640 + 2]);
+
+        // nothing changed, nothing to draw
+        Assertions.assertFalse(cga.render(buffer, 0, 640, 1));
+    }
+
+    @Test
+    public void text()
+    {
+        Cpu cpu = new Cpu();
+        CGA cga = cpu.video;
+        cga.regMode = CGA.MASK_MODE_TEXT_80 | CGA.MASK_MODE_ENABLE | CGA.MASK_MODE_BLINK;
+        // cursor at cell 5, scan lines 6..7
+        cga.reg6845[14] = 0;
+        cga.reg6845[15] = 5;
+
+        // full blocks: yellow on blue, blinking yellow on black, empty cells with gray
+        byte[] m = cpu.memory;
+        m[0xB8000] = (byte) 0xDB;
+        m[0xB8001] = 0x1E;
+        m[0xB8002] = (byte) 0xDB;
+        m[0xB8003] = (byte) 0x8E;
+        m[0xB800B] = 0x07;
+        m[0xB800D] = 0x07;
+
+        int[] buffer = new int[CGATextRenderer.SCREEN_WIDTH * CGATextRenderer.SCREEN_HEIGHT];
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 0));
+        Assertions.assertEquals(CGA.PALETTE[0x0E], buffer[0]);
+        Assertions.assertEquals(CGA.PALETTE[0x0E], buffer[15 * 640 + 7]);
+        Assertions.assertEquals(CGA.PALETTE[0x0E], buffer[8]);
+        // cursor rows of cell 5 only
+        Assertions.assertEquals(CGA.PALETTE[0x07], buffer[12 * 640 + 40]);
+        Assertions.assertEquals(CGA.PALETTE[0x07], buffer[15 * 640 + 47]);
+        Assertions.assertEquals(CGA.PALETTE[0x00], buffer[10 * 640 + 40]);
+        Assertions.assertEquals(CGA.PALETTE[0x00], buffer[12 * 640 + 48]);
+
+        // nothing changed, nothing is drawn
+        Assertions.assertFalse(cga.render(buffer, 0, 640, 1));
+
+        // only the changed cell is redrawn, marker in cell 0 stays
+        buffer[0] = 0x123456;
+        m[0xB8004] = (byte) 0xDB;
+        m[0xB8005] = 0x02;
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 2));
+        Assertions.assertEquals(CGA.PALETTE[0x02], buffer[16]);
+        Assertions.assertEquals(0x123456, buffer[0]);
+
+        // cursor moves to cell 6
+        cga.reg6845[15] = 6;
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 3));
+        Assertions.assertEquals(CGA.PALETTE[0x00], buffer[12 * 640 + 40]);
+        Assertions.assertEquals(CGA.PALETTE[0x07], buffer[12 * 640 + 48]);
+        Assertions.assertEquals(0x123456, buffer[0]);
+
+        // cursor blink phase off
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 8));
+        Assertions.assertEquals(CGA.PALETTE[0x00], buffer[12 * 640 + 48]);
+
+        // character blink phase off, only blinking cell changes
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 16));
+        Assertions.assertEquals(CGA.PALETTE[0x00], buffer[8]);
+        Assertions.assertEquals(CGA.PALETTE[0x02], buffer[16]);
+        Assertions.assertEquals(0x123456, buffer[0]);
+        Assertions.assertEquals(CGA.PALETTE[0x07], buffer[12 * 640 + 48]);
+    }
+
+    @Test
+    public void graphicsWrap()
+    {
+        Cpu cpu = new Cpu();
+        CGA cga = cpu.video;
+        cga.regMode = CGA.MASK_MODE_GRAPHICS | CGA.MASK_MODE_ENABLE;
+        // start 40 bytes before the end of the bank, the first line of each bank wraps
+        int start = (0x2000 - 40) >> 1;
+        cga.reg6845[12] = start >> 8;
+        cga.reg6845[13] = start & 0xFF;
+
+        int[] buffer = new int[CGAGraphicsRenderer.SCREEN_WIDTH * CGAGraphicsRenderer.SCREEN_HEIGHT];
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 0));
+
+        // wrapped lines are redrawn, the rest of the frame stays incremental
+        buffer[10 * 2 * 640] = 0x123456;
+        buffer[0] = 0x123456;
+        Assertions.assertTrue(cga.render(buffer, 0, 640, 1));
+        Assertions.assertEquals(0x123456, buffer[10 * 2 * 640]);
+        Assertions.assertNotEquals(0x123456, buffer[0]);
+    }
+}
@@ -1,6 +1,7 @@
 package at.emu.i8086.simple;
 
 import at.emu.i8086.simple.Cpu;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.HashMap;
@@ -49,7 +50,7 @@ public class ClockedConfigurationTest {
             {
                 // clocked config is simple, original MUST be simple too
                 Cpu.ClockedOpcodeConfiguration.SimpleConfiguration clOpConfigSimple = (Cpu.ClockedOpcodeConfiguration.SimpleConfiguration) clOpConfig;
-                if (sOpcode.getClass() != clOpConfigSimple.opClass) {
+                if (generic(sOpcode) != clOpConfigSimple.opClass) {
                     throw new RuntimeException("key:" + key +
                             "  original:" + sOpcode.getClass().getSimpleName() +
                             "  clocked:" + clOpConfigSimple.opClass);
@@ -65,7 +66,7 @@ public class ClockedConfigurationTest {
                     // all clocked config should match the same class
                     clOpConfigMrr.mrr.keySet().stream().sorted().forEach( mrr -> {
                         Cpu.ClockedOpcodeConfiguration.SimpleConfiguration clMrrConfig = clOpConfigMrr.mrr.get(mrr);
-                        if (sOpcode.getClass() != clMrrConfig.opClass) {
+                        if (generic(sOpcode) != clMrrConfig.opClass) {
                             throw new RuntimeException("key:" + key +
                                     "  original:" + sOpcode.getClass().getSimpleName() +
                                     "  clocked:" + clMrrConfig.opClass);
@@ -91,6 +92,49 @@ public class ClockedConfigurationTest {
         //Assertions.assertEquals(EXPECTED_OUTPUT, result.toString());
     }
 
+    /**
+     * registry must contain width specialized variants
+     * matching w bit of the opcodes
+     */
+    @Test
+    public void widthSpecialized()
+    {
+        Cpu cpu = new Cpu();
+
+        Cpu.Opcode[] sOpcodes = new Cpu.Opcode[256];
+        for (int i = 0; i < cpu.configurations.length; i++) {
+            Cpu.OpcodeConfiguration.apply(sOpcodes, cpu.configurations[i].getConfiguration());
+        }
+
+        Assertions.assertEquals(Add.AddRmR.W8.class, sOpcodes[0b0000_0000].getClass());
+        Assertions.assertEquals(Add.AddRmR.W16.class, sOpcodes[0b0000_0001].getClass());
+        Assertions.assertEquals(Add.AddRmR.W8.class, sOpcodes[0b0000_0010].getClass());
+        Assertions.assertEquals(Strings.Movs.W8.class, sOpcodes[0b1010_0100].getClass());
+        Assertions.assertEquals(Strings.Movs.W16.class, sOpcodes[0b1010_0101].getClass());
+
+        // the same variant instance is shared by all opcodes of the same width
+        Assertions.assertSame(sOpcodes[0b0000_0000], sOpcodes[0b0000_0010]);
+
+        // holders of the variants are never executed
+        Assertions.assertThrows(IllegalStateException.class, () -> new Add.AddRmR().execute(cpu, 0b0000_0000));
+    }
+
+    /**
+     * width specialized variants are registered instead of
+     * the holder classes referenced by configurations
+     * @param opcode registered opcode
+     * @return generic class of the opcode
+     */
+    private static Class<?> generic(Cpu.Opcode opcode)
+    {
+        Class<?> clazz = opcode.getClass();
+        Class<?> holder = clazz.getEnclosingClass();
+        if ((holder != null) && Cpu.WidthSpecialized.class.isAssignableFrom(holder)) {
+            return holder;
+        }
+        return clazz;
+    }
+
     /**
      * dumps clocked configuration
      */
@@ -60,20 +60,15 @@ public class CodegolfTest {
         byte[] bytes = Files.readAllBytes(code);
         System.arraycopy(bytes, 0, cpu.memory, 0, bytes.length);
 
-
+        // reset() points to the bios entry (F000:FFF0),
+        // test program starts at 0000:0000
+        cpu.segments[Cpu.CS] = 0x0000;
+        cpu.ip = 0x0000;
         cpu.registers[Cpu.SP] = 0x100;
 
-        while (true)
-        {
-            int opcode = cpu.ipRead8();
-            if (cpu.opcodes[opcode] == null) {
-                break;
-            }
-            cpu.opcodes[opcode].execute(cpu, opcode);
-            if (cpu.hlt) {
-                break;
-            }
-        }
+        Machine machine = new Machine(cpu);
+        machine.run(Long.MAX_VALUE);
+        Assertions.assertEquals(Machine.Exit.HALT, machine.exit());
 
         StringBuilder result = new StringBuilder(80*25);
         for (int i = 0; i < 80*25; i++) {
@@ -126,6 +121,8 @@ public class CodegolfTest {
     public static void perfCycle(Cpu cpu)
     {
         cpu.reset();
+        cpu.segments[Cpu.CS] = 0x0000;
+        cpu.ip = 0x0000;
         cpu.registers[Cpu.SP] = 0x100;
 
         while (true) {
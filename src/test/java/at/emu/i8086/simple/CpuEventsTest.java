@@ -0,0 +1,101 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks pending events word, interrupt entry and return
+ */
+public class CpuEventsTest {
+
+    /**
+     * sets interrupt vector
+     */
+    private static void vector(Cpu cpu, int number, int cs, int ip)
+    {
+        cpu.memory[number * 4] = (byte) ip;
+        cpu.memory[number * 4 + 1] = (byte) (ip >> 8);
+        cpu.memory[number * 4 + 2] = (byte) cs;
+        cpu.memory[number * 4 + 3] = (byte) (cs >> 8);
+    }
+
+    private static Cpu cpu()
+    {
+        Cpu cpu = new Cpu();
+        cpu.init();
+        cpu.reset();
+        cpu.segments[Cpu.SS] = 0x0000;
+        cpu.registers[Cpu.SP] = 0x1000;
+        return cpu;
+    }
+
+    @Test
+    public void intIret()
+    {
+        Cpu cpu = cpu();
+        cpu.segments[Cpu.CS] = 0x1234;
+        cpu.ip = 0x0010;
+        cpu.memory[0x12340 + 0x10] = (byte) 0xCD;
+        cpu.memory[0x12340 + 0x11] = 0x40;
+        vector(cpu, 0x40, 0x2000, 0x0100);
+        cpu.memory[0x20000 + 0x100] = (byte) 0xCF;
+        cpu.flags = Cpu.FLAG_IF | Cpu.FLAG_CF;
+        cpu.registers[Cpu.CX] = 0x5A5A;
+
+        // int 40h pushes flags, cs and ip of the next instruction
+        cpu.step();
+        Assertions.assertEquals(0x2000, cpu.segments[Cpu.CS]);
+        Assertions.assertEquals(0x0100, cpu.ip);
+        Assertions.assertEquals(0, cpu.flags & Cpu.FLAG_IF);
+        Assertions.assertEquals(0x0FFA, cpu.registers[Cpu.SP]);
+        Assertions.assertEquals(0x0012, cpu.mread16Direct(0x0000, 0x0FFA));
+        Assertions.assertEquals(0x1234, cpu.mread16Direct(0x0000, 0x0FFC));
+        Assertions.assertEquals(Cpu.FLAG_IF | Cpu.FLAG_CF, cpu.mread16Direct(0x0000, 0x0FFE));
+
+        // iret returns to the original cs:ip and doesn't touch common registers
+        cpu.step();
+        Assertions.assertEquals(0x1234, cpu.segments[Cpu.CS]);
+        Assertions.assertEquals(0x0012, cpu.ip);
+        Assertions.assertEquals(Cpu.FLAG_IF | Cpu.FLAG_CF, cpu.flags);
+        Assertions.assertEquals(0x1000, cpu.registers[Cpu.SP]);
+        Assertions.assertEquals(0x5A5A, cpu.registers[Cpu.CX]);
+    }
+
+    @Test
+    public void priority()
+    {
+        Cpu cpu = cpu();
+        cpu.pic.baseInterrupt = 8;
+        vector(cpu, Cpu.INT_2_NMI, 0x0200, 0);
+        vector(cpu, 8, 0x0800, 0);
+        vector(cpu, Cpu.INT_1_SINGLE_STEP, 0x0100, 0);
+
+        cpu.flags = Cpu.FLAG_IF | Cpu.FLAG_TF;
+        cpu.flagsEvents();
+        cpu.pic.interrupt(0);
+        cpu.nmi();
+        cpu.raiseEvent(Cpu.EVENT_STOP);
+        Assertions.assertEquals(Cpu.EVENT_NMI | Cpu.EVENT_IRQ | Cpu.EVENT_TRAP | Cpu.EVENT_STOP, cpu.pendingEvents());
+
+        // one interrupt per call: nmi, irq, trap, stop is left for the run loop
+        int[] expected = new int[] {0x0200, 0x0800, 0x0100};
+        for (int cs : expected) {
+            Assertions.assertEquals(Cpu.EVENT_STOP, cpu.serviceEvents());
+            Assertions.assertEquals(cs, cpu.segments[Cpu.CS]);
+            // handler entry clears IF and TF, restore them as iret would do
+            Assertions.assertEquals(0, cpu.flags & (Cpu.FLAG_IF | Cpu.FLAG_TF));
+            cpu.flags = Cpu.FLAG_IF | Cpu.FLAG_TF;
+            cpu.flagsEvents();
+        }
+        Assertions.assertEquals(Cpu.EVENT_TRAP | Cpu.EVENT_STOP, cpu.pendingEvents());
+
+        // masked sources are dropped
+        cpu.flags = 0;
+        cpu.flagsEvents();
+        cpu.pic.interrupt(1);
+        Assertions.assertEquals(Cpu.EVENT_STOP, cpu.serviceEvents());
+        Assertions.assertEquals(Cpu.EVENT_STOP, cpu.pendingEvents());
+        cpu.clearEvent(Cpu.EVENT_STOP);
+        Assertions.assertEquals(0, cpu.pendingEvents());
+    }
+}
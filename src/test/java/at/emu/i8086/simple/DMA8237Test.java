@@ -0,0 +1,80 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks bulk dma transfers programmed via ports
+ */
+public class DMA8237Test {
+
+    /**
+     * programs channel 2 like bios does for floppy transfers
+     */
+    private static void program(DMA8237 dma, int mode, int page, int address, int count)
+    {
+        dma.pout(false, 0x0A, 0b0100 | 2);
+        dma.pout(false, 0x0C, 0);
+        dma.pout(false, 0x0B, mode | 2);
+        dma.pout(false, 0x04, address & 0xFF);
+        dma.pout(false, 0x04, address >> 8);
+        dma.pout(false, 0x81, page);
+        dma.pout(false, 0x05, count & 0xFF);
+        dma.pout(false, 0x05, count >> 8);
+        dma.pout(false, 0x0A, 2);
+    }
+
+    @Test
+    public void writeWithWrap()
+    {
+        Cpu cpu = new Cpu();
+        DMA8237 dma = cpu.dma;
+
+        byte[] data = new byte[64];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i + 1);
+        }
+
+        // 32 bytes at 1:FFF0, wraps to 1:0000
+        program(dma, DMA8237.MODE_SELECT_SINGLE | DMA8237.MODE_TYPE_WRITE, 1, 0xFFF0, 31);
+        Assertions.assertEquals(20, dma.write(2, data, 0, 20));
+        Assertions.assertEquals(12, dma.remaining(2));
+        Assertions.assertEquals(0, dma.pin(false, 0x08) & 0b0100);
+
+        Assertions.assertEquals(12, dma.write(2, data, 20, 44));
+        Assertions.assertEquals(1, cpu.memory[0x1FFF0]);
+        Assertions.assertEquals(16, cpu.memory[0x1FFFF]);
+        Assertions.assertEquals(17, cpu.memory[0x10000]);
+        Assertions.assertEquals(32, cpu.memory[0x1000F]);
+        Assertions.assertEquals(0, cpu.memory[0x10010]);
+
+        // terminal count is reported once, channel is masked
+        Assertions.assertEquals(0b0100, dma.pin(false, 0x08) & 0b0100);
+        Assertions.assertEquals(0, dma.pin(false, 0x08) & 0b0100);
+        Assertions.assertFalse(dma.ready(2));
+        Assertions.assertEquals(0, dma.write(2, data, 0, 1));
+    }
+
+    @Test
+    public void readAutoinit()
+    {
+        Cpu cpu = new Cpu();
+        DMA8237 dma = cpu.dma;
+        for (int i = 0; i < 8; i++) {
+            cpu.memory[0x2000 + i] = (byte) (0x10 + i);
+        }
+
+        program(dma, DMA8237.MODE_SELECT_BLOCK | DMA8237.MODE_TYPE_READ | DMA8237.MASK_MODE_AUTOINIT, 0, 0x2000, 7);
+        byte[] data = new byte[16];
+        // wrong direction is ignored
+        Assertions.assertEquals(0, dma.write(2, data, 0, 8));
+        Assertions.assertEquals(8, dma.read(2, data, 0, 16));
+        Assertions.assertEquals(0x17, data[7]);
+
+        // reloaded and still unmasked
+        Assertions.assertTrue(dma.ready(2));
+        Assertions.assertEquals(8, dma.remaining(2));
+        Assertions.assertEquals(8, dma.read(2, data, 8, 8));
+        Assertions.assertEquals(0x10, data[8]);
+    }
+}
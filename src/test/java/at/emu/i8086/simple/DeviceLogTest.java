@@ -0,0 +1,55 @@
+package at.emu.i8086.simple;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Device events are recorded by level and formatted on demand
+ */
+public class DeviceLogTest {
+
+    @Test
+    public void levels()
+    {
+        Cpu cpu = new Cpu();
+        cpu.log.dump();
+
+        // unhandled read is a warning, cga mode write is info
+        cpu.clocks = 1234;
+        cpu.pin(false, 0x0456);
+        cpu.pout(false, CGA.REG_MODE, 0x29);
+        List<String> lines = cpu.log.dump();
+        Assertions.assertEquals(1, lines.size());
+        Assertions.assertEquals("        1234 ports: unhandled read [0456]", lines.get(0));
+
+        cpu.log.setLevel(DeviceLog.CGA, DeviceLog.INFO);
+        cpu.pout(false, CGA.REG_MODE, 0x29);
+        lines = cpu.log.dump();
+        Assertions.assertEquals(List.of("        1234 cga: write [03D8] = 29"), lines);
+
+        cpu.log.setLevel(DeviceLog.OFF);
+        cpu.pin(false, 0x0456);
+        Assertions.assertTrue(cpu.log.dump().isEmpty());
+    }
+
+    @Test
+    public void overwrite()
+    {
+        Cpu cpu = new Cpu();
+        DeviceLog log = new DeviceLog(cpu, 8);
+        for (int i = 0; i < 20; i++) {
+            cpu.clocks = i;
+            log.add(DeviceLog.PORTS, DeviceLog.WARN, DeviceLog.KIND_UNHANDLED_WRITE, 0x100 + i, i);
+        }
+
+        // only the last 7 records are kept, slot of the 8th one is written next
+        List<String> lines = log.dump();
+        Assertions.assertEquals(7, lines.size());
+        Assertions.assertEquals(13, log.lost());
+        Assertions.assertEquals("          13 ports: unhandled write [010D] = 0D", lines.get(0));
+        Assertions.assertEquals("          19 ports: unhandled write [0113] = 13", lines.get(6));
+        Assertions.assertEquals(20, log.written());
+    }
+}
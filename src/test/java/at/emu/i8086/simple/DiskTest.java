@@ -0,0 +1,275 @@
+package at.emu.i8086.simple;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks floppy controller dma transfers and int 13h trap over mapped images
+ */
+public class DiskTest {
+
+    /**
+     * creates 360K image, each sector is filled with its lba number
+     */
+    private static Path image(Path dir) throws Exception
+    {
+        byte[] bytes = new byte[360 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i / DiskImage.SECTOR_SIZE);
+        }
+        Path path = dir.resolve("floppy.img");
+        Files.write(path, bytes);
+        return path;
+    }
+
+    @Test
+    public void controllerRead(@TempDir Path dir) throws Exception
+    {
+        Cpu cpu = new Cpu();
+        try (DiskImage disk = DiskImage.floppy(image(dir), true))
+        {
+            cpu.fdc.insert(0, disk);
+
+            // dma channel 2: write to memory 0x1000, 2 sectors
+            cpu.dma.pout(false, 0x0C, 0);
+            cpu.dma.pout(false, 0x0B, DMA8237.MODE_SELECT_SINGLE | DMA8237.MODE_TYPE_WRITE | 2);
+            cpu.dma.pout(false, 0x04, 0x00);
+            cpu.dma.pout(false, 0x04, 0x10);
+            cpu.dma.pout(false, 0x81, 0);
+            cpu.dma.pout(false, 0x05, 0xFF);
+            cpu.dma.pout(false, 0x05, 0x03);
+            cpu.dma.pout(false, 0x0A, 2);
+
+            // motor on, dma enabled, out of reset
+            cpu.fdc.pout(false, NEC765.PORT_DOR, 0x1C);
+            cpu.pic.irr = 0;
+
+            // read data, multi track: C=0 H=0 R=9 (last on track), N=2, EOT=9
+            int[] command = {0xE6, 0x00, 0, 0, 9, 2, 9, 0x2A, 0xFF};
+            for (int b : command) {
+                Assertions.assertEquals(0, cpu.fdc.pin(false, NEC765.PORT_MSR) & NEC765.MASK_MSR_DIO);
+                cpu.fdc.pout(false, NEC765.PORT_DATA, b);
+            }
+            Assertions.assertEquals(1 << NEC765.IRQ, cpu.pic.irr);
+
+            int[] result = new int[7];
+            for (int i = 0; i < result.length; i++) {
+                Assertions.assertNotEquals(0, cpu.fdc.pin(false, NEC765.PORT_MSR) & NEC765.MASK_MSR_DIO);
+                result[i] = cpu.fdc.pin(false, NEC765.PORT_DATA);
+            }
+            // normal termination, next sector is C=0 H=1 R=2
+            Assertions.assertArrayEquals(new int[] {0, 0, 0, 0, 1, 2, 2}, result);
+            Assertions.assertEquals(0, cpu.fdc.pin(false, NEC765.PORT_MSR) & NEC765.MASK_MSR_DIO);
+
+            // sector 9 of head 0 and sector 1 of head 1
+            Assertions.assertEquals(8, cpu.memory[0x1000]);
+            Assertions.assertEquals(8, cpu.memory[0x11FF]);
+            Assertions.assertEquals(9, cpu.memory[0x1200]);
+            Assertions.assertEquals(9, cpu.memory[0x13FF]);
+            Assertions.assertEquals(0, cpu.memory[0x1400]);
+        }
+    }
+
+    @Test
+    public void controllerWrongDirection(@TempDir Path dir) throws Exception
+    {
+        Path path = image(dir);
+        Cpu cpu = new Cpu();
+        try (DiskImage disk = DiskImage.floppy(path, false))
+        {
+            cpu.fdc.insert(0, disk);
+
+            // dma channel 2 is set up to write to memory, fdc needs to read from it
+            cpu.dma.pout(false, 0x0C, 0);
+            cpu.dma.pout(false, 0x0B, DMA8237.MODE_SELECT_SINGLE | DMA8237.MODE_TYPE_WRITE | 2);
+            cpu.dma.pout(false, 0x04, 0x00);
+            cpu.dma.pout(false, 0x04, 0x10);
+            cpu.dma.pout(false, 0x81, 0);
+            cpu.dma.pout(false, 0x05, 0xFF);
+            cpu.dma.pout(false, 0x05, 0x01);
+            cpu.dma.pout(false, 0x0A, 2);
+            cpu.memory[0x1000] = 0x55;
+
+            cpu.fdc.pout(false, NEC765.PORT_DOR, 0x1C);
+
+            // write data: C=0 H=0 R=9, N=2, EOT=9
+            int[] command = {0xC5, 0x00, 0, 0, 9, 2, 9, 0x2A, 0xFF};
+            for (int b : command) {
+                cpu.fdc.pout(false, NEC765.PORT_DATA, b);
+            }
+            int[] result = new int[7];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = cpu.fdc.pin(false, NEC765.PORT_DATA);
+            }
+
+            // nothing moved, command ends at the same sector with overrun
+            Assertions.assertArrayEquals(
+                    new int[] {NEC765.ST0_ABNORMAL, NEC765.ST1_OVERRUN, 0, 0, 0, 9, 2}, result);
+        }
+        Assertions.assertEquals(8, Files.readAllBytes(path)[8 * DiskImage.SECTOR_SIZE]);
+    }
+
+    @Test
+    public void int13(@TempDir Path dir) throws Exception
+    {
+        Path path = image(dir);
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+
+        try (DiskImage disk = DiskImage.floppy(path, false))
+        {
+            cpu.fdc.insert(0, disk);
+            new DiskBios(cpu.fdc).install(cpu);
+
+            // rom vector F000:EC59
+            cpu.memory[0x4C] = 0x59;
+            cpu.memory[0x4D] = (byte) 0xEC;
+            cpu.memory[0x4E] = 0x00;
+            cpu.memory[0x4F] = (byte) 0xF0;
+
+            // int 13h; hlt
+            cpu.memory[0x500] = (byte) 0xCD;
+            cpu.memory[0x501] = (byte) 0x13;
+            cpu.memory[0x502] = (byte) 0xF4;
+
+            // read 3 sectors from C=1 H=1 R=1 (lba 27) to 2000:0000
+            cpu.segments[Cpu.CS] = 0;
+            cpu.ip = 0x500;
+            cpu.segments[Cpu.ES] = 0x2000;
+            cpu.registers[Cpu.BX] = 0;
+            cpu.registers[Cpu.AX] = 0x0203;
+            cpu.registers[Cpu.CX] = 0x0101;
+            cpu.registers[Cpu.DX] = 0x0100;
+            machine.run(10);
+            Assertions.assertEquals(0, cpu.flags & Cpu.FLAG_CF);
+            Assertions.assertEquals(0x0003, cpu.registers[Cpu.AX]);
+            Assertions.assertEquals(27, cpu.memory[0x20000]);
+            Assertions.assertEquals(29, cpu.memory[0x205FF]);
+
+            // write them back to lba 0, sector 40 doesn't exist
+            cpu.ip = 0x500;
+            cpu.hlt = false;
+            cpu.registers[Cpu.AX] = 0x0303;
+            cpu.registers[Cpu.CX] = 0x0001;
+            cpu.registers[Cpu.DX] = 0x0000;
+            machine.run(10);
+            Assertions.assertEquals(0, cpu.flags & Cpu.FLAG_CF);
+
+            cpu.ip = 0x500;
+            cpu.hlt = false;
+            cpu.registers[Cpu.AX] = 0x0201;
+            cpu.registers[Cpu.CX] = 0x0028;
+            machine.run(10);
+            Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_CF);
+            Assertions.assertEquals(DiskBios.STATUS_NOT_FOUND, cpu.registers[Cpu.AX] >> 8);
+
+            // buffer 2000:FE00 crosses 64K dma page
+            cpu.ip = 0x500;
+            cpu.hlt = false;
+            cpu.registers[Cpu.BX] = 0xFE00;
+            cpu.registers[Cpu.AX] = 0x0202;
+            cpu.registers[Cpu.CX] = 0x0001;
+            machine.run(10);
+            Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_CF);
+            Assertions.assertEquals(DiskBios.STATUS_BOUNDARY << 8, cpu.registers[Cpu.AX]);
+
+            // buffer FFFF:FF00 is above the end of memory
+            cpu.ip = 0x500;
+            cpu.hlt = false;
+            cpu.segments[Cpu.ES] = 0xFFFF;
+            cpu.registers[Cpu.BX] = 0xFF00;
+            cpu.registers[Cpu.AX] = 0x0201;
+            machine.run(10);
+            Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_CF);
+            Assertions.assertEquals(DiskBios.STATUS_DMA_OVERRUN << 8, cpu.registers[Cpu.AX]);
+
+            // vector hooked at 0060:0000 (mov ah, 77h; iret) runs the hook
+            cpu.memory[0x600] = (byte) 0xB4;
+            cpu.memory[0x601] = 0x77;
+            cpu.memory[0x602] = (byte) 0xCF;
+            cpu.memory[0x4C] = 0x00;
+            cpu.memory[0x4D] = 0x00;
+            cpu.memory[0x4E] = 0x60;
+            cpu.memory[0x4F] = 0x00;
+            cpu.ip = 0x500;
+            cpu.hlt = false;
+            cpu.registers[Cpu.AX] = 0x0000;
+            machine.run(10);
+            Assertions.assertEquals(0x503, cpu.ip);
+            Assertions.assertEquals(0x7700, cpu.registers[Cpu.AX]);
+        }
+
+        byte[] bytes = Files.readAllBytes(path);
+        Assertions.assertEquals(27, bytes[0]);
+        Assertions.assertEquals(29, bytes[3 * 512 - 1]);
+        Assertions.assertEquals(3, bytes[3 * 512]);
+    }
+
+    @Test
+    public void largeImage(@TempDir Path dir) throws Exception
+    {
+        // sparse image of the max geometry, 8.4G
+        Path path = dir.resolve("hd.img");
+        long size = 1024L * 255 * 63 * DiskImage.SECTOR_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(size);
+            file.seek(size - 1);
+            file.write(0x5A);
+        }
+
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> DiskImage.hardDisk(path, true, 1024, 255, 63));
+        Assertions.assertTrue(e.getMessage().contains("CachedDisk"));
+
+        byte[] memory = new byte[DiskImage.SECTOR_SIZE];
+        try (CachedDisk disk = CachedDisk.hardDisk(path, true, 1024, 255, 63, 2)) {
+            disk.read(disk.lba(1023, 254, 63), 1, memory, 0);
+        }
+        Assertions.assertEquals(0x5A, memory[DiskImage.SECTOR_SIZE - 1]);
+    }
+
+    @Test
+    public void cache(@TempDir Path dir) throws Exception
+    {
+        Path path = image(dir);
+        byte[] memory = new byte[4096];
+
+        try (CachedDisk disk = CachedDisk.floppy(path, false, 2))
+        {
+            // first sector loads the whole track (9 sectors)
+            disk.read(0, 4, memory, 0);
+            Assertions.assertEquals(3, memory[3 * 512]);
+            disk.read(4, 5, memory, 0);
+            Assertions.assertEquals(1, disk.misses());
+            Assertions.assertEquals(8, disk.hits());
+
+            // modify sectors 1, 2 and 4 of track 0, write back on eviction
+            for (int i = 0; i < 3 * 512; i++) {
+                memory[i] = (byte) 0xEE;
+            }
+            disk.write(1, 2, memory, 0);
+            disk.write(4, 1, memory, 0);
+            disk.read(9, 1, memory, 0);
+            disk.read(18, 1, memory, 0);
+            Assertions.assertEquals(3, disk.misses());
+            Assertions.assertEquals(2, disk.writeBacks());
+
+            byte[] bytes = Files.readAllBytes(path);
+            Assertions.assertEquals(0, bytes[511]);
+            Assertions.assertEquals((byte) 0xEE, bytes[512]);
+            Assertions.assertEquals((byte) 0xEE, bytes[3 * 512 - 1]);
+            Assertions.assertEquals(3, bytes[3 * 512]);
+            Assertions.assertEquals((byte) 0xEE, bytes[4 * 512]);
+
+            // evicted track is loaded again
+            disk.read(1, 1, memory, 0);
+            Assertions.assertEquals((byte) 0xEE, memory[0]);
+            Assertions.assertEquals(4, disk.misses());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package at.emu.i8086.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks int 21h host services: files in sandbox, console and termination
+ */
+public class DosHostTest {
+
+    private static void put(Cpu cpu, int address, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, cpu.memory, address, bytes.length);
+    }
+
+    private static void call(Cpu cpu, DosHost dos, int ax, int bx, int cx, int dx)
+    {
+        cpu.registers[Cpu.AX] = ax;
+        cpu.registers[Cpu.BX] = bx;
+        cpu.registers[Cpu.CX] = cx;
+        cpu.registers[Cpu.DX] = dx;
+        Assertions.assertTrue(dos.trap(cpu));
+    }
+
+    @Test
+    public void files(@TempDir Path dir) throws Exception
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DosHost dos = new DosHost(dir, new ByteArrayInputStream("typed\r\n".getBytes()), out);
+        dos.install(cpu);
+
+        cpu.segments[Cpu.DS] = 0x1000;
+        put(cpu, 0x10100, "C:\\OUT.TXT\0");
+        put(cpu, 0x10200, "hello");
+
+        // create, write, seek back and read
+        call(cpu, dos, 0x3C00, 0, 0, 0x100);
+        Assertions.assertEquals(0, cpu.flags & Cpu.FLAG_CF);
+        int handle = cpu.registers[Cpu.AX];
+        Assertions.assertEquals(5, handle);
+        call(cpu, dos, 0x4000, handle, 5, 0x200);
+        Assertions.assertEquals(5, cpu.registers[Cpu.AX]);
+        call(cpu, dos, 0x4200, handle, 0, 1);
+        Assertions.assertEquals(1, cpu.registers[Cpu.AX]);
+        call(cpu, dos, 0x3F00, handle, 100, 0x300);
+        Assertions.assertEquals(4, cpu.registers[Cpu.AX]);
+        Assertions.assertEquals('e', cpu.memory[0x10300]);
+        call(cpu, dos, 0x3E00, handle, 0, 0);
+        Assertions.assertEquals("hello", Files.readString(dir.resolve("OUT.TXT")));
+
+        // names are matched ignoring case, nothing outside of the sandbox
+        put(cpu, 0x10100, "out.txt\0");
+        call(cpu, dos, 0x3D00, 0, 0, 0x100);
+        Assertions.assertEquals(0, cpu.flags & Cpu.FLAG_CF);
+        put(cpu, 0x10100, "..\\x.txt\0");
+        call(cpu, dos, 0x3D00, 0, 0, 0x100);
+        Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_CF);
+        Assertions.assertEquals(DosHost.ERROR_PATH_NOT_FOUND, cpu.registers[Cpu.AX]);
+        put(cpu, 0x10100, "none.txt\0");
+        call(cpu, dos, 0x3D00, 0, 0, 0x100);
+        Assertions.assertEquals(DosHost.ERROR_FILE_NOT_FOUND, cpu.registers[Cpu.AX]);
+
+        // console
+        put(cpu, 0x10200, "hi$");
+        call(cpu, dos, 0x0900, 0, 0, 0x200);
+        cpu.memory[0x10400] = 10;
+        call(cpu, dos, 0x0A00, 0, 0, 0x400);
+        Assertions.assertEquals(5, cpu.memory[0x10401]);
+        Assertions.assertEquals('\r', cpu.memory[0x10407]);
+        Assertions.assertEquals("hityped\r\n", out.toString(StandardCharsets.US_ASCII));
+
+        // int 21h with 4Ch stops the machine
+        cpu.segments[Cpu.CS] = 0;
+        cpu.ip = 0x500;
+        cpu.memory[0x500] = (byte) 0xCD;
+        cpu.memory[0x501] = (byte) 0x21;
+        cpu.registers[Cpu.AX] = 0x4C03;
+        machine.run(100);
+        Assertions.assertEquals(Machine.Exit.STOP, machine.exit());
+        Assertions.assertTrue(dos.terminated());
+        Assertions.assertEquals(3, dos.exitCode());
+    }
+
+    @Test
+    public void links(@TempDir Path dir) throws Exception
+    {
+        Path sandbox = Files.createDirectory(dir.resolve("sandbox"));
+        Path outside = Files.createDirectory(dir.resolve("outside"));
+        Files.writeString(outside.resolve("SECRET.TXT"), "secret");
+        try {
+            Files.createSymbolicLink(sandbox.resolve("LINK"), outside);
+            Files.createSymbolicLink(sandbox.resolve("GONE"), outside.resolve("NEW.TXT"));
+        } catch (UnsupportedOperationException | IOException e) {
+            Assumptions.assumeTrue(false, "symbolic links are not supported");
+        }
+        Files.createDirectory(sandbox.resolve("DIR"));
+
+        DosHost dos = new DosHost(sandbox, new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream());
+        Assertions.assertNull(dos.resolve("LINK\\SECRET.TXT"));
+        Assertions.assertNull(dos.resolve("LINK\\NEW.TXT"));
+        Assertions.assertNull(dos.resolve("GONE"));
+        Assertions.assertNotNull(dos.resolve("DIR\\NEW.TXT"));
+        Assertions.assertNotNull(dos.resolve("NEW\\NEW.TXT"));
+
+        Cpu cpu = new Machine().cpu();
+        dos.install(cpu);
+        cpu.segments[Cpu.DS] = 0x1000;
+        put(cpu, 0x10100, "GONE\0");
+        call(cpu, dos, 0x3C00, 0, 0, 0x100);
+        Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_CF);
+        Assertions.assertFalse(Files.exists(outside.resolve("NEW.TXT")));
+    }
+
+    @Test
+    public void unterminated(@TempDir Path dir) throws Exception
+    {
+        Cpu cpu = new Machine().cpu();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DosHost dos = new DosHost(dir, new ByteArrayInputStream(new byte[0]), out);
+        dos.install(cpu);
+
+        // string at the end of memory wraps inside of the segment
+        cpu.segments[Cpu.DS] = 0xF000;
+        Arrays.fill(cpu.memory, 0xF0000, 0x100000, (byte) 'x');
+        put(cpu, 0xF0000, "y$");
+        call(cpu, dos, 0x0900, 0, 0, 0xFFF0);
+        Assertions.assertEquals("x".repeat(16) + "y", out.toString(StandardCharsets.US_ASCII));
+
+        // no terminator at all
+        out.reset();
+        cpu.memory[0xF0001] = 'x';
+        call(cpu, dos, 0x0900, 0, 0, 0xFFF0);
+        Assertions.assertEquals(0x10000, out.size());
+        call(cpu, dos, 0x3D00, 0, 0, 0xFFF0);
+        Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_CF);
+        Assertions.assertEquals(DosHost.ERROR_PATH_NOT_FOUND, cpu.registers[Cpu.AX]);
+    }
+}
@@ -0,0 +1,57 @@
+package at.emu.i8086.simple;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks snapshots and dumps of the headless display
+ */
+public class HeadlessDisplayTest {
+
+    @Test
+    public void snapshotAndText(@TempDir Path dir) throws Exception
+    {
+        Cpu cpu = new Cpu();
+        CGA cga = cpu.video;
+        for (int i = 0; i < 80 * 25; i++) {
+            cpu.memory[0xB8000 + i * 2] = ' ';
+            cpu.memory[0xB8000 + i * 2 + 1] = 0x07;
+        }
+        byte[] hello = "Hello".getBytes();
+        for (int i = 0; i < hello.length; i++) {
+            cpu.memory[0xB8000 + i * 2] = hello[i];
+            // white on blue
+            cpu.memory[0xB8000 + i * 2 + 1] = 0x1F;
+        }
+
+        String text = HeadlessDisplay.text(cga, cpu.memory);
+        Assertions.assertEquals(25 * 81, text.length());
+        Assertions.assertTrue(text.startsWith("Hello "));
+
+        Path png = dir.resolve("screen.png");
+        Path y4m = dir.resolve("screen.y4m");
+        try (HeadlessDisplay display = new HeadlessDisplay(cga)) {
+            display.startStream(y4m, HeadlessDisplay.Format.Y4M);
+            display.snapshot(png);
+            display.vsync(0);
+            display.vsync(1);
+        }
+
+        BufferedImage image = ImageIO.read(png.toFile());
+        Assertions.assertEquals(HeadlessDisplay.WIDTH, image.getWidth());
+        Assertions.assertEquals(HeadlessDisplay.HEIGHT, image.getHeight());
+        // background of the first cell
+        Assertions.assertEquals(CGA.PALETTE[1], image.getRGB(0, 0) & 0xFFFFFF);
+
+        String header = "YUV4MPEG2 W640 H400 F14318181:238944 Ip A1:1 C444\n";
+        long frame = "FRAME\n".length() + 640 * 400 * 3;
+        Assertions.assertEquals(header.length() + 2 * frame, Files.size(y4m));
+    }
+}
@@ -0,0 +1,67 @@
+package at.emu.i8086.simple;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks scan codes and timing produced by keystrokes script
+ */
+public class KeyScriptTest {
+
+    @Test
+    public void replay()
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        XtKeyboard keyboard = cpu.keyboard;
+        keyboard.enable();
+
+        KeyScript script = KeyScript.parse(
+                "# comment\n" +
+                "rate 0\n" +
+                "type aB\n" +
+                "wait 10ms\n" +
+                "key CTRL+C\n" +
+                "waitfor READY\n" +
+                "key enter\n");
+
+        List<Integer> codes = new ArrayList<>();
+        long ctrl = -1;
+        for (int i = 0; i < 1000 && !script.test(machine); i++) {
+            // guest reads and acknowledges all the codes
+            cpu.serviceEvents();
+            while (keyboard.getNextScanCode() != 0) {
+                codes.add(keyboard.getNextScanCode());
+                keyboard.clear();
+                keyboard.enable();
+            }
+            if ((codes.size() > 6) && (ctrl == -1)) {
+                ctrl = cpu.clocks;
+            }
+            if (cpu.clocks == 100_000) {
+                byte[] ready = "READY".getBytes();
+                for (int c = 0; c < ready.length; c++) {
+                    cpu.memory[0xB8000 + c * 2] = ready[c];
+                }
+            }
+            cpu.clocks += 1000;
+        }
+        cpu.serviceEvents();
+        codes.add(keyboard.getNextScanCode());
+        keyboard.clear();
+        keyboard.enable();
+        codes.add(keyboard.getNextScanCode());
+
+        Assertions.assertTrue(script.finished());
+        Assertions.assertEquals(List.of(
+                0x1E, 0x9E, 0x2A, 0x30, 0xB0, 0xAA,
+                0x1D, 0x2E, 0xAE, 0x9D,
+                0x1C, 0x9C), codes);
+        // ctrl+c is sent only after 10ms of guest time
+        Assertions.assertEquals(48_000, ctrl);
+        Assertions.assertTrue(100_000 < cpu.clocks);
+    }
+}
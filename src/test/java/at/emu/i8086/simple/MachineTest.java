@@ -0,0 +1,185 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks budgets and exit conditions of the machine run loop
+ */
+public class MachineTest {
+
+    /**
+     * creates machine with endless loop of
+     *  inc ax; rep stosw; jmp short -5
+     * at 0000:0100
+     * @return machine
+     */
+    private static Machine loop()
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        cpu.segments[Cpu.CS] = 0x0000;
+        cpu.segments[Cpu.ES] = 0x2000;
+        cpu.ip = 0x0100;
+        cpu.registers[Cpu.SP] = 0x100;
+
+        byte[] code = new byte[] {
+                0x40,                   // inc ax
+                (byte) 0xF3, (byte) 0xAB,     // rep stosw
+                (byte) 0xEB, (byte) 0xFB      // jmp short -5
+        };
+        System.arraycopy(code, 0, cpu.memory, 0x0100, code.length);
+        return machine;
+    }
+
+    @Test
+    public void instructionsBudget()
+    {
+        Machine machine = loop();
+        Assertions.assertEquals(10_000, machine.run(10_000));
+        Assertions.assertEquals(Machine.Exit.BUDGET, machine.exit());
+        Assertions.assertEquals(10_000, machine.instructions());
+    }
+
+    @Test
+    public void clocksBudget()
+    {
+        Machine machine = loop();
+        Cpu cpu = machine.cpu();
+
+        // long rep stosw must be split at the clocks limit
+        cpu.registers[Cpu.CX] = 0x8000;
+        cpu.ip = 0x0101;
+        long start = cpu.clocks;
+        machine.runClocks(1_000);
+
+        Assertions.assertEquals(Machine.Exit.BUDGET, machine.exit());
+        Assertions.assertTrue(cpu.clocks - start < 1_100);
+        Assertions.assertNotEquals(0, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(0x0101, cpu.ip);
+    }
+
+    @Test
+    public void condition()
+    {
+        Machine machine = loop();
+        machine.runUntil(m -> m.cpu().registers[Cpu.AX] >= 100);
+
+        Assertions.assertEquals(Machine.Exit.CONDITION, machine.exit());
+        Assertions.assertTrue(machine.cpu().registers[Cpu.AX] >= 100);
+    }
+
+    /**
+     * creates cpu with code at 0000:0100, ds = 3000, es = 4000
+     * @param code instructions
+     * @return cpu
+     */
+    private static Cpu string(byte... code)
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        cpu.segments[Cpu.CS] = 0x0000;
+        cpu.segments[Cpu.DS] = 0x3000;
+        cpu.segments[Cpu.ES] = 0x4000;
+        cpu.ip = 0x0100;
+        cpu.registers[Cpu.SP] = 0x100;
+        System.arraycopy(code, 0, cpu.memory, 0x0100, code.length);
+        return cpu;
+    }
+
+    @Test
+    public void repChunkAtClocksLimit()
+    {
+        // es: rep stosw
+        Cpu cpu = string((byte) 0x26, (byte) 0xF3, (byte) 0xAB);
+        cpu.registers[Cpu.AX] = 0x1234;
+        cpu.registers[Cpu.CX] = 100;
+
+        int prefixes = cpu.opcodeClocks[0x26] + cpu.opcodeClocks[0xF3] + cpu.opcodeClocks[0xAB];
+        int perIteration = cpu.repClocks[0xAB];
+        long start = cpu.clocks;
+        cpu.clocksLimit = start + prefixes + 10L * perIteration + perIteration / 2;
+        cpu.step();
+
+        // exactly 10 iterations, restart from the segment override prefix
+        Assertions.assertEquals(start + prefixes + 10L * perIteration, cpu.clocks);
+        Assertions.assertEquals(90, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(20, cpu.registers[Cpu.DI]);
+        Assertions.assertEquals(0x0100, cpu.ip);
+        Assertions.assertEquals(0x34, cpu.memory[0x40000 + 18]);
+        Assertions.assertEquals(0, cpu.memory[0x40000 + 20]);
+
+        // resumed instruction finishes
+        cpu.clocksLimit = Long.MAX_VALUE;
+        start = cpu.clocks;
+        cpu.step();
+        Assertions.assertEquals(start + prefixes + 90L * perIteration, cpu.clocks);
+        Assertions.assertEquals(0, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(200, cpu.registers[Cpu.DI]);
+        Assertions.assertEquals(0x0103, cpu.ip);
+        Assertions.assertEquals(0x12, cpu.memory[0x40000 + 199]);
+    }
+
+    @Test
+    public void repChunkOnPendingEvent()
+    {
+        // rep stosb
+        Cpu cpu = string((byte) 0xF3, (byte) 0xAA);
+        cpu.registers[Cpu.CX] = 5;
+
+        // one iteration per step while there are events to serve
+        cpu.raiseEvent(Cpu.EVENT_BREAK);
+        long start = cpu.clocks;
+        cpu.step();
+        Assertions.assertEquals(start + cpu.opcodeClocks[0xF3] + cpu.opcodeClocks[0xAA] + cpu.repClocks[0xAA], cpu.clocks);
+        Assertions.assertEquals(4, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(1, cpu.registers[Cpu.DI]);
+        Assertions.assertEquals(0x0100, cpu.ip);
+
+        cpu.clearEvent(Cpu.EVENT_BREAK);
+        cpu.step();
+        Assertions.assertEquals(0, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(5, cpu.registers[Cpu.DI]);
+        Assertions.assertEquals(0x0102, cpu.ip);
+    }
+
+    @Test
+    public void repeCmpsTerminatedByZf()
+    {
+        // repe cmpsb
+        Cpu cpu = string((byte) 0xF3, (byte) 0xA6);
+        System.arraycopy("abcXefgh".getBytes(), 0, cpu.memory, 0x30000, 8);
+        System.arraycopy("abcYefgh".getBytes(), 0, cpu.memory, 0x40000, 8);
+        cpu.registers[Cpu.CX] = 8;
+
+        long start = cpu.clocks;
+        cpu.step();
+
+        // clocks of the skipped iterations are given back
+        Assertions.assertEquals(start + cpu.opcodeClocks[0xF3] + cpu.opcodeClocks[0xA6] + 4L * cpu.repClocks[0xA6], cpu.clocks);
+        Assertions.assertEquals(4, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(4, cpu.registers[Cpu.SI]);
+        Assertions.assertEquals(4, cpu.registers[Cpu.DI]);
+        Assertions.assertEquals(0, cpu.flags & Cpu.FLAG_ZF);
+        Assertions.assertEquals(0x0102, cpu.ip);
+    }
+
+    @Test
+    public void repneScasTerminatedByZf()
+    {
+        // repne scasb
+        Cpu cpu = string((byte) 0xF2, (byte) 0xAE);
+        System.arraycopy("abcdef".getBytes(), 0, cpu.memory, 0x40000, 6);
+        cpu.registers[Cpu.AX] = 'c';
+        cpu.registers[Cpu.CX] = 6;
+
+        long start = cpu.clocks;
+        cpu.step();
+
+        Assertions.assertEquals(start + cpu.opcodeClocks[0xF2] + cpu.opcodeClocks[0xAE] + 3L * cpu.repClocks[0xAE], cpu.clocks);
+        Assertions.assertEquals(3, cpu.registers[Cpu.CX]);
+        Assertions.assertEquals(3, cpu.registers[Cpu.DI]);
+        Assertions.assertNotEquals(0, cpu.flags & Cpu.FLAG_ZF);
+        Assertions.assertEquals(0x0102, cpu.ip);
+    }
+}
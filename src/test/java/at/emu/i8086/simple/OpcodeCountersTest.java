@@ -0,0 +1,64 @@
+package at.emu.i8086.simple;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Counts opcodes of the codegolf test program
+ */
+public class OpcodeCountersTest {
+
+    @Test
+    public void codegolf() throws Exception
+    {
+        Cpu cpu = new Cpu();
+        cpu.init();
+        cpu.reset();
+        Cpu.Opcode[] registry = cpu.opcodes;
+
+        Path code = Paths.get(OpcodeCountersTest.class.getResource("/codegolf").toURI());
+        byte[] bytes = Files.readAllBytes(code);
+        System.arraycopy(bytes, 0, cpu.memory, 0, bytes.length);
+        cpu.segments[Cpu.CS] = 0x0000;
+        cpu.ip = 0x0000;
+        cpu.registers[Cpu.SP] = 0x100;
+
+        OpcodeCounters counters = new OpcodeCounters();
+        counters.attach(cpu);
+        long start = cpu.clocks;
+        Machine machine = new Machine(cpu);
+        machine.run(Long.MAX_VALUE);
+        Assertions.assertEquals(Machine.Exit.HALT, machine.exit());
+        counters.detach();
+        Assertions.assertSame(registry, cpu.opcodes);
+
+        // every clock is accounted to exactly one opcode
+        Assertions.assertEquals(cpu.clocks - start, Arrays.stream(counters.clocks).sum());
+        Assertions.assertEquals(1, counters.count(0xF4));
+
+        // exits of demuxed opcodes sum to the opcode
+        for (int opcode = 0; opcode < 256; opcode++) {
+            if (registry[opcode] instanceof Cpu.RegBasedDemux) {
+                long count = 0;
+                long clocks = 0;
+                for (int reg = 0; reg < 8; reg++) {
+                    count += counters.count(opcode, reg);
+                    clocks += counters.clocks(opcode, reg);
+                }
+                Assertions.assertEquals(counters.count(opcode), count);
+                Assertions.assertEquals(counters.clocks(opcode), clocks);
+            }
+        }
+
+        long total = Arrays.stream(counters.counts).sum();
+        Assertions.assertEquals(total, counters.byClass().values().stream().mapToLong(v -> v[0]).sum());
+        Assertions.assertTrue(counters.toCsv().startsWith("opcode,reg,class,count,clocks\n"));
+        Assertions.assertTrue(counters.toJson().contains("\"class\": \"Hlt\""));
+        Assertions.assertTrue(counters.toTable().startsWith("0000_"));
+    }
+}
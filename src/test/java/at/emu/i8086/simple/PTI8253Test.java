@@ -0,0 +1,118 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks timer state calculated from cpu clocks
+ */
+public class PTI8253Test {
+
+    /**
+     * programs channel with lo/hi access mode
+     */
+    private static void program(PTI8253 pti, int channel, int mode, int count)
+    {
+        pti.pout(false, PTI8253.PORT_COMMAND, (channel << 6) | 0b0011_0000 | (mode << 1));
+        pti.pout(false, PTI8253.PORT_TIMER0 + channel, count & 0xFF);
+        pti.pout(false, PTI8253.PORT_TIMER0 + channel, count >> 8);
+    }
+
+    /**
+     * latches and reads channel counter
+     */
+    private static int latched(PTI8253 pti, int channel)
+    {
+        pti.pout(false, PTI8253.PORT_COMMAND, channel << 6);
+        int lo = pti.pin(false, PTI8253.PORT_TIMER0 + channel);
+        int hi = pti.pin(false, PTI8253.PORT_TIMER0 + channel);
+        return (hi << 8) | lo;
+    }
+
+    @Test
+    public void rateGenerator()
+    {
+        Cpu cpu = new Cpu();
+        cpu.clocks = 1000;
+        program(cpu.pti, 0, 2, 100);
+
+        // timer runs at cpu clock / 4
+        Assertions.assertEquals((1000 / 4 + 100) * 4, cpu.pti.nextIrqClocks());
+
+        cpu.clocks += 40 * 4;
+        Assertions.assertEquals(60, latched(cpu.pti, 0));
+
+        // irq is raised once deadline is crossed and next one is scheduled
+        cpu.clocks = cpu.pti.nextIrqClocks();
+        cpu.pti.clock(cpu.clocks);
+        Assertions.assertEquals(1, cpu.pic.irr & 1);
+        Assertions.assertEquals(cpu.clocks + 100 * 4, cpu.pti.nextIrqClocks());
+        Assertions.assertEquals(100, latched(cpu.pti, 0));
+    }
+
+    @Test
+    public void squareWave()
+    {
+        Cpu cpu = new Cpu();
+        program(cpu.pti, 2, 3, 10);
+        cpu.pti.gate(2, false);
+        cpu.pti.gate(2, true);
+
+        Assertions.assertTrue(cpu.pti.output(2));
+        cpu.clocks += 5 * 4;
+        Assertions.assertFalse(cpu.pti.output(2));
+        cpu.clocks += 5 * 4;
+        Assertions.assertTrue(cpu.pti.output(2));
+
+        // gate low forces output high and stops counting
+        cpu.clocks += 6 * 4;
+        cpu.pti.gate(2, false);
+        Assertions.assertTrue(cpu.pti.output(2));
+    }
+
+    @Test
+    public void terminalCount()
+    {
+        Cpu cpu = new Cpu();
+        program(cpu.pti, 0, 0, 50);
+
+        Assertions.assertFalse(cpu.pti.output(0));
+        cpu.clocks += 49 * 4;
+        Assertions.assertFalse(cpu.pti.output(0));
+        Assertions.assertEquals(1, latched(cpu.pti, 0));
+        cpu.clocks += 4;
+        Assertions.assertTrue(cpu.pti.output(0));
+
+        // one shot, counter wraps but there is no more irq
+        cpu.pti.clock(cpu.clocks);
+        Assertions.assertEquals(Long.MAX_VALUE, cpu.pti.nextIrqClocks());
+    }
+
+    @Test
+    public void highTicksMatchOutput()
+    {
+        for (int mode = 0; mode <= 5; mode++) {
+            Cpu cpu = new Cpu();
+            cpu.clocks = 4 * 7;
+            program(cpu.pti, 2, mode, 9);
+            cpu.clocks += 4 * 3;
+            // reprogramming mid period makes the first period shorter
+            cpu.pti.pout(false, PTI8253.PORT_TIMER2, 13);
+            cpu.pti.pout(false, PTI8253.PORT_TIMER2, 0);
+            if ((mode == 1) || (mode == 5)) {
+                cpu.pti.gate(2, false);
+                cpu.pti.gate(2, true);
+            }
+
+            PTI8253.State state = cpu.pti.state(2);
+            long start = cpu.clocks >> 2;
+            for (long from = start - 2; from < start + 40; from += 3) {
+                long high = 0;
+                for (long t = from; t < from + 31; t++) {
+                    high += state.output(t) ? 1 : 0;
+                }
+                Assertions.assertEquals(high, state.highTicks(from, from + 31), "mode " + mode + " from " + from);
+            }
+        }
+    }
+}
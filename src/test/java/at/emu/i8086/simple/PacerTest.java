@@ -0,0 +1,85 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks pacing against a manual host clock
+ */
+public class PacerTest {
+
+    /**
+     * host time for the pacer, starts at 0
+     */
+    private long now;
+
+    @Test
+    public void slices()
+    {
+        Pacer pacer = new Pacer(Pacer.SPEED_1X, () -> now);
+        Assertions.assertEquals(Pacer.SLICE_NANOS * Pacer.CPU_HZ / 1_000_000_000, pacer.sliceClocks());
+
+        pacer.speed(Pacer.SPEED_2X);
+        Assertions.assertEquals(2 * Pacer.SLICE_NANOS * Pacer.CPU_HZ / 1_000_000_000, pacer.sliceClocks(), 1);
+
+        pacer.speed(Pacer.SPEED_UNTHROTTLED);
+        Assertions.assertEquals(Machine.BATCH_CLOCKS * 64, pacer.sliceClocks());
+    }
+
+    @Test
+    public void drift()
+    {
+        // time base at host time 0 must be valid
+        Pacer pacer = new Pacer(Pacer.SPEED_1X, () -> now);
+        pacer.start(1_000);
+
+        // 1 ms of host time, 0.5 ms of guest time
+        now = 1_000_000;
+        pacer.pace(1_000 + Pacer.CPU_HZ / 2_000);
+        Assertions.assertEquals(500_000, pacer.drift(), 1_000);
+        Assertions.assertEquals(pacer.drift(), pacer.maxDrift());
+        Assertions.assertEquals(0, pacer.lostNanos());
+        Assertions.assertEquals(0, pacer.parkedNanos());
+    }
+
+    @Test
+    public void resync()
+    {
+        Pacer pacer = new Pacer(Pacer.SPEED_1X, () -> now);
+        pacer.start(0);
+
+        // host was suspended for 200 ms, lost time is dropped, not caught up
+        now = 200_000_000;
+        pacer.pace(Pacer.CPU_HZ / 1_000);
+        Assertions.assertEquals(199_000_000, pacer.lostNanos(), 1_000);
+        Assertions.assertEquals(0, pacer.maxDrift());
+
+        // new time base is the current moment
+        now += 1_000_000;
+        pacer.pace(Pacer.CPU_HZ / 1_000 + Pacer.CPU_HZ / 1_000);
+        Assertions.assertEquals(0, pacer.drift(), 1_000);
+
+        // speed change resets time base on the next pace
+        pacer.speed(Pacer.SPEED_2X);
+        now += 50_000_000;
+        pacer.pace(0);
+        Assertions.assertEquals(0, pacer.drift());
+        Assertions.assertEquals(199_000_000, pacer.lostNanos(), 1_000);
+    }
+
+    @Test
+    public void unthrottled()
+    {
+        Pacer pacer = new Pacer(Pacer.SPEED_UNTHROTTLED, () -> now);
+        pacer.start(0);
+        now = 1_000_000_000;
+        pacer.pace(1);
+        Assertions.assertEquals(0, pacer.drift());
+        Assertions.assertEquals(0, pacer.lostNanos());
+
+        // guest far ahead is never parked
+        now = 0;
+        pacer.pace(Pacer.CPU_HZ * 100);
+        Assertions.assertEquals(0, pacer.parkedNanos());
+    }
+}
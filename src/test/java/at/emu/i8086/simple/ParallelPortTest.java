@@ -0,0 +1,47 @@
+package at.emu.i8086.simple;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks lpt1 strobe handshake, irq#7 and file capture
+ */
+public class ParallelPortTest {
+
+    @Test
+    public void capture(@TempDir Path dir) throws Exception
+    {
+        Cpu cpu = new Cpu();
+        ParallelPort lpt = cpu.lpt1;
+        Path path = dir.resolve("printer.txt");
+        cpu.pic.irr = 0;
+
+        try (ParallelPort.Capture capture = new ParallelPort.Capture(path))
+        {
+            lpt.attach(capture);
+            for (byte b : "report\r\n".getBytes()) {
+                Assertions.assertEquals(ParallelPort.STATUS_READY, cpu.pin(false, 0x379));
+                cpu.pout(false, 0x378, b);
+                // bios sequence: strobe on, strobe off
+                cpu.pout(false, 0x37A, 0x0D);
+                cpu.pout(false, 0x37A, 0x0C);
+            }
+            Assertions.assertEquals(0, cpu.pic.irr);
+
+            // with irq enabled, without ~INIT nothing is printed
+            cpu.pout(false, 0x378, 'x');
+            cpu.pout(false, 0x37A, 0x1D);
+            cpu.pout(false, 0x37A, 0x1C);
+            Assertions.assertEquals(1 << ParallelPort.LPT1_IRQ, cpu.pic.irr);
+            cpu.pout(false, 0x37A, 0x09);
+            cpu.pout(false, 0x37A, 0x08);
+        }
+
+        Assertions.assertEquals(9, lpt.printed());
+        Assertions.assertEquals("report\r\nx", Files.readString(path));
+    }
+}
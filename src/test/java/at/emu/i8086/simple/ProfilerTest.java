@@ -0,0 +1,140 @@
+package at.emu.i8086.simple;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Samples small program with a call and resolves it with a map file,
+ * checks profiler layered with opcode counters
+ */
+public class ProfilerTest {
+
+    /**
+     * 0000  call 0010
+     * 0003  hlt
+     * 0010  mov cx, 5
+     * 0013  loop 0013
+     * 0015  ret
+     */
+    private static final byte[] CODE = new byte[] {
+            (byte) 0xE8, 0x0D, 0x00,
+            (byte) 0xF4,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            (byte) 0xB9, 0x05, 0x00,
+            (byte) 0xE2, (byte) 0xFE,
+            (byte) 0xC3
+    };
+
+    private static final List<String> MAP = List.of(
+            " Start  Stop   Length Name               Class",
+            " 00000H 00015H 00016H _TEXT              CODE",
+            "",
+            "  Address         Publics by Value",
+            "",
+            " 0000:0000       _main",
+            " 0000:0010       _count",
+            " 0000:0100  Abs  BUFSIZE",
+            "",
+            "Program entry point at 0000:0000"
+    );
+
+    private static Profiler run(Profiler.Mode mode, long period, int depth)
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        System.arraycopy(CODE, 0, cpu.memory, 0x1000, CODE.length);
+        cpu.segments[Cpu.CS] = 0x0100;
+        cpu.ip = 0;
+        cpu.registers[Cpu.SP] = 0x100;
+
+        Profiler profiler = new Profiler(mode, period, depth);
+        profiler.addSymbols(Profiler.SymbolMap.parse(MAP, 0x0100));
+        Cpu.Opcode[] registry = cpu.opcodes;
+        machine.setProfiler(profiler);
+        machine.run(Long.MAX_VALUE);
+        Assertions.assertEquals(Machine.Exit.HALT, machine.exit());
+        machine.setProfiler(null);
+        Assertions.assertSame(registry, cpu.opcodes);
+        return profiler;
+    }
+
+    @Test
+    public void stacks()
+    {
+        Profiler profiler = run(Profiler.Mode.INSTRUCTIONS, 1, 2);
+        Assertions.assertEquals(9, profiler.samples());
+        Assertions.assertEquals("_count;_count 7\n_main 2\n", profiler.toCollapsed());
+
+        profiler = run(Profiler.Mode.INSTRUCTIONS, 1, 0);
+        Assertions.assertEquals("_count 7\n_main 2\n", profiler.toCollapsed());
+    }
+
+    @Test
+    public void clocks()
+    {
+        // the same program gives the same samples
+        String collapsed = run(Profiler.Mode.CLOCKS, 7, 1).toCollapsed();
+        Assertions.assertEquals(collapsed, run(Profiler.Mode.CLOCKS, 7, 1).toCollapsed());
+        Assertions.assertTrue(collapsed.contains("_count;_count "));
+    }
+
+    @Test
+    public void symbols()
+    {
+        Profiler.SymbolMap map = Profiler.SymbolMap.parse(MAP, 0x0100);
+        Assertions.assertEquals("_main", map.resolve(0x1003));
+        Assertions.assertEquals("_count", map.resolve(0x1015));
+        Assertions.assertNull(map.resolve(0x1016));
+        Assertions.assertNull(map.resolve(0x0FFF));
+
+        Profiler profiler = new Profiler(Profiler.Mode.CLOCKS, 1, 0);
+        profiler.addSymbols(map);
+        Assertions.assertEquals("FE05B", profiler.resolve(0xFE05B));
+    }
+
+    @Test
+    public void withCounters()
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        System.arraycopy(CODE, 0, cpu.memory, 0x1000, CODE.length);
+        cpu.segments[Cpu.CS] = 0x0100;
+        cpu.ip = 0;
+        cpu.registers[Cpu.SP] = 0x100;
+        Cpu.Opcode[] registry = cpu.opcodes;
+
+        // both wrap the registry and work together
+        Profiler profiler = new Profiler(Profiler.Mode.INSTRUCTIONS, 1, 2);
+        profiler.addSymbols(Profiler.SymbolMap.parse(MAP, 0x0100));
+        OpcodeCounters counters = new OpcodeCounters();
+        machine.setProfiler(profiler);
+        counters.attach(cpu);
+        machine.run(Long.MAX_VALUE);
+        Assertions.assertEquals(Machine.Exit.HALT, machine.exit());
+        Assertions.assertEquals("_count;_count 7\n_main 2\n", profiler.toCollapsed());
+        Assertions.assertEquals(1, counters.count(0xE8));
+        Assertions.assertEquals(1, counters.count(0xC3));
+
+        // detach out of order is refused and changes nothing
+        Cpu.Opcode[] layered = cpu.opcodes;
+        Assertions.assertThrows(IllegalStateException.class, () -> machine.setProfiler(null));
+        Assertions.assertSame(layered, cpu.opcodes);
+
+        counters.detach();
+        machine.setProfiler(null);
+        Assertions.assertSame(registry, cpu.opcodes);
+
+        // the same the other way round
+        counters.attach(cpu);
+        machine.setProfiler(profiler);
+        layered = cpu.opcodes;
+        Assertions.assertThrows(IllegalStateException.class, counters::detach);
+        Assertions.assertSame(layered, cpu.opcodes);
+
+        machine.setProfiler(null);
+        counters.detach();
+        Assertions.assertSame(registry, cpu.opcodes);
+    }
+}
@@ -0,0 +1,76 @@
+package at.emu.i8086.simple;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Loads and runs small .com and .exe programs over int 21h host
+ */
+public class ProgramLoaderTest {
+
+    private static String run(Path dir, Path program, String tail, int exitCode) throws Exception
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DosHost dos = new DosHost(dir, new ByteArrayInputStream(new byte[0]), out);
+        dos.install(cpu);
+
+        int psp = ProgramLoader.load(cpu, program, tail, Map.of("PATH", "C:\\"));
+        Assertions.assertEquals(tail.length(), cpu.memory[(psp << 4) + 0x80]);
+        Assertions.assertEquals(0x0D, cpu.memory[(psp << 4) + 0x81 + tail.length()]);
+
+        machine.run(1000);
+        Assertions.assertEquals(Machine.Exit.STOP, machine.exit());
+        Assertions.assertTrue(dos.terminated());
+        Assertions.assertEquals(exitCode, dos.exitCode());
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void com(@TempDir Path dir) throws Exception
+    {
+        // mov ah, 9; mov dx, 0108h; int 21h; ret (to int 20h in psp)
+        byte[] code = {
+                (byte) 0xB4, 0x09, (byte) 0xBA, 0x08, 0x01, (byte) 0xCD, 0x21, (byte) 0xC3,
+                'c', 'o', 'm', '$'
+        };
+        Path program = dir.resolve("test.com");
+        Files.write(program, code);
+
+        Assertions.assertEquals("com", run(dir, program, " /x", 0));
+    }
+
+    @Test
+    public void exe(@TempDir Path dir) throws Exception
+    {
+        byte[] header = {
+                'M', 'Z', 0x36, 0, 1, 0, 1, 0, 2, 0, 0x10, 0, (byte) 0xFF, (byte) 0xFF,
+                2, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0x1C, 0, 0, 0,
+                // relocation of the word at 0000:0001
+                1, 0, 0, 0
+        };
+        // mov ax, seg data; mov ds, ax; mov ah, 9; mov dx, 2; int 21h; mov ax, 4C05h; int 21h
+        byte[] module = {
+                (byte) 0xB8, 0x01, 0x00, (byte) 0x8E, (byte) 0xD8, (byte) 0xB4, 0x09, (byte) 0xBA, 2, 0,
+                (byte) 0xCD, 0x21, (byte) 0xB8, 0x05, 0x4C, (byte) 0xCD, 0x21, (byte) 0x90,
+                // data segment 1, offset 2
+                'e', 'x', 'e', '$'
+        };
+        byte[] bytes = new byte[header.length + module.length];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        System.arraycopy(module, 0, bytes, header.length, module.length);
+        Path program = dir.resolve("TEST.EXE");
+        Files.write(program, bytes);
+
+        Assertions.assertEquals("exe", run(dir, program, "", 5));
+    }
+}
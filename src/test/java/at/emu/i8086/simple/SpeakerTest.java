@@ -0,0 +1,96 @@
+package at.emu.i8086.simple;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Renders 1 kHz tone from timer channel 2 into wav file,
+ * speaker is switched on and off via ppi port B
+ */
+public class SpeakerTest {
+
+    @Test
+    public void tone(@TempDir Path dir) throws Exception
+    {
+        Cpu cpu = new Cpu();
+        Path path = dir.resolve("tone.wav");
+        cpu.speaker.start(new Speaker.WavSink(path));
+
+        // channel 2 square wave 1193182 / 1193 = 1 kHz, gate and speaker on
+        cpu.pout(false, 0x43, 0b1011_0110);
+        cpu.pout(false, 0x42, 1193 & 0xFF);
+        cpu.pout(false, 0x42, 1193 >> 8);
+        cpu.pout(false, 0x61, PPI8255.MASK_PORT_B_TIMER | PPI8255.MASK_PORT_B_SPEAKER);
+
+        // 100 ms in batches, then silence for 100 ms
+        for (int i = 0; i < 100; i++) {
+            cpu.clocks += Pacer.CPU_HZ / 1000;
+            cpu.speaker.update(cpu.clocks);
+        }
+        cpu.pout(false, 0x61, 0);
+        cpu.clocks += Pacer.CPU_HZ / 10;
+        cpu.speaker.stop();
+        Assertions.assertEquals(0, cpu.speaker.dropped());
+
+        ByteBuffer wav = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        Assertions.assertEquals(0x46464952, wav.getInt(0));
+        int samples = wav.getInt(40) / 2;
+        Assertions.assertEquals(44 + samples * 2, wav.capacity());
+        Assertions.assertEquals(Speaker.SAMPLE_RATE / 5, samples, 2);
+
+        // 1 kHz has 2 sign changes per ms, tone part only
+        int changes = 0;
+        for (int i = 1; i < Speaker.SAMPLE_RATE / 10; i++) {
+            if ((wav.getShort(44 + i * 2) < 0) != (wav.getShort(44 + i * 2 - 2) < 0)) {
+                changes++;
+            }
+        }
+        Assertions.assertEquals(200, changes, 4);
+
+        // silence decays to zero
+        Assertions.assertTrue(Math.abs(wav.getShort(44 + (samples - 1) * 2)) < 100);
+    }
+
+    @Test
+    public void toggle(@TempDir Path dir) throws Exception
+    {
+        Cpu cpu = new Cpu();
+        Path path = dir.resolve("toggle.wav");
+        cpu.speaker.start(new Speaker.WavSink(path));
+
+        // channel 2 at 1 kHz with gate on, speaker is off
+        cpu.pout(false, 0x43, 0b1011_0110);
+        cpu.pout(false, 0x42, 1193 & 0xFF);
+        cpu.pout(false, 0x42, 1193 >> 8);
+        cpu.pout(false, 0x61, PPI8255.MASK_PORT_B_TIMER);
+
+        // in al, 61h / xor al, 2 / out 61h, al keeps the other bits
+        cpu.pout(false, 0x61, cpu.pin(false, 0x61) ^ PPI8255.MASK_PORT_B_SPEAKER);
+        Assertions.assertEquals(PPI8255.MASK_PORT_B_TIMER | PPI8255.MASK_PORT_B_SPEAKER, cpu.pin(false, 0x61));
+        cpu.clocks += Pacer.CPU_HZ / 10;
+        cpu.speaker.sync();
+
+        cpu.pout(false, 0x61, cpu.pin(false, 0x61) ^ PPI8255.MASK_PORT_B_SPEAKER);
+        Assertions.assertEquals(PPI8255.MASK_PORT_B_TIMER, cpu.pin(false, 0x61));
+        cpu.clocks += Pacer.CPU_HZ / 10;
+        cpu.speaker.stop();
+
+        // tone while the speaker is on, silence after
+        ByteBuffer wav = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        int samples = wav.getInt(40) / 2;
+        int changes = 0;
+        for (int i = 1; i < Speaker.SAMPLE_RATE / 10; i++) {
+            if ((wav.getShort(44 + i * 2) < 0) != (wav.getShort(44 + i * 2 - 2) < 0)) {
+                changes++;
+            }
+        }
+        Assertions.assertEquals(200, changes, 4);
+        Assertions.assertTrue(Math.abs(wav.getShort(44 + (samples - 1) * 2)) < 100);
+    }
+}
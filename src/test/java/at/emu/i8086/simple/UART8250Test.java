@@ -0,0 +1,72 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks com1 timing, interrupts and memory backend
+ */
+public class UART8250Test {
+
+    @Test
+    public void transmitAndReceive()
+    {
+        Cpu cpu = new Cpu();
+        UART8250 com1 = cpu.com1;
+        UART8250.MemoryBackend line = new UART8250.MemoryBackend();
+        com1.attach(line);
+
+        // 9600 8N1: 10 bits of 16 * 12 uart clocks
+        com1.pout(false, 0x3FB, UART8250.MASK_LCR_DLAB | 0b11);
+        com1.pout(false, 0x3F8, 12);
+        com1.pout(false, 0x3F9, 0);
+        com1.pout(false, 0x3FB, 0b11);
+        long charClocks = 10 * 16 * 12 * Pacer.CPU_HZ / UART8250.UART_HZ;
+
+        // irq on received data only, OUT2 enables irq
+        com1.pout(false, 0x3F9, UART8250.MASK_IER_RDA);
+        com1.pout(false, 0x3FC, UART8250.MASK_MCR_OUT2);
+        cpu.pic.irr = 0;
+
+        com1.pout(false, 0x3F8, 'A');
+        Assertions.assertEquals(0, com1.pin(false, 0x3FD) & UART8250.MASK_LSR_THRE);
+        Assertions.assertEquals(cpu.clocks + charClocks, com1.nextEventClocks());
+        cpu.clocks += charClocks - 1;
+        Assertions.assertEquals(0, com1.pin(false, 0x3FD) & UART8250.MASK_LSR_THRE);
+        cpu.clocks += 1;
+        Assertions.assertNotEquals(0, com1.pin(false, 0x3FD) & UART8250.MASK_LSR_THRE);
+
+        // output reaches backend on the next poll
+        com1.clock(cpu.clocks);
+        Assertions.assertArrayEquals(new byte[] {'A'}, line.receive());
+
+        // input comes at the line rate
+        Assertions.assertTrue(line.send(new byte[] {'x', 'y'}));
+        cpu.clocks += Pacer.CPU_HZ;
+        com1.clock(cpu.clocks);
+        Assertions.assertEquals(1 << UART8250.COM1_IRQ, cpu.pic.irr);
+        Assertions.assertEquals(UART8250.IIR_RDA, com1.pin(false, 0x3FA));
+        Assertions.assertEquals('x', com1.pin(false, 0x3F8));
+        Assertions.assertEquals(UART8250.IIR_NONE, com1.pin(false, 0x3FA));
+        Assertions.assertEquals(0, com1.pin(false, 0x3FD) & UART8250.MASK_LSR_DR);
+        Assertions.assertEquals(cpu.clocks + charClocks, com1.nextEventClocks());
+        cpu.clocks += charClocks;
+        com1.clock(cpu.clocks);
+        Assertions.assertEquals('y', com1.pin(false, 0x3F8));
+    }
+
+    @Test
+    public void loopback()
+    {
+        Cpu cpu = new Cpu();
+        UART8250 com2 = cpu.com2;
+        com2.pout(false, 0x2FC, UART8250.MASK_MCR_LOOP | UART8250.MASK_MCR_RTS);
+        Assertions.assertEquals(UART8250.MASK_MSR_CTS, com2.pin(false, 0x2FE));
+
+        com2.pout(false, 0x2F8, 0x55);
+        cpu.clocks += 1_000_000;
+        Assertions.assertNotEquals(0, com2.pin(false, 0x2FD) & UART8250.MASK_LSR_DR);
+        Assertions.assertEquals(0x55, com2.pin(false, 0x2F8));
+        Assertions.assertEquals(Long.MAX_VALUE, com2.nextEventClocks());
+    }
+}
@@ -0,0 +1,98 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks int 10h fast path in 80x25 text mode
+ */
+public class VideoBiosTest {
+
+    /**
+     * prepares bios data area for 80x25 color text and rom vector
+     */
+    private static Machine machine()
+    {
+        Machine machine = new Machine();
+        Cpu cpu = machine.cpu();
+        new VideoBios().install(cpu);
+
+        cpu.memory[0x42] = 0x00;
+        cpu.memory[0x43] = (byte) 0xF0;
+        cpu.memory[0x449] = 3;
+        cpu.memory[0x44A] = 80;
+        cpu.memory[0x44D] = 0x10;
+
+        // int 10h; hlt
+        cpu.memory[0x500] = (byte) 0xCD;
+        cpu.memory[0x501] = (byte) 0x10;
+        cpu.memory[0x502] = (byte) 0xF4;
+        return machine;
+    }
+
+    private static void call(Machine machine, int ax, int bx, int cx, int dx)
+    {
+        Cpu cpu = machine.cpu();
+        cpu.segments[Cpu.CS] = 0;
+        cpu.ip = 0x500;
+        cpu.hlt = false;
+        cpu.registers[Cpu.AX] = ax;
+        cpu.registers[Cpu.BX] = bx;
+        cpu.registers[Cpu.CX] = cx;
+        cpu.registers[Cpu.DX] = dx;
+        machine.run(10);
+        Assertions.assertEquals(0x503, cpu.ip);
+    }
+
+    @Test
+    public void teletype()
+    {
+        Machine machine = machine();
+        Cpu cpu = machine.cpu();
+        for (int i = 0; i < 80 * 25 * 2; i += 2) {
+            cpu.memory[0xB8000 + i] = (byte) ('a' + i / 160);
+            cpu.memory[0xB8000 + i + 1] = 0x07;
+        }
+
+        // bottom right corner, wraps and scrolls
+        call(machine, 0x0200, 0, 0, 0x184F);
+        Assertions.assertEquals(24 * 80 + 79, (cpu.video.reg6845[14] << 8) | cpu.video.reg6845[15]);
+        call(machine, 0x0E00 | 'X', 0, 0, 0);
+        call(machine, 0x0E00 | 'Y', 0, 0, 0);
+        call(machine, 0x0E00 | 0x08, 0, 0, 0);
+
+        call(machine, 0x0300, 0, 0, 0);
+        Assertions.assertEquals(0x1800, cpu.registers[Cpu.DX]);
+        Assertions.assertEquals('b', cpu.memory[0xB8000]);
+        Assertions.assertEquals('X', cpu.memory[0xB8000 + 23 * 160 + 158]);
+        Assertions.assertEquals('Y', cpu.memory[0xB8000 + 24 * 160]);
+        Assertions.assertEquals(' ', cpu.memory[0xB8000 + 24 * 160 + 2]);
+        Assertions.assertEquals(0x07, cpu.memory[0xB8000 + 24 * 160 + 3]);
+        Assertions.assertEquals(5, ((VideoBios) cpu.traps[0x10]).served());
+    }
+
+    @Test
+    public void scrollWindow()
+    {
+        Machine machine = machine();
+        Cpu cpu = machine.cpu();
+        for (int i = 0; i < 80 * 25 * 2; i += 2) {
+            cpu.memory[0xB8000 + i] = (byte) ('a' + i / 160);
+        }
+
+        // window rows 1-4, columns 10-19 down by 1 line with attribute 0x1F
+        call(machine, 0x0701, 0x1F00, 0x010A, 0x0413);
+        Assertions.assertEquals('b', cpu.memory[0xB8000 + 160 + 18]);
+        Assertions.assertEquals(' ', cpu.memory[0xB8000 + 160 + 20]);
+        Assertions.assertEquals(0x1F, cpu.memory[0xB8000 + 160 + 21]);
+        Assertions.assertEquals('b', cpu.memory[0xB8000 + 2 * 160 + 20]);
+        Assertions.assertEquals('d', cpu.memory[0xB8000 + 4 * 160 + 38]);
+        Assertions.assertEquals('e', cpu.memory[0xB8000 + 4 * 160 + 40]);
+
+        // clear whole screen, guest hooked vector isn't trapped
+        call(machine, 0x0600, 0x0700, 0, 0x184F);
+        Assertions.assertEquals(' ', cpu.memory[0xB8000 + 24 * 160 + 158]);
+        cpu.memory[0x43] = 0x10;
+        Assertions.assertFalse(cpu.traps[0x10].trap(cpu));
+    }
+}
@@ -0,0 +1,47 @@
+package at.emu.i8086.simple;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks delivery of scan codes from host to the port and irq#1
+ */
+public class XtKeyboardTest {
+
+    @Test
+    public void delivery()
+    {
+        Cpu cpu = new Cpu();
+        XtKeyboard keyboard = cpu.keyboard;
+
+        // reset sequence of the bios: clock low, clock high with clear, enable
+        keyboard.clock(false);
+        keyboard.clear();
+        keyboard.clock(true);
+        Assertions.assertEquals(0, cpu.pic.irr);
+        keyboard.enable();
+        Assertions.assertEquals(XtKeyboard.CODE_SELF_TEST_OK, keyboard.getNextScanCode());
+        Assertions.assertEquals(0b10, cpu.pic.irr);
+        cpu.pic.irr = 0;
+
+        // host thread side
+        Assertions.assertTrue(keyboard.offer(0x1E));
+        Assertions.assertTrue(keyboard.offer(0x9E));
+        Assertions.assertNotEquals(0, cpu.pendingEvents() & Cpu.EVENT_INPUT);
+
+        // code in the port is not replaced until cleared by the handler
+        cpu.serviceEvents();
+        Assertions.assertEquals(0, cpu.pendingEvents() & Cpu.EVENT_INPUT);
+        Assertions.assertEquals(XtKeyboard.CODE_SELF_TEST_OK, keyboard.getNextScanCode());
+        Assertions.assertEquals(0, cpu.pic.irr);
+
+        keyboard.clear();
+        keyboard.enable();
+        Assertions.assertEquals(0x1E, keyboard.getNextScanCode());
+        Assertions.assertEquals(0b10, cpu.pic.irr);
+
+        keyboard.clear();
+        keyboard.enable();
+        Assertions.assertEquals(0x9E, keyboard.getNextScanCode());
+    }
+}